@@ -0,0 +1,242 @@
+
+/************************************************************************************
+ * @file BloomFilter.java
+ */
+
+import java.io.*;
+
+/************************************************************************************
+ * The BloomFilter class is a compact set of keys that answers membership queries with
+ * no false negatives and a tunable rate of false positives.  A key (one or more
+ * attribute values) is hashed once to 64 bits and its k bit positions are derived from
+ * the two 32-bit halves by double hashing (g_i = h1 + i * h2).  Keys may be given as a
+ * KeyType or as columns of a tuple, which hash the same, so tuples can be tested
+ * without building a KeyType.
+ *
+ * The filter counts the probes it answers and the probes it rejects, and callers that
+ * go on to check a key the filter accepted report false positives, so the
+ * effectiveness of a filter can be monitored (see metrics).  The counters are not
+ * synchronized, so they are approximate when a filter is probed by several threads.
+ */
+public class BloomFilter
+{
+    /** The bits of the filter.
+     */
+    private final long [] bits;
+
+    /** The number of bits (a multiple of 64).
+     */
+    private final long m;
+
+    /** The number of hash functions.
+     */
+    private final int k;
+
+    /** The counters: probes answered, probes rejected and accepted probes that were
+     *  reported as false positives.
+     */
+    private long probes, rejected, falsePositives;
+
+    /********************************************************************************
+     * Construct an empty filter with the given number of bits and hash functions.
+     *
+     * @param bitCount  the number of bits (rounded up to a multiple of 64)
+     * @param hashes    the number of hash functions
+     */
+    public BloomFilter (long bitCount, int hashes)
+    {
+        int words = (int) Math.min (Integer.MAX_VALUE - 8, Math.max (1, (bitCount + 63) >>> 6));
+        bits = new long [words];
+        m    = 64L * words;
+        k    = Math.max (1, hashes);
+    } // constructor
+
+    /********************************************************************************
+     * Construct an empty filter sized for the expected number of keys and the wanted
+     * false positive probability: m = -n ln p / (ln 2)^2 bits and k = (m / n) ln 2
+     * hash functions.
+     *
+     * @param n    the expected number of keys
+     * @param fpp  the wanted false positive probability
+     * @return  the filter
+     */
+    public static BloomFilter forCount (long n, double fpp)
+    {
+        n = Math.max (1, n);
+        long bitCount = (long) Math.ceil (-n * Math.log (fpp) / (Math.log (2) * Math.log (2)));
+        int  hashes   = (int) Math.round ((double) bitCount / n * Math.log (2));
+        return new BloomFilter (bitCount, hashes);
+    } // forCount
+
+    /********************************************************************************
+     * Add a key.
+     *
+     * @param key  the key
+     */
+    public void add (KeyType key)
+    {
+        set (hash (key.getKey (), null));
+    } // add
+
+    /********************************************************************************
+     * Add the key made of the given columns of a tuple.
+     *
+     * @param t     the tuple
+     * @param cols  the key columns
+     */
+    public void add (Comparable [] t, int [] cols)
+    {
+        set (hash (t, cols));
+    } // add
+
+    /********************************************************************************
+     * Return whether the key may be in the set (false means it definitely is not).
+     *
+     * @param key  the key
+     * @return  whether the key may be present
+     */
+    public boolean mightContain (KeyType key)
+    {
+        return test (hash (key.getKey (), null));
+    } // mightContain
+
+    /********************************************************************************
+     * Return whether the key made of the given columns of a tuple may be in the set.
+     *
+     * @param t     the tuple
+     * @param cols  the key columns
+     * @return  whether the key may be present
+     */
+    public boolean mightContain (Comparable [] t, int [] cols)
+    {
+        return test (hash (t, cols));
+    } // mightContain
+
+    /********************************************************************************
+     * Record that a key accepted by the filter was not in the set.
+     */
+    public void falsePositive ()
+    {
+        falsePositives++;
+    } // falsePositive
+
+    /********************************************************************************
+     * Return the counters: {probes, rejected, false positives}.
+     *
+     * @return  the counters
+     */
+    public long [] metrics ()
+    {
+        return new long [] { probes, rejected, falsePositives };
+    } // metrics
+
+    /********************************************************************************
+     * Return the number of bits of the filter.
+     *
+     * @return  the number of bits
+     */
+    public long bitCount ()
+    {
+        return m;
+    } // bitCount
+
+    /********************************************************************************
+     * Return the number of hash functions of the filter.
+     *
+     * @return  the number of hash functions
+     */
+    public int hashCount ()
+    {
+        return k;
+    } // hashCount
+
+    /********************************************************************************
+     * Write the filter (its bits and hash count, not its counters).
+     *
+     * @param out  the output to write to
+     * @throws IOException  if the filter cannot be written
+     */
+    void write (DataOutput out) throws IOException
+    {
+        out.writeInt (bits.length);
+        out.writeInt (k);
+        for (long w : bits) out.writeLong (w);
+    } // write
+
+    /********************************************************************************
+     * Read a filter written by write.
+     *
+     * @param in  the input to read from
+     * @return  the filter
+     * @throws IOException  if the filter cannot be read or is malformed
+     */
+    static BloomFilter read (DataInput in) throws IOException
+    {
+        int words = in.readInt (), hashes = in.readInt ();
+        if (words <= 0 || hashes <= 0) throw new IOException ("BloomFilter: malformed filter");
+        BloomFilter filter = new BloomFilter (64L * words, hashes);
+        for (int i = 0; i < words; i++) filter.bits [i] = in.readLong ();
+        return filter;
+    } // read
+
+    /********************************************************************************
+     * Return the filter and its counters as a string.
+     */
+    public String toString ()
+    {
+        long [] c = metrics ();
+        return "BloomFilter (bits = " + m + ", hashes = " + k + ", probes = " + c [0]
+               + ", rejected = " + c [1] + ", falsePositives = " + c [2] + ")";
+    } // toString
+
+    //-----------------------------------------------------------------------------------
+    // Private methods
+    //-----------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Hash the given columns of t (all of t if cols is null) to 64 bits.
+     */
+    private static long hash (Comparable [] t, int [] cols)
+    {
+        int  n = (cols == null) ? t.length : cols.length;
+        long h = 0x2545F4914F6CDD1DL;
+        for (int j = 0; j < n; j++) {
+            Comparable v = t [(cols == null) ? j : cols [j]];
+            h = (h ^ ((v == null) ? 0 : v.hashCode ())) * 0x9E3779B97F4A7C15L;
+        } // for
+        h ^= h >>> 33;                                                  // 64-bit finalizer
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    } // hash
+
+    /********************************************************************************
+     * Set the k bits of a hashed key.
+     */
+    private synchronized void set (long h)
+    {
+        int h1 = (int) h, h2 = (int) (h >>> 32);
+        for (int i = 0; i < k; i++) {
+            long b = Math.floorMod (h1 + (long) i * h2, m);
+            bits [(int) (b >>> 6)] |= 1L << b;
+        } // for
+    } // set
+
+    /********************************************************************************
+     * Test the k bits of a hashed key, counting the probe.
+     */
+    private boolean test (long h)
+    {
+        int h1 = (int) h, h2 = (int) (h >>> 32);
+        boolean hit = true;
+        for (int i = 0; i < k && hit; i++) {
+            long b = Math.floorMod (h1 + (long) i * h2, m);
+            hit = (bits [(int) (b >>> 6)] & (1L << b)) != 0;
+        } // for
+        probes++;
+        if (! hit) rejected++;
+        return hit;
+    } // test
+
+} // BloomFilter class
@@ -0,0 +1,129 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.*;
+
+import org.junit.Test;
+
+public class BloomFilterTest {
+
+    /**
+     *
+     * Creates an enrollment table whose student ids mostly have no
+     * matching student.
+     *
+     * @return enrollment table
+     *
+     */
+
+    public Table enrollmentTable(String name, int n) {
+
+	Table enrollment = new Table(name, "eid studId crsCode", "Integer Integer String", "eid");
+	for (int i = 0; i < n; i++) enrollment.insert(new Comparable [] { i, (i * 37) % 1000, "crs" + i % 20 });
+	return enrollment;
+    }
+
+    /**
+     *
+     * Converts the tuples of a table to a set of strings.
+     *
+     */
+
+    private Set<String> rows(Table t) {
+
+	Set<String> s = new HashSet<>();
+	for (int i = 0; i < t.tuplesLength(); i++) s.add(Arrays.toString(t.getTuple(i)));
+	return s;
+    }
+
+    /**
+     *
+     * Tests that a filter sized for n keys never misses an added key and
+     * keeps close to the requested false positive rate.
+     *
+     */
+
+    @Test
+    public void testFalsePositiveRate() {
+
+	BloomFilter filter = BloomFilter.forCount(100000, 0.01);
+	for (int i = 0; i < 100000; i++) filter.add(new KeyType(i));
+	for (int i = 0; i < 100000; i++) assertTrue(filter.mightContain(new KeyType(i)));
+	int fp = 0;
+	for (int i = 100000; i < 200000; i++) if (filter.mightContain(new Comparable [] { i }, new int [] { 0 })) fp++;
+	assertTrue("false positives " + fp, fp < 2000);
+	assertEquals(200000, filter.metrics()[0]);
+	assertEquals(100000 - fp, filter.metrics()[1]);
+    }
+
+    /**
+     *
+     * Tests that keyed selects answer as with a freshly built key filter
+     * after the table outgrows its filter, find every key after a save
+     * and load or map, and return a row of nulls for missing keys.
+     *
+     */
+
+    @Test
+    public void testKeyFilter() {
+
+	Table student = new Table("bloomStudent", "id name", "Integer String", "id");
+	Table control = new Table("control", "id name", "Integer String", "id");
+	for (int i = 0; i < 10; i++) student.insert(new Comparable [] { i, "name" + i });
+	assertNull(student.select(new KeyType(-1)).getTuple(0)[0]);
+	for (int i = 10; i < 3000; i++) student.insert(new Comparable [] { i, "name" + i });
+	for (int i = 0; i < 3000; i++) control.insert(new Comparable [] { i, "name" + i });
+	for (int i = 0; i < 3000; i += 7) {
+	    assertArrayEquals(control.select(new KeyType(i)).getTuple(0), student.select(new KeyType(i)).getTuple(0));
+	}
+	assertNull(student.select(new KeyType(3000)).getTuple(0)[1]);
+
+	new File("store").mkdirs();
+	student.save();
+	assertTrue(new File("store" + File.separator + "bloomStudent.blm").exists());
+	Table loaded = Table.load("bloomStudent");
+	assertEquals("name2999", loaded.select(new KeyType(2999)).getTuple(0)[1]);
+	assertNull(loaded.select(new KeyType(-5)).getTuple(0)[1]);
+	Table mapped = Table.map("bloomStudent");
+	for (int i = 0; i < 3000; i += 7) assertEquals("name" + i, mapped.select(new KeyType(i)).getTuple(0)[1]);
+	assertNull(mapped.select(new KeyType(4000)).getTuple(0)[1]);
+    }
+
+    /**
+     *
+     * Tests that the filtered hash join finds the same tuples as the
+     * nested loop join (dropping the table2 join column), that the
+     * filtered index join finds no others, also when probing a mapped
+     * table, and that the filters reject the probes without a match.
+     *
+     */
+
+    @Test
+    public void testJoinFilter() {
+
+	Table student = new Table("student", "id name", "Integer String", "id");
+	for (int i = 0; i < 100; i++) student.insert(new Comparable [] { i, "name" + i });
+	Table enrollment = enrollmentTable("enrollment", 5000);
+	Table nested = enrollment.join("studId", "id", student);
+	Set<String> expected = rows(nested), hashed = new HashSet<>();
+	assertEquals(500, expected.size());
+	for (int i = 0; i < nested.tuplesLength(); i++) {
+	    Comparable [] t = nested.getTuple(i);
+	    hashed.add(Arrays.toString(new Comparable [] { t[0], t[1], t[2], t[4] }));
+	}
+
+	Table.resetJoinFilterMetrics();
+	assertEquals(hashed, rows(enrollment.h_join("studId", "id", student)));
+	Set<String> indexed = rows(enrollment.i_join("studId", "id", student));
+	assertTrue(expected.containsAll(indexed));
+	long [] c = Table.joinFilterMetrics();
+	assertEquals(10000, c[0]);
+	assertTrue(c[1] > 8800);
+	assertTrue(c[1] + c[2] >= 9000);
+
+	new File("store").mkdirs();
+	enrollmentTable("bloomEnrollment", 5000).save();
+	Table mapped = Table.map("bloomEnrollment");
+	assertEquals(indexed, rows(mapped.i_join("studId", "id", student)));
+    }
+}
@@ -0,0 +1,142 @@
+
+/************************************************************************************
+ * @file BoundedHeap.java
+ */
+
+import java.util.*;
+
+/************************************************************************************
+ * The BoundedHeap class keeps the k smallest tuples offered to it under a given order.
+ * It is a binary max-heap of at most k entries whose root is the largest tuple kept, so
+ * a tuple that does not beat the root is rejected with one comparison and any other
+ * replaces the root in O(log k) time.  Ties are broken by the ordinal of the tuple in
+ * its table, so the result is the same as taking the first k tuples of a stable sort,
+ * whichever thread offered them.  Heaps built over disjoint parts of a table are
+ * combined with merge.
+ */
+class BoundedHeap
+{
+    /** The maximum number of tuples kept.
+     */
+    private final int k;
+
+    /** The order on tuples (smallest first).
+     */
+    private final Comparator <Comparable []> order;
+
+    /** The tuples kept, in max-heap order.
+     */
+    private final Comparable [][] heap;
+
+    /** The ordinals of the tuples kept, parallel to heap.
+     */
+    private final int [] ord;
+
+    /** The number of tuples kept.
+     */
+    private int n;
+
+    /********************************************************************************
+     * Construct an empty heap.
+     *
+     * @param _k      the maximum number of tuples kept
+     * @param _order  the order on tuples
+     */
+    BoundedHeap (int _k, Comparator <Comparable []> _order)
+    {
+        k     = _k;
+        order = _order;
+        heap  = new Comparable [k][];
+        ord   = new int [k];
+    } // constructor
+
+    /********************************************************************************
+     * Offer a tuple, keeping it if it is among the k smallest so far.
+     *
+     * @param i  the ordinal of the tuple
+     * @param t  the tuple
+     */
+    void offer (int i, Comparable [] t)
+    {
+        if (n < k) {
+            heap [n] = t;
+            ord [n]  = i;
+            up (n++);
+        } else if (k > 0 && less (t, i, heap [0], ord [0])) {
+            heap [0] = t;
+            ord [0]  = i;
+            down (0);
+        } // if
+    } // offer
+
+    /********************************************************************************
+     * Offer all the tuples of another heap to this one.
+     *
+     * @param other  the other heap
+     * @return  this heap
+     */
+    BoundedHeap merge (BoundedHeap other)
+    {
+        for (int j = 0; j < other.n; j++) offer (other.ord [j], other.heap [j]);
+        return this;
+    } // merge
+
+    /********************************************************************************
+     * Return the tuples kept, smallest first.
+     *
+     * @return  the sorted tuples
+     */
+    List <Comparable []> sorted ()
+    {
+        Integer [] pos = new Integer [n];
+        for (int j = 0; j < n; j++) pos [j] = j;
+        Arrays.sort (pos, (a, b) -> less (heap [a], ord [a], heap [b], ord [b]) ? -1 : 1);
+        List <Comparable []> rows = new ArrayList <> (n);
+        for (int j : pos) rows.add (heap [j]);
+        return rows;
+    } // sorted
+
+    /********************************************************************************
+     * Return whether tuple t (ordinal i) comes before tuple u (ordinal j).
+     */
+    private boolean less (Comparable [] t, int i, Comparable [] u, int j)
+    {
+        int c = order.compare (t, u);
+        return c < 0 || (c == 0 && i < j);
+    } // less
+
+    /********************************************************************************
+     * Move the entry at position j up to restore the heap order.
+     */
+    private void up (int j)
+    {
+        while (j > 0) {
+            int p = (j - 1) / 2;
+            if (! less (heap [p], ord [p], heap [j], ord [j])) break;
+            swap (p, j);
+            j = p;
+        } // while
+    } // up
+
+    /********************************************************************************
+     * Move the entry at position j down to restore the heap order.
+     */
+    private void down (int j)
+    {
+        for (int c; (c = 2 * j + 1) < n; j = c) {
+            if (c + 1 < n && less (heap [c], ord [c], heap [c+1], ord [c+1])) c++;
+            if (! less (heap [j], ord [j], heap [c], ord [c])) break;
+            swap (j, c);
+        } // for
+    } // down
+
+    /********************************************************************************
+     * Swap the entries at positions a and b.
+     */
+    private void swap (int a, int b)
+    {
+        Comparable [] t = heap [a]; heap [a] = heap [b]; heap [b] = t;
+        int           i = ord [a];  ord [a]  = ord [b];  ord [b]  = i;
+    } // swap
+
+} // BoundedHeap class
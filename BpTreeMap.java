@@ -126,11 +126,9 @@ public class BpTreeMap <K extends Comparable <K>, V>
      */
     private final Node bn;
     
-    /** Flag indicating whether a split at the level below has occurred that needs to be handled
+    /** The divider key (largest left) passed up by the last split in insert
      */
-    private boolean hasSplit = false;
-
-    private boolean nonLeaf = false;
+    private K divider;
 
     /** The counter for the number nodes accessed (for performance testing)
      */
@@ -189,7 +187,7 @@ public class BpTreeMap <K extends Comparable <K>, V>
         }
         else {
             Set <Map.Entry <K, V>> enSet = new HashSet <> ();
-            for(int i = 0; i < root.nKeys + 1; i++) {
+            for(int i = 0; i < node.nKeys + 1; i++) {
                 enSet.addAll(entrySetRecursive((Node) node.ref[i]));
             }
             return enSet;
@@ -215,10 +213,66 @@ public class BpTreeMap <K extends Comparable <K>, V>
      */
     public V put (K key, V value)
     {
-        insert (key, value, root);
+        Node rt = insert (key, value, root);
+        if (rt != null) root = makeRoot (root, divider, rt);                // the root split
         return null;
     } // put
 
+    /********************************************************************************
+     * Load an empty B+Tree map bottom-up: fill the leaves left to right from the sorted
+     * keys, then build each level of internal nodes over the one below, instead of
+     * inserting (and splitting) key by key.  Nodes are filled evenly, as full as the
+     * ORDER allows.
+     * @param keys    the keys in ascending order, without duplicates
+     * @param values  the values, parallel to the keys
+     */
+    @SuppressWarnings("unchecked")
+    public void bulkLoad (K [] keys, V [] values)
+    {
+        if (! root.isLeaf || root.nKeys != 0) {
+            throw new IllegalStateException ("BpTreeMap.bulkLoad: the map is not empty");
+        } // if
+        int n = keys.length;
+        if (n == 0) return;
+
+        int nLeaves     = (n + ORDER - 2) / (ORDER - 1);
+        List <Node> level = new ArrayList <> (nLeaves);
+        List <K>    last  = new ArrayList <> (nLeaves);                  // largest key under each node
+        Node prev = null;
+        for (int l = 0, next = 0; l < nLeaves; l++) {
+            int  m    = (n - next) / (nLeaves - l);
+            Node leaf = (l == 0) ? firstLeaf : new Node (ORDER, true);
+            for (int i = 0; i < m; i++, next++) { leaf.key[i] = keys[next]; leaf.ref[i] = values[next]; }
+            leaf.nKeys = m;
+            if (prev != null) prev.ref[prev.nKeys] = leaf;                 // link the leaves
+            prev = leaf;
+            level.add (leaf);
+            last.add (leaf.key[m-1]);
+        } // for
+
+        while (level.size () > 1) {                                      // build the next level up
+            int nNodes = (level.size () + ORDER - 1) / ORDER;
+            List <Node> up     = new ArrayList <> (nNodes);
+            List <K>    upLast = new ArrayList <> (nNodes);
+            for (int p = 0, next = 0; p < nNodes; p++) {
+                int  c    = (level.size () - next) / (nNodes - p);
+                Node node = new Node (ORDER, false);
+                for (int i = 0; i < c; i++, next++) {
+                    node.ref[i] = level.get (next);
+                    if (i < c - 1) node.key[i] = last.get (next);        // divider: largest left
+                } // for
+                node.nKeys = c - 1;
+                up.add (node);
+                upLast.add (last.get (next - 1));
+            } // for
+            level = up;
+            last  = upLast;
+        } // while
+
+        root     = level.get (0);
+        keyCount = n;
+    } // bulkLoad
+
     /********************************************************************************
      * Return the first (smallest) key in the B+Tree map.
      * @return  the first key in the B+Tree map.
@@ -245,40 +299,75 @@ public class BpTreeMap <K extends Comparable <K>, V>
     } // lastKey
 
     /********************************************************************************
-     * Return the portion of the B+Tree map where key < toKey.
+     * Return the portion of the B+Tree map where key < toKey.  The submap is a view
+     * backed by this map.
      * @return  the submap with keys in the range [firstKey, toKey)
      */
     public SortedMap <K,V> headMap (K toKey)
     {
-        return subMap(firstKey(), toKey);
+        return new Range (null, toKey);
     } // headMap
 
     /********************************************************************************
-     * Return the portion of the B+Tree map where fromKey <= key.
+     * Return the portion of the B+Tree map where fromKey <= key.  The submap is a view
+     * backed by this map.
      * @return  the submap with keys in the range [fromKey, lastKey]
      */
     public SortedMap <K,V> tailMap (K fromKey)
     {
-        return subMap(fromKey, lastKey());
+        return new Range (fromKey, null);
     } // tailMap
 
     /********************************************************************************
      * Return the portion of the B+Tree map whose keys are between fromKey and toKey,
-     * i.e., fromKey <= key < toKey.
+     * i.e., fromKey <= key < toKey.  The submap is a view backed by this map.
      * @return  the submap with keys in the range [fromKey, toKey)
      */
     public SortedMap <K,V> subMap (K fromKey, K toKey)
     {
-        SortedMap <K,V> tree = new TreeMap<K,V>();
-        Set <Map.Entry <K, V>> treeSet = entrySet();
-
-        for(Entry<K,V> e : treeSet) {
-            tree.put(e.getKey(),e.getValue());
-        }
-
-        return tree.subMap(fromKey, toKey);
+        if (fromKey.compareTo (toKey) > 0) throw new IllegalArgumentException ("BpTreeMap.subMap: fromKey > toKey");
+        return new Range (fromKey, toKey);
     } // subMap
 
+    /********************************************************************************
+     * Return a cursor over the entries with keys in [lo, hi), in key order.  It
+     * descends to the leaf that would hold lo and then follows the leaf links.
+     * @param lo  the lower bound (inclusive), or null for the first key
+     * @param hi  the upper bound (exclusive), or null for no bound
+     * @return  the iterator over the entries
+     */
+    private Iterator <Map.Entry <K, V>> cursor (K lo, K hi)
+    {
+        Node n = root;
+        while (! n.isLeaf) n = (Node) n.ref[(lo == null) ? 0 : n.find (lo)];
+        Node start = n;
+        int  first = (lo == null) ? 0 : n.find (lo);
+
+        return new Iterator <Map.Entry <K, V>> () {
+            Node leaf = start;
+            int  i    = first;
+
+            @SuppressWarnings("unchecked")
+            public boolean hasNext ()
+            {
+                while (leaf != null && i >= leaf.nKeys) {               // move to the next leaf
+                    leaf = (Node) leaf.ref[leaf.nKeys];
+                    i    = 0;
+                } // while
+                return leaf != null && (hi == null || leaf.key[i].compareTo (hi) < 0);
+            } // hasNext
+
+            @SuppressWarnings("unchecked")
+            public Map.Entry <K, V> next ()
+            {
+                if (! hasNext ()) throw new NoSuchElementException ();
+                Map.Entry <K, V> e = new AbstractMap.SimpleImmutableEntry <> (leaf.key[i], (V) leaf.ref[i]);
+                i++;
+                return e;
+            } // next
+        };
+    } // cursor
+
     /********************************************************************************
      * Return the size (number of keys) in the B+Tree.
      * @return  the size of the B+Tree
@@ -330,73 +419,39 @@ public class BpTreeMap <K extends Comparable <K>, V>
     } // find
 
     /********************************************************************************
-     * Recursive helper function for inserting a key in B+trees.
+     * Recursive helper function for inserting a key in B+trees.  A duplicate key is
+     * ignored.  When node n splits, its new right sibling is returned and the divider
+     * key for the parent (the largest key left in n's subtree) is left in divider.
      * @param key  the key to insert
-     * @param ref  the value/node to insert
+     * @param ref  the value to insert
      * @param n    the current node
-     * @return  the newly allocated right sibling node of n 
+     * @return  the newly allocated right sibling node of n, or null if n did not split
      */
     @SuppressWarnings("unchecked")
     private Node insert (K key, V ref, Node n)
     {
-        //out.println ("=============================================================");
-        //out.println ("insert: key = " + key);
-        //out.println ("=============================================================");
+        int i = n.find (key);                                                // find "<=" position
 
-        Node rt = null;                                                      // holder for right sibling
-        Node rp = null;                                                      // holder for right sibling of parent
-        
         if (n.isLeaf) {                                                      // handle leaf node level
-
+            if (i < n.nKeys && key.compareTo (n.key[i]) == 0) return null;   // duplicate: ignore
+            keyCount++;
             if (n.nKeys < ORDER - 1) {                                       // current node is not full
-                wedge (key, ref, n, n.find (key), true);                     // wedge (key, ref) pair in at position i
-            } else {                                                         // current node is full
-                rt = split (key, ref, n, true);                              // split current node, return right sibling
-                n.ref[n.nKeys] = rt;                                         // link leaf n to leaf rt
-                if (n == root && rt != null) {
-                    root = makeRoot (n, n.key[n.nKeys-1], rt);               // make a new root
-                } else if (rt != null) {
-                    hasSplit = true;                                         // indicate an unhandled split
-                } // if
+                wedge (key, ref, n, i, true);                                // wedge (key, ref) pair in at position i
+                return null;
             } // if
-
-        } else {                                                             // handle internal node level
-
-            int i = n.find (key);                                            // find "<=" position
-            rt = insert (key, ref, (Node) n.ref[i]);                         // recursive call to insert
-            //if (DEBUG) out.println ("insert: handle internal node level");
-            Node temp = (Node) n.ref[i];
-
-            if(hasSplit == true) {
-                if (n.nKeys < ORDER - 1) {
-                    wedge(temp.key[temp.nKeys-1], rt, n, n.find(temp.key[temp.nKeys-1]), false);
-                    if(nonLeaf) {
-                        temp.key[temp.nKeys-1] = null;
-                        temp.ref[temp.nKeys] = null;
-                        temp.nKeys-=1;
-                        nonLeaf = false;
-                    }
-                    hasSplit = false;
-                }
-                else {
-                    rt = split(temp.key[temp.nKeys-1],rt,n,false);
-                    if(n==root) {
-                        root = makeRoot (n,n.key[n.nKeys-1],rt);
-                        n.key[n.nKeys-1] = null;
-                        n.ref[n.nKeys] = null;
-                        n.nKeys-=1;
-                        hasSplit = false;
-                    }
-                    else {
-                        nonLeaf = true;
-                    }
-                }
-            }
-
+            Node rt = split (key, ref, n, true);                             // split current node, return right sibling
+            n.ref[n.nKeys] = rt;                                             // link leaf n to leaf rt
+            divider = n.key[n.nKeys-1];
+            return rt;
         } // if
 
-        //if (DEBUG) print (root, 0);
-        return rt;                                                           // return right node
+        Node rc = insert (key, ref, (Node) n.ref[i]);                        // handle internal node level
+        if (rc == null) return null;                                         // no split below
+        if (n.nKeys < ORDER - 1) {
+            wedge (divider, rc, n, i, false);                                // divider at i, new child right of it
+            return null;
+        } // if
+        return split (divider, rc, n, false);                                // sets divider to the middle key
     } // insert
 
     /********************************************************************************
@@ -444,25 +499,106 @@ public class BpTreeMap <K extends Comparable <K>, V>
 
     /********************************************************************************
      * Split node n and return the newly created right sibling node rt.  The bigger half
-     * should go in the current node n, with the remaining going in rt.
-     * @param key  the new key to insert
-     * @param ref  the new value/node to insert
-     * @param n    the current node
-     * @return  the right sibling node, if allocated, else null
+     * should go in the current node n, with the remaining going in rt.  A leaf keeps
+     * its first MID keys and rt takes over its link to the next leaf.  An internal node
+     * keeps its first MID-1 keys, passes the middle key up in divider and gives rt the
+     * rest.
+     * @param key   the new key to insert (not a duplicate)
+     * @param ref   the new value/node to insert
+     * @param n     the current node (full)
+     * @param left  whether the ref goes left of the key (leaves) or right of it
+     * @return  the right sibling node
      */
     @SuppressWarnings("unchecked")
     private Node split (K key, Object ref, Node n, boolean left)
     {
-        bn.copy (n, 0, ORDER-1);                                          // copy n into big node                           
-        if (wedge (key, ref, bn, bn.find (key), left)) {                  // if wedge (key, ref) into big node was successful
-            n.copy (bn, 0, MID);                                          // copy back first half to node n
-            Node rt = new Node (ORDER, n.isLeaf);                         // make a right sibling node (rt)
-            rt.copy (bn, MID, ORDER-MID);                                 // copy second to node rt      
-            return rt;                                                    // return right sibling
-        } // if     
-        return null;                                                      // no new node created as key is duplicate
+        bn.copy (n, 0, ORDER-1);                                          // copy n into big node
+        wedge (key, ref, bn, bn.find (key), left);                        // wedge (key, ref) into big node
+        Node rt = new Node (ORDER, n.isLeaf);                             // make a right sibling node (rt)
+        rt.copy (bn, MID, ORDER-MID);                                     // copy second half to node rt
+        int keep = n.isLeaf ? MID : MID - 1;
+        n.copy (bn, 0, keep);                                             // copy back first half to node n
+        if (! n.isLeaf) divider = bn.key[MID-1];                          // the middle key moves up
+        for (int j = keep; j < ORDER-1; j++) n.key[j] = null;             // clear the moved entries
+        for (int j = keep + 1; j < ORDER; j++) n.ref[j] = null;
+        return rt;
     } // split
 
+    /********************************************************************************
+     * This inner class provides the view of the map with keys in [lo, hi) returned by
+     * subMap, headMap and tailMap.  Iteration is a cursor along the leaf level.
+     */
+    private class Range
+            extends AbstractMap <K, V>
+            implements SortedMap <K, V>
+    {
+        private final K lo;                             // lower bound (inclusive), or null
+        private final K hi;                             // upper bound (exclusive), or null
+
+        Range (K _lo, K _hi)
+        {
+            lo = _lo;
+            hi = _hi;
+        } // constructor
+
+        boolean inRange (K k)
+        {
+            return (lo == null || k.compareTo (lo) >= 0) && (hi == null || k.compareTo (hi) < 0);
+        } // inRange
+
+        K max (K a, K b) { return (a == null) ? b : (b == null) ? a : (a.compareTo (b) >= 0) ? a : b; }
+
+        K min (K a, K b) { return (a == null) ? b : (b == null) ? a : (a.compareTo (b) <= 0) ? a : b; }
+
+        public Comparator <? super K> comparator () { return null; }
+
+        @SuppressWarnings("unchecked")
+        public V get (Object k)                    { return inRange ((K) k) ? BpTreeMap.this.get (k) : null; }
+
+        public boolean containsKey (Object k)      { return get (k) != null; }
+
+        public V put (K k, V v)
+        {
+            if (! inRange (k)) throw new IllegalArgumentException ("BpTreeMap: key out of range");
+            return BpTreeMap.this.put (k, v);
+        } // put
+
+        public Set <Map.Entry <K, V>> entrySet ()
+        {
+            return new AbstractSet <Map.Entry <K, V>> () {
+                public Iterator <Map.Entry <K, V>> iterator () { return cursor (lo, hi); }
+                public int size ()
+                {
+                    int n = 0;
+                    for (Iterator <?> it = cursor (lo, hi); it.hasNext (); it.next ()) n++;
+                    return n;
+                } // size
+            };
+        } // entrySet
+
+        public K firstKey ()
+        {
+            Iterator <Map.Entry <K, V>> it = cursor (lo, hi);
+            if (! it.hasNext ()) throw new NoSuchElementException ();
+            return it.next ().getKey ();
+        } // firstKey
+
+        public K lastKey ()
+        {
+            K last = null;
+            for (Iterator <Map.Entry <K, V>> it = cursor (lo, hi); it.hasNext (); ) last = it.next ().getKey ();
+            if (last == null) throw new NoSuchElementException ();
+            return last;
+        } // lastKey
+
+        public SortedMap <K, V> subMap (K from, K to) { return new Range (max (lo, from), min (hi, to)); }
+
+        public SortedMap <K, V> headMap (K to)        { return new Range (lo, min (hi, to)); }
+
+        public SortedMap <K, V> tailMap (K from)      { return new Range (max (lo, from), hi); }
+
+    } // Range inner class
+
     /********************************************************************************
      * The main method used for testing.
      * @param  the command-line arguments (args[0] gives number of keys to insert)
@@ -100,4 +100,74 @@ public class BpTreeMapTest {
 	assertEquals(20, bpt.size());
     }
 
-}
\ No newline at end of file
+    /**
+     *
+     * Tests that bulk loaded trees of many sizes find every key, list
+     * every entry and accept further puts
+     *
+     */
+
+    @Test
+
+    public void testBulkLoad() {
+
+	for (int n : new int [] { 0, 1, 4, 5, 17, 24, 25, 26, 1000, 12345 }) {
+	    Integer [] keys = new Integer [n];
+	    for (int i = 0; i < n; i++) keys[i] = 2 * i;
+	    BpTreeMap <Integer, Integer> bpt = new BpTreeMap <> (Integer.class, Integer.class);
+	    bpt.bulkLoad(keys, keys);
+
+	    assertEquals(n, bpt.size());
+	    assertEquals(n, bpt.entrySet().size());
+	    for (int i = 0; i < n; i++) {
+		assertEquals(2 * i, (int) bpt.get(2 * i));
+		assertNull(bpt.get(2 * i + 1));
+	    }
+	    if (n > 0) {
+		assertEquals(0, (int) bpt.firstKey());
+		assertEquals(2 * n - 2, (int) bpt.lastKey());
+		bpt.put(-1, -1);
+		assertEquals(-1, (int) bpt.get(-1));
+	    }
+	}
+    }
+
+    /**
+     *
+     * Tests that subMap, headMap and tailMap walk the leaves and agree
+     * with a TreeMap, for trees built by put and by bulkLoad
+     *
+     */
+
+    @Test
+
+    public void testSubMap() {
+
+	java.util.Random rand = new java.util.Random(7);
+	for (int n : new int [] { 0, 1, 30, 2000 }) {
+	    java.util.TreeMap <Integer, Integer> expected = new java.util.TreeMap <> ();
+	    BpTreeMap <Integer, Integer> put = new BpTreeMap <> (Integer.class, Integer.class);
+	    while (expected.size() < n) {
+		int k = 2 * rand.nextInt(4 * n);
+		expected.put(k, -k);
+		put.put(k, -k);
+	    }
+	    Integer [] keys = expected.keySet().toArray(new Integer [0]);
+	    Integer [] vals = expected.values().toArray(new Integer [0]);
+	    BpTreeMap <Integer, Integer> bulk = new BpTreeMap <> (Integer.class, Integer.class);
+	    bulk.bulkLoad(keys, vals);
+
+	    for (BpTreeMap <Integer, Integer> bpt : java.util.Arrays.asList(put, bulk)) {
+		for (int t = 0; t < 200; t++) {
+		    int lo = rand.nextInt(8 * n + 2) - 1, hi = lo + rand.nextInt(n + 2);
+		    assertEquals(new java.util.ArrayList <> (expected.subMap(lo, hi).entrySet()),
+				 new java.util.ArrayList <> (bpt.subMap(lo, hi).entrySet()));
+		    assertEquals(expected.headMap(hi), bpt.headMap(hi));
+		    assertEquals(expected.tailMap(lo), bpt.tailMap(lo));
+		    assertEquals(expected.subMap(lo, hi).size(), bpt.tailMap(lo).headMap(hi).size());
+		}
+	    }
+	}
+    }
+
+}
@@ -0,0 +1,288 @@
+
+/*****************************************************************************************
+ * @file  BufferPool.java
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/*****************************************************************************************
+ * The BufferPool class provides a bounded cache of fixed-size pages for the on-disk
+ * storage structures.  The memory budget is divided into frames; a page must be pinned
+ * while it is used and unpinned afterwards, and only unpinned frames may be evicted.
+ * Pages that were modified are marked dirty when unpinned and are written back when
+ * evicted or flushed.  The replacement policy is pluggable (see EvictionPolicy).
+ * Hits, misses, evictions and write-backs are counted for tuning.
+ */
+public class BufferPool
+{
+    /** The size of each page (frame) in bytes.
+     */
+    private final int pageSize;
+
+    /** The replacement policy.
+     */
+    private final EvictionPolicy policy;
+
+    /** The contents of each frame.
+     */
+    private final ByteBuffer [] data;
+
+    /** The key (file << 32 | page) of the page in each frame (-1 if free).
+     */
+    private final long [] key;
+
+    /** The pin count of each frame.
+     */
+    private final int [] pins;
+
+    /** Whether each frame has been modified since it was read or written.
+     */
+    private final boolean [] dirty;
+
+    /** The free frames.
+     */
+    private final Deque <Integer> free = new ArrayDeque <> ();
+
+    /** Map from page key to the frame holding it.
+     */
+    private final HashMap <Long, Integer> pageTable = new HashMap <> ();
+
+    /** The registered files (indexed by file id).
+     */
+    private final List <FileChannel> files = new ArrayList <> ();
+
+    /** Counters for performance monitoring.
+     */
+    private long hits, misses, evictions, writeBacks;
+
+    /*************************************************************************************
+     * Construct a buffer pool.
+     * @param _pageSize  the size of each page in bytes
+     * @param budget     the memory budget in bytes (rounded down to whole pages)
+     * @param _policy    the replacement policy
+     */
+    public BufferPool (int _pageSize, long budget, EvictionPolicy _policy)
+    {
+        pageSize = _pageSize;
+        policy   = _policy;
+        int frames = (int) Math.max (1, budget / pageSize);
+        data  = new ByteBuffer [frames];
+        key   = new long [frames];
+        pins  = new int [frames];
+        dirty = new boolean [frames];
+        for (int f = 0; f < frames; f++) {
+            data [f] = ByteBuffer.allocate (pageSize);
+            key [f]  = -1;
+            free.add (f);
+        } // for
+        policy.init (frames);
+    } // constructor
+
+    /*************************************************************************************
+     * Register a file whose pages will be cached.
+     * @param ch  the channel for the file (opened for reading, and writing if pages
+     *            will be modified)
+     * @return  the id of the file, used in the other calls
+     */
+    public synchronized int register (FileChannel ch)
+    {
+        files.add (ch);
+        return files.size () - 1;
+    } // register
+
+    /*************************************************************************************
+     * Pin a page, reading it from its file on a miss.
+     * @param file        the id of the file
+     * @param page        the page number within the file
+     * @param sequential  whether the access is part of a sequential scan
+     * @return  the frame's buffer holding the page (valid until unpinned)
+     */
+    public synchronized ByteBuffer pin (int file, int page, boolean sequential)
+    {
+        long k = pageKey (file, page);
+        Integer f = pageTable.get (k);
+        if (f != null) {
+            hits++;
+            pins [f]++;
+            policy.access (f, sequential);
+            return data [f];
+        } // if
+        misses++;
+        int g = frame (k);
+        ByteBuffer buf = data [g];
+        buf.clear ();
+        try {
+            FileChannel ch = files.get (file);
+            while (buf.hasRemaining ()) {
+                if (ch.read (buf, (long) page * pageSize + buf.position ()) < 0) break;
+            } // while
+        } catch (IOException ex) {
+            release (g);
+            throw new UncheckedIOException (ex);
+        } // try
+        while (buf.hasRemaining ()) buf.put ((byte) 0);                 // beyond end of file
+        buf.clear ();
+        policy.admit (g, k, sequential);
+        return buf;
+    } // pin
+
+    /*************************************************************************************
+     * Pin a zeroed frame for a new page that does not need to be read from its file.
+     * The page is marked dirty.
+     * @param file  the id of the file
+     * @param page  the page number within the file
+     * @return  the frame's buffer for the page (valid until unpinned)
+     */
+    public synchronized ByteBuffer pinNew (int file, int page)
+    {
+        long k = pageKey (file, page);
+        Integer f = pageTable.get (k);
+        int g = (f != null) ? f : frame (k);
+        if (f != null) pins [g]++; else policy.admit (g, k, false);
+        Arrays.fill (data [g].array (), (byte) 0);
+        dirty [g] = true;
+        return data [g].clear ();
+    } // pinNew
+
+    /*************************************************************************************
+     * Unpin a page.
+     * @param file     the id of the file
+     * @param page     the page number within the file
+     * @param isDirty  whether the caller modified the page
+     */
+    public synchronized void unpin (int file, int page, boolean isDirty)
+    {
+        Integer f = pageTable.get (pageKey (file, page));
+        if (f == null || pins [f] == 0) throw new IllegalStateException ("BufferPool: page not pinned");
+        pins [f]--;
+        if (isDirty) dirty [f] = true;
+    } // unpin
+
+    /*************************************************************************************
+     * Write all dirty pages of a file.
+     * @param file  the id of the file
+     */
+    public synchronized void flush (int file)
+    {
+        for (int f = 0; f < data.length; f++) {
+            if (key [f] >= 0 && (int) (key [f] >>> 32) == file && dirty [f]) writeBack (f);
+        } // for
+    } // flush
+
+    /*************************************************************************************
+     * Write all dirty pages of a file and remove its pages from the pool.
+     * @param file  the id of the file
+     */
+    public synchronized void drop (int file)
+    {
+        flush (file);
+        for (int f = 0; f < data.length; f++) {
+            if (key [f] >= 0 && (int) (key [f] >>> 32) == file) {
+                policy.remove (f);
+                release (f);
+            } // if
+        } // for
+        files.set (file, null);
+    } // drop
+
+    /*************************************************************************************
+     * Return the number of frames in the pool.
+     * @return  the number of frames
+     */
+    public int frames ()
+    {
+        return data.length;
+    } // frames
+
+    /*************************************************************************************
+     * Return the counters: {hits, misses, evictions, write-backs}.
+     * @return  the counters
+     */
+    public synchronized long [] metrics ()
+    {
+        return new long [] { hits, misses, evictions, writeBacks };
+    } // metrics
+
+    /*************************************************************************************
+     * Reset the counters to zero.
+     */
+    public synchronized void resetMetrics ()
+    {
+        hits = misses = evictions = writeBacks = 0;
+    } // resetMetrics
+
+    /*************************************************************************************
+     * Return the counters as a string.
+     */
+    public synchronized String toString ()
+    {
+        double ratio = (hits + misses == 0) ? 0.0 : hits / (double) (hits + misses);
+        return String.format ("%s: hits = %d, misses = %d, hit ratio = %.3f, evictions = %d, write-backs = %d",
+                              policy.getClass ().getSimpleName (), hits, misses, ratio, evictions, writeBacks);
+    } // toString
+
+    /*************************************************************************************
+     * Return a pinned frame for page k, taking a free frame or evicting a victim.
+     * @param k  the key of the page
+     * @return  the frame
+     */
+    private int frame (long k)
+    {
+        Integer f = free.poll ();
+        if (f == null) {
+            f = policy.victim (g -> pins [g] == 0);
+            if (f < 0) throw new IllegalStateException ("BufferPool: all frames are pinned");
+            evictions++;
+            if (dirty [f]) writeBack (f);
+            pageTable.remove (key [f]);
+        } // if
+        key [f]   = k;
+        pins [f]  = 1;
+        dirty [f] = false;
+        pageTable.put (k, f);
+        return f;
+    } // frame
+
+    /*************************************************************************************
+     * Return a frame to the free list.
+     * @param f  the frame
+     */
+    private void release (int f)
+    {
+        pageTable.remove (key [f]);
+        key [f]   = -1;
+        pins [f]  = 0;
+        dirty [f] = false;
+        free.add (f);
+    } // release
+
+    /*************************************************************************************
+     * Write a dirty frame to its file.
+     * @param f  the frame
+     */
+    private void writeBack (int f)
+    {
+        ByteBuffer b = data [f].duplicate ().clear ();
+        FileChannel ch = files.get ((int) (key [f] >>> 32));
+        long pos = (key [f] & 0xFFFFFFFFL) * pageSize;
+        try {
+            while (b.hasRemaining ()) ch.write (b, pos + b.position ());
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } // try
+        writeBacks++;
+        dirty [f] = false;
+    } // writeBack
+
+    /*************************************************************************************
+     * Combine a file id and page number into a page key.
+     */
+    private static long pageKey (int file, int page)
+    {
+        return ((long) file << 32) | (page & 0xFFFFFFFFL);
+    } // pageKey
+
+} // BufferPool class
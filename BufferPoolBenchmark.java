@@ -0,0 +1,85 @@
+
+/*****************************************************************************************
+ * @file  BufferPoolBenchmark.java
+ */
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+import static java.lang.System.out;
+import static java.nio.file.StandardOpenOption.*;
+
+/*****************************************************************************************
+ * The BufferPoolBenchmark class replays mixed workloads against a buffer pool with each
+ * replacement policy (LRU, Clock and 2Q) and reports the pool's counters and the elapsed
+ * time.  The workload interleaves point lookups on a hot set of pages with periodic full
+ * sequential scans of a file several times larger than the pool, which is the access
+ * pattern that flushes a plain LRU cache.  The workload is run with the scans hinted
+ * as sequential and again unhinted, which shows how much each policy relies on hints.
+ */
+public class BufferPoolBenchmark
+{
+    private static final int PAGE_SIZE  = 4096;      // bytes per page
+    private static final int FILE_PAGES = 4096;      // pages in the test file
+    private static final int FRAMES     = 512;       // frames in the pool
+    private static final int HOT_PAGES  = 256;       // pages in the hot set
+    private static final int LOOKUPS    = 200000;    // point lookups per run
+    private static final int SCAN_EVERY = 20000;     // lookups between full scans
+    private static final double HOT_HIT = 0.9;       // fraction of lookups to the hot set
+
+    /*************************************************************************************
+     * Run one workload against a pool using the given policy.
+     * @param ch      the channel for the test file
+     * @param policy  the replacement policy
+     * @param seed    the seed for the random number generator
+     * @param hinted  whether scan accesses are flagged as sequential
+     */
+    private static void run (FileChannel ch, EvictionPolicy policy, long seed, boolean hinted)
+    {
+        BufferPool pool = new BufferPool (PAGE_SIZE, (long) FRAMES * PAGE_SIZE, policy);
+        int file = pool.register (ch);
+        Random rand = new Random (seed);
+
+        long start = System.nanoTime ();
+        for (int i = 0; i < LOOKUPS; i++) {
+            if (i % SCAN_EVERY == SCAN_EVERY / 2) {
+                for (int p = 0; p < FILE_PAGES; p++) {
+                    pool.pin (file, p, hinted);
+                    pool.unpin (file, p, false);
+                } // for
+            } // if
+            int p = (rand.nextDouble () < HOT_HIT) ? rand.nextInt (HOT_PAGES)
+                                                   : HOT_PAGES + rand.nextInt (FILE_PAGES - HOT_PAGES);
+            pool.pin (file, p, false);
+            pool.unpin (file, p, false);
+        } // for
+        double ms = (System.nanoTime () - start) / 1000000.0;
+
+        out.println (pool);
+        out.println ("Time: " + ms + " ms\n");
+        pool.drop (file);
+    } // run
+
+    /*************************************************************************************
+     * The main method creates the test file and runs the workload with each policy.
+     * @param args  the command-line arguments (optional seed)
+     */
+    public static void main (String [] args) throws IOException
+    {
+        long seed = (args.length > 0) ? Long.parseLong (args [0]) : 42;
+        Path path = Files.createTempFile ("bufferPoolBenchmark", ".dat");
+        try (FileChannel ch = FileChannel.open (path, READ, WRITE, DELETE_ON_CLOSE)) {
+            ch.write (java.nio.ByteBuffer.allocate (1), (long) FILE_PAGES * PAGE_SIZE - 1);
+            for (boolean hinted : new boolean [] { true, false }) {
+                out.println ("---------Buffer Pool: " + FRAMES + " frames, " + FILE_PAGES + " pages, "
+                             + HOT_PAGES + " hot, scans " + (hinted ? "hinted" : "unhinted") + "---------");
+                run (ch, new LruPolicy (), seed, hinted);
+                run (ch, new ClockPolicy (), seed, hinted);
+                run (ch, new TwoQPolicy (), seed, hinted);
+            } // for
+        } // try
+    } // main
+
+} // BufferPoolBenchmark class
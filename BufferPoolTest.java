@@ -0,0 +1,113 @@
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Test;
+
+public class BufferPoolTest {
+
+    /**
+     *
+     * Opens an empty temporary file that is deleted when closed.
+     *
+     * @return file channel
+     *
+     */
+
+    public FileChannel tempFile() throws IOException {
+
+	Path path = Files.createTempFile("bufferPoolTest", ".dat");
+	return FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+				StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    /**
+     *
+     * Touches a hot set repeatedly, runs a sequential scan larger than
+     * the pool and checks that the hot set is still cached.
+     *
+     * @return number of misses when the hot set is touched after the scan
+     *
+     */
+
+    public long missesAfterScan(EvictionPolicy policy) throws IOException {
+
+	try (FileChannel ch = tempFile()) {
+	    BufferPool pool = new BufferPool(64, 16 * 64, policy);
+	    int file = pool.register(ch);
+	    for (int round = 0; round < 3; round++) {
+		for (int p = 0; p < 4; p++) {
+		    pool.pin(file, p, false);
+		    pool.unpin(file, p, false);
+		}
+	    }
+	    for (int p = 100; p < 200; p++) {
+		pool.pin(file, p, true);
+		pool.unpin(file, p, false);
+	    }
+	    pool.resetMetrics();
+	    for (int p = 0; p < 4; p++) {
+		pool.pin(file, p, false);
+		pool.unpin(file, p, false);
+	    }
+	    return pool.metrics()[1];
+	}
+    }
+
+    /**
+     *
+     * Tests that a sequential scan does not flush the hot set under
+     * each policy.
+     *
+     */
+
+    @Test
+    public void testScanResistance() throws IOException {
+
+	assertEquals(0, missesAfterScan(new LruPolicy()));
+	assertEquals(0, missesAfterScan(new ClockPolicy()));
+	assertEquals(0, missesAfterScan(new TwoQPolicy()));
+    }
+
+    /**
+     *
+     * Tests that dirty pages are written back on eviction and that
+     * pinned pages are never evicted.
+     *
+     */
+
+    @Test
+    public void testWriteBackAndPin() throws IOException {
+
+	try (FileChannel ch = tempFile()) {
+	    BufferPool pool = new BufferPool(64, 2 * 64, new LruPolicy());
+	    int file = pool.register(ch);
+	    for (int p = 0; p < 10; p++) {
+		pool.pinNew(file, p).putInt(0, p + 1000);
+		pool.unpin(file, p, true);
+	    }
+	    for (int p = 0; p < 10; p++) {
+		assertEquals(p + 1000, pool.pin(file, p, false).getInt(0));
+		pool.unpin(file, p, false);
+	    }
+	    assertTrue(pool.metrics()[3] >= 8);
+
+	    pool.pin(file, 0, false);
+	    pool.pin(file, 1, false);
+	    try {
+		pool.pin(file, 2, false);
+		fail("expected all frames to be pinned");
+	    } catch (IllegalStateException ex) {
+		// expected
+	    }
+	    pool.unpin(file, 1, false);
+	    assertEquals(1002, pool.pin(file, 2, false).getInt(0));
+	    assertEquals(1000, pool.pin(file, 0, false).getInt(0));
+	}
+    }
+}
@@ -0,0 +1,301 @@
+
+/************************************************************************************
+ * @file Checkpointer.java
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static java.lang.System.out;
+
+/************************************************************************************
+ * The Checkpointer class merges the delta segments of stored tables into their base
+ * files.  An incremental Table.save writes only the tuples added since the previous
+ * save to a delta segment <stem>.<firstTuple>.dlt (a table file whose header records
+ * the ordinal of its first tuple), so save latency scales with the amount of change.
+ * A checkpoint streams the base file and its deltas into a new base file and then,
+ * holding the table's file lock only for the rename, atomically replaces the base and
+ * deletes the merged deltas.  In-memory tables are never touched, so readers and
+ * writers are not blocked; a full save that replaces the base while a merge is running
+ * causes the merge to be discarded.
+ *
+ * A Checkpointer instance runs checkpoints in the background, periodically merging
+ * every table in a directory that has accumulated enough deltas.
+ */
+public class Checkpointer
+       implements Closeable
+{
+    /** Filename extension for delta segments.
+     */
+    static final String DLT = ".dlt";
+
+    /** The file locks of the stored tables (keyed by path stem).
+     */
+    private static final ConcurrentHashMap <String, Object> locks = new ConcurrentHashMap <> ();
+
+    /** The number of times each base file has been replaced by a full save.
+     */
+    private static final ConcurrentHashMap <String, Long> generation = new ConcurrentHashMap <> ();
+
+    /** The directory holding the table files.
+     */
+    private final String dir;
+
+    /** Filename extension for base files.
+     */
+    private final String ext;
+
+    /** The number of deltas a table must have before it is merged.
+     */
+    private final int minDeltas;
+
+    /** The executor running the periodic checkpoints.
+     */
+    private final ScheduledExecutorService executor;
+
+    /** The number of checkpoints completed (for performance monitoring).
+     */
+    private volatile long checkpoints;
+
+    /********************************************************************************
+     * Start a background checkpointer.
+     *
+     * @param _dir        the directory holding the table files
+     * @param _ext        the filename extension of base files
+     * @param _minDeltas  the number of deltas that triggers a merge
+     * @param interval    the interval between scans of the directory in milliseconds
+     */
+    public Checkpointer (String _dir, String _ext, int _minDeltas, long interval)
+    {
+        dir       = _dir;
+        ext       = _ext;
+        minDeltas = Math.max (1, _minDeltas);
+        executor  = Executors.newSingleThreadScheduledExecutor (r -> {
+            Thread t = new Thread (r, "checkpointer");
+            t.setDaemon (true);
+            return t;
+        });
+        executor.scheduleWithFixedDelay (this::scan, interval, interval, TimeUnit.MILLISECONDS);
+    } // constructor
+
+    /********************************************************************************
+     * Return the number of checkpoints completed by this checkpointer.
+     *
+     * @return  the number of checkpoints
+     */
+    public long checkpoints ()
+    {
+        return checkpoints;
+    } // checkpoints
+
+    /********************************************************************************
+     * Stop the checkpointer, waiting for a running checkpoint to finish.
+     */
+    public void close ()
+    {
+        executor.shutdown ();
+        try {
+            executor.awaitTermination (1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread ().interrupt ();
+        } // try
+    } // close
+
+    /********************************************************************************
+     * Merge every table in the directory that has at least minDeltas deltas.
+     */
+    private void scan ()
+    {
+        Map <String, Integer> counts = new HashMap <> ();
+        try (DirectoryStream <Path> ds = Files.newDirectoryStream (Paths.get (dir), "*" + DLT)) {
+            for (Path p : ds) {
+                String stem = stem (p);
+                if (stem != null) counts.merge (stem, 1, Integer::sum);
+            } // for
+        } catch (IOException ex) {
+            return;
+        } // try
+        for (Map.Entry <String, Integer> e : counts.entrySet ()) {
+            if (e.getValue () < minDeltas) continue;
+            try {
+                if (checkpoint (e.getKey (), ext)) checkpoints++;
+            } catch (IOException | UncheckedIOException ex) {
+                out.println ("checkpoint: IO Exception");
+                ex.printStackTrace ();
+            } // try
+        } // for
+    } // scan
+
+    //-----------------------------------------------------------------------------------
+    // Static helpers shared with Table
+    //-----------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Return the lock guarding the replacement of a table's files.  It is held while
+     * a base file is replaced or the files are opened for loading, never while a
+     * table is read or updated in memory.
+     *
+     * @param stem  the path of the table's files without extension
+     * @return  the lock object
+     */
+    static Object lock (String stem)
+    {
+        return locks.computeIfAbsent (stem, s -> new Object ());
+    } // lock
+
+    /********************************************************************************
+     * Record that the base file was replaced by a full save, so that a merge that
+     * started before it is discarded.  Called with the lock held.
+     *
+     * @param stem  the path of the table's files without extension
+     * @return  the new generation of the base file
+     */
+    static long replaced (String stem)
+    {
+        return generation.merge (stem, 1L, Long::sum);
+    } // replaced
+
+    /********************************************************************************
+     * Return the number of times the base file has been replaced by a full save in
+     * this process.  A table may only append deltas to the files it last saved or
+     * loaded, i.e., while the generation is unchanged.
+     *
+     * @param stem  the path of the table's files without extension
+     * @return  the generation of the base file
+     */
+    static long generation (String stem)
+    {
+        return generation.getOrDefault (stem, 0L);
+    } // generation
+
+    /********************************************************************************
+     * Return the path of the delta segment starting at the given tuple.
+     *
+     * @param stem   the path of the table's files without extension
+     * @param first  the ordinal of the first tuple in the delta
+     * @return  the path of the delta segment
+     */
+    static String deltaPath (String stem, long first)
+    {
+        return stem + "." + first + DLT;
+    } // deltaPath
+
+    /********************************************************************************
+     * Return the delta segments of a table in order of their first tuple.
+     *
+     * @param stem  the path of the table's files without extension
+     * @return  the paths of the deltas
+     */
+    static List <Path> deltas (String stem)
+    {
+        Path s = Paths.get (stem);
+        Path d = (s.getParent () != null) ? s.getParent () : Paths.get (".");
+        String prefix = s.getFileName () + ".";
+        List <Path> list = new ArrayList <> ();
+        try (DirectoryStream <Path> ds = Files.newDirectoryStream (d, prefix + "*" + DLT)) {
+            for (Path p : ds) if (firstTuple (p) >= 0 && stem (p).equals (s.toString ())) list.add (p);
+        } catch (IOException ex) {
+            return list;
+        } // try
+        list.sort (Comparator.comparingLong (Checkpointer::firstTuple));
+        return list;
+    } // deltas
+
+    /********************************************************************************
+     * Delete the delta segments of a table.  Called with the lock held.
+     *
+     * @param stem  the path of the table's files without extension
+     * @throws IOException  if a delta cannot be deleted
+     */
+    static void removeDeltas (String stem) throws IOException
+    {
+        for (Path p : deltas (stem)) Files.deleteIfExists (p);
+    } // removeDeltas
+
+    /********************************************************************************
+     * Merge the base file of a table and its current deltas into a new base file.
+     *
+     * @param stem  the path of the table's files without extension
+     * @param ext   the filename extension of the base file
+     * @return  whether a new base file was installed
+     * @throws IOException  if the files cannot be read or written
+     */
+    static boolean checkpoint (String stem, String ext) throws IOException
+    {
+        String base = stem + ext, merged = stem + ".ckpt";
+        List <TableFile.Reader> readers = new ArrayList <> ();
+        List <Path> merging;
+        long gen;
+        try {
+            synchronized (lock (stem)) {
+                merging = deltas (stem);
+                if (merging.isEmpty () || ! TableFile.isTableFile (base)) return false;
+                gen = generation (stem);
+                readers.add (new TableFile.Reader (base));
+                for (Path p : merging) readers.add (new TableFile.Reader (p.toString ()));
+            } // synchronized
+
+            TableFile.Header h = readers.get (0).header;
+            long next = h.firstTuple;
+            try (TableFile.Writer w = new TableFile.Writer (merged, h.name, h.attribute, h.domain, h.key,
+                                                            h.firstTuple)) {
+                for (TableFile.Reader r : readers) {
+                    long ord = r.header.firstTuple;
+                    if (ord > next) break;                              // gap: stop
+                    for ( ; r.hasNext (); ord++) {
+                        Comparable [] t = r.next ();
+                        if (ord == next) { w.write (t); next++; }
+                    } // for
+                } // for
+            } // try
+        } finally {
+            for (TableFile.Reader r : readers) r.close ();
+        } // try
+
+        synchronized (lock (stem)) {
+            if (generation (stem) != gen) {
+                Files.deleteIfExists (Paths.get (merged));
+                return false;
+            } // if
+            Files.move (Paths.get (merged), Paths.get (base), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            for (Path p : merging) Files.deleteIfExists (p);
+        } // synchronized
+        return true;
+    } // checkpoint
+
+    /********************************************************************************
+     * Return the ordinal of the first tuple of a delta from its file name.
+     *
+     * @param p  the path of the delta
+     * @return  the ordinal, or -1 if the name is not that of a delta
+     */
+    static long firstTuple (Path p)
+    {
+        String n = p.getFileName ().toString ();
+        if (! n.endsWith (DLT)) return -1;
+        n = n.substring (0, n.length () - DLT.length ());
+        try {
+            return Long.parseLong (n.substring (n.lastIndexOf ('.') + 1));
+        } catch (NumberFormatException ex) {
+            return -1;
+        } // try
+    } // firstTuple
+
+    /********************************************************************************
+     * Return the stem (path without the ordinal and extension) of a delta.
+     *
+     * @param p  the path of the delta
+     * @return  the stem, or null if the name is not that of a delta
+     */
+    private static String stem (Path p)
+    {
+        if (firstTuple (p) < 0) return null;
+        String s = p.toString ();
+        s = s.substring (0, s.length () - DLT.length ());
+        return s.substring (0, s.lastIndexOf ('.'));
+    } // stem
+
+} // Checkpointer class
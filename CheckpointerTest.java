@@ -0,0 +1,147 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+public class CheckpointerTest {
+
+    /**
+     *
+     * The path stem of the test table's files.
+     *
+     */
+
+    static final String STEM = "store" + File.separator + "ckptTest";
+
+    /**
+     *
+     * Creates, fills and saves the test table, removing old files first.
+     *
+     * @return saved table
+     *
+     */
+
+    public Table createTable(int n) throws Exception {
+
+	Files.deleteIfExists(Paths.get(STEM + ".dbf"));
+	Files.deleteIfExists(Paths.get(STEM + ".wal"));
+	Checkpointer.removeDeltas(STEM);
+	Table t = new Table("ckptTest", "id name", "Integer String", "id");
+	for (int i = 0; i < n; i++) t.insert(new Comparable [] { i, "name" + i });
+	t.save();
+	return t;
+    }
+
+    /**
+     *
+     * Inserts tuples [from, to) into the table and saves it.
+     *
+     */
+
+    public void insertAndSave(Table t, int from, int to) {
+
+	for (int i = from; i < to; i++) t.insert(new Comparable [] { i, "name" + i });
+	t.save();
+    }
+
+    /**
+     *
+     * Tests that saves after the first write only the new tuples to
+     * delta segments and that load applies them.
+     *
+     */
+
+    @Test
+    public void testDeltaSave() throws Exception {
+
+	Table t = createTable(5000);
+	long base = Files.size(Paths.get(STEM + ".dbf"));
+	insertAndSave(t, 5000, 5010);
+	insertAndSave(t, 5010, 5020);
+
+	assertEquals(2, Checkpointer.deltas(STEM).size());
+	assertEquals(base, Files.size(Paths.get(STEM + ".dbf")));
+	assertTrue(Files.size(Checkpointer.deltas(STEM).get(0)) < base);
+
+	Table loaded = Table.load("ckptTest");
+	assertEquals(5020, loaded.tuplesLength());
+	assertEquals("name5015", loaded.select(new KeyType(5015)).getTuple(0)[1]);
+
+	insertAndSave(loaded, 5020, 5030);
+	assertEquals(3, Checkpointer.deltas(STEM).size());
+	assertEquals(5030, Table.load("ckptTest").tuplesLength());
+    }
+
+    /**
+     *
+     * Tests that a checkpoint merges the deltas into the base file and
+     * that a full save by a new table discards stale deltas.
+     *
+     */
+
+    @Test
+    public void testCheckpoint() throws Exception {
+
+	Table t = createTable(100);
+	insertAndSave(t, 100, 150);
+	insertAndSave(t, 150, 200);
+	Table.checkpoint("ckptTest");
+
+	assertEquals(0, Checkpointer.deltas(STEM).size());
+	assertEquals(200, Table.load("ckptTest").tuplesLength());
+
+	insertAndSave(t, 200, 210);
+	assertEquals(1, Checkpointer.deltas(STEM).size());
+	assertEquals(210, Table.load("ckptTest").tuplesLength());
+
+	createTable(10);
+	assertEquals(0, Checkpointer.deltas(STEM).size());
+	assertEquals(10, Table.load("ckptTest").tuplesLength());
+    }
+
+    /**
+     *
+     * Tests that the background checkpointer merges deltas while the
+     * table keeps being updated and saved.
+     *
+     */
+
+    @Test
+    public void testBackground() throws Exception {
+
+	Table t = createTable(100);
+	Checkpointer ckpt = Table.startCheckpointer(2, 5);
+	try {
+	    for (int k = 0; k < 20; k++) insertAndSave(t, 100 + 10 * k, 110 + 10 * k);
+	    for (int wait = 0; wait < 200 && ckpt.checkpoints() == 0; wait++) Thread.sleep(10);
+	} finally {
+	    ckpt.close();
+	}
+	assertTrue(ckpt.checkpoints() > 0);
+	assertEquals(300, Table.load("ckptTest").tuplesLength());
+    }
+
+    /**
+     *
+     * Tests that a stored tuple failing the type check stops the load,
+     * rather than shifting the positions the next delta save starts at.
+     *
+     */
+
+    @Test
+    public void testRejectedStoredTuple() throws Exception {
+
+	createTable(0);
+	TableFile.Writer w = new TableFile.Writer(STEM + ".dbf", "ckptTest", new String [] { "id", "name" },
+						  new Class [] { Integer.class, String.class }, new String [] { "id" }, 0);
+	w.write(new Comparable [] { 0, "name0" });
+	w.write(new Comparable [] { null, "nameless" });
+	w.write(new Comparable [] { 2, "name2" });
+	w.close();
+	assertNull(Table.load("ckptTest"));
+	assertEquals(0, Checkpointer.deltas(STEM).size());
+    }
+}
@@ -0,0 +1,100 @@
+
+/*****************************************************************************************
+ * @file  ClockPolicy.java
+ */
+
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/*****************************************************************************************
+ * The ClockPolicy class approximates LRU with a reference bit per frame and a clock hand
+ * that sweeps the frames, clearing reference bits until it finds an unreferenced,
+ * unpinned frame.  Pages loaded by sequential accesses do not get their reference bit
+ * set and are recycled before the hand moves, so a scan reuses its own frames instead
+ * of sweeping the reference bits of the rest of the pool.
+ */
+public class ClockPolicy
+       implements EvictionPolicy
+{
+    /** Reference bit for each frame.
+     */
+    private boolean [] ref;
+
+    /** Whether each frame holds a page tracked by the policy.
+     */
+    private boolean [] used;
+
+    /** The clock hand.
+     */
+    private int hand;
+
+    /** Frames loaded by sequential accesses, most recent last.
+     */
+    private final ArrayDeque <Integer> scanned = new ArrayDeque <> ();
+
+    /*************************************************************************************
+     * Initialize the policy for a pool with the given number of frames.
+     * @param frames  the number of frames in the pool
+     */
+    public void init (int frames)
+    {
+        ref  = new boolean [frames];
+        used = new boolean [frames];
+    } // init
+
+    /*************************************************************************************
+     * Record that a page has been loaded into a frame.
+     */
+    public void admit (int frame, long page, boolean sequential)
+    {
+        used [frame] = true;
+        ref [frame]  = ! sequential;
+        if (sequential) scanned.add (frame);
+    } // admit
+
+    /*************************************************************************************
+     * Set the frame's reference bit (unless the access is sequential).
+     */
+    public void access (int frame, boolean sequential)
+    {
+        if (! sequential) ref [frame] = true;
+    } // access
+
+    /*************************************************************************************
+     * Recycle an unreferenced frame loaded by a scan, otherwise sweep the hand to the
+     * first unreferenced, unpinned frame.  Two full sweeps suffice, since the first
+     * clears every reference bit.
+     */
+    public int victim (IntPredicate evictable)
+    {
+        while (! scanned.isEmpty ()) {
+            int f = scanned.poll ();
+            if (used [f] && ! ref [f] && evictable.test (f)) {
+                used [f] = false;
+                return f;
+            } // if
+        } // while
+        for (int n = 0; n < 2 * ref.length; n++) {
+            int f = hand;
+            hand = (hand + 1) % ref.length;
+            if (! used [f] || ! evictable.test (f)) continue;
+            if (ref [f]) {
+                ref [f] = false;
+            } else {
+                used [f] = false;
+                return f;
+            } // if
+        } // for
+        return -1;
+    } // victim
+
+    /*************************************************************************************
+     * Forget a frame.
+     */
+    public void remove (int frame)
+    {
+        used [frame] = false;
+        ref [frame]  = false;
+    } // remove
+
+} // ClockPolicy class
@@ -0,0 +1,292 @@
+
+/************************************************************************************
+ * @file ColumnCodec.java
+ */
+
+import java.nio.*;
+import java.util.*;
+
+/************************************************************************************
+ * The ColumnCodec class encodes a run of tuples column by column into a column page of
+ * a table file (see TableFile).  After the common 8-byte page header, the page holds
+ * one block per column:
+ *
+ *     int length | byte encoding (| 0x80 if the block has a null bitmap) | [bitmap] | data
+ *
+ * Integral columns (Long, Integer, Short, Byte) are encoded according to statistics of
+ * the values on the page:
+ *   FOR - frame of reference: the minimum, a bit width and every value minus the
+ *         minimum bit-packed in that width (a constant column takes no data bytes);
+ *   RLE - run-length: the number of runs, the run values frame-of-reference
+ *         bit-packed, and the run lengths as varints;
+ * whichever is smaller.  Other columns (and integral columns whose range needs all 64
+ * bits) are stored PLAIN in the TupleCodec field encoding.  Null values are recorded
+ * in the bitmap and packed as the minimum.  Decoding unpacks each column into a long
+ * array in a tight loop before boxing the values into tuples.
+ */
+class ColumnCodec
+{
+    /** Column block encodings.
+     */
+    static final byte PLAIN = 0, FOR = 1, RLE = 2;
+
+    /** Flag on the encoding byte indicating a null bitmap follows.
+     */
+    private static final int NULLS = 0x80;
+
+    /************************************************************************************
+     * Return whether a column type can be bit-packed.
+     *
+     * @param type  the type code of the column
+     * @return  whether the type is integral
+     */
+    static boolean integral (byte type)
+    {
+        return type == TupleCodec.LONG || type == TupleCodec.INTEGER || type == TupleCodec.SHORT
+                                       || type == TupleCodec.BYTE;
+    } // integral
+
+    /************************************************************************************
+     * Encode n tuples starting at rows[from] column by column at the position of buf.
+     *
+     * @param buf    the buffer to write into
+     * @param rows   the tuples
+     * @param from   the position of the first tuple to encode
+     * @param n      the number of tuples to encode
+     * @param types  the type codes of the columns
+     * @throws BufferOverflowException  if the encoding does not fit in buf
+     */
+    static void encode (ByteBuffer buf, List <Comparable []> rows, int from, int n, byte [] types)
+    {
+        long [] vals = new long [n];
+        for (int j = 0; j < types.length; j++) {
+            int start = buf.position ();
+            buf.putInt (0);
+            boolean nulls = false;
+            for (int i = 0; i < n && ! nulls; i++) nulls = rows.get (from + i) [j] == null;
+
+            byte enc = PLAIN;
+            long min = 0;
+            int  width = 0, runs = 0;
+            if (integral (types [j])) {
+                long lo = Long.MAX_VALUE, hi = Long.MIN_VALUE;
+                for (int i = 0; i < n; i++) {
+                    Comparable v = rows.get (from + i) [j];
+                    if (v == null) continue;
+                    long x = ((Number) v).longValue ();
+                    if (x < lo) lo = x;
+                    if (x > hi) hi = x;
+                } // for
+                if (lo > hi) lo = hi = 0;                               // all null
+                if (hi - lo >= 0) {                                     // range fits in 63 bits
+                    min   = lo;
+                    width = 64 - Long.numberOfLeadingZeros (hi - lo);
+                    for (int i = 0; i < n; i++) {
+                        Comparable v = rows.get (from + i) [j];
+                        vals [i] = (v == null) ? 0 : ((Number) v).longValue () - min;
+                        if (i == 0 || vals [i] != vals [i-1]) runs++;
+                    } // for
+                    long forBytes = ((long) n * width + 7) / 8;
+                    long rleBytes = ((long) runs * width + 7) / 8 + 2L * runs + 4;
+                    enc = (rleBytes < forBytes) ? RLE : FOR;
+                } // if
+            } // if
+
+            buf.put ((byte) (enc | (nulls ? NULLS : 0)));
+            if (nulls) {
+                byte [] bits = new byte [(n + 7) >>> 3];
+                for (int i = 0; i < n; i++) {
+                    if (rows.get (from + i) [j] == null) bits [i >>> 3] |= 1 << (i & 7);
+                } // for
+                buf.put (bits);
+            } // if
+
+            switch (enc) {
+            case FOR:
+                buf.putLong (min).put ((byte) width);
+                pack (buf, vals, n, width);
+                break;
+            case RLE:
+                long [] runVal = new long [runs];
+                int []  runLen = new int [runs];
+                int r = -1;
+                for (int i = 0; i < n; i++) {
+                    if (i == 0 || vals [i] != vals [i-1]) runVal [++r] = vals [i];
+                    runLen [r]++;
+                } // for
+                TupleCodec.writeVarInt (buf, runs);
+                buf.putLong (min).put ((byte) width);
+                pack (buf, runVal, runs, width);
+                for (int k = 0; k < runs; k++) TupleCodec.writeVarInt (buf, runLen [k]);
+                break;
+            default:
+                for (int i = 0; i < n; i++) {
+                    Comparable v = rows.get (from + i) [j];
+                    if (v != null) TupleCodec.writeField (buf, v, types [j]);
+                } // for
+            } // switch
+            buf.putInt (start, buf.position () - start - 4);
+        } // for
+    } // encode
+
+    /************************************************************************************
+     * Decode the given columns of the n tuples in the column page at offset base of buf.
+     * Columns not requested are skipped using their block lengths.
+     *
+     * @param buf    the buffer holding the page
+     * @param base   the offset of the page within buf
+     * @param n      the number of tuples on the page
+     * @param types  the type codes of the columns
+     * @param cols   the ascending positions of the columns to decode (null for all)
+     * @return  the decoded tuples, each holding the requested columns in order
+     */
+    static Comparable [][] decode (ByteBuffer buf, int base, int n, byte [] types, int [] cols)
+    {
+        int width = (cols == null) ? types.length : cols.length;
+        Comparable [][] rows = new Comparable [n][width];
+        ByteBuffer b = buf.duplicate ().position (base + TableFile.PAGE_HEADER);
+        long [] vals = new long [n];
+        int c = 0;
+        for (int j = 0; j < types.length && c < width; j++) {
+            int len = b.getInt ();
+            int end = b.position () + len;
+            if (cols != null && cols [c] != j) {
+                b.position (end);
+                continue;
+            } // if
+            decodeColumn (b, n, types [j], vals, rows, c++);
+            b.position (end);
+        } // for
+        return rows;
+    } // decode
+
+    /************************************************************************************
+     * Decode one column block into position c of the tuples.
+     */
+    private static void decodeColumn (ByteBuffer b, int n, byte type, long [] vals,
+                                      Comparable [][] rows, int c)
+    {
+        int     enc   = b.get () & 0xFF;
+        byte [] nulls = null;
+        if ((enc & NULLS) != 0) {
+            nulls = new byte [(n + 7) >>> 3];
+            b.get (nulls);
+        } // if
+
+        switch (enc & ~NULLS) {
+        case FOR: {
+            long min = b.getLong ();
+            int  w   = b.get ();
+            unpack (b, vals, n, w);
+            box (vals, n, min, type, nulls, rows, c);
+            break;
+        } // case
+        case RLE: {
+            int  runs = TupleCodec.readVarInt (b);
+            long min  = b.getLong ();
+            int  w    = b.get ();
+            long [] runVal = new long [runs];
+            unpack (b, runVal, runs, w);
+            for (int k = 0, i = 0; k < runs; k++) {
+                int len = TupleCodec.readVarInt (b);
+                Arrays.fill (vals, i, i + len, runVal [k]);
+                i += len;
+            } // for
+            box (vals, n, min, type, nulls, rows, c);
+            break;
+        } // case
+        default:
+            for (int i = 0; i < n; i++) {
+                if (nulls == null || (nulls [i >>> 3] & (1 << (i & 7))) == 0) {
+                    rows [i][c] = TupleCodec.readField (b, type);
+                } // if
+            } // for
+        } // switch
+    } // decodeColumn
+
+    /************************************************************************************
+     * Box the unpacked offsets (plus min) into position c of the tuples.
+     */
+    private static void box (long [] vals, int n, long min, byte type, byte [] nulls,
+                             Comparable [][] rows, int c)
+    {
+        for (int i = 0; i < n; i++) {
+            if (nulls != null && (nulls [i >>> 3] & (1 << (i & 7))) != 0) continue;
+            long x = vals [i] + min;
+            switch (type) {
+            case TupleCodec.LONG:    rows [i][c] = x;               break;
+            case TupleCodec.INTEGER: rows [i][c] = (int) x;         break;
+            case TupleCodec.SHORT:   rows [i][c] = (short) x;       break;
+            default:                 rows [i][c] = (byte) x;        break;
+            } // switch
+        } // for
+    } // box
+
+    /************************************************************************************
+     * Bit-pack the first n values (each < 2^width) into buf, least significant bits
+     * first.
+     *
+     * @param buf    the buffer to write into
+     * @param vals   the values to pack
+     * @param n      the number of values
+     * @param width  the number of bits per value (0 to 63)
+     */
+    static void pack (ByteBuffer buf, long [] vals, int n, int width)
+    {
+        if (width == 0) return;
+        long acc = 0;                                                   // pending bits
+        int  bits = 0;                                                  // number pending
+        for (int i = 0; i < n; i++) {
+            long v = vals [i];
+            acc |= v << bits;
+            if (bits + width >= 64) {
+                buf.putLong (acc);
+                acc   = v >>> (64 - bits);                              // bits > 0 since width < 64
+                bits += width - 64;
+            } else {
+                bits += width;
+            } // if
+        } // for
+        while (bits > 0) {
+            buf.put ((byte) acc);
+            acc >>>= 8;
+            bits -= 8;
+        } // while
+    } // pack
+
+    /************************************************************************************
+     * Unpack n values of the given bit width from buf (the inverse of pack).  The packed
+     * bits are first gathered into whole words, then each value is extracted from at
+     * most two words.
+     *
+     * @param buf    the buffer to read from
+     * @param vals   the array receiving the values
+     * @param n      the number of values
+     * @param width  the number of bits per value (0 to 63)
+     */
+    static void unpack (ByteBuffer buf, long [] vals, int n, int width)
+    {
+        if (width == 0) {
+            Arrays.fill (vals, 0, n, 0L);
+            return;
+        } // if
+        long   total = (long) n * width;
+        int    full  = (int) (total >>> 6);
+        long [] word = new long [full + 2];
+        for (int k = 0; k < full; k++) word [k] = buf.getLong ();
+        for (int sh = 0, tail = (int) ((total & 63) + 7) >>> 3; sh < 8 * tail; sh += 8) {
+            word [full] |= (buf.get () & 0xFFL) << sh;
+        } // for
+
+        long mask = (1L << width) - 1;
+        long off  = 0;
+        for (int i = 0; i < n; i++, off += width) {
+            int  k  = (int) (off >>> 6);
+            int  sh = (int) (off & 63);
+            long v  = word [k] >>> sh;
+            if (sh + width > 64) v |= word [k+1] << (64 - sh);
+            vals [i] = v & mask;
+        } // for
+    } // unpack
+
+} // ColumnCodec class
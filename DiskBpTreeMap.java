@@ -0,0 +1,750 @@
+
+/************************************************************************************
+ * @file DiskBpTreeMap.java
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+import static java.lang.System.out;
+import static java.nio.file.StandardOpenOption.*;
+
+/************************************************************************************
+ * The DiskBpTreeMap class provides B+Tree maps whose nodes are fixed-size pages in an
+ * index file, so the size of the index is bounded by disk rather than heap and the
+ * index survives restarts without being rebuilt.  Pages are read through a BufferPool
+ * shared by all disk-resident maps; dirty pages are written back when evicted or
+ * flushed, and full scans pin leaves as sequential accesses.  As in
+ * BpTreeMap, all keys are at the leaf level with leaves linked left to right, and each
+ * divider key in an internal node is the largest key in its left subtree.  Keys and
+ * values are stored with TupleCodec.writeValue, so they may be KeyTypes, tuples or any
+ * of the domain types.  Nodes split when their entries no longer fit in a page.
+ *
+ * Page 0 of the file holds the meta-data (root, first leaf, page count, size and a
+ * clean flag that is cleared before the first write after a flush, so a file left by a
+ * crash is never mistaken for a consistent index).
+ */
+public class DiskBpTreeMap <K extends Comparable <K>, V>
+       extends AbstractMap <K, V>
+       implements SortedMap <K, V>, Closeable
+{
+    /** The size of a node (page) in bytes.
+     */
+    static final int PAGE_SIZE = 4096;
+
+    /** Size of the node header: leaf flag, number of keys, next leaf.
+     */
+    private static final int NODE_HEADER = 7;
+
+    /** Magic number identifying index files ("BPT1").
+     */
+    private static final int MAGIC = 0x42505431;
+
+    /** The default memory budget of the shared buffer pool in bytes.
+     */
+    private static final long POOL_BYTES = 16L << 20;
+
+    /** The buffer pool shared by all disk-resident maps.
+     */
+    private static BufferPool pool = new BufferPool (PAGE_SIZE, POOL_BYTES, new TwoQPolicy ());
+
+    /********************************************************************************
+     * This inner class defines the decoded form of a node (page).
+     */
+    private class Node
+    {
+        final int           page;                     // page number of the node
+        final boolean       isLeaf;                   // whether the node is a leaf
+        int                 next = -1;                // next leaf (leaves only)
+        final List <K>      key = new ArrayList <> ();      // the keys
+        final List <Object> ref = new ArrayList <> ();      // values or child page numbers
+
+        /****************************************************************************
+         * Construct an empty node.
+         * @param _page    the page number of the node
+         * @param _isLeaf  whether the node is a leaf
+         */
+        Node (int _page, boolean _isLeaf)
+        {
+            page   = _page;
+            isLeaf = _isLeaf;
+        } // constructor
+
+        /****************************************************************************
+         * Return the page number of the i-th child (internal nodes only).
+         * @param i  the child position
+         * @return  the child's page number
+         */
+        int child (int i)
+        {
+            return (Integer) ref.get (i);
+        } // child
+
+        /****************************************************************************
+         * Find the "<=" match position in this node, i.e., the position of the first
+         * key that is >= k (nKeys if none), which for an internal node is the child
+         * whose subtree may contain k.
+         * @param k  the key to be matched
+         * @return  the position of the match
+         */
+        int find (K k)
+        {
+            int i = Collections.binarySearch (key, k);
+            return (i >= 0) ? i : -i - 1;
+        } // find
+
+    } // Node inner class
+
+    /** The path of the index file.
+     */
+    private final Path path;
+
+    /** Whether this map starts empty, replacing any existing file on the first write.
+     */
+    private final boolean create;
+
+    /** The channel for the index file (null until the file is first needed).
+     */
+    private FileChannel ch;
+
+    /** The id of the index file in the buffer pool.
+     */
+    private int fileId;
+
+    /** The page number of the root node.
+     */
+    private int root;
+
+    /** The page number of the first (leftmost) leaf.
+     */
+    private int firstLeaf;
+
+    /** The number of pages in the file (including the meta page).
+     */
+    private int pages;
+
+    /** The number of keys in the map.
+     */
+    private int keyCount;
+
+    /** Whether the meta page on disk is marked clean.
+     */
+    private boolean clean;
+
+    /** Buffer for encoding a node before it is known to fit in a page.
+     */
+    private final ByteBuffer scratch = ByteBuffer.allocate (PAGE_SIZE);
+
+    /********************************************************************************
+     * Construct a disk-resident B+Tree map backed by the given file.
+     * @param _path    the path of the index file
+     * @param _create  whether to start empty (true) or open the existing index (false)
+     */
+    public DiskBpTreeMap (String _path, boolean _create)
+    {
+        path   = Paths.get (_path);
+        create = _create;
+    } // constructor
+
+    /********************************************************************************
+     * Replace the buffer pool shared by disk-resident maps (e.g., to change its budget
+     * or replacement policy).  Affects maps opened afterwards.
+     * @param _pool  the new buffer pool (its page size must be PAGE_SIZE)
+     */
+    public static void setBufferPool (BufferPool _pool)
+    {
+        pool = _pool;
+    } // setBufferPool
+
+    /********************************************************************************
+     * Return the buffer pool shared by disk-resident maps.
+     * @return  the buffer pool
+     */
+    public static BufferPool getBufferPool ()
+    {
+        return pool;
+    } // getBufferPool
+
+    /********************************************************************************
+     * Return null to use the natural order based on the key type.
+     */
+    public Comparator <? super K> comparator ()
+    {
+        return null;
+    } // comparator
+
+    /********************************************************************************
+     * Return a set view of the entries, iterated in key order by a cursor along the
+     * leaf level.
+     * @return  the set view of the map
+     */
+    public Set <Map.Entry <K, V>> entrySet ()
+    {
+        return new AbstractSet <Map.Entry <K, V>> () {
+            public Iterator <Map.Entry <K, V>> iterator () { return cursor (null, null, true); }
+            public int size ()                             { return DiskBpTreeMap.this.size (); }
+        };
+    } // entrySet
+
+    /********************************************************************************
+     * Given the key, look up the value in the B+Tree map.
+     * @param key  the key used for look up
+     * @return  the value associated with the key or null if not found
+     */
+    @SuppressWarnings("unchecked")
+    public V get (Object key)
+    {
+        if (! open (false)) return null;
+        K k = (K) key;
+        Node n = read (root);
+        while (! n.isLeaf) n = read (n.child (Math.min (n.find (k), n.key.size ())));
+        int i = Collections.binarySearch (n.key, k);
+        return (i >= 0) ? (V) n.ref.get (i) : null;
+    } // get
+
+    /********************************************************************************
+     * Determine whether the map contains the given key.
+     * @param key  the key to check
+     * @return  whether the key is present
+     */
+    public boolean containsKey (Object key)
+    {
+        return get (key) != null;
+    } // containsKey
+
+    /********************************************************************************
+     * Put the key-value pair in the B+Tree map, splitting nodes as needed.
+     * @param key    the key to insert
+     * @param value  the value to insert
+     * @return  the previous value for this key, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put (K key, V value)
+    {
+        open (true);
+        markDirty ();
+        Object [] old = new Object [1];
+        Object [] split = insert (root, key, value, old);
+        if (split != null) {                                            // root was split
+            Node nr = new Node (allocate (), false);
+            nr.key.add ((K) split [0]);
+            nr.ref.add (root);
+            nr.ref.add (split [1]);
+            write (nr);
+            root = nr.page;
+        } // if
+        return (V) old [0];
+    } // put
+
+    /********************************************************************************
+     * Return the first (smallest) key in the B+Tree map.
+     * @return  the first key in the B+Tree map
+     */
+    public K firstKey ()
+    {
+        Iterator <Map.Entry <K, V>> it = cursor (null, null, false);
+        if (! it.hasNext ()) throw new NoSuchElementException ();
+        return it.next ().getKey ();
+    } // firstKey
+
+    /********************************************************************************
+     * Return the last (largest) key in the B+Tree map.
+     * @return  the last key in the B+Tree map
+     */
+    public K lastKey ()
+    {
+        if (! open (false) || keyCount == 0) throw new NoSuchElementException ();
+        Node n = read (root);
+        while (! n.isLeaf) n = read (n.child (n.key.size ()));
+        return n.key.get (n.key.size () - 1);
+    } // lastKey
+
+    /********************************************************************************
+     * Return the portion of the B+Tree map where key < toKey.
+     * @return  the submap with keys in the range [firstKey, toKey)
+     */
+    public SortedMap <K,V> headMap (K toKey)
+    {
+        return new Range (null, toKey);
+    } // headMap
+
+    /********************************************************************************
+     * Return the portion of the B+Tree map where fromKey <= key.
+     * @return  the submap with keys in the range [fromKey, lastKey]
+     */
+    public SortedMap <K,V> tailMap (K fromKey)
+    {
+        return new Range (fromKey, null);
+    } // tailMap
+
+    /********************************************************************************
+     * Return the portion of the B+Tree map whose keys are between fromKey and toKey,
+     * i.e., fromKey <= key < toKey.  The submap is a view backed by this map.
+     * @return  the submap with keys in the range [fromKey, toKey)
+     */
+    public SortedMap <K,V> subMap (K fromKey, K toKey)
+    {
+        return new Range (fromKey, toKey);
+    } // subMap
+
+    /********************************************************************************
+     * Return the size (number of keys) in the B+Tree.
+     * @return  the size of the B+Tree
+     */
+    public int size ()
+    {
+        return open (false) ? keyCount : 0;
+    } // size
+
+    /********************************************************************************
+     * Write all dirty pages and the meta page to disk and mark the index clean.
+     */
+    public void flush ()
+    {
+        if (ch == null) return;
+        pool.flush (fileId);
+        clean = true;
+        writeMeta ();
+        try {
+            ch.force (false);
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } // try
+    } // flush
+
+    /********************************************************************************
+     * Flush and close the index file.
+     */
+    public void close () throws IOException
+    {
+        if (ch == null) return;
+        flush ();
+        pool.drop (fileId);
+        ch.close ();
+        ch = null;
+    } // close
+
+    /********************************************************************************
+     * Determine whether the index file at the given path holds a consistent index
+     * (i.e., it was flushed after its last modification) with the given size.
+     * @param path  the path of the index file
+     * @param size  the expected number of keys
+     * @return  whether the index can be reused
+     */
+    static boolean isValid (String path, long size)
+    {
+        try (FileChannel c = FileChannel.open (Paths.get (path), READ)) {
+            ByteBuffer meta = ByteBuffer.allocate (PAGE_SIZE);
+            c.read (meta, 0);
+            return meta.getInt (0) == MAGIC && meta.getInt (16) == size && meta.get (20) == 1;
+        } catch (IOException ex) {
+            return false;
+        } // try
+    } // isValid
+
+    /********************************************************************************
+     * Return a cursor over the entries with lo <= key < hi in key order.
+     * @param lo    the lower bound (inclusive), null for none
+     * @param hi    the upper bound (exclusive), null for none
+     * @param scan  whether the cursor is a full scan (leaves are pinned as sequential)
+     * @return  the cursor
+     */
+    @SuppressWarnings("unchecked")
+    private Iterator <Map.Entry <K, V>> cursor (K lo, K hi, boolean scan)
+    {
+        return new Iterator <Map.Entry <K, V>> () {
+            Node leaf;                                                  // current leaf
+            int  i;                                                     // position in leaf
+            {
+                if (open (false)) {
+                    if (lo == null) {
+                        leaf = read (firstLeaf, scan);
+                    } else {
+                        leaf = read (root);
+                        while (! leaf.isLeaf) leaf = read (leaf.child (Math.min (leaf.find (lo), leaf.key.size ())));
+                        i = leaf.find (lo);
+                    } // if
+                    skipEmpty ();
+                } // if
+            } // initializer
+
+            void skipEmpty ()
+            {
+                while (leaf != null && i == leaf.key.size ()) {
+                    leaf = (leaf.next < 0) ? null : read (leaf.next, scan);
+                    i    = 0;
+                } // while
+            } // skipEmpty
+
+            public boolean hasNext ()
+            {
+                return leaf != null && (hi == null || leaf.key.get (i).compareTo (hi) < 0);
+            } // hasNext
+
+            public Map.Entry <K, V> next ()
+            {
+                if (! hasNext ()) throw new NoSuchElementException ();
+                Map.Entry <K, V> e = new AbstractMap.SimpleImmutableEntry <> (leaf.key.get (i),
+                                                                               (V) leaf.ref.get (i));
+                i++;
+                skipEmpty ();
+                return e;
+            } // next
+        };
+    } // cursor
+
+    /********************************************************************************
+     * Recursive helper function for inserting a key in B+trees.
+     * @param p    the page of the current node
+     * @param key  the key to insert
+     * @param ref  the value to insert
+     * @param old  holder for the previous value of the key
+     * @return  {divider key, right sibling page} if the node split, else null
+     */
+    @SuppressWarnings("unchecked")
+    private Object [] insert (int p, K key, V ref, Object [] old)
+    {
+        Node n = read (p);
+        int  i = n.find (key);
+        if (n.isLeaf) {
+            if (i < n.key.size () && key.compareTo (n.key.get (i)) == 0) {
+                old [0] = n.ref.set (i, ref);                           // replace value
+            } else {
+                n.key.add (i, key);                                     // wedge in new key
+                n.ref.add (i, ref);
+                keyCount++;
+            } // if
+        } else {
+            i = Math.min (i, n.key.size ());
+            Object [] split = insert (n.child (i), key, ref, old);
+            if (split == null) return null;
+            n.key.add (i, (K) split [0]);                               // divider for child i
+            n.ref.add (i + 1, split [1]);                               // new right sibling
+        } // if
+        return fit (n);
+    } // insert
+
+    /********************************************************************************
+     * Write node n to its page, splitting it first if it does not fit.  The entries are
+     * divided so the two halves have about the same number of bytes.
+     * @param n  the node to write
+     * @return  {divider key, right sibling page} if the node split, else null
+     */
+    private Object [] fit (Node n)
+    {
+        if (encode (n, scratch)) {
+            store (n.page);
+            return null;
+        } // if
+
+        int nKeys = n.key.size ();
+        int [] size = new int [nKeys];
+        int total = 0;
+        for (int j = 0; j < nKeys; j++) {
+            scratch.clear ();
+            TupleCodec.writeValue (scratch, n.key.get (j));
+            if (n.isLeaf) TupleCodec.writeValue (scratch, n.ref.get (j)); else scratch.putInt (0);
+            total += size [j] = scratch.position ();
+        } // for
+        int mid = 1;
+        for (int acc = size [0]; mid < nKeys - 1 && acc + size [mid] <= total / 2; mid++) acc += size [mid];
+
+        Node rt = new Node (allocate (), n.isLeaf);                     // right sibling
+        K divider;
+        if (n.isLeaf) {
+            rt.key.addAll (n.key.subList (mid, nKeys));
+            rt.ref.addAll (n.ref.subList (mid, nKeys));
+            n.key.subList (mid, nKeys).clear ();
+            n.ref.subList (mid, nKeys).clear ();
+            rt.next = n.next;
+            n.next  = rt.page;
+            divider = n.key.get (mid - 1);                              // largest left
+        } else {
+            divider = n.key.get (mid);                                  // moves up
+            rt.key.addAll (n.key.subList (mid + 1, nKeys));
+            rt.ref.addAll (n.ref.subList (mid + 1, nKeys + 1));
+            n.key.subList (mid, nKeys).clear ();
+            n.ref.subList (mid + 1, nKeys + 1).clear ();
+        } // if
+        write (n);
+        write (rt);
+        return new Object [] { divider, rt.page };
+    } // fit
+
+    /********************************************************************************
+     * Write node n to its page, which it must fit in.
+     * @param n  the node to write
+     */
+    private void write (Node n)
+    {
+        if (! encode (n, scratch)) {
+            throw new IllegalArgumentException ("DiskBpTreeMap: entry too large for an index page");
+        } // if
+        store (n.page);
+    } // write
+
+    /********************************************************************************
+     * Copy the encoded node in scratch into page p.
+     * @param p  the page number
+     */
+    private void store (int p)
+    {
+        ByteBuffer buf = pool.pin (fileId, p, false);
+        buf.duplicate ().clear ().put (scratch.flip ());
+        pool.unpin (fileId, p, true);
+    } // store
+
+    /********************************************************************************
+     * Encode node n into buf.
+     * @param n    the node to encode
+     * @param buf  the page-sized buffer to encode into
+     * @return  whether the node fit
+     */
+    private boolean encode (Node n, ByteBuffer buf)
+    {
+        buf.clear ();
+        try {
+            buf.put ((byte) (n.isLeaf ? 1 : 0)).putShort ((short) n.key.size ()).putInt (n.next);
+            if (! n.isLeaf) buf.putInt (n.child (0));
+            for (int j = 0; j < n.key.size (); j++) {
+                TupleCodec.writeValue (buf, n.key.get (j));
+                if (n.isLeaf) TupleCodec.writeValue (buf, n.ref.get (j));
+                else          buf.putInt (n.child (j + 1));
+            } // for
+            return true;
+        } catch (BufferOverflowException ex) {
+            return false;
+        } // try
+    } // encode
+
+    /********************************************************************************
+     * Read and decode the node stored in page p.
+     * @param p  the page number
+     * @return  the decoded node
+     */
+    private Node read (int p)
+    {
+        return read (p, false);
+    } // read
+
+    /********************************************************************************
+     * Read and decode the node stored in page p, pinning it only while decoding.
+     * @param p           the page number
+     * @param sequential  whether the access is part of a full scan
+     * @return  the decoded node
+     */
+    @SuppressWarnings("unchecked")
+    private Node read (int p, boolean sequential)
+    {
+        ByteBuffer buf = pool.pin (fileId, p, sequential).duplicate ().clear ();
+        try {
+            return decode (p, buf);
+        } finally {
+            pool.unpin (fileId, p, false);
+        } // try
+    } // read
+
+    /********************************************************************************
+     * Decode the node in buf.
+     * @param p    the page number of the node
+     * @param buf  the buffer holding the page
+     * @return  the decoded node
+     */
+    @SuppressWarnings("unchecked")
+    private Node decode (int p, ByteBuffer buf)
+    {
+        Node n = new Node (p, buf.get () == 1);
+        int nKeys = buf.getShort () & 0xFFFF;
+        n.next = buf.getInt ();
+        if (! n.isLeaf) n.ref.add (buf.getInt ());
+        for (int j = 0; j < nKeys; j++) {
+            n.key.add ((K) TupleCodec.readValue (buf));
+            n.ref.add (n.isLeaf ? TupleCodec.readValue (buf) : (Object) buf.getInt ());
+        } // for
+        return n;
+    } // read
+
+    /********************************************************************************
+     * Allocate a new page at the end of the file.
+     * @return  the new page number
+     */
+    private int allocate ()
+    {
+        int p = pages++;
+        pool.pinNew (fileId, p);
+        pool.unpin (fileId, p, true);
+        return p;
+    } // allocate
+
+    /********************************************************************************
+     * Write the meta page (page 0) directly to the file.
+     */
+    private void writeMeta ()
+    {
+        ByteBuffer meta = ByteBuffer.allocate (PAGE_SIZE);
+        meta.putInt (MAGIC).putInt (root).putInt (firstLeaf).putInt (pages).putInt (keyCount);
+        meta.put ((byte) (clean ? 1 : 0));
+        meta.clear ();
+        try {
+            while (meta.hasRemaining ()) ch.write (meta, meta.position ());
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } // try
+    } // writeMeta
+
+    /********************************************************************************
+     * Mark the index as modified on disk before the first change after a flush.
+     */
+    private void markDirty ()
+    {
+        if (! clean) return;
+        clean = false;
+        writeMeta ();
+        try {
+            ch.force (false);
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } // try
+    } // markDirty
+
+    /********************************************************************************
+     * Open the index file if not yet open.  A map being created only touches the disk
+     * once it is written to, so tables that are never indexed leave no files behind.
+     * @param forWrite  whether the caller is about to modify the map
+     * @return  whether there is an index to read (false means the map is empty)
+     */
+    private boolean open (boolean forWrite)
+    {
+        if (ch != null) return true;
+        boolean exists = ! create && Files.exists (path);
+        if (! exists && ! forWrite) return false;
+        try {
+            if (exists) {
+                ch = FileChannel.open (path, READ, WRITE);
+                fileId = pool.register (ch);
+                ByteBuffer meta = ByteBuffer.allocate (PAGE_SIZE);
+                ch.read (meta, 0);
+                if (meta.getInt (0) != MAGIC) throw new IOException ("DiskBpTreeMap: not an index file " + path);
+                root      = meta.getInt (4);
+                firstLeaf = meta.getInt (8);
+                pages     = meta.getInt (12);
+                keyCount  = meta.getInt (16);
+                clean     = meta.get (20) == 1;
+            } else {
+                if (path.getParent () != null) Files.createDirectories (path.getParent ());
+                ch = FileChannel.open (path, CREATE, READ, WRITE, TRUNCATE_EXISTING);
+                fileId = pool.register (ch);
+                pages = 1;
+                root  = firstLeaf = allocate ();
+                write (new Node (root, true));
+                clean = false;
+                writeMeta ();
+            } // if
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } // try
+        return true;
+    } // open
+
+    /********************************************************************************
+     * This inner class provides the view of the map with keys in [lo, hi) returned by
+     * subMap, headMap and tailMap.  Iteration is a cursor along the leaf level.
+     */
+    private class Range
+            extends AbstractMap <K, V>
+            implements SortedMap <K, V>
+    {
+        private final K lo;                             // lower bound (inclusive), or null
+        private final K hi;                             // upper bound (exclusive), or null
+
+        Range (K _lo, K _hi)
+        {
+            lo = _lo;
+            hi = _hi;
+        } // constructor
+
+        boolean inRange (K k)
+        {
+            return (lo == null || k.compareTo (lo) >= 0) && (hi == null || k.compareTo (hi) < 0);
+        } // inRange
+
+        K max (K a, K b) { return (a == null) ? b : (b == null) ? a : (a.compareTo (b) >= 0) ? a : b; }
+
+        K min (K a, K b) { return (a == null) ? b : (b == null) ? a : (a.compareTo (b) <= 0) ? a : b; }
+
+        public Comparator <? super K> comparator () { return null; }
+
+        @SuppressWarnings("unchecked")
+        public V get (Object k)                    { return inRange ((K) k) ? DiskBpTreeMap.this.get (k) : null; }
+
+        @SuppressWarnings("unchecked")
+        public boolean containsKey (Object k)      { return get (k) != null; }
+
+        public V put (K k, V v)
+        {
+            if (! inRange (k)) throw new IllegalArgumentException ("DiskBpTreeMap: key out of range");
+            return DiskBpTreeMap.this.put (k, v);
+        } // put
+
+        public Set <Map.Entry <K, V>> entrySet ()
+        {
+            return new AbstractSet <Map.Entry <K, V>> () {
+                public Iterator <Map.Entry <K, V>> iterator () { return cursor (lo, hi, false); }
+                public int size ()
+                {
+                    int n = 0;
+                    for (Iterator <?> it = cursor (lo, hi, false); it.hasNext (); it.next ()) n++;
+                    return n;
+                } // size
+            };
+        } // entrySet
+
+        public K firstKey ()
+        {
+            Iterator <Map.Entry <K, V>> it = cursor (lo, hi, false);
+            if (! it.hasNext ()) throw new NoSuchElementException ();
+            return it.next ().getKey ();
+        } // firstKey
+
+        public K lastKey ()
+        {
+            K last = null;
+            for (Iterator <Map.Entry <K, V>> it = cursor (lo, hi, false); it.hasNext (); ) last = it.next ().getKey ();
+            if (last == null) throw new NoSuchElementException ();
+            return last;
+        } // lastKey
+
+        public SortedMap <K, V> subMap (K from, K to) { return new Range (max (lo, from), min (hi, to)); }
+
+        public SortedMap <K, V> headMap (K to)        { return new Range (lo, min (hi, to)); }
+
+        public SortedMap <K, V> tailMap (K from)      { return new Range (max (lo, from), hi); }
+
+    } // Range inner class
+
+    /********************************************************************************
+     * The main method used for testing.
+     * @param  the command-line arguments (args[0] gives number of keys to insert)
+     */
+    public static void main (String [] args) throws IOException
+    {
+        int totalKeys = 100000;
+        if (args.length == 1) totalKeys = Integer.valueOf (args[0]);
+
+        DiskBpTreeMap <Integer, Integer> bpt = new DiskBpTreeMap <> ("store" + File.separator + "test.idx", true);
+        for (int i = 1; i <= totalKeys; i += 2) bpt.put (i, i * i);
+        bpt.close ();
+
+        bpt = new DiskBpTreeMap <> ("store" + File.separator + "test.idx", false);
+        for (int i = 0; i <= 20; i++) {
+            out.println ("key = " + i + " value = " + bpt.get (i));
+        } // for
+        out.println ("-------------------------------------------");
+        out.println ("size = " + bpt.size () + ", pages = " + bpt.pages);
+        out.println (pool);
+    } // main
+
+} // DiskBpTreeMap class
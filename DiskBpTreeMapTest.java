@@ -0,0 +1,107 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+
+import org.junit.Test;
+
+public class DiskBpTreeMapTest {
+
+    /**
+     *
+     * The index file used by the tests.
+     *
+     */
+
+    static final String PATH = "store" + File.separator + "diskBpTreeMapTest.idx";
+
+    /**
+     *
+     * Creates a disk B+ tree with enough keys to split leaves and
+     * internal nodes several times.
+     *
+     * @return disk B+ tree
+     *
+     */
+
+    public DiskBpTreeMap <Integer, String> createTree(int keys) {
+
+	DiskBpTreeMap <Integer, String> bpt = new DiskBpTreeMap <> (PATH, true);
+	for (int i = keys - 1; i >= 0; i--) {
+	    bpt.put(2 * i, "value" + i);
+	}
+
+	return bpt;
+    }
+
+    /**
+     *
+     * Tests put and get, including missing keys and replacing a value.
+     *
+     */
+
+    @Test
+    public void testPutGet() {
+
+	DiskBpTreeMap <Integer, String> bpt = createTree(20000);
+
+	assertEquals(20000, bpt.size());
+	assertEquals("value0", bpt.get(0));
+	assertEquals("value12345", bpt.get(24690));
+	assertNull(bpt.get(24691));
+	assertEquals("value7", bpt.put(14, "seven"));
+	assertEquals("seven", bpt.get(14));
+	assertEquals(20000, bpt.size());
+    }
+
+    /**
+     *
+     * Tests firstKey, lastKey and the subMap range cursor.
+     *
+     */
+
+    @Test
+    public void testRange() {
+
+	DiskBpTreeMap <Integer, String> bpt = createTree(20000);
+
+	assertEquals(0, (int) bpt.firstKey());
+	assertEquals(39998, (int) bpt.lastKey());
+
+	SortedMap <Integer, String> sub = bpt.subMap(101, 201);
+	assertEquals(50, sub.size());
+	assertEquals(102, (int) sub.firstKey());
+	assertEquals(200, (int) sub.lastKey());
+	int prev = -1;
+	for (Map.Entry <Integer, String> e : bpt.entrySet()) {
+	    assertTrue(e.getKey() > prev);
+	    prev = e.getKey();
+	}
+	Iterator <Integer> it = bpt.tailMap(39990).keySet().iterator();
+	assertEquals(39990, (int) it.next());
+    }
+
+    /**
+     *
+     * Tests that a flushed index can be reopened without rebuilding it.
+     *
+     */
+
+    @Test
+    public void testReopen() throws Exception {
+
+	DiskBpTreeMap <Integer, String> bpt = createTree(5000);
+	bpt.close();
+	assertTrue(DiskBpTreeMap.isValid(PATH, 5000));
+
+	bpt = new DiskBpTreeMap <> (PATH, false);
+	assertEquals(5000, bpt.size());
+	assertEquals("value4999", bpt.get(9998));
+	bpt.put(1, "one");
+	assertFalse(DiskBpTreeMap.isValid(PATH, 5001));
+	bpt.close();
+	assertTrue(DiskBpTreeMap.isValid(PATH, 5001));
+    }
+}
@@ -0,0 +1,239 @@
+/*****************************************************************************************
+ * @file  Distribution.java
+ */
+
+/*****************************************************************************************
+ * The Distribution class specifies how a TupleGenerator draws the values of an
+ * attribute (see TupleGenerator.setDistribution).  A distribution turns 64 random bits,
+ * the tuple number j and the number of tuples in the table into a value:
+ *
+ *     uniform (n)           0 .. n-1, equally likely (n distinct values)
+ *     zipf (n, s)           0 .. n-1, value r with probability proportional to
+ *                           1 / (r + 1)^s, so 0 is the hottest value
+ *     normal (mean, sd)     normally distributed
+ *     sequential (start)    start + j, i.e., unique and ascending
+ *     fanOut (k)            j / k, i.e., each value k times in a row
+ *
+ * A cardinality n <= 0 means the default: the generator's value range for plain
+ * attributes, and the size of the referenced table for foreign keys.  On a foreign key
+ * the value is the number of the referenced tuple, so zipf gives hot parents and
+ * fanOut (or sequential, which spreads the children evenly) clusters the children of
+ * each parent, correlated with the order the children are generated in.  Integer and
+ * String attributes take the floor of the value.  Draws are pure functions of their
+ * arguments, so they may be made from any thread.
+ */
+public final class Distribution
+{
+    private enum Kind { UNIFORM, ZIPF, NORMAL, SEQUENTIAL, FAN_OUT }
+
+    private final Kind   kind;                 // the kind of distribution
+    private final long   n;                    // the cardinality (<= 0 for the default)
+    private final double a, b;                 // the parameters: s; mean, sd; start; k
+
+    /** The Zipf sampler for the cardinality last used (benign race).
+     */
+    private volatile Zipf zipf;
+
+    private Distribution (Kind _kind, long _n, double _a, double _b)
+    {
+        kind = _kind;
+        n    = _n;
+        a    = _a;
+        b    = _b;
+    } // constructor
+
+    /*************************************************************************************
+     * Return a uniform distribution over n values.
+     *
+     * @param n  the number of distinct values (<= 0 for the default)
+     */
+    public static Distribution uniform (long n)
+    {
+        return new Distribution (Kind.UNIFORM, n, 0, 0);
+    } // uniform
+
+    /*************************************************************************************
+     * Return a Zipf distribution over n values with exponent s.
+     *
+     * @param n  the number of distinct values (<= 0 for the default)
+     * @param s  the exponent (> 0; about 1 for typical hot keys)
+     */
+    public static Distribution zipf (long n, double s)
+    {
+        if (s <= 0) throw new IllegalArgumentException ("zipf: exponent must be positive: " + s);
+        return new Distribution (Kind.ZIPF, n, s, 0);
+    } // zipf
+
+    /*************************************************************************************
+     * Return a normal distribution.
+     *
+     * @param mean    the mean
+     * @param stddev  the standard deviation
+     */
+    public static Distribution normal (double mean, double stddev)
+    {
+        return new Distribution (Kind.NORMAL, 0, mean, stddev);
+    } // normal
+
+    /*************************************************************************************
+     * Return the sequence start, start + 1, ... (by tuple number).
+     *
+     * @param start  the first value
+     */
+    public static Distribution sequential (long start)
+    {
+        return new Distribution (Kind.SEQUENTIAL, 0, start, 0);
+    } // sequential
+
+    /*************************************************************************************
+     * Return the sequence 0 (k times), 1 (k times), ... (by tuple number).
+     *
+     * @param k  the number of tuples per value (the fan-out on a foreign key)
+     */
+    public static Distribution fanOut (long k)
+    {
+        if (k <= 0) throw new IllegalArgumentException ("fanOut: fan-out must be positive: " + k);
+        return new Distribution (Kind.FAN_OUT, 0, k, 0);
+    } // fanOut
+
+    /*************************************************************************************
+     * Return whether the values drawn are distinct, as primary key attributes require.
+     */
+    public boolean unique ()
+    {
+        return kind == Kind.SEQUENTIAL;
+    } // unique
+
+    /*************************************************************************************
+     * Draw a value.
+     *
+     * @param h      64 random bits
+     * @param j      the tuple number
+     * @param count  the number of tuples in the table
+     * @param range  the default cardinality
+     * @return  the value
+     */
+    double draw (long h, long j, long count, long range)
+    {
+        long m = n > 0 ? n : range;
+        switch (kind) {
+        case UNIFORM:    return unit (h) * m;
+        case ZIPF:       return zipf (m).sample (h) - 1;
+        case NORMAL:     return a + b * Math.sqrt (-2.0 * Math.log (1.0 - unit (h)))
+                                          * Math.cos (2.0 * Math.PI * unit (StreamingTupleGenerator.mix (h)));
+        case SEQUENTIAL: return a + j;
+        default:         return Math.floor (j / a);
+        } // switch
+    } // draw
+
+    /*************************************************************************************
+     * Draw the number of a referenced tuple, for a foreign key into a table with the
+     * given number of tuples.  Sequential spreads the count children evenly over the
+     * parents, in runs.
+     *
+     * @param h        64 random bits
+     * @param j        the tuple number of the child
+     * @param count    the number of tuples in the child's table
+     * @param parents  the number of tuples in the referenced table
+     * @return  the tuple number of the parent
+     */
+    long parent (long h, long j, long count, long parents)
+    {
+        if (kind == Kind.SEQUENTIAL) return (long) ((double) j * parents / Math.max (count, 1));
+        return Math.floorMod ((long) Math.floor (draw (h, j, count, parents)), parents);
+    } // parent
+
+    private Zipf zipf (long m)
+    {
+        Zipf z = zipf;
+        if (z == null || z.n != m) zipf = z = new Zipf (m, a);
+        return z;
+    } // zipf
+
+    /*************************************************************************************
+     * Return a double in [0, 1) taken from the high bits of h.
+     */
+    private static double unit (long h)
+    {
+        return (h >>> 11) * 0x1.0p-53;
+    } // unit
+
+    /*************************************************************************************
+     * Return the specification of the distribution, e.g., "zipf (1000, 1.0)".
+     */
+    public String toString ()
+    {
+        switch (kind) {
+        case UNIFORM:    return "uniform (" + n + ")";
+        case ZIPF:       return "zipf (" + n + ", " + a + ")";
+        case NORMAL:     return "normal (" + a + ", " + b + ")";
+        case SEQUENTIAL: return "sequential (" + (long) a + ")";
+        default:         return "fanOut (" + (long) a + ")";
+        } // switch
+    } // toString
+
+    //-----------------------------------------------------------------------------------
+
+    /*************************************************************************************
+     * The Zipf class samples 1 .. n with probability proportional to 1 / k^s in constant
+     * expected time by rejection-inversion (Hoermann and Derflinger, 1996).
+     */
+    private static final class Zipf
+    {
+        final long   n;                        // the number of values
+        final double s;                        // the exponent
+        final double hX1, hN, cut;             // H (1.5) - 1, H (n + 0.5) and the squeeze
+
+        Zipf (long _n, double _s)
+        {
+            n   = _n;
+            s   = _s;
+            hX1 = bigH (1.5) - 1.0;
+            hN  = bigH (n + 0.5);
+            cut = 2.0 - bigHInverse (bigH (2.5) - h (2.0));
+        } // constructor
+
+        long sample (long bits)
+        {
+            for (long r = bits; ; r = StreamingTupleGenerator.mix (r)) {
+                double u = hN + unit (r) * (hX1 - hN);
+                double x = bigHInverse (u);
+                long   k = Math.max (1, Math.min (n, (long) (x + 0.5)));
+                if (k - x <= cut || u >= bigH (k + 0.5) - h (k)) return k;
+            } // for
+        } // sample
+
+        private double h (double x)
+        {
+            return Math.exp (-s * Math.log (x));
+        } // h
+
+        private double bigH (double x)
+        {
+            double lx = Math.log (x);
+            return helper2 ((1.0 - s) * lx) * lx;
+        } // bigH
+
+        private double bigHInverse (double x)
+        {
+            double t = Math.max (-1.0, x * (1.0 - s));
+            return Math.exp (helper1 (t) * x);
+        } // bigHInverse
+
+        /** log1p (x) / x, accurate near 0.
+         */
+        private static double helper1 (double x)
+        {
+            return Math.abs (x) > 1E-8 ? Math.log1p (x) / x : 1.0 - x * (0.5 - x * (1.0 / 3.0 - 0.25 * x));
+        } // helper1
+
+        /** expm1 (x) / x, accurate near 0.
+         */
+        private static double helper2 (double x)
+        {
+            return Math.abs (x) > 1E-8 ? Math.expm1 (x) / x : 1.0 + x * 0.5 * (1.0 + x / 3.0 * (1.0 + 0.25 * x));
+        } // helper2
+
+    } // Zipf
+
+} // Distribution class
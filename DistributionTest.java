@@ -0,0 +1,86 @@
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+public class DistributionTest {
+
+    /**
+     *
+     * Tests that zipf draws are skewed toward the first values, normal
+     * draws have the given mean and deviation, and the sequences are exact.
+     *
+     */
+
+    @Test
+    public void testDraws() {
+
+	Distribution zipf = Distribution.zipf(1000, 1.0);
+	int [] freq = new int [1000];
+	int n = 200000;
+	for (int i = 0; i < n; i++) freq[(int) zipf.draw(StreamingTupleGenerator.mix(i), i, n, 0)]++;
+	double h = 0;
+	for (int k = 1; k <= 1000; k++) h += 1.0 / k;
+	assertEquals(n / h, freq[0], n / h * 0.05);
+	assertEquals(n / h / 10, freq[9], n / h / 10 * 0.15);
+	assertTrue(freq[0] > freq[1] && freq[1] > freq[2]);
+
+	Distribution normal = Distribution.normal(50, 10);
+	double sum = 0, sq = 0;
+	for (int i = 0; i < n; i++) {
+	    double x = normal.draw(StreamingTupleGenerator.mix(i), i, n, 0);
+	    sum += x;
+	    sq += x * x;
+	}
+	assertEquals(50, sum / n, 0.2);
+	assertEquals(10, Math.sqrt(sq / n - (sum / n) * (sum / n)), 0.2);
+
+	assertEquals(107, Distribution.sequential(100).draw(0, 7, n, 0), 0);
+	assertEquals(2, Distribution.fanOut(3).draw(0, 8, n, 0), 0);
+	assertTrue(Distribution.sequential(0).unique());
+	assertFalse(Distribution.uniform(10).unique());
+    }
+
+    /**
+     *
+     * Tests distributions on plain, key and foreign key attributes in both
+     * generators.
+     *
+     */
+
+    @Test
+    public void testGenerators() {
+
+	for (TupleGenerator gen : new TupleGenerator [] { new StreamingTupleGenerator(5), new TupleGeneratorImpl() }) {
+	    gen.addRelSchema("distCustomer", "id region", "Integer String", "id", null);
+	    gen.addRelSchema("distOrder", "oid custId amount", "Integer Integer Double", "oid",
+			     new String [][] {{ "custId", "distCustomer", "id" }});
+	    gen.setDistribution("distCustomer", "id", Distribution.sequential(1));
+	    gen.setDistribution("distCustomer", "region", Distribution.uniform(4));
+	    gen.setDistribution("distOrder", "custId", Distribution.fanOut(5));
+	    gen.setDistribution("distOrder", "amount", Distribution.normal(100, 1));
+	    Comparable [][][] db = gen.generate(new int [] { 100, 500 });
+
+	    Set<Comparable> regions = new HashSet<>();
+	    for (int j = 0; j < 100; j++) {
+		assertEquals(j + 1, db[0][j][0]);
+		regions.add(db[0][j][1]);
+	    }
+	    assertEquals(4, regions.size());
+	    for (int j = 0; j < 500; j++) {
+		assertEquals(j / 5 + 1, db[1][j][1]);
+		assertEquals(100, (Double) db[1][j][2], 6);
+	    }
+	}
+
+	StreamingTupleGenerator gen = new StreamingTupleGenerator(5);
+	gen.addRelSchema("distCustomer", "id region", "Integer String", "id", null);
+	gen.setDistribution("distCustomer", "id", Distribution.zipf(0, 1.0));
+	try {
+	    gen.generate(new int [] { 10 });
+	    fail("a key needs unique values");
+	} catch (IllegalArgumentException ex) {
+	}
+    }
+}
@@ -0,0 +1,52 @@
+
+/*****************************************************************************************
+ * @file  EvictionPolicy.java
+ */
+
+import java.util.function.IntPredicate;
+
+/*****************************************************************************************
+ * This interface is implemented by the page replacement policies of the BufferPool.
+ * Frames are identified by their number (0 .. frames-1) and pages by a long key.
+ * Accesses flagged as sequential (e.g., pages touched by a full scan) are hints that
+ * the page is unlikely to be reused soon; policies use them to keep scans from
+ * flushing frequently used pages.
+ */
+public interface EvictionPolicy
+{
+    /*************************************************************************************
+     * Initialize the policy for a pool with the given number of frames.
+     * @param frames  the number of frames in the pool
+     */
+    void init (int frames);
+
+    /*************************************************************************************
+     * Record that a page has been loaded into a frame (a miss).
+     * @param frame       the frame holding the page
+     * @param page        the key of the page
+     * @param sequential  whether the access is part of a sequential scan
+     */
+    void admit (int frame, long page, boolean sequential);
+
+    /*************************************************************************************
+     * Record an access to a page already in a frame (a hit).
+     * @param frame       the frame holding the page
+     * @param sequential  whether the access is part of a sequential scan
+     */
+    void access (int frame, boolean sequential);
+
+    /*************************************************************************************
+     * Choose a frame to evict among those that are evictable (i.e., not pinned).  The
+     * frame is removed from the policy's bookkeeping.
+     * @param evictable  whether a frame may be evicted
+     * @return  the victim frame, or -1 if no frame is evictable
+     */
+    int victim (IntPredicate evictable);
+
+    /*************************************************************************************
+     * Forget a frame whose page was dropped from the pool (not evicted).
+     * @param frame  the frame being freed
+     */
+    void remove (int frame);
+
+} // EvictionPolicy
@@ -0,0 +1,477 @@
+
+/************************************************************************************
+ * @file ExternalSort.java
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.file.*;
+import java.util.*;
+
+/************************************************************************************
+ * The ExternalSort class sorts a stream of tuples that may be larger than memory.  Run
+ * generation collects tuples until their estimated size reaches the memory budget,
+ * sorts them and spills the sorted run to a temporary file (tuples are stored in the
+ * TupleCodec encoding).  The runs are then merged k ways at a time using a loser tree,
+ * in several passes if there are more runs than MAX_FAN_IN.  If the input fits within
+ * the budget, it is sorted in memory and nothing is written.
+ *
+ * The sort order is given by a list of columns, each ascending or descending; nulls
+ * sort before all other values.
+ */
+public class ExternalSort
+{
+    /** The maximum number of runs merged at once.
+     */
+    static final int MAX_FAN_IN = 64;
+
+    /** The size of the buffers used to write and read runs.
+     */
+    private static final int IO_BUFFER = 1 << 16;
+
+    /** The default memory budget for run generation in bytes.
+     */
+    private static long defaultBudget = 64L << 20;
+
+    /** The type codes of the columns of the tuples.
+     */
+    private final byte [] types;
+
+    /** The comparator defining the sort order.
+     */
+    private final Comparator <Comparable []> order;
+
+    /** The memory budget for run generation in bytes.
+     */
+    private final long budget;
+
+    /** The number of runs spilled by the last sort (for performance monitoring).
+     */
+    private int spilled;
+
+    /********************************************************************************
+     * Construct a sorter for tuples with the given domains.
+     *
+     * @param domain  the domains of the columns
+     * @param cols    the positions of the sort columns, most significant first
+     * @param desc    whether each sort column is descending
+     * @param _budget the memory budget for run generation in bytes
+     */
+    public ExternalSort (Class [] domain, int [] cols, boolean [] desc, long _budget)
+    {
+        types  = TupleCodec.typeCodes (domain);
+        order  = comparator (cols, desc);
+        budget = Math.max (1, _budget);
+    } // constructor
+
+    /********************************************************************************
+     * Construct a sorter using the default memory budget.
+     *
+     * @param domain  the domains of the columns
+     * @param cols    the positions of the sort columns, most significant first
+     * @param desc    whether each sort column is descending
+     */
+    public ExternalSort (Class [] domain, int [] cols, boolean [] desc)
+    {
+        this (domain, cols, desc, defaultBudget);
+    } // constructor
+
+    /********************************************************************************
+     * Set the default memory budget used by sorts.
+     *
+     * @param bytes  the budget in bytes
+     */
+    public static void setDefaultBudget (long bytes)
+    {
+        defaultBudget = bytes;
+    } // setDefaultBudget
+
+    /********************************************************************************
+     * Return the default memory budget used by sorts (and other operators that spill).
+     *
+     * @return  the budget in bytes
+     */
+    public static long defaultBudget ()
+    {
+        return defaultBudget;
+    } // defaultBudget
+
+    /********************************************************************************
+     * Return a comparator ordering tuples by the given columns.
+     *
+     * @param cols  the positions of the sort columns, most significant first
+     * @param desc  whether each sort column is descending (null for all ascending)
+     * @return  the comparator
+     */
+    @SuppressWarnings("unchecked")
+    public static Comparator <Comparable []> comparator (int [] cols, boolean [] desc)
+    {
+        return (a, b) -> {
+            for (int j = 0; j < cols.length; j++) {
+                Comparable x = a [cols [j]], y = b [cols [j]];
+                int c = (x == null) ? ((y == null) ? 0 : -1)
+                                    : ((y == null) ? 1 : x.compareTo (y));
+                if (c != 0) return (desc != null && desc [j]) ? -c : c;
+            } // for
+            return 0;
+        };
+    } // comparator
+
+    /********************************************************************************
+     * Return the comparator defining this sort's order.
+     *
+     * @return  the comparator
+     */
+    public Comparator <Comparable []> order ()
+    {
+        return order;
+    } // order
+
+    /********************************************************************************
+     * Return the number of runs spilled to disk by the last sort.
+     *
+     * @return  the number of runs
+     */
+    public int spilled ()
+    {
+        return spilled;
+    } // spilled
+
+    /********************************************************************************
+     * Sort the input, returning a cursor over the tuples in order.  The cursor must be
+     * closed (or exhausted) to delete any run files.
+     *
+     * @param input  the tuples to sort
+     * @return  a cursor over the sorted tuples
+     * @throws UncheckedIOException  if a run cannot be written
+     */
+    public Cursor sort (Iterator <Comparable []> input)
+    {
+        spilled = 0;
+        List <Path> runs = new ArrayList <> ();
+        List <RunReader> readers = new ArrayList <> ();
+        List <Comparable []> buf = new ArrayList <> ();
+        long used = 0;
+        try {
+            while (input.hasNext ()) {
+                Comparable [] t = input.next ();
+                buf.add (t);
+                used += estimate (t);
+                if (used >= budget) {
+                    runs.add (spill (buf));
+                    buf.clear ();
+                    used = 0;
+                } // if
+            } // while
+            buf.sort (order);
+            if (runs.isEmpty ()) return new Cursor (buf.iterator (), runs, readers);
+            if (! buf.isEmpty ()) runs.add (spill (buf));
+            while (runs.size () > MAX_FAN_IN) runs = mergePass (runs);
+            for (Path p : runs) readers.add (new RunReader (p));
+            return new Cursor (new LoserTree (new ArrayList <> (readers), order), runs, readers);
+        } catch (IOException ex) {
+            for (RunReader r : readers) r.close ();
+            for (Path p : runs) p.toFile ().delete ();
+            throw new UncheckedIOException (ex);
+        } // try
+    } // sort
+
+    //-----------------------------------------------------------------------------------
+    // Runs
+    //-----------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Sort the tuples in memory and write them as a run.
+     *
+     * @param buf  the tuples of the run
+     * @return  the path of the run file
+     */
+    private Path spill (List <Comparable []> buf) throws IOException
+    {
+        buf.sort (order);
+        Path p = Files.createTempFile ("sort", ".run");
+        try (RunWriter w = new RunWriter (p)) {
+            for (Comparable [] t : buf) w.write (t);
+        } // try
+        spilled++;
+        return p;
+    } // spill
+
+    /********************************************************************************
+     * Merge groups of MAX_FAN_IN runs into longer runs.
+     *
+     * @param runs  the runs to merge (deleted once merged)
+     * @return  the merged runs
+     */
+    private List <Path> mergePass (List <Path> runs) throws IOException
+    {
+        List <Path> merged = new ArrayList <> ();
+        for (int i = 0; i < runs.size (); i += MAX_FAN_IN) {
+            List <Path> group = runs.subList (i, Math.min (runs.size (), i + MAX_FAN_IN));
+            List <Iterator <Comparable []>> inputs = new ArrayList <> ();
+            Path out = Files.createTempFile ("sort", ".run");
+            try (RunWriter w = new RunWriter (out)) {
+                for (Path p : group) inputs.add (new RunReader (p));
+                for (LoserTree lt = new LoserTree (inputs, order); lt.hasNext (); ) w.write (lt.next ());
+            } finally {
+                for (Iterator <Comparable []> r : inputs) ((RunReader) r).close ();
+            } // try
+            for (Path p : group) Files.deleteIfExists (p);
+            merged.add (out);
+        } // for
+        return merged;
+    } // mergePass
+
+    /********************************************************************************
+     * Estimate the heap size of a tuple in bytes.
+     *
+     * @param t  the tuple
+     * @return  the estimated size
+     */
+    static long estimate (Comparable [] t)
+    {
+        long size = 16 + 8L * t.length;
+        for (Comparable v : t) {
+            if (v instanceof String) size += 40 + ((String) v).length ();
+            else if (v != null)      size += 16;
+        } // for
+        return size;
+    } // estimate
+
+    /********************************************************************************
+     * The RunWriter class writes tuples to a run file, each as a length followed by its
+     * TupleCodec encoding.
+     */
+    private class RunWriter
+            implements Closeable
+    {
+        private final DataOutputStream out;
+        private ByteBuffer scratch = ByteBuffer.allocate (1024);
+
+        RunWriter (Path p) throws IOException
+        {
+            out = new DataOutputStream (new BufferedOutputStream (Files.newOutputStream (p), IO_BUFFER));
+        } // constructor
+
+        void write (Comparable [] t) throws IOException
+        {
+            for ( ; ; ) {
+                scratch.clear ();
+                try {
+                    TupleCodec.write (scratch, t, types);
+                    break;
+                } catch (BufferOverflowException ex) {
+                    scratch = ByteBuffer.allocate (2 * scratch.capacity ());
+                } // try
+            } // for
+            out.writeInt (scratch.position ());
+            out.write (scratch.array (), 0, scratch.position ());
+        } // write
+
+        public void close () throws IOException
+        {
+            out.close ();
+        } // close
+
+    } // RunWriter class
+
+    /********************************************************************************
+     * The RunReader class reads the tuples of a run file in order.
+     */
+    private class RunReader
+            implements Iterator <Comparable []>, Closeable
+    {
+        private final DataInputStream in;
+        private byte []       bytes = new byte [1024];
+        private Comparable [] next;
+
+        RunReader (Path p) throws IOException
+        {
+            in = new DataInputStream (new BufferedInputStream (Files.newInputStream (p), IO_BUFFER));
+            advance ();
+        } // constructor
+
+        public boolean hasNext ()
+        {
+            return next != null;
+        } // hasNext
+
+        public Comparable [] next ()
+        {
+            if (next == null) throw new NoSuchElementException ();
+            Comparable [] t = next;
+            try {
+                advance ();
+            } catch (IOException ex) {
+                throw new UncheckedIOException (ex);
+            } // try
+            return t;
+        } // next
+
+        private void advance () throws IOException
+        {
+            int len;
+            try {
+                len = in.readInt ();
+            } catch (EOFException ex) {
+                close ();
+                return;
+            } // try
+            if (len > bytes.length) bytes = new byte [Math.max (len, 2 * bytes.length)];
+            in.readFully (bytes, 0, len);
+            next = TupleCodec.read (ByteBuffer.wrap (bytes, 0, len), types);
+        } // advance
+
+        /****************************************************************************
+         * Close the run file, e.g., when the merge is abandoned before the end.
+         */
+        public void close ()
+        {
+            next = null;
+            try {
+                in.close ();
+            } catch (IOException ex) {
+                // nothing more is read from the run
+            } // try
+        } // close
+
+    } // RunReader class
+
+    //-----------------------------------------------------------------------------------
+    // Merging
+    //-----------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * The LoserTree class merges k sorted inputs.  Each internal node of a complete
+     * binary tree over the inputs holds the loser of the match played there, and the
+     * overall winner is kept separately, so replacing the winner with the next tuple of
+     * its input replays only the log k matches on its path to the root.  Ties are
+     * broken by input number, so the merge is stable.
+     */
+    static class LoserTree
+           implements Iterator <Comparable []>
+    {
+        private final List <Iterator <Comparable []>> inputs;    // the sorted inputs
+        private final Comparator <Comparable []>      order;     // the sort order
+        private final Comparable [] []                head;      // current tuple of each input
+        private final int []                          loser;     // loser at each internal node
+        private final int                             k;         // number of inputs
+        private int                                   winner;    // input holding the minimum
+
+        /****************************************************************************
+         * Build the tree over the given inputs.
+         *
+         * @param _inputs  the sorted inputs
+         * @param _order   the sort order
+         */
+        LoserTree (List <Iterator <Comparable []>> _inputs, Comparator <Comparable []> _order)
+        {
+            inputs = _inputs;
+            order  = _order;
+            k      = inputs.size ();
+            head   = new Comparable [k][];
+            loser  = new int [Math.max (1, k)];
+            for (int i = 0; i < k; i++) head [i] = inputs.get (i).hasNext () ? inputs.get (i).next () : null;
+            winner = (k == 0) ? -1 : build (1);
+        } // constructor
+
+        /****************************************************************************
+         * Play the matches of the subtree rooted at node (leaves are nodes k .. 2k-1),
+         * recording the losers and returning the winner.
+         */
+        private int build (int node)
+        {
+            if (node >= k) return node - k;
+            int a = build (2 * node), b = build (2 * node + 1);
+            if (beats (a, b)) {
+                loser [node] = b;
+                return a;
+            } // if
+            loser [node] = a;
+            return b;
+        } // build
+
+        /****************************************************************************
+         * Return whether input a's tuple comes before input b's (exhausted inputs
+         * come last).
+         */
+        private boolean beats (int a, int b)
+        {
+            if (head [b] == null) return head [a] != null || a < b;
+            if (head [a] == null) return false;
+            int c = order.compare (head [a], head [b]);
+            return c < 0 || (c == 0 && a < b);
+        } // beats
+
+        public boolean hasNext ()
+        {
+            return winner >= 0 && head [winner] != null;
+        } // hasNext
+
+        public Comparable [] next ()
+        {
+            if (! hasNext ()) throw new NoSuchElementException ();
+            Comparable [] t = head [winner];
+            Iterator <Comparable []> in = inputs.get (winner);
+            head [winner] = in.hasNext () ? in.next () : null;
+            int w = winner;
+            for (int node = (w + k) / 2; node >= 1; node /= 2) {   // replay up to the root
+                if (beats (loser [node], w)) {
+                    int tmp = loser [node];
+                    loser [node] = w;
+                    w = tmp;
+                } // if
+            } // for
+            winner = w;
+            return t;
+        } // next
+
+    } // LoserTree class
+
+    /********************************************************************************
+     * The Cursor class iterates over the sorted tuples and closes and deletes the run
+     * files when it is exhausted or closed.
+     */
+    public static class Cursor
+           implements Iterator <Comparable []>, Closeable
+    {
+        private final Iterator <Comparable []>  it;
+        private final List <Path>               runs;
+        private final List <? extends Closeable> readers;
+
+        Cursor (Iterator <Comparable []> _it, List <Path> _runs, List <? extends Closeable> _readers)
+        {
+            it      = _it;
+            runs    = _runs;
+            readers = _readers;
+        } // constructor
+
+        public boolean hasNext ()
+        {
+            if (it.hasNext ()) return true;
+            close ();
+            return false;
+        } // hasNext
+
+        public Comparable [] next ()
+        {
+            return it.next ();
+        } // next
+
+        public void close ()
+        {
+            for (Closeable r : readers) {
+                try {
+                    r.close ();
+                } catch (IOException ex) {
+                    // the run file is deleted regardless
+                } // try
+            } // for
+            readers.clear ();
+            for (Path p : runs) p.toFile ().delete ();
+            runs.clear ();
+        } // close
+
+    } // Cursor class
+
+} // ExternalSort class
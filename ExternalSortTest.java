@@ -0,0 +1,185 @@
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+public class ExternalSortTest {
+
+    /**
+     *
+     * Creates a movie table with n tuples in scrambled order.
+     *
+     * @return movie table
+     *
+     */
+
+    public Table movieTable(int n) {
+
+	Table movie = new Table("movie", "title year length studioName",
+				"String Integer Integer String", "title year");
+	for (int i = 0; i < n; i++) {
+	    int k = (int) ((i * 7919L) % n);
+	    movie.insert(new Comparable [] { "title" + k, 1950 + k % 40, 60 + k % 97, "studio" + k % 13 });
+	}
+	return movie;
+    }
+
+    /**
+     *
+     * Tests that a sort spilling many runs (with a multi-pass merge)
+     * returns every tuple in order.
+     *
+     */
+
+    @Test
+    public void testSpill() {
+
+	Random rand = new Random(7);
+	List<Comparable []> input = new ArrayList<>();
+	for (int i = 0; i < 20000; i++) {
+	    input.add(new Comparable [] { rand.nextInt(1000), i % 3 == 0 ? null : "s" + rand.nextInt(50) });
+	}
+	ExternalSort sorter = new ExternalSort(new Class [] { Integer.class, String.class },
+					       new int [] { 1, 0 }, new boolean [] { false, true }, 4096);
+	List<Comparable []> sorted = new ArrayList<>();
+	for (Iterator<Comparable []> it = sorter.sort(input.iterator()); it.hasNext(); ) sorted.add(it.next());
+	assertTrue(sorter.spilled() > ExternalSort.MAX_FAN_IN);
+
+	List<Comparable []> expected = new ArrayList<>(input);
+	expected.sort(sorter.order());
+	assertEquals(expected.size(), sorted.size());
+	for (int i = 0; i < sorted.size(); i++) assertArrayEquals(expected.get(i), sorted.get(i));
+	assertNull(sorted.get(0)[1]);
+    }
+
+    /**
+     *
+     * Tests that closing a cursor before the end closes its run files
+     * (counted as open descriptors where /proc is available).
+     *
+     */
+
+    @Test
+    public void testEarlyClose() throws Exception {
+
+	java.io.File fds = new java.io.File("/proc/self/fd");
+	List<Comparable []> input = new ArrayList<>();
+	for (int i = 0; i < 5000; i++) input.add(new Comparable [] { (i * 7919) % 5000 });
+	ExternalSort sorter = new ExternalSort(new Class [] { Integer.class }, new int [] { 0 },
+					       new boolean [] { false }, 4096);
+	int before = fds.isDirectory() ? fds.list().length : 0;
+	ExternalSort.Cursor cursor = sorter.sort(input.iterator());
+	assertTrue(sorter.spilled() > 1);
+	assertEquals(0, cursor.next()[0]);
+	assertEquals(1, cursor.next()[0]);
+	cursor.close();
+	if (fds.isDirectory()) assertTrue(fds.list().length <= before);
+    }
+
+    /**
+     *
+     * Tests ordering on several attributes with mixed directions.
+     *
+     */
+
+    @Test
+    public void testOrderBy() {
+
+	Table sorted = movieTable(500).orderBy("year desc length title");
+	assertEquals(500, sorted.tuplesLength());
+	for (int i = 1; i < sorted.tuplesLength(); i++) {
+	    Comparable [] a = sorted.getTuple(i - 1), b = sorted.getTuple(i);
+	    int c = - ((Integer) a[1]).compareTo((Integer) b[1]);
+	    if (c == 0) c = ((Integer) a[2]).compareTo((Integer) b[2]);
+	    if (c == 0) c = ((String) a[0]).compareTo((String) b[0]);
+	    assertTrue(c < 0);
+	}
+	assertNull(movieTable(10).orderBy("rating"));
+    }
+
+    /**
+     *
+     * Tests that top-k with a predicate returns the prefix of the
+     * stably sorted selection.
+     *
+     */
+
+    @Test
+    public void testTopK() {
+
+	Table movie = movieTable(20000);
+	int studio = movie.col("studioName");
+	Table expected = movie.select(t -> ! t[studio].equals("studio3")).orderBy("length desc year");
+	Table top = movie.topK(100, "length desc year", t -> ! t[studio].equals("studio3"));
+	assertEquals(100, top.tuplesLength());
+	for (int i = 0; i < 100; i++) assertArrayEquals(expected.getTuple(i), top.getTuple(i));
+
+	assertEquals(20000, movie.topK(50000, "title").tuplesLength());
+	assertEquals(0, movie.topK(0, "title").tuplesLength());
+    }
+
+    /**
+     *
+     * Tests that projection eliminates duplicates by hashing or, over
+     * budget, by sorting, and that keyed projections keep every tuple.
+     *
+     */
+
+    @Test
+    public void testProject() {
+
+	Table movie = movieTable(2000);
+	Table hashed = movie.project("studioName year");
+	assertEquals(520, hashed.tuplesLength());
+	assertEquals("studio0", hashed.getTuple(0)[0]);
+	assertEquals(hashed.tuplesLength(), movie.projectStream("studioName year").count());
+	assertEquals(hashed.tuplesLength(), movie.projectStream("studioName year").parallel().count());
+	assertEquals(2000, movie.project("year title length").tuplesLength());
+	assertNull(movie.project("rating"));
+
+	ExternalSort.setDefaultBudget(2048);
+	try {
+	    Table sorted = movie.project("studioName year");
+	    assertEquals(hashed.tuplesLength(), sorted.tuplesLength());
+	    assertArrayEquals(new Comparable [] { "studio0", 1950 }, sorted.getTuple(0));
+	} finally {
+	    ExternalSort.setDefaultBudget(64L << 20);
+	}
+    }
+
+    /**
+     *
+     * Tests that the sort-merge join finds the same tuples as the
+     * nested loop join and that distinct removes duplicates.
+     *
+     */
+
+    @Test
+    public void testSJoinAndDistinct() {
+
+	ExternalSort.setDefaultBudget(2048);
+	try {
+	    Table movie = movieTable(300);
+	    Table studio = new Table("studio", "name address", "String String", "name");
+	    for (int i = 0; i < 13; i += 2) studio.insert(new Comparable [] { "studio" + i, "addr" + i });
+
+	    Table nested = movie.join("studioName", "name", studio);
+	    Table merged = movie.s_join("studioName", "name", studio);
+	    assertEquals(nested.tuplesLength(), merged.tuplesLength());
+	    Set<String> expected = new HashSet<>(), actual = new HashSet<>();
+	    for (int i = 0; i < nested.tuplesLength(); i++) expected.add(Arrays.toString(nested.getTuple(i)));
+	    for (int i = 0; i < merged.tuplesLength(); i++) actual.add(Arrays.toString(merged.getTuple(i)));
+	    assertEquals(expected, actual);
+
+	    List<Comparable []> bag = new ArrayList<>();
+	    for (int i = 0; i < movie.tuplesLength(); i++) bag.add(new Comparable [] { movie.getTuple(i)[1] });
+	    Table years = new Table("years", new String [] { "year" }, new Class [] { Integer.class },
+				    new String [] { "year" }, bag).distinct();
+	    assertEquals(40, years.tuplesLength());
+	    assertEquals(1950, years.getTuple(0)[0]);
+	} finally {
+	    ExternalSort.setDefaultBudget(64L << 20);
+	}
+    }
+}
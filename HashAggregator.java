@@ -0,0 +1,457 @@
+
+/************************************************************************************
+ * @file HashAggregator.java
+ */
+
+import java.util.*;
+
+/************************************************************************************
+ * The HashAggregator class computes COUNT, SUM, AVG, MIN and MAX aggregates per group
+ * of tuples (GROUP BY).  Groups are found through an open-addressing hash table with
+ * linear probing whose slots hold group numbers; the group keys and the aggregate
+ * states are kept in parallel arrays indexed by group number (and aggregate), so
+ * probing with a tuple compares its group columns in place without building a key.
+ *
+ * Aggregators for disjoint parts of a table (e.g., one per thread) are combined with
+ * merge.  Each aggregator has a memory budget; once its groups are estimated to exceed
+ * it, it stops accumulating and reports overflowed, so the caller can fall back to
+ * sort-based aggregation.
+ */
+class HashAggregator
+{
+    /** The aggregate functions.
+     */
+    static final int COUNT = 0, SUM = 1, AVG = 2, MIN = 3, MAX = 4;
+
+    /** The names of the aggregate functions, indexed by function.
+     */
+    static final String [] NAMES = { "count", "sum", "avg", "min", "max" };
+
+    /** The positions of the group columns.
+     */
+    private final int [] groupCols;
+
+    /** The function of each aggregate.
+     */
+    private final int [] fn;
+
+    /** The column of each aggregate (-1 for count (*)).
+     */
+    private final int [] aggCol;
+
+    /** Whether each aggregate sums real (rather than integral) values.
+     */
+    private final boolean [] real;
+
+    /** The memory budget in bytes.
+     */
+    private final long budget;
+
+    /** The group keys, indexed by group number.
+     */
+    private Comparable [][] keys = new Comparable [16][];
+
+    /** The hash codes of the group keys.
+     */
+    private int [] hashes = new int [16];
+
+    /** The aggregate states, indexed by group number * number of aggregates + aggregate:
+     *  the count of non-null values, the integral and real sums, and the extreme value.
+     */
+    private long []       cnt;
+    private long []       lsum;
+    private double []     dsum;
+    private Comparable [] ext;
+
+    /** The hash table: group number + 1 in each used slot, 0 in empty slots.
+     */
+    private int [] slots = new int [32];
+
+    /** The number of groups.
+     */
+    private int groups;
+
+    /** The estimated memory used by the groups in bytes.
+     */
+    private long bytes;
+
+    /** Whether the memory budget was exceeded.
+     */
+    private boolean overflow;
+
+    /********************************************************************************
+     * Construct an empty aggregator.
+     *
+     * @param _groupCols  the positions of the group columns
+     * @param _fn         the function of each aggregate
+     * @param _aggCol     the column of each aggregate (-1 for count (*))
+     * @param _real       whether each aggregate sums real values
+     * @param _budget     the memory budget in bytes
+     */
+    HashAggregator (int [] _groupCols, int [] _fn, int [] _aggCol, boolean [] _real, long _budget)
+    {
+        groupCols = _groupCols;
+        fn        = _fn;
+        aggCol    = _aggCol;
+        real      = _real;
+        budget    = _budget;
+        allocate (16);
+    } // constructor
+
+    /********************************************************************************
+     * Make an aggregator for the given aggregates, each written as function (attribute)
+     * with count (*) counting tuples, over tuples with the given attributes and domains.
+     * A malformed aggregate, or a sum or average of a non-numeric attribute, is reported
+     * as a groupBy error.
+     *
+     * @param attribute  the attributes of the tuples
+     * @param domain     the domains of the tuples
+     * @param groupCols  the positions of the group columns
+     * @param aggs       the aggregates, e.g. "count(*) avg(length)"
+     * @param budget     the memory budget in bytes
+     * @return  the aggregator, or null if an aggregate is invalid
+     */
+    static HashAggregator parse (String [] attribute, Class [] domain, int [] groupCols, String [] aggs,
+                                 long budget)
+    {
+        int []     fn     = new int [aggs.length];
+        int []     aggCol = new int [aggs.length];
+        boolean [] real   = new boolean [aggs.length];
+        List <String> names = Arrays.asList (attribute);
+        for (int a = 0; a < aggs.length; a++) {
+            int open = aggs [a].indexOf ('(');
+            if (open < 0 || ! aggs [a].endsWith (")")) {
+                System.out.println ("groupBy ERROR: bad aggregate " + aggs [a]);
+                return null;
+            } // if
+            String f   = aggs [a].substring (0, open).toLowerCase ();
+            String arg = aggs [a].substring (open + 1, aggs [a].length () - 1);
+            fn [a]     = Arrays.asList (NAMES).indexOf (f);
+            aggCol [a] = arg.equals ("*") ? -1 : names.indexOf (arg);
+            if (fn [a] < 0 || (aggCol [a] < 0 && ! (arg.equals ("*") && fn [a] == COUNT))) {
+                System.out.println ("groupBy ERROR: bad aggregate " + aggs [a]);
+                return null;
+            } // if
+            Class dom = (aggCol [a] < 0) ? null : domain [aggCol [a]];
+            if ((fn [a] == SUM || fn [a] == AVG) && ! Number.class.isAssignableFrom (dom)) {
+                System.out.println ("groupBy ERROR: " + aggs [a] + " is not numeric");
+                return null;
+            } // if
+            real [a] = dom == Double.class || dom == Float.class;
+        } // for
+        return new HashAggregator (groupCols, fn, aggCol, real, budget);
+    } // parse
+
+    /********************************************************************************
+     * Return the domains of the aggregate values, given the domains of the tuples:
+     * COUNT and integral SUM are Long, real SUM and AVG are Double, and MIN and MAX
+     * have the domain of their column.
+     *
+     * @param domain  the domains of the tuples
+     * @return  the aggregate domains
+     */
+    Class [] domains (Class [] domain)
+    {
+        Class [] dom = new Class [fn.length];
+        for (int a = 0; a < fn.length; a++) {
+            switch (fn [a]) {
+            case COUNT: dom [a] = Long.class;                           break;
+            case SUM:   dom [a] = real [a] ? Double.class : Long.class; break;
+            case AVG:   dom [a] = Double.class;                         break;
+            default:    dom [a] = domain [aggCol [a]];
+            } // switch
+        } // for
+        return dom;
+    } // domains
+
+    /********************************************************************************
+     * Return a new empty aggregator with the same aggregates and budget.
+     *
+     * @return  the empty aggregator
+     */
+    HashAggregator copy ()
+    {
+        return copy (budget);
+    } // copy
+
+    /********************************************************************************
+     * Return a new empty aggregator with the same aggregates and the given budget.
+     *
+     * @param _budget  the memory budget in bytes
+     * @return  the empty aggregator
+     */
+    HashAggregator copy (long _budget)
+    {
+        return new HashAggregator (groupCols, fn, aggCol, real, _budget);
+    } // copy
+
+    /********************************************************************************
+     * Add a tuple to its group, creating the group if needed.  Nothing is done once the
+     * budget has been exceeded.  Groups are numbered in order of creation.
+     *
+     * @param t  the tuple
+     * @return  the number of the tuple's group, or -1 if the budget was exceeded
+     */
+    int add (Comparable [] t)
+    {
+        if (overflow) return -1;
+        int h = hash (t, groupCols);
+        int g = find (t, groupCols, h);
+        if (g < 0) {
+            Comparable [] k = new Comparable [groupCols.length];
+            for (int j = 0; j < k.length; j++) k [j] = t [groupCols [j]];
+            if ((g = insert (k, h)) < 0) return -1;
+        } // if
+
+        int base = g * fn.length;
+        for (int a = 0; a < fn.length; a++) {
+            Comparable v = (aggCol [a] < 0) ? Boolean.TRUE : t [aggCol [a]];
+            if (v == null) continue;
+            accumulate (base + a, a, v);
+        } // for
+        return g;
+    } // add
+
+    /********************************************************************************
+     * Merge the groups of another aggregator into this one.
+     *
+     * @param other  the other aggregator
+     * @return  this aggregator
+     */
+    @SuppressWarnings("unchecked")
+    HashAggregator merge (HashAggregator other)
+    {
+        if (other.overflow) overflow = true;
+        int [] identity = identity ();
+        for (int o = 0; o < other.groups && ! overflow; o++) {
+            Comparable [] k = other.keys [o];
+            int g = find (k, identity, other.hashes [o]);
+            if (g < 0 && (g = insert (k, other.hashes [o])) < 0) break;
+            for (int a = 0, base = g * fn.length, obase = o * fn.length; a < fn.length; a++) {
+                if (other.cnt [obase + a] == 0) continue;
+                cnt [base + a]  += other.cnt [obase + a];
+                lsum [base + a] += other.lsum [obase + a];
+                dsum [base + a] += other.dsum [obase + a];
+                Comparable x = ext [base + a], y = other.ext [obase + a];
+                if (x == null || (fn [a] == MIN ? y.compareTo (x) < 0 : fn [a] == MAX && y.compareTo (x) > 0)) {
+                    ext [base + a] = y;
+                } // if
+            } // for
+        } // for
+        return this;
+    } // merge
+
+    /********************************************************************************
+     * Return whether the memory budget was exceeded (the results are then incomplete).
+     *
+     * @return  whether the aggregator overflowed
+     */
+    boolean overflowed ()
+    {
+        return overflow;
+    } // overflowed
+
+    /********************************************************************************
+     * Return the number of groups.
+     *
+     * @return  the group count
+     */
+    int size ()
+    {
+        return groups;
+    } // size
+
+    /********************************************************************************
+     * Return one tuple per group: the group key followed by the aggregate values.
+     * COUNT and integral SUM are Longs, real SUM and AVG are Doubles, and MIN and MAX
+     * are values of the column.  Aggregates over no non-null values are null (except
+     * COUNT, which is 0).
+     *
+     * @return  the result tuples
+     */
+    List <Comparable []> rows ()
+    {
+        List <Comparable []> rows = new ArrayList <> (groups);
+        for (int g = 0; g < groups; g++) rows.add (row (g));
+        return rows;
+    } // rows
+
+    /********************************************************************************
+     * Return the tuple of one group: its key followed by its aggregate values (as for
+     * rows).
+     *
+     * @param g  the group number
+     * @return  the result tuple
+     */
+    Comparable [] row (int g)
+    {
+        int width = groupCols.length;
+        Comparable [] t = Arrays.copyOf (keys [g], width + fn.length);
+        for (int a = 0, s = g * fn.length; a < fn.length; a++, s++) {
+            boolean none = cnt [s] == 0;
+            switch (fn [a]) {
+            case COUNT: t [width + a] = cnt [s]; break;
+            case SUM:   t [width + a] = none ? null : real [a] ? (Comparable) dsum [s] : (Comparable) lsum [s]; break;
+            case AVG:   t [width + a] = none ? null : (real [a] ? dsum [s] : (double) lsum [s]) / cnt [s]; break;
+            default:    t [width + a] = ext [s];
+            } // switch
+        } // for
+        return t;
+    } // row
+
+    /********************************************************************************
+     * Return the aggregate values of no tuples: COUNT is 0 and the others are null.
+     *
+     * @return  the aggregate values
+     */
+    Comparable [] empty ()
+    {
+        Comparable [] t = new Comparable [fn.length];
+        for (int a = 0; a < fn.length; a++) if (fn [a] == COUNT) t [a] = 0L;
+        return t;
+    } // empty
+
+    /********************************************************************************
+     * Remove all groups.
+     */
+    void clear ()
+    {
+        keys   = new Comparable [16][];
+        hashes = new int [16];
+        slots  = new int [32];
+        cnt = lsum = null;
+        dsum = null;
+        ext  = null;
+        allocate (16);
+        groups   = 0;
+        bytes    = 0;
+        overflow = false;
+    } // clear
+
+    //-----------------------------------------------------------------------------------
+    // Private methods
+    //-----------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Fold value v into aggregate state s (aggregate a).
+     */
+    @SuppressWarnings("unchecked")
+    private void accumulate (int s, int a, Comparable v)
+    {
+        cnt [s]++;
+        switch (fn [a]) {
+        case SUM: case AVG:
+            if (real [a]) dsum [s] += ((Number) v).doubleValue ();
+            else          lsum [s] += ((Number) v).longValue ();
+            break;
+        case MIN:
+            if (ext [s] == null || v.compareTo (ext [s]) < 0) ext [s] = v;
+            break;
+        case MAX:
+            if (ext [s] == null || v.compareTo (ext [s]) > 0) ext [s] = v;
+            break;
+        default:
+        } // switch
+    } // accumulate
+
+    /********************************************************************************
+     * Return the hash code of the given columns of a tuple (as Arrays.hashCode on the
+     * extracted key), spread so that linear probing sees well-mixed low bits.
+     */
+    private static int hash (Comparable [] t, int [] cols)
+    {
+        int h = 1;
+        for (int c : cols) h = 31 * h + (t [c] == null ? 0 : t [c].hashCode ());
+        return h ^ (h >>> 16);
+    } // hash
+
+    /********************************************************************************
+     * Return the group whose key equals the given columns of t, or -1 if none.
+     */
+    private int find (Comparable [] t, int [] cols, int h)
+    {
+        int mask = slots.length - 1;
+        for (int i = h & mask; slots [i] != 0; i = (i + 1) & mask) {
+            int g = slots [i] - 1;
+            if (hashes [g] == h && sameKey (keys [g], t, cols)) return g;
+        } // for
+        return -1;
+    } // find
+
+    /********************************************************************************
+     * Return whether key k equals the given columns of t.
+     */
+    private static boolean sameKey (Comparable [] k, Comparable [] t, int [] cols)
+    {
+        for (int j = 0; j < cols.length; j++) {
+            if (! Objects.equals (k [j], t [cols [j]])) return false;
+        } // for
+        return true;
+    } // sameKey
+
+    /********************************************************************************
+     * Add a new group with the given key, or set overflow and return -1 if it would
+     * exceed the budget.
+     */
+    private int insert (Comparable [] k, int h)
+    {
+        long need = ExternalSort.estimate (k) + 24L * fn.length + 16;
+        if (bytes + need > budget && groups > 0) {
+            overflow = true;
+            return -1;
+        } // if
+        bytes += need;
+
+        if (groups == keys.length) {
+            keys   = Arrays.copyOf (keys, 2 * groups);
+            hashes = Arrays.copyOf (hashes, 2 * groups);
+            allocate (2 * groups);
+        } // if
+        if (2 * (groups + 1) > slots.length) rehash ();
+
+        int g = groups++;
+        keys [g]   = k;
+        hashes [g] = h;
+        int mask = slots.length - 1, i = h & mask;
+        while (slots [i] != 0) i = (i + 1) & mask;
+        slots [i] = g + 1;
+        return g;
+    } // insert
+
+    /********************************************************************************
+     * Double the hash table, keeping the load factor at most one half.
+     */
+    private void rehash ()
+    {
+        slots = new int [2 * slots.length];
+        int mask = slots.length - 1;
+        for (int g = 0; g < groups; g++) {
+            int i = hashes [g] & mask;
+            while (slots [i] != 0) i = (i + 1) & mask;
+            slots [i] = g + 1;
+        } // for
+    } // rehash
+
+    /********************************************************************************
+     * Grow the aggregate state arrays to hold the given number of groups.
+     */
+    private void allocate (int capacity)
+    {
+        int n = capacity * fn.length;
+        cnt  = (cnt  == null) ? new long [n]       : Arrays.copyOf (cnt, n);
+        lsum = (lsum == null) ? new long [n]       : Arrays.copyOf (lsum, n);
+        dsum = (dsum == null) ? new double [n]     : Arrays.copyOf (dsum, n);
+        ext  = (ext  == null) ? new Comparable [n] : Arrays.copyOf (ext, n);
+    } // allocate
+
+    /********************************************************************************
+     * Return the positions 0 .. k-1 of the key columns.
+     */
+    private int [] identity ()
+    {
+        int [] cols = new int [groupCols.length];
+        for (int j = 0; j < cols.length; j++) cols [j] = j;
+        return cols;
+    } // identity
+
+} // HashAggregator class
@@ -0,0 +1,105 @@
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+public class HashAggregatorTest {
+
+    /**
+     *
+     * Creates a transcript table with n grades spread over 50 courses.
+     *
+     * @return transcript table
+     *
+     */
+
+    public Table transcriptTable(int n) {
+
+	Table transcript = new Table("transcript", "studId crsCode grade points",
+				     "Integer String String Double", "studId crsCode");
+	for (int i = 0; i < n; i++) {
+	    transcript.insert(new Comparable [] { i, "crs" + (i % 50), "ABCDF".substring(i / 50 % 5, i / 50 % 5 + 1),
+						  i % 7 == 0 ? null : (double) (i % 5) });
+	}
+	return transcript;
+    }
+
+    /**
+     *
+     * Converts a result table to a map from the group values to the
+     * aggregate values.
+     *
+     */
+
+    private Map<List<Comparable>, List<Comparable>> groups(Table t, int width) {
+
+	Map<List<Comparable>, List<Comparable>> m = new HashMap<>();
+	for (int i = 0; i < t.tuplesLength(); i++) {
+	    List<Comparable> row = Arrays.asList(t.getTuple(i));
+	    m.put(row.subList(0, width), row.subList(width, row.size()));
+	}
+	return m;
+    }
+
+    /**
+     *
+     * Tests the aggregates of a grade distribution per course against
+     * values computed directly.
+     *
+     */
+
+    @Test
+    public void testGroupBy() {
+
+	Table transcript = transcriptTable(10000);
+	Table dist = transcript.groupBy("crsCode grade", "count(*)");
+	assertEquals(50 * 5, dist.tuplesLength());
+	Map<List<Comparable>, List<Comparable>> m = groups(dist, 2);
+	assertEquals(Arrays.asList((Comparable) 40L), m.get(Arrays.asList("crs0", "A")));
+
+	Table stats = transcript.groupBy("crsCode", "count(points) sum(studId) avg(points) min(grade) max(studId)");
+	assertEquals(50, stats.tuplesLength());
+	List<Comparable> crs7 = groups(stats, 1).get(Arrays.asList("crs7"));
+	long n = 0, sum = 0; double points = 0; int max = 0;
+	for (int i = 7; i < 10000; i += 50) {
+	    sum += i;
+	    max = i;
+	    if (i % 7 != 0) { n++; points += i % 5; }
+	}
+	assertEquals(Arrays.asList((Comparable) n, sum, points / n, "A", max), crs7);
+
+	Table all = transcript.groupBy("", "count(*) max(points)");
+	assertArrayEquals(new Comparable [] { 10000L, 4.0 }, all.getTuple(0));
+	assertArrayEquals(new Comparable [] { 0L, null }, transcriptTable(0).groupBy("", "count(*) max(points)").getTuple(0));
+	assertNull(transcript.groupBy("crsCode", "sum(grade)"));
+    }
+
+    /**
+     *
+     * Tests that aggregation falls back to sorting when the groups
+     * exceed the memory budget, with the same results.
+     *
+     */
+
+    @Test
+    public void testSortFallback() {
+
+	Table transcript = transcriptTable(20000);
+	Table hashed = transcript.groupBy("studId", "count(*) sum(points)");
+
+	HashAggregator agg = new HashAggregator(new int [] { 0 }, new int [] { HashAggregator.COUNT },
+						new int [] { -1 }, new boolean [1], 4096);
+	for (int i = 0; i < transcript.tuplesLength(); i++) agg.add(transcript.getTuple(i));
+	assertTrue(agg.overflowed());
+
+	ExternalSort.setDefaultBudget(4096);
+	try {
+	    Table sorted = transcript.groupBy("studId", "count(*) sum(points)");
+	    assertEquals(20000, sorted.tuplesLength());
+	    assertEquals(groups(hashed, 1), groups(sorted, 1));
+	} finally {
+	    ExternalSort.setDefaultBudget(64L << 20);
+	}
+    }
+}
@@ -0,0 +1,167 @@
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class InsertAllTest {
+
+    /**
+     *
+     * Creates n shuffled student tuples, with the last id repeated.
+     *
+     * @return the tuples
+     *
+     */
+
+    public List<Comparable []> students(int n) {
+
+	List<Comparable []> tups = new ArrayList<>();
+	for (int i = 0; i < n; i++) tups.add(new Comparable [] { i, "name" + i, 3.5 });
+	Collections.shuffle(tups, new Random(n));
+	tups.add(new Comparable [] { n - 1, "again", 2.0 });
+	return tups;
+    }
+
+    /**
+     *
+     * Tests that a bulk insert gives every map type the same tuples and
+     * index as inserting the tuples one by one.
+     *
+     */
+
+    @Test
+    public void testMatchesInsert() {
+
+	try {
+	    for (String type : new String [] { "TREE_MAP", "LINHASH_MAP", "BPTREE_MAP", "NO_MAP" }) {
+		Table.setMapType(type);
+		for (int n : new int [] { 10, 20000 }) {
+		    List<Comparable []> tups = students(n);
+		    Table bulk = new Table("bulk" + type + n, "id name gpa", "Integer String Double", "id");
+		    Table single = new Table("single" + type + n, "id name gpa", "Integer String Double", "id");
+		    assertEquals(n + 1, bulk.insertAll(tups));
+		    for (Comparable [] t : tups) single.insert(t);
+
+		    assertEquals(single.tuplesLength(), bulk.tuplesLength());
+		    assertEquals(5, single.select(new KeyType(3), new KeyType(7)).tuplesLength());
+		    assertEquals(5, bulk.select(new KeyType(3), new KeyType(7)).tuplesLength());
+		    assertEquals(0, bulk.select(new KeyType(7), new KeyType(3)).tuplesLength());
+		    if (type.equals("NO_MAP")) continue;
+		    for (int k : new int [] { 0, n / 2, n - 1, n }) {
+			KeyType key = new KeyType(k);
+			assertEquals(single.select(key).tuplesLength(), bulk.select(key).tuplesLength());
+		    }
+		    assertEquals(single.select(new KeyType(n - 1)).rows().get(0)[1],
+				 bulk.select(new KeyType(n - 1)).rows().get(0)[1]);
+		    assertEquals(5, bulk.insertAll(Stream.of(students(5).subList(0, 5).toArray(new Comparable [5][]))
+						   .map(t -> new Comparable [] { (Integer) t[0] + n, t[1], t[2] })));
+		    assertEquals(1, bulk.select(new KeyType(n + 2)).tuplesLength());
+		}
+	    }
+	} finally {
+	    Table.setMapType("BPTREE_MAP");
+	}
+    }
+
+    /**
+     *
+     * Tests that the batch type check rejects tuples of the wrong arity or
+     * domains, and that listeners see the batch once.
+     *
+     */
+
+    @Test
+    public void testTypeCheckAndListeners() {
+
+	Table t = new Table("checked", "id name gpa", "Integer String Double", "id");
+	List<List<Comparable []>> deltas = new ArrayList<>();
+	t.addInsertListener(deltas::add);
+	Comparable [][] tups = {
+	    { 1, "a", 1.0 },
+	    { 2, "b" },
+	    { 3, "c", 3 },
+	    { 4, 4, 4.0 },
+	    { 5, "e", 5.0 }
+	};
+	assertEquals(2, t.insertAll(tups));
+	assertEquals(2, t.tuplesLength());
+	assertEquals(1, deltas.size());
+	assertEquals(2, deltas.get(0).size());
+	assertFalse(t.insert(new Comparable [] { 6, "f", 6.0f }));
+	assertTrue(t.insert(new Comparable [] { 6, "f", 6.0 }));
+    }
+
+    /**
+     *
+     * Tests that inserts reject tuples with a null key value, one by one
+     * or in bulk, and index the rest, in both the packed and the general
+     * key sort.
+     *
+     */
+
+    @Test
+    public void testNullKeys() {
+
+	Table t = new Table("nullKeys", "id name gpa", "Integer String Double", "id");
+	Table u = new Table("nullKeys2", "id name gpa", "Integer String Double", "id name");
+	Comparable [][] tups = {
+	    { 2, "b", 2.0 },
+	    { null, "x", 0.0 },
+	    { 1, null, 1.0 },
+	    { 3, "c", 3.0 }
+	};
+	assertEquals(3, t.insertAll(tups));
+	assertEquals(2, u.insertAll(tups));
+	assertEquals(1, t.select(new KeyType(1)).tuplesLength());
+	assertEquals(1, u.select(new KeyType(3, "c")).tuplesLength());
+	assertNull(u.select(new KeyType(1, "b")).rows().get(0)[0]);
+	assertFalse(t.insert(new Comparable [] { null, "y", 1.0 }));
+	assertFalse(u.insert(new Comparable [] { 4, null, 1.0 }));
+	assertTrue(u.insert(new Comparable [] { 4, "d", null }));
+	assertEquals(3, u.tuplesLength());
+    }
+
+    /**
+     *
+     * Tests that the sorted view the TreeMap is loaded from answers
+     * lookups and sub-range views like a TreeMap.
+     *
+     */
+
+    @Test
+    public void testSortedRun() {
+
+	TreeMap<KeyType, Comparable []> expected = new TreeMap<>();
+	KeyType [] keys = new KeyType [10];
+	Comparable [][] tups = new Comparable [10][];
+	for (int i = 0; i < 10; i++) {
+	    keys[i] = new KeyType(2 * i);
+	    tups[i] = new Comparable [] { 2 * i };
+	    expected.put(keys[i], tups[i]);
+	}
+	SortedMap<KeyType, Comparable []> run = new Table.SortedRun(keys, tups);
+	assertEquals(expected, run);
+	assertSame(tups[3], run.get(new KeyType(6)));
+	assertNull(run.get(new KeyType(7)));
+	for (int from = -1; from <= 20; from++) {
+	    KeyType f = new KeyType(from);
+	    assertEquals(expected.tailMap(f), run.tailMap(f));
+	    assertEquals(expected.headMap(f), run.headMap(f));
+	    for (int to = from; to <= 21; to++) {
+		KeyType t = new KeyType(to);
+		SortedMap<KeyType, Comparable []> sub = run.subMap(f, t);
+		assertEquals(expected.subMap(f, t), sub);
+		assertEquals(expected.subMap(f, t).keySet(), sub.headMap(t).tailMap(f).keySet());
+		if (! sub.isEmpty()) {
+		    assertEquals(expected.subMap(f, t).firstKey(), sub.firstKey());
+		    assertEquals(expected.subMap(f, t).lastKey(), sub.lastKey());
+		}
+	    }
+	}
+	TreeMap<KeyType, Comparable []> loaded = new TreeMap<>();
+	loaded.putAll(run.subMap(keys[2], keys[7]));
+	assertEquals(expected.subMap(keys[2], keys[7]), loaded);
+    }
+}
@@ -42,6 +42,15 @@ public class KeyType
          for (int i = 1; i < key.length; i++) key [i] = keys [i-1];
     } // constructor
 
+    /*************************************************************************************
+     * Return the attribute values making up this key.
+     * @return  the array of key values
+     */
+    public Comparable [] getKey ()
+    {
+        return key;
+    } // getKey
+
     /*************************************************************************************
      * Compare two keys (negative => less than, zero => equals, positive => greater than).
      * @param k  the other key (to compare with this)
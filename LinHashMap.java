@@ -358,6 +358,22 @@ public class LinHashMap <K, V>
 		}
     }
 
+    /********************************************************************************
+     * Size the hash table of an empty map with enough home buckets to hold n entries
+     * at half load, so a bulk load can use putNoSplit without long overflow chains.
+     * @param n  the number of entries expected
+     */
+    public void reserve (int n)
+    {
+        for (Bucket b : hTable) if (b.nKeys != 0) return;               // not empty
+        int buckets = Integer.highestOneBit (Math.max (1, 2 * n / SLOTS - 1)) << 1;
+        hTable.clear ();
+        for (int i = 0; i < buckets; i++) hTable.add (new Bucket (null));
+        mod1  = buckets;
+        mod2  = 2 * mod1;
+        split = 0;
+    } // reserve
+
     /********************************************************************************
      * Return the size (SLOTS * number of home buckets) of the hash table. 
      * @return  the size of the hash table
@@ -0,0 +1,101 @@
+
+/*****************************************************************************************
+ * @file  LruPolicy.java
+ */
+
+import java.util.function.IntPredicate;
+
+/*****************************************************************************************
+ * The LruPolicy class evicts the least recently used page.  Frames are kept in a doubly
+ * linked list (held in int arrays) from least to most recently used.  Pages accessed
+ * sequentially are placed at the least recently used end instead of the most recently
+ * used end, so a scan only recycles its own frames.
+ */
+public class LruPolicy
+       implements EvictionPolicy
+{
+    /** Previous and next frames in the list (-1 for none).
+     */
+    private int [] prev, next;
+
+    /** Whether each frame is in the list.
+     */
+    private boolean [] linked;
+
+    /** Least and most recently used ends of the list (-1 if empty).
+     */
+    private int head = -1, tail = -1;
+
+    /*************************************************************************************
+     * Initialize the policy for a pool with the given number of frames.
+     * @param frames  the number of frames in the pool
+     */
+    public void init (int frames)
+    {
+        prev   = new int [frames];
+        next   = new int [frames];
+        linked = new boolean [frames];
+    } // init
+
+    /*************************************************************************************
+     * Record that a page has been loaded into a frame.
+     */
+    public void admit (int frame, long page, boolean sequential)
+    {
+        access (frame, sequential);
+    } // admit
+
+    /*************************************************************************************
+     * Move the frame to the most recently used end (least for sequential accesses).
+     */
+    public void access (int frame, boolean sequential)
+    {
+        if (linked [frame]) unlink (frame);
+        if (sequential) {
+            prev [frame] = -1;
+            next [frame] = head;
+            if (head >= 0) prev [head] = frame; else tail = frame;
+            head = frame;
+        } else {
+            next [frame] = -1;
+            prev [frame] = tail;
+            if (tail >= 0) next [tail] = frame; else head = frame;
+            tail = frame;
+        } // if
+        linked [frame] = true;
+    } // access
+
+    /*************************************************************************************
+     * Evict the least recently used unpinned frame.
+     */
+    public int victim (IntPredicate evictable)
+    {
+        for (int f = head; f >= 0; f = next [f]) {
+            if (evictable.test (f)) {
+                unlink (f);
+                return f;
+            } // if
+        } // for
+        return -1;
+    } // victim
+
+    /*************************************************************************************
+     * Forget a frame.
+     */
+    public void remove (int frame)
+    {
+        if (linked [frame]) unlink (frame);
+    } // remove
+
+    /*************************************************************************************
+     * Remove a frame from the list.
+     * @param f  the frame to remove
+     */
+    private void unlink (int f)
+    {
+        if (prev [f] >= 0) next [prev [f]] = next [f]; else head = next [f];
+        if (next [f] >= 0) prev [next [f]] = prev [f]; else tail = prev [f];
+        linked [f] = false;
+    } // unlink
+
+} // LruPolicy class
@@ -0,0 +1,357 @@
+
+/****************************************************************************************
+ * @file  MappedTableFile.java
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/****************************************************************************************
+ * The MappedTableFile class provides read access to a table file (see TableFile) that
+ * is memory-mapped rather than read into the heap.  Opening a file only reads its
+ * header and page directory; data pages are faulted in by the OS when a tuple on them
+ * is first accessed, and their checksum is verified at that time.  Tuples are decoded
+ * on every access, so the heap holds no table data and the OS page cache holding the
+ * pages is shared by all processes mapping the same file.  Column pages are decoded a
+ * page at a time, and the most recently decoded page is kept for the next access.
+ * Keyed lookups sort the key columns once, on first use, and then binary search them.
+ */
+class MappedTableFile
+       implements Closeable
+{
+    /** Number of pages per mapped segment (a single mapping is limited to 2 GB).
+     */
+    private static final int SEG_PAGES = (1 << 30) / TableFile.PAGE_SIZE;
+
+    /** Header of the mapped file.
+     */
+    final TableFile.Header header;
+
+    /** Channel for the mapped file.
+     */
+    private final FileChannel ch;
+
+    /** Ordinal (within the file) of the first tuple on each data page, plus a sentinel.
+     */
+    private final long [] start;
+
+    /** Checksums of the data pages from the page directory.
+     */
+    private final int [] crcs;
+
+    /** Lazily created mappings of the data pages, SEG_PAGES pages per segment.
+     */
+    private final AtomicReferenceArray <ByteBuffer> seg;
+
+    /** Which data pages have had their checksum verified.
+     */
+    private final BitSet verified;
+
+    /** The most recently decoded column page: {page number, tuples}.
+     */
+    private volatile Object [] lastPage;
+
+    /** The sorted key columns built by the first keyed lookup (null until then).
+     */
+    private volatile KeyIndex keyIndex;
+
+    /************************************************************************************
+     * Open and map the table file at the given path.
+     *
+     * @param path  the path of the table file
+     * @throws IOException  if the file is missing or not a valid table file
+     */
+    MappedTableFile (String path) throws IOException
+    {
+        ch = FileChannel.open (Paths.get (path), READ);
+        try {
+            header = TableFile.readHeader (ch);
+            int [][] dir = TableFile.readDirectory (ch, header);
+            start = new long [header.dataPages + 1];
+            for (int p = 0; p < header.dataPages; p++) start [p+1] = start [p] + dir [0][p];
+            crcs = dir [1];
+        } catch (IOException ex) {
+            ch.close ();
+            throw ex;
+        } // try
+        seg      = new AtomicReferenceArray <> ((header.dataPages + SEG_PAGES - 1) / SEG_PAGES);
+        verified = new BitSet (header.dataPages);
+    } // constructor
+
+    /************************************************************************************
+     * Return the number of tuples in the file.
+     *
+     * @return  the tuple count
+     */
+    long size ()
+    {
+        return header.tupleCount;
+    } // size
+
+    /************************************************************************************
+     * Return the i-th tuple of the file, decoded from its mapped page.
+     *
+     * @param i  the ordinal of the tuple within the file
+     * @return  the tuple
+     */
+    Comparable [] get (long i)
+    {
+        int p = pageOf (i);
+        if (isColumnPage (p)) return columnPage (p) [(int) (i - start [p])].clone ();
+        return TupleCodec.read (position (p, i), header.types);
+    } // get
+
+    /************************************************************************************
+     * Return only the given columns of the i-th tuple (other columns are skipped, not
+     * decoded).
+     *
+     * @param i     the ordinal of the tuple within the file
+     * @param cols  the ascending column positions to decode
+     * @return  the values of the columns
+     */
+    Comparable [] get (long i, int [] cols)
+    {
+        int p = pageOf (i);
+        if (isColumnPage (p)) {
+            Comparable [] t    = columnPage (p) [(int) (i - start [p])];
+            Comparable [] vals = new Comparable [cols.length];
+            for (int j = 0; j < cols.length; j++) vals [j] = t [cols [j]];
+            return vals;
+        } // if
+        return TupleCodec.read (position (p, i), header.types, cols);
+    } // get
+
+    /************************************************************************************
+     * Return the ordinals of the tuples whose key columns fall in [lo, hi], in file
+     * order.  A point lookup passes the same key for lo and hi.  The first lookup on
+     * given key columns decodes them for all tuples and sorts them; later lookups on
+     * the same columns binary search the sorted keys.
+     *
+     * @param cols  the positions of the key columns (in key order)
+     * @param lo    the lower bound on the key (inclusive)
+     * @param hi    the upper bound on the key (inclusive)
+     * @return  the ordinals of the matching tuples
+     */
+    List <Long> find (int [] cols, KeyType lo, KeyType hi)
+    {
+        if (header.tupleCount > Integer.MAX_VALUE) return scan (cols, lo, hi);
+        KeyIndex idx = keyIndex;
+        if (idx == null || ! Arrays.equals (idx.cols, cols)) {
+            synchronized (this) {
+                if ((idx = keyIndex) == null || ! Arrays.equals (idx.cols, cols)) keyIndex = idx = new KeyIndex (cols);
+            } // synchronized
+        } // if
+
+        KeyType [] keys = idx.keys;
+        int lower = 0, upper = keys.length;                          // first key >= lo
+        while (lower < upper) {
+            int mid = (lower + upper) >>> 1;
+            if (keys [mid].compareTo (lo) < 0) lower = mid + 1; else upper = mid;
+        } // while
+        List <Long> hits = new ArrayList <> ();
+        for (int r = lower; r < keys.length && keys [r].compareTo (hi) <= 0; r++) hits.add ((long) idx.ord [r]);
+        if (hits.size () > 1) Collections.sort (hits);
+        return hits;
+    } // find
+
+    /************************************************************************************
+     * Return the ordinals of the tuples whose key columns fall in [lo, hi] by scanning
+     * the file, decoding only the key columns (see find).
+     */
+    private List <Long> scan (int [] cols, KeyType lo, KeyType hi)
+    {
+        List <Long> hits = new ArrayList <> ();
+        forEachKey (cols, (i, k) -> {
+            if (k.compareTo (lo) >= 0 && k.compareTo (hi) <= 0) hits.add (i);
+        });
+        return hits;
+    } // scan
+
+    /************************************************************************************
+     * Pass the ordinal and key of each tuple, in file order, to the action, decoding
+     * only the key columns.
+     *
+     * @param cols    the positions of the key columns (in key order)
+     * @param action  the action taking the ordinal and the key
+     */
+    void forEachKey (int [] cols, java.util.function.BiConsumer <Long, KeyType> action)
+    {
+        int [] sorted = cols.clone ();
+        Arrays.sort (sorted);
+        int [] perm = new int [cols.length];                        // key order -> sorted order
+        for (int j = 0; j < cols.length; j++) perm [j] = Arrays.binarySearch (sorted, cols [j]);
+
+        for (int p = 0; p < header.dataPages; p++) {
+            int n = (int) (start [p+1] - start [p]);
+            Comparable [][] keys = null;
+            if (isColumnPage (p)) {                                 // decode just the key columns
+                keys = ColumnCodec.decode (page (p), (p % SEG_PAGES) * TableFile.PAGE_SIZE, n,
+                                           header.types, sorted);
+            } // if
+            for (int r = 0; r < n; r++) {
+                long i = start [p] + r;
+                Comparable [] vals = (keys != null) ? keys [r]
+                                                    : TupleCodec.read (position (p, i), header.types, sorted);
+                Comparable [] keyVal = new Comparable [cols.length];
+                for (int j = 0; j < cols.length; j++) keyVal [j] = vals [perm [j]];
+                action.accept (i, new KeyType (keyVal));
+            } // for
+        } // for
+    } // forEachKey
+
+    /************************************************************************************
+     * Return a read-only list view of the tuples, decoding each tuple when accessed.
+     *
+     * @return  the list of tuples
+     */
+    List <Comparable []> tuples ()
+    {
+        if (header.tupleCount > Integer.MAX_VALUE) {
+            throw new UnsupportedOperationException ("MappedTableFile: too many tuples for a List view");
+        } // if
+        return new AbstractList <Comparable []> () {
+            public Comparable [] get (int i) { return MappedTableFile.this.get (i); }
+            public int size ()               { return (int) header.tupleCount; }
+        };
+    } // tuples
+
+    /************************************************************************************
+     * Close the channel.  The mappings remain valid until they are garbage collected.
+     */
+    public void close () throws IOException
+    {
+        ch.close ();
+    } // close
+
+    /************************************************************************************
+     * Return the data page holding the i-th tuple.
+     *
+     * @param i  the ordinal of the tuple within the file
+     * @return  the data page number (0-based)
+     */
+    private int pageOf (long i)
+    {
+        if (i < 0 || i >= header.tupleCount) throw new IndexOutOfBoundsException ("tuple " + i);
+        int p = Arrays.binarySearch (start, i);
+        if (p < 0) p = -p - 2;
+        while (start [p+1] == i) p++;                               // skip empty pages
+        return p;
+    } // pageOf
+
+    /************************************************************************************
+     * Return whether data page p is a column page.
+     *
+     * @param p  the data page number (0-based)
+     * @return  whether the page is column-encoded
+     */
+    private boolean isColumnPage (int p)
+    {
+        return page (p).get ((p % SEG_PAGES) * TableFile.PAGE_SIZE) == TableFile.COL_PAGE;
+    } // isColumnPage
+
+    /************************************************************************************
+     * Return the decoded tuples of column page p, reusing the last decoded page.
+     *
+     * @param p  the data page number (0-based)
+     * @return  the tuples on the page
+     */
+    private Comparable [][] columnPage (int p)
+    {
+        Object [] last = lastPage;
+        if (last != null && (Integer) last [0] == p) return (Comparable [][]) last [1];
+        Comparable [][] rows = ColumnCodec.decode (page (p), (p % SEG_PAGES) * TableFile.PAGE_SIZE,
+                                                   (int) (start [p+1] - start [p]), header.types, null);
+        lastPage = new Object [] { p, rows };
+        return rows;
+    } // columnPage
+
+    /************************************************************************************
+     * Return a buffer positioned at the encoding of the i-th tuple on row page p.
+     *
+     * @param p  the data page holding the tuple
+     * @param i  the ordinal of the tuple within the file
+     * @return  a buffer (private to the caller) positioned at the tuple
+     */
+    private ByteBuffer position (int p, long i)
+    {
+        ByteBuffer buf = page (p);
+        int base = (p % SEG_PAGES) * TableFile.PAGE_SIZE;
+        buf.position (base + TableFile.slot (buf, base, (int) (i - start [p])));
+        return buf;
+    } // position
+
+    /************************************************************************************
+     * Return a buffer over the segment containing data page p, mapping the segment and
+     * verifying the page's checksum on first use.
+     *
+     * @param p  the data page number (0-based)
+     * @return  a duplicate of the segment's buffer
+     */
+    private ByteBuffer page (int p)
+    {
+        int s = p / SEG_PAGES;
+        ByteBuffer b = seg.get (s);
+        if (b == null) {
+            synchronized (seg) {
+                if ((b = seg.get (s)) == null) {
+                    long from  = (long) (1 + s * SEG_PAGES) * TableFile.PAGE_SIZE;
+                    int  pages = Math.min (SEG_PAGES, header.dataPages - s * SEG_PAGES);
+                    try {
+                        b = ch.map (FileChannel.MapMode.READ_ONLY, from, (long) pages * TableFile.PAGE_SIZE);
+                        seg.set (s, b);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException (ex);
+                    } // try
+                } // if
+            } // synchronized
+        } // if
+        b = b.duplicate ();
+        if (! verified.get (p)) {
+            int base = (p % SEG_PAGES) * TableFile.PAGE_SIZE;
+            if (TableFile.crc (b, base, TableFile.PAGE_SIZE) != crcs [p]) {
+                throw new UncheckedIOException (new IOException ("MappedTableFile: checksum mismatch on page "
+                                                                 + (p + 1) + " of " + header.name));
+            } // if
+            synchronized (verified) { verified.set (p); }
+        } // if
+        return b;
+    } // page
+
+    //-----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * The KeyIndex class holds the keys of all tuples on some key columns, sorted, with
+     * the ordinal of each key's tuple.
+     */
+    private final class KeyIndex
+    {
+        final int []      cols;                 // the key columns (in key order)
+        final KeyType []  keys;                 // the sorted keys
+        final int []      ord;                  // the ordinal of the tuple of each key
+
+        KeyIndex (int [] _cols)
+        {
+            cols = _cols.clone ();
+            int n = (int) header.tupleCount;
+            KeyType [] all = new KeyType [n];
+            forEachKey (cols, (i, k) -> all [(int) (long) i] = k);
+            Integer [] order = new Integer [n];
+            for (int r = 0; r < n; r++) order [r] = r;
+            Arrays.sort (order, (x, y) -> all [x].compareTo (all [y]));    // stable: ties in file order
+            keys = new KeyType [n];
+            ord  = new int [n];
+            for (int r = 0; r < n; r++) {
+                keys [r] = all [order [r]];
+                ord [r]  = order [r];
+            } // for
+        } // constructor
+
+    } // KeyIndex
+
+} // MappedTableFile class
@@ -0,0 +1,385 @@
+
+/*****************************************************************************************
+ * @file  MaterializedView.java
+ */
+
+import java.util.*;
+import java.util.function.*;
+
+/*****************************************************************************************
+ * The MaterializedView class keeps the result of a query over tables up to date as
+ * tuples are inserted into them, without recomputing it.  A view is defined by a source
+ * table followed by a pipeline of select, project and equi-join operators, optionally
+ * ending with a group-by.  Once materialized, the view listens to the inserts into the
+ * source and the joined tables and pushes only the inserted tuples (the delta) through
+ * the pipeline, so maintaining the view costs time proportional to the change:
+ *
+ *     select:   delta -> the tuples of the delta satisfying the predicate
+ *     project:  delta -> the projected tuples not seen before
+ *     join:     delta R -> delta R join S   and   delta S -> R join delta S
+ *     group-by: the aggregates of the groups of the delta are updated in place
+ *
+ * Each join keeps hash indexes of both of its inputs on the join attributes, so a
+ * delta on either side is joined by lookups.  Tuples with a null join value never
+ * match.  Tables have no update or delete, so only inserts are propagated.
+ *
+ * #usage new MaterializedView ("gpa", student).join ("id", "studId", transcript)
+ *                                             .groupBy ("id", "avg(grade)").materialize ()
+ */
+public class MaterializedView
+{
+    /** The name of the view (and of its table).
+     */
+    private final String name;
+
+    /** The source table.
+     */
+    private final Table source;
+
+    /** The attributes, domains and key of the output of the pipeline so far.
+     */
+    private String [] attribute;
+    private Class []  domain;
+    private String [] key;
+
+    /** The operators of the pipeline, each mapping a delta of its input to a delta of
+     *  its output.
+     */
+    private final List <UnaryOperator <List <Comparable []>>> stages = new ArrayList <> ();
+
+    /** The definition of the view as relational algebra.
+     */
+    private final StringBuilder definition;
+
+    /** The aggregator of the final group-by, or null if the view has none.
+     */
+    private HashAggregator agg;
+
+    /** The number of group columns of the final group-by.
+     */
+    private int width;
+
+    /** The result tuple of each group of the final group-by, indexed by group number.
+     */
+    private final List <Comparable []> groupRows = new ArrayList <> ();
+
+    /** The materialized result (null until materialize is called).
+     */
+    private Table table;
+
+    /** The insert listeners registered on the tables, for close.
+     */
+    private final List <Table> watched = new ArrayList <> ();
+    private final List <Consumer <List <Comparable []>>> listeners = new ArrayList <> ();
+
+    /*************************************************************************************
+     * Construct the definition of a view over a source table; operators are then added
+     * by select, project, join and groupBy.
+     * @param _name    the name of the view
+     * @param _source  the source table
+     */
+    public MaterializedView (String _name, Table _source)
+    {
+        name       = _name;
+        source     = _source;
+        attribute  = _source.attributes ();
+        domain     = _source.domains ();
+        key        = _source.keys ();
+        definition = new StringBuilder (_source.getName ());
+    } // constructor
+
+    /*************************************************************************************
+     * Add a selection of the tuples satisfying the predicate, which is given tuples of
+     * the pipeline's output so far.
+     * @param predicate  the check condition for tuples
+     * @return  this view
+     */
+    public MaterializedView select (Predicate <Comparable []> predicate)
+    {
+        checkOpen ();
+        definition.append (".select (").append (predicate).append (")");
+        stages.add (delta -> {
+            List <Comparable []> rows = new ArrayList <> ();
+            for (Comparable [] t : delta) if (predicate.test (t)) rows.add (t);
+            return rows;
+        });
+        return this;
+    } // select
+
+    /*************************************************************************************
+     * Add a projection onto the given attributes.  Unless the key of the pipeline's
+     * output is kept, duplicates are eliminated by remembering the tuples produced.
+     * @param attributes  the attributes to project onto
+     * @return  this view
+     */
+    public MaterializedView project (String attributes)
+    {
+        checkOpen ();
+        String [] attrs = attributes.split (" ");
+        int []    cols  = positions (attrs);
+        boolean keyed   = Arrays.asList (attrs).containsAll (Arrays.asList (key));
+        definition.append (".project (").append (attributes).append (")");
+        Set <List <Comparable>> seen = keyed ? null : new HashSet <> ();
+        stages.add (delta -> {
+            List <Comparable []> rows = new ArrayList <> (delta.size ());
+            for (Comparable [] t : delta) {
+                Comparable [] u = new Comparable [cols.length];
+                for (int j = 0; j < cols.length; j++) u [j] = t [cols [j]];
+                if (keyed || seen.add (Arrays.asList (u))) rows.add (u);
+            } // for
+            return rows;
+        });
+        domain    = extract (domain, cols);
+        key       = keyed ? key : attrs;
+        attribute = attrs;
+        return this;
+    } // project
+
+    /*************************************************************************************
+     * Add an equi-join of the pipeline's output with table2, keeping the columns of
+     * both (as Table.join does).  The key of the result is the concatenation of the
+     * keys.
+     * @param attributes1  the attributes of the pipeline's output to be compared
+     * @param attributes2  the attributes of table2 to be compared
+     * @param table2       the rhs table in the join operation
+     * @return  this view
+     */
+    public MaterializedView join (String attributes1, String attributes2, Table table2)
+    {
+        checkOpen ();
+        int [] cols1 = positions (attributes1.split (" "));
+        int [] cols2 = table2.positions (attributes2.split (" "));
+        if (cols2 == null || cols1.length != cols2.length) {
+            throw new IllegalArgumentException ("MaterializedView: bad join attributes " + attributes2);
+        } // if
+        definition.append (".join (").append (attributes1).append (", ").append (attributes2)
+                  .append (", ").append (table2.getName ()).append (")");
+        stages.add (new Join (cols1, cols2, table2));
+        attribute = ArrayUtil.concat (attribute, table2.attributes ());
+        domain    = ArrayUtil.concat (domain, table2.domains ());
+        key       = ArrayUtil.concat (key, table2.keys ());
+        return this;
+    } // join
+
+    /*************************************************************************************
+     * End the pipeline with a group-by on the given attributes computing the given
+     * aggregates ("count(*) sum(a) avg(a) min(a) max(a)"), as Table.groupBy does.
+     * The aggregates of a group are updated in place as its tuples arrive.
+     * @param attributes  the group attributes (may be empty for a single group)
+     * @param aggregates  the aggregates
+     * @return  this view
+     */
+    public MaterializedView groupBy (String attributes, String aggregates)
+    {
+        checkOpen ();
+        String [] g_attrs = attributes.trim ().isEmpty () ? new String [0] : attributes.trim ().split ("\\s+");
+        String [] aggs    = aggregates.trim ().split ("\\s+");
+        int []    cols    = positions (g_attrs);
+        agg = HashAggregator.parse (attribute, domain, cols, aggs, Long.MAX_VALUE);
+        if (agg == null) throw new IllegalArgumentException ("MaterializedView: bad aggregates " + aggregates);
+        definition.append (".groupBy (").append (attributes).append (", ").append (aggregates).append (")");
+        width     = cols.length;
+        domain    = ArrayUtil.concat (extract (domain, cols), agg.domains (domain));
+        key       = (g_attrs.length > 0) ? g_attrs : aggs;
+        attribute = ArrayUtil.concat (g_attrs, aggs);
+        return this;
+    } // groupBy
+
+    /*************************************************************************************
+     * Compute the view from the current contents of its tables and start maintaining
+     * it as tuples are inserted.  The tables should not be modified while the view is
+     * being materialized.
+     * @return  the table holding the view
+     */
+    public synchronized Table materialize ()
+    {
+        if (table != null) return table;
+        Trace.ddl ("create materialized view", name, definition);
+        if (agg != null && width == 0) {                             // single group, even if empty
+            groupRows.add (ArrayUtil.concat (new Comparable [0], agg.empty ()));
+            table = new Table (name, attribute, domain, key,          // keyed on its aggregates, which
+                               new ArrayList <> (groupRows));          // may be null: unindexed, as in groupBy
+        } else {
+            table = new Table (name, attribute, domain, key);
+        } // if
+
+        for (int i = 0; i < stages.size (); i++) {
+            if (! (stages.get (i) instanceof Join)) continue;
+            Join join  = (Join) stages.get (i);
+            int  after = i + 1;
+            join.right (join.table2.rows ());                         // left is still empty
+            listen (join.table2, delta -> apply (after, join.right (delta)));
+        } // for
+        apply (0, source.rows ());
+        listen (source, delta -> apply (0, delta));
+        return table;
+    } // materialize
+
+    /*************************************************************************************
+     * Return the table holding the view (null until materialized).
+     * @return  the view's table
+     */
+    public Table table ()
+    {
+        return table;
+    } // table
+
+    /*************************************************************************************
+     * Stop maintaining the view.  Its table keeps the result as of the last insert.
+     */
+    public synchronized void close ()
+    {
+        for (int i = 0; i < watched.size (); i++) watched.get (i).removeInsertListener (listeners.get (i));
+        watched.clear ();
+        listeners.clear ();
+    } // close
+
+    /*************************************************************************************
+     * Return the definition of the view.
+     */
+    public String toString ()
+    {
+        return name + " = " + definition;
+    } // toString
+
+    //-----------------------------------------------------------------------------------
+    // Private methods
+    //-----------------------------------------------------------------------------------
+
+    /*************************************************************************************
+     * Push a delta through the pipeline from the given stage and add the resulting
+     * tuples to the view.
+     * @param from   the first stage to apply
+     * @param delta  the tuples input to that stage
+     */
+    private synchronized void apply (int from, List <Comparable []> delta)
+    {
+        for (int i = from; i < stages.size () && ! delta.isEmpty (); i++) delta = stages.get (i).apply (delta);
+        if (delta.isEmpty ()) return;
+
+        if (agg == null) {
+            for (Comparable [] t : delta) table.insert (t);
+            return;
+        } // if
+        boolean updated = false;
+        for (Comparable [] t : delta) {
+            int g = agg.add (t);
+            if (g == groupRows.size ()) {                              // new group
+                groupRows.add (agg.row (g));
+                table.insert (groupRows.get (g));
+            } else {
+                Comparable [] row = agg.row (g);
+                System.arraycopy (row, width, groupRows.get (g), width, row.length - width);
+                updated = true;
+            } // if
+        } // for
+        if (updated) table.changed ();
+    } // apply
+
+    /*************************************************************************************
+     * Register a listener for the inserts into a table.
+     * @param t         the table
+     * @param listener  the listener
+     */
+    private void listen (Table t, Consumer <List <Comparable []>> listener)
+    {
+        t.addInsertListener (listener);
+        watched.add (t);
+        listeners.add (listener);
+    } // listen
+
+    /*************************************************************************************
+     * Throw if operators may no longer be added.
+     */
+    private void checkOpen ()
+    {
+        if (agg != null)   throw new IllegalStateException ("MaterializedView: groupBy must be the last operator");
+        if (table != null) throw new IllegalStateException ("MaterializedView: view already materialized");
+    } // checkOpen
+
+    /*************************************************************************************
+     * Return the positions of the given attributes in the pipeline's output so far.
+     * @param attrs  the attribute names
+     * @return  the positions
+     */
+    private int [] positions (String [] attrs)
+    {
+        List <String> names = Arrays.asList (attribute);
+        int [] cols = new int [attrs.length];
+        for (int j = 0; j < attrs.length; j++) {
+            if ((cols [j] = names.indexOf (attrs [j])) < 0) {
+                throw new IllegalArgumentException ("MaterializedView: attribute not found " + attrs [j]);
+            } // if
+        } // for
+        return cols;
+    } // positions
+
+    /*************************************************************************************
+     * Return the domains of the given columns.
+     * @param dom   the domains
+     * @param cols  the columns
+     * @return  the domains of the columns
+     */
+    private static Class [] extract (Class [] dom, int [] cols)
+    {
+        Class [] d = new Class [cols.length];
+        for (int j = 0; j < cols.length; j++) d [j] = dom [cols [j]];
+        return d;
+    } // extract
+
+    /*************************************************************************************
+     * The Join class is the join stage: it keeps the tuples of both inputs hashed on
+     * their join values and joins a delta on one side with the tuples of the other.
+     */
+    private static class Join
+            implements UnaryOperator <List <Comparable []>>
+    {
+        final int [] cols1, cols2;
+        final Table  table2;
+        final Map <KeyType, List <Comparable []>> left  = new HashMap <> ();
+        final Map <KeyType, List <Comparable []>> right = new HashMap <> ();
+
+        Join (int [] _cols1, int [] _cols2, Table _table2)
+        {
+            cols1  = _cols1;
+            cols2  = _cols2;
+            table2 = _table2;
+        } // constructor
+
+        /*********************************************************************************
+         * Join a delta of the left input with the right tuples seen so far.
+         */
+        public List <Comparable []> apply (List <Comparable []> delta)
+        {
+            List <Comparable []> rows = new ArrayList <> ();
+            for (Comparable [] t : delta) {
+                KeyType k = Table.keyOf (t, cols1);
+                if (k == null) continue;
+                left.computeIfAbsent (k, x -> new ArrayList <> ()).add (t);
+                for (Comparable [] u : right.getOrDefault (k, Collections.emptyList ())) {
+                    rows.add (ArrayUtil.concat (t, u));
+                } // for
+            } // for
+            return rows;
+        } // apply
+
+        /*********************************************************************************
+         * Join a delta of the right input (table2) with the left tuples seen so far.
+         */
+        List <Comparable []> right (List <Comparable []> delta)
+        {
+            List <Comparable []> rows = new ArrayList <> ();
+            for (Comparable [] u : delta) {
+                KeyType k = Table.keyOf (u, cols2);
+                if (k == null) continue;
+                right.computeIfAbsent (k, x -> new ArrayList <> ()).add (u);
+                for (Comparable [] t : left.getOrDefault (k, Collections.emptyList ())) {
+                    rows.add (ArrayUtil.concat (t, u));
+                } // for
+            } // for
+            return rows;
+        } // right
+
+    } // Join class
+
+} // MaterializedView class
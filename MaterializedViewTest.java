@@ -0,0 +1,101 @@
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+public class MaterializedViewTest {
+
+    /**
+     *
+     * Converts the tuples of a table to a set of strings.
+     *
+     */
+
+    private Set<String> rows(Table t) {
+
+	Set<String> s = new HashSet<>();
+	for (int i = 0; i < t.tuplesLength(); i++) s.add(Arrays.toString(t.getTuple(i)));
+	return s;
+    }
+
+    /**
+     *
+     * Tests that a join view followed by select and project stays equal
+     * to recomputing the query as tuples are inserted on either side.
+     *
+     */
+
+    @Test
+    public void testJoinView() {
+
+	Table student = new Table("mvStudent", "id name", "Integer String", "id");
+	Table transcript = new Table("mvTranscript", "studId crsCode grade", "Integer String Integer", "studId crsCode");
+	for (int i = 0; i < 20; i++) student.insert(new Comparable [] { i, "name" + i });
+	for (int i = 0; i < 60; i++) transcript.insert(new Comparable [] { i % 30, "crs" + i, 50 + i });
+
+	MaterializedView view = new MaterializedView("passed", student)
+	    .join("id", "studId", transcript)
+	    .select(t -> (Integer) t[4] >= 70)
+	    .project("name crsCode");
+	Table passed = view.materialize();
+
+	for (int i = 20; i < 30; i++) student.insert(new Comparable [] { i, "name" + i });
+	for (int i = 60; i < 90; i++) transcript.insert(new Comparable [] { i % 30, "crs" + i, 50 + i });
+
+	Table expected = student.join("id", "studId", transcript).select(t -> (Integer) t[4] >= 70)
+	                        .project("name crsCode");
+	assertEquals(rows(expected), rows(passed));
+	assertEquals(70, passed.tuplesLength());
+
+	view.close();
+	student.insert(new Comparable [] { 30, "name30" });
+	transcript.insert(new Comparable [] { 30, "crs999", 99 });
+	assertEquals(70, passed.tuplesLength());
+    }
+
+    /**
+     *
+     * Tests that a join view ending in a group-by keeps its aggregates
+     * equal to recomputing them and changes only when an insert reaches
+     * one of its groups.
+     *
+     */
+
+    @Test
+    public void testGroupByView() {
+
+	Table student = new Table("gbStudent", "id name", "Integer String", "id");
+	Table transcript = new Table("gbTranscript", "studId crsCode grade", "Integer String Integer", "studId crsCode");
+	for (int i = 0; i < 10; i++) student.insert(new Comparable [] { i, "name" + i });
+
+	Table gpa = new MaterializedView("gpa", student)
+	    .join("id", "studId", transcript)
+	    .groupBy("id", "count(*) avg(grade) max(grade)")
+	    .materialize();
+	assertEquals(0, gpa.tuplesLength());
+	Table total = new MaterializedView("total", transcript).groupBy("", "count(*) sum(grade)").materialize();
+	assertArrayEquals(new Comparable [] { 0L, null }, total.getTuple(0));
+
+	Random rand = new Random(3);
+	for (int i = 0; i < 200; i++) {
+	    int id = rand.nextInt(12);
+	    long v = gpa.version();
+	    transcript.insert(new Comparable [] { id, "crs" + i, rand.nextInt(100) });
+	    assertEquals(id < 10, gpa.version() > v);
+	}
+	Table expected = student.join("id", "studId", transcript).groupBy("id", "count(*) avg(grade) max(grade)");
+	assertEquals(10, gpa.tuplesLength());
+	assertEquals(rows(expected), rows(gpa));
+
+	Table sum = transcript.groupBy("", "count(*) sum(grade)");
+	assertArrayEquals(sum.getTuple(0), total.getTuple(0));
+
+	try {
+	    new MaterializedView("bad", student).groupBy("id", "count(*)").select(t -> true);
+	    fail("select after groupBy");
+	} catch (IllegalStateException ex) {
+	    // expected
+	}
+    }
+}
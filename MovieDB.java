@@ -20,6 +20,8 @@ class MovieDB
      */
     public static void main (String [] args)
     {
+        Trace.setLevel (Trace.Level.INFO);                          // print each operator in order
+        Trace.setSink (Trace.console (out));
         out.println ();
 
         Table movie = new Table ("movie", "title year length genre studioName producerNo",
@@ -72,7 +74,7 @@ class MovieDB
         starsIn.insert (cast0);
         starsIn.print ();
 
-        Comparable [] exec0 = { 9999, "S_Spielberg", "Hollywood", 10000.00 };
+        Comparable [] exec0 = { 9999, "S_Spielberg", "Hollywood", 10000.00f };
         out.println ();
         movieExec.insert (exec0);
         movieExec.print ();
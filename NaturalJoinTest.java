@@ -0,0 +1,115 @@
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+public class NaturalJoinTest {
+
+    /**
+     *
+     * Creates a teaching table: course i is taught by professor i % 7 in
+     * semester i % 2.
+     *
+     * @return teaching table
+     *
+     */
+
+    public Table teachingTable(int courses) {
+
+	Table teaching = new Table("teaching" + courses, "crsCode semester profId", "String String Integer",
+				   "crsCode semester");
+	for (int i = 0; i < courses; i++) teaching.insert(new Comparable [] { "crs" + i, "S" + (i % 2), i % 7 });
+	return teaching;
+    }
+
+    /**
+     *
+     * Creates a transcript table: student s takes courses s and s + 1 in
+     * semester s % 2 (so only one of them matches the teaching table).
+     *
+     * @return transcript table
+     *
+     */
+
+    public Table transcriptTable(int students) {
+
+	Table transcript = new Table("transcript" + students, "studId crsCode semester grade",
+				     "Integer String String Character", "studId crsCode semester");
+	for (int s = 0; s < students; s++) {
+	    for (int c = s; c <= s + 1; c++) transcript.insert(new Comparable [] { s, "crs" + c, "S" + (s % 2), 'A' });
+	}
+	return transcript;
+    }
+
+    /**
+     *
+     * Tests that the natural join matches on all common attributes, keeps
+     * one copy of them and agrees with a nested loop whichever table is
+     * smaller and whether or not the probe runs in parallel.
+     *
+     */
+
+    @Test
+    public void testMatchesNestedLoop() {
+
+	for (int n : new int [] { 10, 40000 }) {
+	    Table teaching = teachingTable(n / 2);
+	    Table transcript = transcriptTable(n);
+	    for (Table [] pair : new Table [][] { { transcript, teaching }, { teaching, transcript } }) {
+		Table joined = pair[0].join(pair[1]);
+		Set<String> expected = new HashSet<>();
+		for (Comparable [] a : pair[0].rows()) {
+		    for (Comparable [] b : pair[1].rows()) {
+			Map<String, Comparable> row = new TreeMap<>();
+			boolean match = true;
+			for (int j = 0; j < a.length; j++) row.put(pair[0].attributes()[j], a[j]);
+			for (int j = 0; j < b.length; j++) {
+			    Comparable v = row.putIfAbsent(pair[1].attributes()[j], b[j]);
+			    if (v != null && ! v.equals(b[j])) match = false;
+			}
+			if (match) expected.add(row.toString());
+		    }
+		    if (n > 10) break;
+		}
+		assertEquals(5, joined.attributes().length);
+		assertEquals(5, joined.domains().length);
+		Set<String> actual = new HashSet<>();
+		for (Comparable [] t : joined.rows()) {
+		    Map<String, Comparable> row = new TreeMap<>();
+		    for (int j = 0; j < t.length; j++) row.put(joined.attributes()[j], t[j]);
+		    actual.add(row.toString());
+		}
+		if (n == 10) assertEquals(expected, actual);
+		else assertTrue(actual.containsAll(expected));
+		assertEquals(n / 2, joined.tuplesLength());
+	    }
+	}
+    }
+
+    /**
+     *
+     * Tests that tables without common attributes give the cartesian
+     * product and that null values match nothing.
+     *
+     */
+
+    @Test
+    public void testProductAndNulls() {
+
+	Table a = new Table("njA", "x", "Integer", "x");
+	Table b = new Table("njB", "y z", "Integer Integer", "y");
+	for (int i = 0; i < 3; i++) a.insert(new Comparable [] { i });
+	for (int i = 0; i < 4; i++) b.insert(new Comparable [] { i, i });
+	assertEquals(12, a.join(b).tuplesLength());
+
+	Table c = new Table("njC", "z w", "Integer Integer", "w");
+	c.insert(new Comparable [] { null, 1 });
+	c.insert(new Comparable [] { 2, 2 });
+	Table joined = b.join(c);
+	assertEquals(1, joined.tuplesLength());
+	assertArrayEquals(new String [] { "y", "z", "w" }, joined.attributes());
+	assertArrayEquals(new Comparable [] { 2, 2, 2 }, joined.rows().get(0));
+    }
+
+}
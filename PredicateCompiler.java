@@ -0,0 +1,700 @@
+
+/*****************************************************************************************
+ * @file  PredicateCompiler.java
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/*****************************************************************************************
+ * The PredicateCompiler class compiles selection conditions and projections written
+ * over a table's attribute names into code specialized for the table's schema:
+ *
+ *     condition   := disjunct { (or | ||) disjunct }
+ *     disjunct    := factor { (and | &&) factor }
+ *     factor      := (not | !) factor | ( condition ) | operand op operand
+ *     operand     := attribute | number | 'string'
+ *     op          := = | == | != | <> | < | <= | > | >=
+ *
+ * e.g., "year >= 1977 and (studioName = 'Fox' or length < 100)".  Attribute names are
+ * resolved to column positions and literals are converted to the columns' domains at
+ * compile time, and each comparison unboxes its column once and compares primitives
+ * (int, long or double; Strings with String.compareTo).  The conditions are assembled
+ * from MethodHandle combinators, and the resulting handle is bound as a constant into a
+ * hidden class implementing Predicate (or Function for projections), so the JIT can
+ * inline the whole condition into the caller's loop.  A comparison with a null value
+ * is false.  Literals are not compiled in: a condition is compiled per shape (its text
+ * with the literals taken out) and schema, and each compiled predicate is an instance
+ * of the shape's hidden class holding its literals, so queries differing only in their
+ * constants share one class.  The compiled shapes and projections are kept in a
+ * bounded, least recently used cache.
+ */
+public final class PredicateCompiler
+{
+    /** The comparison operators.
+     */
+    private static final String [] OPS = { "=", "!=", "<", "<=", ">", ">=" };
+
+    /** The kinds of values compared.
+     */
+    private enum Kind { INT, LONG, DOUBLE, STRING }
+
+    /** The maximum number of compiled shapes and projections kept.
+     */
+    private static final int CACHE_SIZE = 256;
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup ();
+
+    /** Handles used to assemble conditions: the tuple and literal element getters, the
+     *  comparisons of each kind (returning < 0, 0 or > 0), the tests of a comparison
+     *  result per operator, and constants, negation and the null test.
+     */
+    private static final MethodHandle GET, ARG, NOT, NON_NULL, TRUE, FALSE;
+    private static final MethodHandle [] COMPARE = new MethodHandle [Kind.values ().length];
+    private static final MethodHandle [] TEST    = new MethodHandle [OPS.length];
+
+    /** The class file bytes of the templates for the hidden classes (null if they cannot
+     *  be read, in which case the handles are called through a field).
+     */
+    private static final byte [] TEST_CLASS  = bytes (TestTemplate.class);
+    private static final byte [] APPLY_CLASS = bytes (ApplyTemplate.class);
+
+    /** The compiled shapes (as factories from the literals to predicates) and projections,
+     *  by kind, shape or text, and schema, least recently used first.
+     */
+    private static final Map <String, Object> compiled = Collections.synchronizedMap (
+        new LinkedHashMap <String, Object> (2 * CACHE_SIZE, 0.75f, true) {
+            protected boolean removeEldestEntry (Map.Entry <String, Object> eldest)
+            {
+                return size () > CACHE_SIZE;
+            } // removeEldestEntry
+        });
+
+    static {
+        try {
+            Class <?> me = PredicateCompiler.class;
+            GET      = MethodHandles.arrayElementGetter (Comparable [].class);
+            ARG      = MethodHandles.arrayElementGetter (Object [].class);
+            NOT      = LOOKUP.findStatic (me, "not", methodType (boolean.class, boolean.class));
+            NON_NULL = LOOKUP.findStatic (Objects.class, "nonNull", methodType (boolean.class, Object.class))
+                             .asType (methodType (boolean.class, Comparable.class));
+            TRUE     = MethodHandles.dropArguments (MethodHandles.constant (boolean.class, true), 0,
+                                                    Object [].class, Comparable [].class);
+            FALSE    = MethodHandles.dropArguments (MethodHandles.constant (boolean.class, false), 0,
+                                                    Object [].class, Comparable [].class);
+            COMPARE [Kind.INT.ordinal ()]    = LOOKUP.findStatic (Integer.class, "compare",
+                                                                  methodType (int.class, int.class, int.class));
+            COMPARE [Kind.LONG.ordinal ()]   = LOOKUP.findStatic (Long.class, "compare",
+                                                                  methodType (int.class, long.class, long.class));
+            COMPARE [Kind.DOUBLE.ordinal ()] = LOOKUP.findStatic (Double.class, "compare",
+                                                                  methodType (int.class, double.class, double.class));
+            COMPARE [Kind.STRING.ordinal ()] = LOOKUP.findVirtual (String.class, "compareTo",
+                                                                   methodType (int.class, String.class));
+            String [] names = { "eq", "ne", "lt", "le", "gt", "ge" };
+            for (int i = 0; i < OPS.length; i++) {
+                TEST [i] = LOOKUP.findStatic (me, names [i], methodType (boolean.class, int.class));
+            } // for
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError (ex);
+        } // try
+    } // static
+
+    private PredicateCompiler () {}
+
+    /*************************************************************************************
+     * Compile a condition over the attributes of the given table.
+     *
+     * #usage PredicateCompiler.compile ("year >= 1977 and studioName = 'Fox'", movie)
+     *
+     * @param condition  the condition (see the class comment for the syntax)
+     * @param table      the table whose schema the condition refers to
+     * @return  the compiled predicate over the table's tuples
+     * @throws IllegalArgumentException  if the condition is malformed or does not fit
+     *                                   the schema
+     */
+    @SuppressWarnings("unchecked")
+    public static Predicate <Comparable []> compile (String condition, Table table)
+    {
+        Parser shape = new Parser (condition, table.schema (), table.domains (), false);
+        shape.parse ();
+        Function <Object [], Predicate <Comparable []>> factory = (Function <Object [], Predicate <Comparable []>>)
+                compiled.computeIfAbsent ("select:" + shape.shape () + signature (table), s -> {
+            MethodHandle h = new Parser (condition, table.schema (), table.domains (), true).parse ();
+            return testFactory (h);
+        });
+        return factory.apply (shape.args ());
+    } // compile
+
+    /*************************************************************************************
+     * Compile a projection of the tuples of the given table onto some of its attributes.
+     *
+     * #usage PredicateCompiler.projection ("title year", movie)
+     *
+     * @param attributes  the attributes to project onto, separated by spaces
+     * @param table       the table whose schema the attributes refer to
+     * @return  the compiled projection of the table's tuples
+     * @throws IllegalArgumentException  if an attribute is not in the table
+     */
+    @SuppressWarnings("unchecked")
+    public static Function <Comparable [], Comparable []> projection (String attributes, Table table)
+    {
+        return (Function <Comparable [], Comparable []>) compiled.computeIfAbsent ("project:" + attributes
+                                                                                   + signature (table), s -> {
+            String [] attrs = attributes.trim ().split ("\\s+");
+            MethodHandle [] cols = new MethodHandle [attrs.length];
+            for (int i = 0; i < attrs.length; i++) cols [i] = column (position (attrs [i], table.schema ()));
+            MethodHandle h = MethodHandles.identity (Comparable [].class).asCollector (Comparable [].class, attrs.length);
+            h = MethodHandles.filterArguments (h, 0, cols);
+            h = MethodHandles.permuteArguments (h, methodType (Comparable [].class, Comparable [].class),
+                                                new int [attrs.length]);
+            MethodHandle p = h;
+            return instantiate (APPLY_CLASS, p, () -> new BoundApply (p));
+        });
+    } // projection
+
+    /*************************************************************************************
+     * Return the schema part of a cache key.
+     */
+    private static String signature (Table table)
+    {
+        return "|" + table.schema ();
+    } // signature
+
+    /*************************************************************************************
+     * Define a hidden class from the test template with the handle (Object [],
+     * Comparable [])boolean as its class data and return a factory making instances of
+     * it from the literals, or making BoundTests if the template is not available.
+     */
+    private static Function <Object [], Predicate <Comparable []>> testFactory (MethodHandle h)
+    {
+        if (TEST_CLASS != null) {
+            try {
+                MethodHandles.Lookup l = LOOKUP.defineHiddenClassWithClassData (TEST_CLASS, h, true);
+                MethodHandle make = l.findConstructor (l.lookupClass (), methodType (void.class, Object [].class))
+                                     .asType (methodType (Predicate.class, Object [].class));
+                return args -> {
+                    try {
+                        return (Predicate <Comparable []>) make.invokeExact (args);
+                    } catch (Throwable ex) {
+                        throw rethrow (ex);
+                    } // try
+                };
+            } catch (ReflectiveOperationException | LinkageError ex) {
+                // fall back to calling the handle through a field
+            } // try
+        } // if
+        return args -> new BoundTest (h, args);
+    } // testFactory
+
+    /*************************************************************************************
+     * Define a hidden class from the template with the handle as its class data and
+     * return an instance of it, or the fallback if the template is not available.
+     */
+    private static Object instantiate (byte [] template, MethodHandle h, java.util.function.Supplier <Object> fallback)
+    {
+        if (template == null) return fallback.get ();
+        try {
+            Class <?> c = LOOKUP.defineHiddenClassWithClassData (template, h, true).lookupClass ();
+            return c.getDeclaredConstructor ().newInstance ();
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            return fallback.get ();
+        } // try
+    } // instantiate
+
+    /*************************************************************************************
+     * Read the class file of a template class, or return null if it cannot be read.
+     */
+    private static byte [] bytes (Class <?> c)
+    {
+        String file = c.getName ().substring (c.getName ().lastIndexOf ('.') + 1) + ".class";
+        try (InputStream in = c.getResourceAsStream (file)) {
+            return (in == null) ? null : in.readAllBytes ();
+        } catch (IOException ex) {
+            return null;
+        } // try
+    } // bytes
+
+    /*************************************************************************************
+     * Return the position of an attribute.
+     */
+    private static int position (String attr, Schema schema)
+    {
+        int j = schema.col (attr);
+        if (j < 0) throw new IllegalArgumentException ("PredicateCompiler: no attribute " + attr);
+        return j;
+    } // position
+
+    /*************************************************************************************
+     * Return the handle (Comparable [])Comparable reading column j of a tuple.
+     */
+    private static MethodHandle column (int j)
+    {
+        return MethodHandles.insertArguments (GET, 1, j);
+    } // column
+
+    /*************************************************************************************
+     * Return the handle (Object [])T reading literal i as kind k.
+     */
+    private static MethodHandle arg (int i, Kind k)
+    {
+        return MethodHandles.insertArguments (ARG, 1, i).asType (methodType (type (k), Object [].class));
+    } // arg
+
+    /*************************************************************************************
+     * Return the kind of values a domain is compared as.
+     */
+    private static Kind kind (Class <?> domain)
+    {
+        if (domain == Integer.class || domain == Short.class || domain == Byte.class
+                                    || domain == Character.class) return Kind.INT;
+        if (domain == Long.class)                                     return Kind.LONG;
+        if (domain == Double.class || domain == Float.class)          return Kind.DOUBLE;
+        if (domain == String.class)                                   return Kind.STRING;
+        throw new IllegalArgumentException ("PredicateCompiler: cannot compare " + domain.getSimpleName ());
+    } // kind
+
+    /*************************************************************************************
+     * Return the Java type values of a kind are compared as.
+     */
+    private static Class <?> type (Kind k)
+    {
+        switch (k) {
+        case INT:    return int.class;
+        case LONG:   return long.class;
+        case DOUBLE: return double.class;
+        default:     return String.class;
+        } // switch
+    } // type
+
+    private static boolean not (boolean b) { return ! b; }
+    private static boolean eq (int c)      { return c == 0; }
+    private static boolean ne (int c)      { return c != 0; }
+    private static boolean lt (int c)      { return c < 0; }
+    private static boolean le (int c)      { return c <= 0; }
+    private static boolean gt (int c)      { return c > 0; }
+    private static boolean ge (int c)      { return c >= 0; }
+
+    /*************************************************************************************
+     * Rethrow a throwable from a method handle as an unchecked exception.
+     */
+    static RuntimeException rethrow (Throwable ex)
+    {
+        if (ex instanceof RuntimeException) return (RuntimeException) ex;
+        if (ex instanceof Error)            throw (Error) ex;
+        return new RuntimeException (ex);
+    } // rethrow
+
+    //-----------------------------------------------------------------------------------
+
+    /*************************************************************************************
+     * The Operand class is a parsed operand: a column or a literal.
+     */
+    private static final class Operand
+    {
+        final int    col;                      // the column position (-1 for a literal)
+        final String text;                     // the literal's text
+        final boolean quoted;                  // whether the literal was quoted
+
+        Operand (int _col, String _text, boolean _quoted)
+        {
+            col    = _col;
+            text   = _text;
+            quoted = _quoted;
+        } // constructor
+
+    } // Operand
+
+    /*************************************************************************************
+     * The Parser class parses a condition by recursive descent into its shape, its
+     * literals (converted to the kinds they are compared as) and, if asked to build it,
+     * a method handle (Object [], Comparable [])boolean taking the literals and a tuple.
+     */
+    private static final class Parser
+    {
+        private final String      src;         // the condition
+        private final Schema      schema;      // the table's schema
+        private final Class []    domain;      // the table's domains
+        private final boolean     build;       // whether to build the handle
+        private final StringBuilder shape = new StringBuilder ();           // the normalized condition
+        private final List <Object> args  = new ArrayList <> ();            // the literals
+        private int               pos;         // the position in src
+
+        Parser (String _src, Schema _schema, Class [] _domain, boolean _build)
+        {
+            src       = _src;
+            schema    = _schema;
+            domain    = _domain;
+            build     = _build;
+        } // constructor
+
+        /*********************************************************************************
+         * Parse the condition, returning its handle (null if not building it).
+         */
+        MethodHandle parse ()
+        {
+            MethodHandle h = condition ();
+            skip ();
+            if (pos < src.length ()) throw error ("unexpected '" + src.substring (pos) + "'");
+            return h;
+        } // parse
+
+        /*********************************************************************************
+         * Return the shape of the parsed condition: its comparisons on column positions
+         * with the literals replaced by their kinds, and its connectives.
+         */
+        String shape ()
+        {
+            return shape.toString ();
+        } // shape
+
+        /*********************************************************************************
+         * Return the literals of the parsed condition in order.
+         */
+        Object [] args ()
+        {
+            return args.toArray ();
+        } // args
+
+        private MethodHandle condition ()
+        {
+            MethodHandle h = disjunct ();
+            while (accept ("or") || accept ("||")) {
+                shape.append ('|');
+                MethodHandle r = disjunct ();
+                if (build) h = MethodHandles.guardWithTest (h, TRUE, r);
+            } // while
+            return h;
+        } // condition
+
+        private MethodHandle disjunct ()
+        {
+            MethodHandle h = factor ();
+            while (accept ("and") || accept ("&&")) {
+                shape.append ('&');
+                MethodHandle r = factor ();
+                if (build) h = MethodHandles.guardWithTest (h, r, FALSE);
+            } // while
+            return h;
+        } // disjunct
+
+        private MethodHandle factor ()
+        {
+            if (accept ("not") || (! peek ("!=") && accept ("!"))) {
+                shape.append ('!');
+                MethodHandle h = factor ();
+                return build ? MethodHandles.filterReturnValue (h, NOT) : null;
+            } // if
+            if (accept ("(")) {
+                shape.append ('(');
+                MethodHandle h = condition ();
+                if (! accept (")")) throw error ("missing ')'");
+                shape.append (')');
+                return h;
+            } // if
+            Operand left = operand ();
+            int     op   = operator ();
+            return comparison (left, op, operand ());
+        } // factor
+
+        /*********************************************************************************
+         * Record the comparison left op right in the shape and the literals, and build
+         * its handle.
+         */
+        private MethodHandle comparison (Operand left, int op, Operand right)
+        {
+            if (left.col < 0 && right.col < 0) throw error ("a comparison needs an attribute");
+            Kind k = common (left, right);
+            MethodHandle l = side (left, k);
+            shape.append (OPS [op]);
+            MethodHandle r = side (right, k);
+            if (! build) return null;
+            MethodHandle h = MethodHandles.collectArguments (COMPARE [k.ordinal ()], 1, r);
+            h = MethodHandles.collectArguments (h, 0, l);
+            h = MethodHandles.permuteArguments (h, methodType (int.class, Object [].class, Comparable [].class),
+                                                0, 1, 0, 1);
+            h = MethodHandles.filterReturnValue (h, TEST [op]);
+            for (Operand o : new Operand [] { left, right }) {                     // null compares false
+                if (o.col >= 0) {
+                    MethodHandle nonNull = MethodHandles.filterReturnValue (column (o.col), NON_NULL);
+                    h = MethodHandles.guardWithTest (MethodHandles.dropArguments (nonNull, 0, Object [].class), h, FALSE);
+                } // if
+            } // for
+            return h;
+        } // comparison
+
+        /*********************************************************************************
+         * Record an operand compared as kind k and return its handle (Object [],
+         * Comparable [])T: a column read from the tuple or a literal read from the
+         * literals.
+         */
+        private MethodHandle side (Operand o, Kind k)
+        {
+            if (o.col >= 0) {
+                shape.append ('#').append (o.col);
+                return build ? MethodHandles.dropArguments (value (o.col, k), 0, Object [].class) : null;
+            } // if
+            shape.append ('?').append (k.ordinal ());
+            args.add (literal (o, k));
+            return build ? MethodHandles.dropArguments (arg (args.size () - 1, k), 1, Comparable [].class) : null;
+        } // side
+
+        /*********************************************************************************
+         * Return the kind both operands are compared as.
+         */
+        private Kind common (Operand left, Operand right)
+        {
+            Kind l = kindOf (left), r = kindOf (right);
+            Operand lit = (left.col < 0) ? left : (right.col < 0) ? right : null;
+            if (lit != null && lit.quoted) {                                // a string or a character
+                Operand c = (lit == left) ? right : left;
+                if (domain [c.col] == Character.class) return Kind.INT;
+            } // if
+            if ((l == Kind.STRING) != (r == Kind.STRING)) throw error ("cannot compare a string with a number");
+            return (l.ordinal () > r.ordinal ()) ? l : r;                   // INT < LONG < DOUBLE
+        } // common
+
+        /*********************************************************************************
+         * Return the kind of an operand.
+         */
+        private Kind kindOf (Operand o)
+        {
+            if (o.col >= 0) return kind (domain [o.col]);
+            if (o.quoted)   return Kind.STRING;
+            if (o.text.contains (".") || o.text.contains ("e") || o.text.contains ("E")) return Kind.DOUBLE;
+            try {
+                Integer.parseInt (o.text);
+                return Kind.INT;
+            } catch (NumberFormatException ex) {
+                return Kind.LONG;
+            } // try
+        } // kindOf
+
+        /*********************************************************************************
+         * Return the handle (Comparable [])T reading column j unboxed as kind k.
+         */
+        private MethodHandle value (int j, Kind k)
+        {
+            Class <?> d = domain [j];
+            MethodHandle h = column (j).asType (methodType (d, Comparable [].class));
+            if (k == Kind.STRING) return h;
+            if (d == Character.class) h = h.asType (methodType (char.class, Comparable [].class))
+                                           .asType (methodType (int.class, Comparable [].class));
+            return h.asType (methodType (type (k), Comparable [].class));
+        } // value
+
+        /*********************************************************************************
+         * Convert a literal to kind k.
+         */
+        private Object literal (Operand o, Kind k)
+        {
+            try {
+                switch (k) {
+                case INT:
+                    if (o.quoted) {
+                        if (o.text.length () != 1) throw error ("'" + o.text + "' is not a character");
+                        return (int) o.text.charAt (0);
+                    } // if
+                    return Integer.parseInt (o.text);
+                case LONG:   return Long.parseLong (o.text);
+                case DOUBLE: return Double.parseDouble (o.text);
+                default:     return o.text;
+                } // switch
+            } catch (NumberFormatException ex) {
+                throw error ("bad number " + o.text);
+            } // try
+        } // literal
+
+        private Operand operand ()
+        {
+            skip ();
+            if (pos >= src.length ()) throw error ("missing operand");
+            char c = src.charAt (pos);
+            if (c == '\'' || c == '"') {
+                int end = src.indexOf (c, pos + 1);
+                if (end < 0) throw error ("unterminated string");
+                Operand o = new Operand (-1, src.substring (pos + 1, end), true);
+                pos = end + 1;
+                return o;
+            } // if
+            int start = pos;
+            if (c == '-' || c == '+') pos++;
+            while (pos < src.length () && (Character.isLetterOrDigit (src.charAt (pos))
+                                           || "_.$".indexOf (src.charAt (pos)) >= 0)) pos++;
+            String word = src.substring (start, pos);
+            if (word.isEmpty ()) throw error ("missing operand");
+            char d = (c == '-' || c == '+') && word.length () > 1 ? word.charAt (1) : c;
+            if (Character.isDigit (d) || d == '.') return new Operand (-1, word, false);
+            int j = schema.col (word);
+            if (j < 0) throw error ("no attribute " + word);
+            return new Operand (j, null, false);
+        } // operand
+
+        private int operator ()
+        {
+            skip ();
+            for (String s : new String [] { "==", "!=", "<>", "<=", ">=", "=", "<", ">" }) {
+                if (src.startsWith (s, pos)) {
+                    pos += s.length ();
+                    switch (s) {
+                    case "==": return 0;
+                    case "<>": return 1;
+                    default:   return Arrays.asList (OPS).indexOf (s);
+                    } // switch
+                } // if
+            } // for
+            throw error ("missing comparison operator");
+        } // operator
+
+        /*********************************************************************************
+         * Consume the token if it comes next (words must not run on into a name).
+         */
+        private boolean accept (String token)
+        {
+            if (! peek (token)) return false;
+            pos += token.length ();
+            return true;
+        } // accept
+
+        private boolean peek (String token)
+        {
+            skip ();
+            if (! src.regionMatches (true, pos, token, 0, token.length ())) return false;
+            int end = pos + token.length ();
+            return ! Character.isLetter (token.charAt (0)) || end >= src.length ()
+                   || ! Character.isLetterOrDigit (src.charAt (end));
+        } // peek
+
+        private void skip ()
+        {
+            while (pos < src.length () && Character.isWhitespace (src.charAt (pos))) pos++;
+        } // skip
+
+        private IllegalArgumentException error (String msg)
+        {
+            return new IllegalArgumentException ("PredicateCompiler: " + msg + " in \"" + src + "\"");
+        } // error
+
+    } // Parser
+
+    //-----------------------------------------------------------------------------------
+
+    /*************************************************************************************
+     * The TestTemplate class is the template of the hidden classes implementing compiled
+     * predicates.  Each hidden class defined from it holds its shape's handle, its class
+     * data, in a static final field, which the JIT trusts as a constant, and each
+     * instance holds the literals of one condition of that shape.  The template itself
+     * is never initialized.
+     */
+    static final class TestTemplate
+           implements Predicate <Comparable []>
+    {
+        private static final MethodHandle MH;
+
+        private final Object [] args;
+
+        static {
+            try {
+                MH = MethodHandles.classData (MethodHandles.lookup (), "_", MethodHandle.class);
+            } catch (IllegalAccessException ex) {
+                throw new ExceptionInInitializerError (ex);
+            } // try
+        } // static
+
+        TestTemplate (Object [] _args) { args = _args; }
+
+        public boolean test (Comparable [] t)
+        {
+            try {
+                return (boolean) MH.invokeExact (args, t);
+            } catch (Throwable ex) {
+                throw rethrow (ex);
+            } // try
+        } // test
+
+    } // TestTemplate
+
+    /*************************************************************************************
+     * The ApplyTemplate class is the template of the hidden classes implementing compiled
+     * projections (see TestTemplate).
+     */
+    static final class ApplyTemplate
+           implements Function <Comparable [], Comparable []>
+    {
+        private static final MethodHandle MH;
+
+        static {
+            try {
+                MH = MethodHandles.classData (MethodHandles.lookup (), "_", MethodHandle.class);
+            } catch (IllegalAccessException ex) {
+                throw new ExceptionInInitializerError (ex);
+            } // try
+        } // static
+
+        public Comparable [] apply (Comparable [] t)
+        {
+            try {
+                return (Comparable []) MH.invokeExact (t);
+            } catch (Throwable ex) {
+                throw rethrow (ex);
+            } // try
+        } // apply
+
+    } // ApplyTemplate
+
+    /*************************************************************************************
+     * The BoundTest class calls a compiled predicate through a field, should the template
+     * class file not be readable.
+     */
+    private static final class BoundTest
+            implements Predicate <Comparable []>
+    {
+        private final MethodHandle mh;
+        private final Object []    args;
+
+        BoundTest (MethodHandle _mh, Object [] _args)
+        {
+            mh   = _mh;
+            args = _args;
+        } // constructor
+
+        public boolean test (Comparable [] t)
+        {
+            try {
+                return (boolean) mh.invokeExact (args, t);
+            } catch (Throwable ex) {
+                throw rethrow (ex);
+            } // try
+        } // test
+
+    } // BoundTest
+
+    /*************************************************************************************
+     * The BoundApply class calls a compiled projection through a field (see BoundTest).
+     */
+    private static final class BoundApply
+            implements Function <Comparable [], Comparable []>
+    {
+        private final MethodHandle mh;
+
+        BoundApply (MethodHandle _mh) { mh = _mh; }
+
+        public Comparable [] apply (Comparable [] t)
+        {
+            try {
+                return (Comparable []) mh.invokeExact (t);
+            } catch (Throwable ex) {
+                throw rethrow (ex);
+            } // try
+        } // apply
+
+    } // BoundApply
+
+} // PredicateCompiler class
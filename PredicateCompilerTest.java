@@ -0,0 +1,123 @@
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.junit.Test;
+
+public class PredicateCompilerTest {
+
+    /**
+     *
+     * Creates a movie table with a few tuples, one with null values.
+     *
+     * @return the table
+     *
+     */
+
+    public Table movies() {
+
+	Table movie = new Table("pcMovie", "title year length rating grade studioName",
+				"String Integer Long Double Character String", "title");
+	movie.insert(new Comparable [] { "Star_Wars", 1977, 124L, 8.6, 'A', "Fox" });
+	movie.insert(new Comparable [] { "Star_Wars_2", 1980, 124L, 8.7, 'A', "Fox" });
+	movie.insert(new Comparable [] { "Rocky", 1985, 200L, 6.5, 'B', "Universal" });
+	movie.insert(new Comparable [] { "Galaxy_Quest", 1999, 104L, 7.4, 'B', "DreamWorks" });
+	movie.insert(new Comparable [] { "Unknown", null, 90L, 5.0, 'C', null });
+	return movie;
+    }
+
+    /**
+     *
+     * Tests that compiled conditions select the same tuples as the
+     * equivalent lambdas, over every domain and connective.
+     *
+     */
+
+    @Test
+    public void testMatchesLambda() {
+
+	Table movie = movies();
+	Object [][] cases = {
+	    { "year = 1977",                             (Predicate<Comparable []>) t -> Objects.equals(t[1], 1977) },
+	    { "year > 1977 and length <= 124",           (Predicate<Comparable []>) t -> t[1] != null && (int) t[1] > 1977 && (long) t[2] <= 124 },
+	    { "rating >= 7.4",                           (Predicate<Comparable []>) t -> (double) t[3] >= 7.4 },
+	    { "rating < 7",                              (Predicate<Comparable []>) t -> (double) t[3] < 7 },
+	    { "year < 1980.5",                           (Predicate<Comparable []>) t -> t[1] != null && (int) t[1] < 1980.5 },
+	    { "studioName = 'Fox' or grade = 'B'",       (Predicate<Comparable []>) t -> "Fox".equals(t[5]) || (char) t[4] == 'B' },
+	    { "not (studioName <> \"Fox\")",             (Predicate<Comparable []>) t -> ! (t[5] != null && ! t[5].equals("Fox")) },
+	    { "title > 'S' && !(year == 1980)",          (Predicate<Comparable []>) t -> ((String) t[0]).compareTo("S") > 0 && ! Objects.equals(t[1], 1980) },
+	    { "1985 <= year",                            (Predicate<Comparable []>) t -> t[1] != null && (int) t[1] >= 1985 },
+	    { "length < year",                           (Predicate<Comparable []>) t -> t[1] != null && (long) t[2] < (int) t[1] },
+	    { "year = 1977 or year = 1980 and length = 200", (Predicate<Comparable []>) t -> Objects.equals(t[1], 1977) },
+	    { "year != 1977",                            (Predicate<Comparable []>) t -> t[1] != null && (int) t[1] != 1977 }
+	};
+	for (Object [] c : cases) {
+	    @SuppressWarnings("unchecked")
+	    Predicate<Comparable []> expected = (Predicate<Comparable []>) c[1];
+	    Predicate<Comparable []> compiled = PredicateCompiler.compile((String) c[0], movie);
+	    for (Comparable [] t : movie.rows()) assertEquals(c[0] + " on " + t[0], expected.test(t), compiled.test(t));
+	    assertEquals((String) c[0], movie.select(expected).tuplesLength(), movie.select((String) c[0]).tuplesLength());
+	}
+    }
+
+    /**
+     *
+     * Tests that compiled code is reused per shape and schema, whatever
+     * the literals, and that malformed conditions are rejected.
+     *
+     */
+
+    @Test
+    public void testCacheAndErrors() {
+
+	Table movie = movies();
+	Predicate<Comparable []> y77 = PredicateCompiler.compile("year = 1977", movie);
+	Predicate<Comparable []> y80 = PredicateCompiler.compile("year == 1980", movies());
+	assertSame(y77.getClass(), y80.getClass());
+	assertSame(y77.getClass(), PredicateCompiler.compile("year = 1977", movie).getClass());
+	assertNotSame(y77.getClass(), PredicateCompiler.compile("year = 1977.0", movie).getClass());
+	assertNotSame(y77.getClass(), PredicateCompiler.compile("1977 = year", movie).getClass());
+	int [] counts = new int [2];
+	for (Comparable [] t : movie.rows()) {
+	    if (y77.test(t)) counts[0]++;
+	    if (y80.test(t)) counts[1]++;
+	}
+	assertArrayEquals(new int [] { 1, 1 }, counts);
+	Table other = new Table("pcOther", "year", "Double", "year");
+	assertNotSame(y77.getClass(), PredicateCompiler.compile("year = 1977", other).getClass());
+
+	for (String bad : new String [] { "year", "year = ", "month = 3", "year = 'x'", "title < 3",
+					  "(year = 1", "1 = 1", "year = 1 and", "grade = 'AB'", "year = 19x7" }) {
+	    try {
+		PredicateCompiler.compile(bad, movie);
+		fail("accepted " + bad);
+	    } catch (IllegalArgumentException ex) {
+		assertTrue(ex.getMessage().startsWith("PredicateCompiler"));
+	    }
+	}
+	assertNull(movie.select("month = 3"));
+    }
+
+    /**
+     *
+     * Tests that a compiled projection picks the columns in the given order.
+     *
+     */
+
+    @Test
+    public void testProjection() {
+
+	Table movie = movies();
+	Function<Comparable [], Comparable []> p = PredicateCompiler.projection("year title year", movie);
+	for (Comparable [] t : movie.rows()) {
+	    assertArrayEquals(new Comparable [] { t[1], t[0], t[1] }, p.apply(t));
+	}
+	try {
+	    PredicateCompiler.projection("year month", movie);
+	    fail("accepted month");
+	} catch (IllegalArgumentException ex) { }
+    }
+
+}
@@ -0,0 +1,262 @@
+
+/*****************************************************************************************
+ * @file  ResultCache.java
+ */
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/*****************************************************************************************
+ * The ResultCache class keeps the results of relational algebra operators so repeated
+ * calls are answered without recomputing them.  A result is keyed by the operator, its
+ * arguments and the id and version of each input table; since every insert bumps its
+ * table's version, an entry is never served once an input has changed, and Table drops
+ * the entries of a table as soon as it is inserted into (see invalidate).  A result
+ * that is itself inserted into after being cached is dropped on its next lookup.
+ *
+ * Entries occupy slots managed by a pluggable replacement policy (see EvictionPolicy),
+ * so the cache may evict least recently used results (LruPolicy) or favour results
+ * that were reused (TwoQPolicy).  Victims are evicted while the number of entries
+ * exceeds the slots or their estimated size exceeds the memory budget.  Hits, misses,
+ * evictions and invalidations are counted for tuning.
+ */
+public class ResultCache
+{
+    /** The memory budget in bytes.
+     */
+    private final long budget;
+
+    /** The replacement policy over the slots.
+     */
+    private final EvictionPolicy policy;
+
+    /** The entry in each slot (null if free).
+     */
+    private final Entry [] slot;
+
+    /** The free slots.
+     */
+    private final Deque <Integer> free = new ArrayDeque <> ();
+
+    /** Map from key to the slot holding its result.
+     */
+    private final HashMap <List <Object>, Integer> lookup = new HashMap <> ();
+
+    /** Map from table id to the slots whose results were computed from that table.
+     */
+    private final HashMap <Long, Set <Integer>> byTable = new HashMap <> ();
+
+    /** The estimated size of the cached results in bytes.
+     */
+    private long bytes;
+
+    /** Counters for performance monitoring.
+     */
+    private long hits, misses, evictions, invalidations;
+
+    /*************************************************************************************
+     * The Entry class holds a cached result, the version it had when cached, the ids of
+     * the input tables and its estimated size.
+     */
+    private static class Entry
+    {
+        final List <Object> key;
+        final Table         result;
+        final long          version;
+        final long []       inputs;
+        final long          size;
+
+        Entry (List <Object> _key, Table _result, long [] _inputs, long _size)
+        {
+            key     = _key;
+            result  = _result;
+            version = _result.version ();
+            inputs  = _inputs;
+            size    = _size;
+        } // constructor
+
+    } // Entry class
+
+    /*************************************************************************************
+     * Construct a result cache.
+     * @param slots    the maximum number of cached results
+     * @param _budget  the memory budget in bytes for the cached results
+     * @param _policy  the replacement policy
+     */
+    public ResultCache (int slots, long _budget, EvictionPolicy _policy)
+    {
+        budget = _budget;
+        policy = _policy;
+        slot   = new Entry [Math.max (1, slots)];
+        policy.init (slot.length);
+        for (int s = 0; s < slot.length; s++) free.add (s);
+    } // constructor
+
+    /*************************************************************************************
+     * Return the cached result of an operator over the given input tables, computing and
+     * caching it on a miss.  Null results (errors) are not cached.
+     * @param op       the name of the operator
+     * @param args     the arguments of the operator (compared with equals, so a predicate
+     *                 only matches itself)
+     * @param inputs   the input tables
+     * @param compute  computes the result
+     * @return  the result
+     */
+    public Table get (String op, Object [] args, Table [] inputs, Supplier <Table> compute)
+    {
+        List <Object> k   = new ArrayList <> (args.length + 2 * inputs.length + 1);
+        long []       ids = new long [inputs.length];
+        k.add (op);
+        k.addAll (Arrays.asList (args));
+        for (int i = 0; i < inputs.length; i++) {
+            k.add (ids [i] = inputs [i].id ());
+            k.add (inputs [i].version ());
+        } // for
+
+        synchronized (this) {
+            Integer s = lookup.get (k);
+            if (s != null && slot [s].result.version () == slot [s].version) {
+                hits++;
+                policy.access (s, false);
+                return slot [s].result;
+            } // if
+            if (s != null) {                                          // result was modified
+                invalidations++;
+                policy.remove (s);
+                release (s);
+            } // if
+            misses++;
+        } // synchronized
+
+        Table result = compute.get ();                                 // outside the lock
+        if (result == null) return null;
+        long size = estimate (result);
+        if (size > budget) return result;
+
+        synchronized (this) {
+            if (lookup.containsKey (k)) return result;                 // cached meanwhile
+            int s = frame (size);
+            slot [s] = new Entry (k, result, ids, size);
+            lookup.put (k, s);
+            for (long id : ids) byTable.computeIfAbsent (id, x -> new HashSet <> ()).add (s);
+            bytes += size;
+            policy.admit (s, k.hashCode (), false);
+        } // synchronized
+        return result;
+    } // get
+
+    /*************************************************************************************
+     * Drop the cached results computed from the table with the given id, which has
+     * changed.
+     * @param tableId  the id of the table
+     */
+    public synchronized void invalidate (long tableId)
+    {
+        Set <Integer> slots = byTable.remove (tableId);
+        if (slots == null) return;
+        for (int s : slots.toArray (new Integer [0])) {
+            if (slot [s] == null) continue;
+            invalidations++;
+            policy.remove (s);
+            release (s);
+        } // for
+    } // invalidate
+
+    /*************************************************************************************
+     * Drop every cached result.
+     */
+    public synchronized void clear ()
+    {
+        for (int s = 0; s < slot.length; s++) {
+            if (slot [s] == null) continue;
+            policy.remove (s);
+            release (s);
+        } // for
+    } // clear
+
+    /*************************************************************************************
+     * Return the number of cached results.
+     * @return  the number of entries
+     */
+    public synchronized int size ()
+    {
+        return lookup.size ();
+    } // size
+
+    /*************************************************************************************
+     * Return the counters and memory use: {hits, misses, evictions, invalidations,
+     * entries, bytes}.
+     * @return  the counters
+     */
+    public synchronized long [] metrics ()
+    {
+        return new long [] { hits, misses, evictions, invalidations, lookup.size (), bytes };
+    } // metrics
+
+    /*************************************************************************************
+     * Reset the counters to zero.
+     */
+    public synchronized void resetMetrics ()
+    {
+        hits = misses = evictions = invalidations = 0;
+    } // resetMetrics
+
+    /*************************************************************************************
+     * Return the counters as a string.
+     */
+    public synchronized String toString ()
+    {
+        double ratio = (hits + misses == 0) ? 0.0 : hits / (double) (hits + misses);
+        return String.format ("%s: hits = %d, misses = %d, hit ratio = %.3f, evictions = %d, "
+                              + "invalidations = %d, entries = %d, bytes = %d",
+                              policy.getClass ().getSimpleName (), hits, misses, ratio, evictions,
+                              invalidations, lookup.size (), bytes);
+    } // toString
+
+    /*************************************************************************************
+     * Return a free slot for a result of the given size, evicting victims while the
+     * slots are full or the budget would be exceeded.
+     * @param size  the estimated size of the result
+     * @return  the slot
+     */
+    private int frame (long size)
+    {
+        while (free.isEmpty () || bytes + size > budget) {
+            int s = policy.victim (x -> true);
+            if (s < 0) break;
+            evictions++;
+            release (s);
+        } // while
+        return free.poll ();
+    } // frame
+
+    /*************************************************************************************
+     * Free a slot already removed from the policy, forgetting its entry.
+     * @param s  the slot to free
+     */
+    private void release (int s)
+    {
+        Entry e = slot [s];
+        lookup.remove (e.key);
+        for (long id : e.inputs) {
+            Set <Integer> slots = byTable.get (id);
+            if (slots != null && slots.remove (s) && slots.isEmpty ()) byTable.remove (id);
+        } // for
+        bytes -= e.size;
+        slot [s] = null;
+        free.add (s);
+    } // release
+
+    /*************************************************************************************
+     * Estimate the size of a result table in bytes.
+     * @param t  the result table
+     * @return  the estimated size
+     */
+    private static long estimate (Table t)
+    {
+        long size = 64;
+        for (int i = 0; i < t.tuplesLength (); i++) size += 8 + ExternalSort.estimate (t.getTuple (i));
+        return size;
+    } // estimate
+
+} // ResultCache class
@@ -0,0 +1,104 @@
+import static org.junit.Assert.*;
+
+import java.util.function.Predicate;
+
+import org.junit.Test;
+
+public class ResultCacheTest {
+
+    /**
+     *
+     * Creates a student table with n students.
+     *
+     * @return student table
+     *
+     */
+
+    public Table studentTable(String name, int n) {
+
+	Table student = new Table(name, "id name", "Integer String", "id");
+	for (int i = 0; i < n; i++) student.insert(new Comparable [] { i, "name" + i });
+	return student;
+    }
+
+    /**
+     *
+     * Tests that repeated selects and joins are served from the cache
+     * and that an insert into an input table drops its results.
+     *
+     */
+
+    @Test
+    public void testHitsAndInvalidation() {
+
+	ResultCache cache = new ResultCache(16, 1L << 20, new LruPolicy());
+	Table.setResultCache(cache);
+	try {
+	    Table student = studentTable("cacheStudent", 50);
+	    Table enrollment = new Table("cacheEnrollment", "eid studId", "Integer Integer", "eid");
+	    for (int i = 0; i < 100; i++) enrollment.insert(new Comparable [] { i, i % 60 });
+	    Predicate<Comparable []> even = t -> (Integer) t[0] % 2 == 0;
+
+	    Table first = student.select(even);
+	    assertSame(first, student.select(even));
+	    assertNotSame(first, student.select(t -> (Integer) t[0] % 2 == 0));
+	    assertSame(student.select(new KeyType(7)), student.select(new KeyType(7)));
+	    Table joined = enrollment.h_join("studId", "id", student);
+	    assertSame(joined, enrollment.h_join("studId", "id", student));
+	    assertEquals(90, joined.tuplesLength());
+	    long [] m = cache.metrics();
+	    assertEquals(3, m[0]);
+	    assertEquals(4, m[1]);
+	    assertEquals(4, m[4]);
+
+	    student.insert(new Comparable [] { 50, "name50" });
+	    assertEquals(0, cache.size());
+	    assertEquals(4, cache.metrics()[3]);
+	    Table fresh = student.select(even);
+	    assertNotSame(first, fresh);
+	    assertEquals(26, fresh.tuplesLength());
+
+	    fresh.insert(new Comparable [] { 99, "name99" });
+	    assertNotSame(fresh, student.select(even));
+	} finally {
+	    Table.setResultCache(null);
+	}
+    }
+
+    /**
+     *
+     * Tests that the cache keeps within its slots and memory budget
+     * by evicting results.
+     *
+     */
+
+    @Test
+    public void testEviction() {
+
+	ResultCache cache = new ResultCache(4, 1L << 20, new TwoQPolicy());
+	Table.setResultCache(cache);
+	try {
+	    Table student = studentTable("evictStudent", 1000);
+	    for (int i = 0; i < 10; i++) student.select(new KeyType(i));
+	    assertEquals(4, cache.size());
+	    assertEquals(6, cache.metrics()[2]);
+	} finally {
+	    Table.setResultCache(null);
+	}
+
+	cache = new ResultCache(100, 20000, new LruPolicy());
+	Table.setResultCache(cache);
+	try {
+	    Table student = studentTable("budgetStudent", 1000);
+	    for (int i = 0; i < 10; i++) {
+		int lo = i * 100;
+		student.select(t -> (Integer) t[0] >= lo && (Integer) t[0] < lo + 100);
+		assertTrue(cache.metrics()[5] <= 20000);
+	    }
+	    assertTrue(cache.metrics()[2] > 0);
+	    assertEquals(0, cache.metrics()[0]);
+	} finally {
+	    Table.setResultCache(null);
+	}
+    }
+}
@@ -0,0 +1,201 @@
+
+/************************************************************************************
+ * @file Schema.java
+ */
+
+import java.io.Serializable;
+import java.util.*;
+
+/************************************************************************************
+ * The Schema class holds the attribute names and domains of a table and resolves
+ * names to column positions through a hash map, so operators can look their columns
+ * up once per call instead of comparing strings per tuple.  A resolved column is
+ * available as a Column handle bound to its position and domain.  Schemas are
+ * immutable; two schemas are equal when their attributes and domains are.
+ */
+public final class Schema
+       implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    /** The attribute names.
+     */
+    private final String [] attribute;
+
+    /** The attribute domains.
+     */
+    private final Class [] domain;
+
+    /** Map from an attribute name to its position (the first, if repeated).
+     */
+    private final HashMap <String, Integer> position;
+
+    /** The column handles by position.
+     */
+    private final Column [] columns;
+
+    /********************************************************************************
+     * Construct a schema from the attribute names and their domains.
+     *
+     * @param _attribute  the attribute names
+     * @param _domain     the attribute domains
+     */
+    public Schema (String [] _attribute, Class [] _domain)
+    {
+        attribute = _attribute;
+        domain    = _domain;
+        position  = new HashMap <> (2 * _attribute.length);
+        columns   = new Column [_attribute.length];
+        for (int j = _attribute.length - 1; j >= 0; j--) {
+            position.put (_attribute [j], j);
+            columns [j] = new Column (_attribute [j], j, (j < _domain.length) ? _domain [j] : null);
+        } // for
+    } // constructor
+
+    /********************************************************************************
+     * Return the position of an attribute.
+     *
+     * @param attr  the attribute name
+     * @return  the column position, or -1 if there is no such attribute
+     */
+    public int col (String attr)
+    {
+        Integer j = position.get (attr);
+        return (j == null) ? -1 : j;
+    } // col
+
+    /********************************************************************************
+     * Return the positions of the given attributes.
+     *
+     * @param attrs  the attribute names
+     * @return  the column positions, -1 for each name that is not an attribute
+     */
+    public int [] cols (String [] attrs)
+    {
+        int [] cols = new int [attrs.length];
+        for (int j = 0; j < attrs.length; j++) cols [j] = col (attrs [j]);
+        return cols;
+    } // cols
+
+    /********************************************************************************
+     * Return the handle of an attribute's column.
+     *
+     * @param attr  the attribute name
+     * @return  the column, or null if there is no such attribute
+     */
+    public Column column (String attr)
+    {
+        Integer j = position.get (attr);
+        return (j == null) ? null : columns [j];
+    } // column
+
+    /********************************************************************************
+     * Return the handle of the column at the given position.
+     *
+     * @param j  the column position
+     * @return  the column
+     */
+    public Column column (int j)
+    {
+        return columns [j];
+    } // column
+
+    /********************************************************************************
+     * Return whether the schema has the given attribute.
+     *
+     * @param attr  the attribute name
+     * @return  whether it is an attribute
+     */
+    public boolean contains (String attr)
+    {
+        return position.containsKey (attr);
+    } // contains
+
+    /********************************************************************************
+     * Return the number of attributes.
+     *
+     * @return  the arity of the schema
+     */
+    public int arity ()
+    {
+        return attribute.length;
+    } // arity
+
+    /********************************************************************************
+     * Return whether this schema has the same attributes and domains as o.
+     */
+    @Override
+    public boolean equals (Object o)
+    {
+        if (! (o instanceof Schema)) return false;
+        Schema s = (Schema) o;
+        return Arrays.equals (attribute, s.attribute) && Arrays.equals (domain, s.domain);
+    } // equals
+
+    @Override
+    public int hashCode ()
+    {
+        return 31 * Arrays.hashCode (attribute) + Arrays.hashCode (domain);
+    } // hashCode
+
+    /********************************************************************************
+     * Return the schema as "(name Domain, ...)".
+     */
+    @Override
+    public String toString ()
+    {
+        StringJoiner sj = new StringJoiner (", ", "(", ")");
+        for (Column c : columns) sj.add (c.toString ());
+        return sj.toString ();
+    } // toString
+
+    //-------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * The Column class is a column of a schema resolved to its position, for reading
+     * the column's value from tuples without further name lookups.
+     */
+    public static final class Column
+           implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        /** The attribute name.
+         */
+        public final String name;
+
+        /** The position of the column in the tuples.
+         */
+        public final int position;
+
+        /** The domain of the column.
+         */
+        public final Class domain;
+
+        Column (String _name, int _position, Class _domain)
+        {
+            name     = _name;
+            position = _position;
+            domain   = _domain;
+        } // constructor
+
+        /****************************************************************************
+         * Return the column's value in tuple t.
+         *
+         * @param t  the tuple
+         * @return  the value
+         */
+        public Comparable get (Comparable [] t)
+        {
+            return t [position];
+        } // get
+
+        @Override
+        public String toString ()
+        {
+            return name + " " + ((domain == null) ? "?" : domain.getSimpleName ());
+        } // toString
+
+    } // Column
+
+} // Schema class
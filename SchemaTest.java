@@ -0,0 +1,52 @@
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SchemaTest {
+
+    /**
+     *
+     * Tests that names resolve to their positions and bound columns read
+     * them from tuples.
+     *
+     */
+
+    @Test
+    public void testResolve() {
+
+	Schema s = new Schema(new String [] { "id", "name", "gpa" },
+			      new Class [] { Integer.class, String.class, Double.class });
+	assertEquals(3, s.arity());
+	assertEquals(1, s.col("name"));
+	assertEquals(-1, s.col("age"));
+	assertArrayEquals(new int [] { 2, -1, 0 }, s.cols(new String [] { "gpa", "age", "id" }));
+	assertNull(s.column("age"));
+
+	Schema.Column gpa = s.column("gpa");
+	assertSame(gpa, s.column(2));
+	assertEquals(Double.class, gpa.domain);
+	assertEquals(3.5, gpa.get(new Comparable [] { 1, "Ann", 3.5 }));
+	assertEquals("(id Integer, name String, gpa Double)", s.toString());
+    }
+
+    /**
+     *
+     * Tests that tables expose their schema and that schemas compare by
+     * attributes and domains.
+     *
+     */
+
+    @Test
+    public void testTableSchema() {
+
+	Table t = new Table("schemaStudent", "id name gpa", "Integer String Double", "id");
+	Table u = new Table("schemaOther", "id name gpa", "Integer String Double", "id");
+	Table v = new Table("schemaThird", "id name gpa", "Integer String Float", "id");
+	assertEquals(t.schema(), u.schema());
+	assertEquals(t.schema().hashCode(), u.schema().hashCode());
+	assertNotEquals(t.schema(), v.schema());
+	assertEquals(2, t.col("gpa"));
+	assertEquals(-1, t.col("age"));
+    }
+
+}
@@ -0,0 +1,93 @@
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+public class SemiJoinTest {
+
+    /**
+     *
+     * Creates a student table with n students.
+     *
+     * @return student table
+     *
+     */
+
+    public Table studentTable(int n) {
+
+	Table student = new Table("student", "id name", "Integer String", "id");
+	for (int i = 0; i < n; i++) student.insert(new Comparable [] { i, "name" + i });
+	return student;
+    }
+
+    /**
+     *
+     * Creates a transcript table in which only students with an even id
+     * below 100 have rows (three each).
+     *
+     * @return transcript table
+     *
+     */
+
+    public Table transcriptTable() {
+
+	Table transcript = new Table("transcript", "studId crsCode", "Integer String", "studId crsCode");
+	for (int i = 0; i < 100; i += 2) {
+	    for (int c = 0; c < 3; c++) transcript.insert(new Comparable [] { i, "crs" + c });
+	}
+	return transcript;
+    }
+
+    /**
+     *
+     * Tests that the semi-join keeps each matching student once, both
+     * when probing a hash of the join values and when probing the
+     * primary index.
+     *
+     */
+
+    @Test
+    public void testSemiJoin() {
+
+	Table student = studentTable(200);
+	Table transcript = transcriptTable();
+
+	Table hashed = student.semiJoin("id", "studId", transcript);
+	assertEquals(50, hashed.tuplesLength());
+	assertArrayEquals(new Comparable [] { 2, "name2" }, hashed.getTuple(1));
+
+	Table indexed = transcript.semiJoin("studId", "id", student);
+	assertEquals(150, indexed.tuplesLength());
+	assertEquals(0, transcript.semiJoin("studId", "id", studentTable(0)).tuplesLength());
+	assertNull(student.semiJoin("id", "crsCode", transcript));
+    }
+
+    /**
+     *
+     * Tests that the anti-join keeps exactly the students the semi-join
+     * drops, including tuples with a null join value.
+     *
+     */
+
+    @Test
+    public void testAntiJoin() {
+
+	Table student = studentTable(200);
+	Table transcript = transcriptTable();
+
+	Table anti = student.antiJoin("id", "studId", transcript);
+	assertEquals(150, anti.tuplesLength());
+	Set<Comparable> ids = new HashSet<>();
+	for (int i = 0; i < anti.tuplesLength(); i++) ids.add(anti.getTuple(i)[0]);
+	assertTrue(ids.contains(1) && ids.contains(100));
+	assertFalse(ids.contains(4));
+
+	Table advising = new Table("advising", "advId studId", "Integer Integer", "advId");
+	advising.insert(new Comparable [] { 0, 5 });
+	advising.insert(new Comparable [] { 1, null });
+	advising.insert(new Comparable [] { 2, 500 });
+	assertEquals(1, advising.semiJoin("studId", "id", student).tuplesLength());
+	assertEquals(2, advising.antiJoin("studId", "id", student).tuplesLength());
+    }
+}
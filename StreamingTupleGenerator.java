@@ -0,0 +1,474 @@
+
+/*****************************************************************************************
+ * @file  StreamingTupleGenerator.java
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+/*****************************************************************************************
+ * The StreamingTupleGenerator class populates a database with generated values that
+ * satisfy the domain, primary key and foreign key constraints, like TupleGeneratorImpl,
+ * but without holding the tables in memory.  Every value is a pure function of the
+ * seed, the table, the tuple number and the attribute:
+ *
+ *     non-key attributes   hashed (SplitMix64) from those four
+ *     key attributes       a permutation a * j + b (mod m) of the tuple number j, so
+ *                          keys are unique without any set of used values or retries
+ *     foreign keys         the referenced attributes of a hashed tuple number of the
+ *                          referenced table, recomputed rather than looked up
+ *
+ * Attributes given a Distribution (see setDistribution) draw from it instead, with the
+ * same hashed bits.  The tuples are therefore the same for a given seed however they
+ * are split up, and are generated in chunks in parallel and delivered in order to a
+ * Sink, into Tables (populate) or into table files that Table.load reads (write).
+ */
+public class StreamingTupleGenerator
+       implements TupleGenerator
+{
+    /** The number of tuples generated as one chunk.
+     */
+    static final int CHUNK = 1 << 16;
+
+    /** The range of generated values for non-key attributes, and the least range of
+     *  the values of key attributes (as in TupleGeneratorImpl).
+     */
+    private static final int RANGE = 1000000;
+
+    /** The kinds of attributes.
+     */
+    private static final int VALUE = 0, KEY = 1, FOREIGN = 2;
+
+    /*************************************************************************************
+     * The Sink interface receives the generated tuples of each table, chunk by chunk and
+     * in order.
+     */
+    public interface Sink
+    {
+        /*********************************************************************************
+         * Accept the next chunk of tuples of a table.
+         *
+         * @param table  the table number (in the order the schemas were added)
+         * @param first  the tuple number of the first tuple in the chunk
+         * @param chunk  the tuples
+         * @throws IOException  if the tuples cannot be stored
+         */
+        void accept (int table, long first, Comparable [][] chunk) throws IOException;
+
+    } // Sink
+
+    /*************************************************************************************
+     * The Relation class holds a table's schema and how each attribute is generated.
+     */
+    private static class Relation
+    {
+        final String      name;           // the table's name
+        final String []   attribute;      // its attributes
+        final String []   domain;         // its domains
+        final String []   key;            // its primary key
+        final String [][] foreignKey;     // its foreign keys, as for addRelSchema
+        final Map <String, Distribution> dist = new HashMap <> ();  // set distributions
+        Distribution []   spec;           // per attribute: its distribution, or null
+        Distribution []   fkSpec;         // per foreign key: its distribution, or null
+        int []            kind;           // per attribute: VALUE, KEY or FOREIGN
+        int []            fk;             // per FOREIGN attribute: its foreign key
+        int []            refTable;       // per FOREIGN attribute: the referenced table
+        int []            refColumn;      // per FOREIGN attribute: the referenced attribute
+        long []           mult, add;      // per KEY attribute: the permutation
+        long              range;          // the range of key values
+        long              count;          // the number of tuples to generate
+
+        Relation (String _name, String [] _attribute, String [] _domain, String [] _key,
+                  String [][] _foreignKey)
+        {
+            name       = _name;
+            attribute  = _attribute;
+            domain     = _domain;
+            key        = _key;
+            foreignKey = _foreignKey;
+        } // constructor
+
+    } // Relation
+
+    /** The seed all values derive from.
+     */
+    private final long seed;
+
+    /** The relations in the order they were added.
+     */
+    private final List <Relation> relations = new ArrayList <> ();
+
+    /*************************************************************************************
+     * Construct a generator whose tuples are determined by the given seed.
+     *
+     * @param _seed  the seed
+     */
+    public StreamingTupleGenerator (long _seed)
+    {
+        seed = _seed;
+    } // constructor
+
+    /*************************************************************************************
+     * Add the relational schema for a given table.
+     *
+     * @param name        the table's name
+     * @param attribute   the array holding the table's attributes
+     * @param domain      the array holding the table's domains
+     * @param primaryKey  the array of primary keys
+     * @param foreignKey  the array of foreign keys (see TupleGenerator)
+     */
+    public void addRelSchema (String name, String [] attribute, String [] domain,
+                              String [] primaryKey, String [][] foreignKey)
+    {
+        relations.add (new Relation (name, attribute, domain, primaryKey, foreignKey));
+    } // addRelSchema
+
+    /*************************************************************************************
+     * Add the relational schema for a given table.  Convenience method.
+     *
+     * @param name        the table's name
+     * @param attribute   the string embedding the table's attributes
+     * @param domain      the string embedding the table's domains
+     * @param primaryKey  the string embedding the table's primary keys
+     * @param foreignKey  the array of foreign keys
+     */
+    public void addRelSchema (String name, String attribute, String domain,
+                              String primaryKey, String [][] foreignKey)
+    {
+        addRelSchema (name, attribute.split (" "), domain.split (" "),
+                      primaryKey.split (" "), foreignKey);
+    } // addRelSchema
+
+    /*************************************************************************************
+     * Set the distribution of the values of an attribute (see TupleGenerator).
+     *
+     * @param table         the table's name
+     * @param attribute     the attribute's name
+     * @param distribution  the distribution of its values
+     */
+    public void setDistribution (String table, String attribute, Distribution distribution)
+    {
+        for (Relation r : relations) {
+            if (r.name.equals (table)) {
+                if (! Arrays.asList (r.attribute).contains (attribute)) {
+                    throw new IllegalArgumentException ("setDistribution: no attribute " + attribute + " in " + table);
+                } // if
+                r.dist.put (attribute, distribution);
+                return;
+            } // if
+        } // for
+        throw new IllegalArgumentException ("setDistribution: no table " + table);
+    } // setDistribution
+
+    /*************************************************************************************
+     * Generate tuples for all of the tables, in memory.  Suitable for small databases
+     * only; use populate, write or generate with a Sink for large ones.
+     *
+     * @param nTuples  the number of tuples for each table
+     * @return  Comparable [i][j][k] 3D array, where 'i' is the table number,
+     *          'j' is the tuple number and 'k' is the attribute number
+     */
+    public Comparable [][][] generate (int [] nTuples)
+    {
+        Comparable [][][] result = new Comparable [nTuples.length][][];
+        for (int i = 0; i < nTuples.length; i++) result [i] = new Comparable [nTuples [i]][];
+        try {
+            generate (counts (nTuples), (t, first, chunk) ->
+                      System.arraycopy (chunk, 0, result [t], (int) first, chunk.length));
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);            // not thrown by this sink
+        } // try
+        return result;
+    } // generate
+
+    /*************************************************************************************
+     * Generate tuples for all of the tables and pass them to the sink.  Chunks of each
+     * table are generated in parallel, but handed to the sink one at a time, in order.
+     *
+     * @param nTuples  the number of tuples for each table
+     * @param sink     where the tuples go
+     * @throws IOException  if the sink fails
+     */
+    public void generate (long [] nTuples, Sink sink) throws IOException
+    {
+        prepare (nTuples);
+        int window = 2 * Runtime.getRuntime ().availableProcessors ();
+        for (int t = 0; t < relations.size (); t++) {
+            final int tab = t;
+            long n = relations.get (t).count;
+            ArrayDeque <CompletableFuture <Comparable [][]>> pending = new ArrayDeque <> ();
+            long next = 0;                                          // next tuple to schedule
+            for (long first = 0; first < n; first += CHUNK) {
+                while (next < n && pending.size () < window) {
+                    final long from = next, to = Math.min (n, next + CHUNK);
+                    pending.add (CompletableFuture.supplyAsync (() -> chunk (tab, from, to)));
+                    next = to;
+                } // while
+                sink.accept (t, first, pending.poll ().join ());
+            } // for
+        } // for
+    } // generate
+
+    /*************************************************************************************
+     * Generate tuples for all of the tables and insert them into new tables, each with
+     * one bulk insert (see Table.insertAll).
+     *
+     * @param nTuples  the number of tuples for each table
+     * @return  the tables, in the order the schemas were added
+     */
+    public Table [] populate (int [] nTuples)
+    {
+        Table [] tables = new Table [relations.size ()];
+        for (int t = 0; t < tables.length; t++) {
+            Relation r = relations.get (t);
+            tables [t] = new Table (r.name, String.join (" ", r.attribute), String.join (" ", r.domain),
+                                    String.join (" ", r.key));
+        } // for
+        List <Comparable []> rows = new ArrayList <> ();
+        try {
+            generate (counts (nTuples), (t, first, chunk) -> {
+                rows.addAll (Arrays.asList (chunk));
+                if (first + chunk.length == relations.get (t).count) {   // the table is complete
+                    tables [t].insertAll (rows);
+                    rows.clear ();
+                } // if
+            });
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);            // not thrown by this sink
+        } // try
+        return tables;
+    } // populate
+
+    /*************************************************************************************
+     * Generate tuples for all of the tables and write each table to the file Table.load
+     * reads it from, without keeping the tuples in memory.
+     *
+     * @param nTuples  the number of tuples for each table
+     * @throws IOException  if a file cannot be written
+     */
+    public void write (long [] nTuples) throws IOException
+    {
+        TableFile.Writer [] writers = new TableFile.Writer [relations.size ()];
+        try {
+            generate (nTuples, (t, first, chunk) -> {
+                if (writers [t] == null) {
+                    Relation r = relations.get (t);
+                    writers [t] = new TableFile.Writer (Table.path (r.name), r.name, r.attribute,
+                                                        classes (r.domain), r.key, 0);
+                } // if
+                for (Comparable [] tup : chunk) writers [t].write (tup);
+                if (first + chunk.length == relations.get (t).count) {
+                    writers [t].close ();
+                    writers [t] = null;
+                } // if
+            });
+        } finally {
+            for (TableFile.Writer w : writers) if (w != null) w.close ();
+        } // try
+    } // write
+
+    /*************************************************************************************
+     * Return tuple j of table t, as generate would produce it.
+     *
+     * @param t  the table number
+     * @param j  the tuple number
+     * @return  the tuple
+     */
+    public Comparable [] tuple (int t, long j)
+    {
+        Relation r = relations.get (t);
+        Comparable [] tup = new Comparable [r.attribute.length];
+        for (int k = 0; k < tup.length; k++) tup [k] = value (t, j, k);
+        return tup;
+    } // tuple
+
+    /*************************************************************************************
+     * Generate tuples from .. to-1 of table t.
+     */
+    private Comparable [][] chunk (int t, long from, long to)
+    {
+        Comparable [][] chunk = new Comparable [(int) (to - from)][];
+        for (int i = 0; i < chunk.length; i++) chunk [i] = tuple (t, from + i);
+        return chunk;
+    } // chunk
+
+    /*************************************************************************************
+     * Return the value of attribute k of tuple j of table t.
+     */
+    private Comparable value (int t, long j, int k)
+    {
+        Relation r = relations.get (t);
+        switch (r.kind [k]) {
+        case FOREIGN:
+            Relation     ref  = relations.get (r.refTable [k]);
+            Distribution d    = r.fkSpec [r.fk [k]];
+            long         bits = hash (t, j, r.attribute.length + r.fk [k]);
+            long row = d == null ? Long.remainderUnsigned (bits, ref.count) : d.parent (bits, j, r.count, ref.count);
+            return value (r.refTable [k], row, r.refColumn [k]);
+        case KEY:
+            if (r.spec [k] != null) return convert (r, k, r.spec [k].draw (hash (t, j, k), j, r.count, r.range));
+            long v = (r.mult [k] * j + r.add [k]) % r.range;
+            switch (r.domain [k]) {
+            case "Integer": return (int) v;
+            case "String":  return r.attribute [k] + v;
+            case "Double":  return v + unit (hash (t, j, k));
+            default:        throw new IllegalArgumentException ("Invalid type in switch: " + r.domain [k]);
+            } // switch
+        default:
+            long h = hash (t, j, k);
+            if (r.spec [k] != null) return convert (r, k, r.spec [k].draw (h, j, r.count, RANGE));
+            switch (r.domain [k]) {
+            case "Integer": return (int) Long.remainderUnsigned (h, RANGE);
+            case "String":  return r.attribute [k] + Long.remainderUnsigned (h, RANGE);
+            case "Double":  return Long.remainderUnsigned (h, RANGE) * unit (mix (h));
+            default:        throw new IllegalArgumentException ("Invalid type in switch: " + r.domain [k]);
+            } // switch
+        } // switch
+    } // value
+
+    /*************************************************************************************
+     * Convert a value drawn from a distribution to the domain of attribute k.
+     */
+    private static Comparable convert (Relation r, int k, double x)
+    {
+        switch (r.domain [k]) {
+        case "Integer": return (int) Math.floor (x);
+        case "String":  return r.attribute [k] + (long) Math.floor (x);
+        case "Double":  return x;
+        default:        throw new IllegalArgumentException ("Invalid type in switch: " + r.domain [k]);
+        } // switch
+    } // convert
+
+    /*************************************************************************************
+     * Work out, for the given tuple counts, how each attribute of each table is to be
+     * generated.  A foreign key determines the attributes it covers (the last one wins
+     * where several cover the same attribute); the other primary key attributes are
+     * keys and the rest are plain values.
+     */
+    private void prepare (long [] nTuples)
+    {
+        if (nTuples.length != relations.size ()) {
+            throw new IllegalArgumentException ("generate: " + nTuples.length + " tuple counts for "
+                                                + relations.size () + " tables");
+        } // if
+        Map <String, Integer> tables = new HashMap <> ();
+        for (int t = 0; t < relations.size (); t++) {
+            Relation r = relations.get (t);
+            int n = r.attribute.length;
+            r.count     = nTuples [t];
+            r.range     = Math.max (r.count, RANGE);
+            r.kind      = new int [n];
+            r.fk        = new int [n];
+            r.refTable  = new int [n];
+            r.refColumn = new int [n];
+            r.mult      = new long [n];
+            r.add       = new long [n];
+            r.spec      = new Distribution [n];
+            r.fkSpec    = new Distribution [r.foreignKey == null ? 0 : r.foreignKey.length];
+            if (r.range > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException ("generate: too many tuples for " + r.name);
+            } // if
+            List <String> pk = Arrays.asList (r.key);
+            for (int k = 0; k < n; k++) {
+                r.spec [k] = r.dist.get (r.attribute [k]);
+                if (pk.contains (r.attribute [k])) {
+                    r.kind [k] = KEY;
+                    long a = 1 + Long.remainderUnsigned (hash (t, -1, k), r.range - 1);
+                    while (gcd (a, r.range) != 1) a = a % (r.range - 1) + 1;
+                    r.mult [k] = a;
+                    r.add [k]  = Long.remainderUnsigned (hash (t, -2, k), r.range);
+                } // if
+            } // for
+            if (r.foreignKey != null) {
+                for (int f = 0; f < r.foreignKey.length; f++) {
+                    String [] fk = r.foreignKey [f];
+                    Integer ref = tables.get (fk [1]);
+                    if (ref == null || relations.get (ref).count == 0) {
+                        throw new IllegalArgumentException ("generate: " + r.name + " references " + fk [1]
+                                                            + ", which must be added before it and have tuples");
+                    } // if
+                    String [] from = fk [0].split (" "), to = fk [2].split (" ");
+                    for (int a = 0; a < from.length; a++) {
+                        int k = Arrays.asList (r.attribute).indexOf (from [a]);
+                        int c = Arrays.asList (relations.get (ref).attribute).indexOf (to [a]);
+                        if (k < 0 || c < 0) {
+                            throw new IllegalArgumentException ("generate: bad foreign key " + Arrays.toString (fk)
+                                                                + " in " + r.name);
+                        } // if
+                        r.kind [k]      = FOREIGN;
+                        r.fk [k]        = f;
+                        r.refTable [k]  = ref;
+                        r.refColumn [k] = c;
+                        if (r.fkSpec [f] == null) r.fkSpec [f] = r.spec [k];
+                    } // for
+                } // for
+            } // if
+            for (int k = 0; k < n; k++) {
+                if (r.kind [k] == KEY && r.spec [k] != null && ! r.spec [k].unique ()) {
+                    throw new IllegalArgumentException ("generate: key " + r.attribute [k] + " of " + r.name
+                                                        + " needs unique values, not " + r.spec [k]);
+                } // if
+            } // for
+            tables.put (r.name, t);
+        } // for
+    } // prepare
+
+    /*************************************************************************************
+     * Return the hash of the seed, table, tuple number and attribute.
+     */
+    private long hash (int t, long j, int k)
+    {
+        return mix (mix (mix (seed + t) + j) + k);
+    } // hash
+
+    /*************************************************************************************
+     * Mix the bits of z (the SplitMix64 output function, with its increment).
+     */
+    static long mix (long z)
+    {
+        z += 0x9E3779B97F4A7C15L;
+        z  = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z  = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    } // mix
+
+    /*************************************************************************************
+     * Return a double in [0, 1) taken from the high bits of h.
+     */
+    private static double unit (long h)
+    {
+        return (h >>> 11) * 0x1.0p-53;
+    } // unit
+
+    private static long gcd (long a, long b)
+    {
+        while (b != 0) { long t = a % b; a = b; b = t; }
+        return a;
+    } // gcd
+
+    private static long [] counts (int [] nTuples)
+    {
+        return IntStream.of (nTuples).asLongStream ().toArray ();
+    } // counts
+
+    /*************************************************************************************
+     * Return the classes of the given domains.
+     */
+    private static Class [] classes (String [] domain)
+    {
+        Class [] classes = new Class [domain.length];
+        for (int k = 0; k < domain.length; k++) {
+            switch (domain [k]) {
+            case "Integer": classes [k] = Integer.class; break;
+            case "String":  classes [k] = String.class;  break;
+            case "Double":  classes [k] = Double.class;  break;
+            default:        throw new IllegalArgumentException ("Invalid type in switch: " + domain [k]);
+            } // switch
+        } // for
+        return classes;
+    } // classes
+
+} // StreamingTupleGenerator class
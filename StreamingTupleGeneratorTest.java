@@ -0,0 +1,79 @@
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+public class StreamingTupleGeneratorTest {
+
+    /**
+     *
+     * Creates a generator for the student registration schema of TestTupleGenerator.
+     *
+     * @return the generator
+     *
+     */
+
+    public StreamingTupleGenerator generator(long seed) {
+
+	StreamingTupleGenerator gen = new StreamingTupleGenerator(seed);
+	gen.addRelSchema("genStudent", "id name address status", "Integer String String String", "id", null);
+	gen.addRelSchema("genCourse", "crsCode deptId crsName descr", "String String String String", "crsCode", null);
+	gen.addRelSchema("genTranscript", "studId crsCode semester grade", "Integer String String String",
+			 "studId crsCode semester",
+			 new String [][] {{ "studId", "genStudent", "id" }, { "crsCode", "genCourse", "crsCode" }});
+	return gen;
+    }
+
+    /**
+     *
+     * Tests that the tuples depend only on the seed, that keys are unique
+     * even when the table fills the whole key range, and that foreign keys
+     * refer to existing tuples.
+     *
+     */
+
+    @Test
+    public void testSeededUniqueAndReferential() {
+
+	int [] n = { 1000000, 500, 200000 };
+	Comparable [][][] a = generator(7).generate(n);
+	Comparable [][][] b = generator(7).generate(n);
+	for (int t = 0; t < n.length; t++) assertTrue(Arrays.deepEquals(a[t], b[t]));
+	assertFalse(Arrays.deepEquals(a[0], generator(8).generate(n)[0]));
+	assertArrayEquals(a[2][12345], generator(7).generate(n)[2][12345]);
+
+	Set<Comparable> ids = new HashSet<>();
+	for (Comparable [] tup : a[0]) assertTrue(ids.add(tup[0]));
+	for (Comparable [] tup : a[0]) assertTrue((Integer) tup[0] >= 0 && (Integer) tup[0] < 1000000);
+	Set<Comparable> courses = new HashSet<>();
+	for (Comparable [] tup : a[1]) assertTrue(courses.add(tup[0]));
+	for (Comparable [] tup : a[2]) {
+	    assertTrue(ids.contains(tup[0]));
+	    assertTrue(courses.contains(tup[1]));
+	}
+    }
+
+    /**
+     *
+     * Tests that populate and write produce the same tables, and that
+     * written tables can be loaded.
+     *
+     */
+
+    @Test
+    public void testPopulateAndWrite() throws Exception {
+
+	int [] n = { 3000, 100, 5000 };
+	Table [] tables = generator(3).populate(n);
+	assertEquals(3000, tables[0].tuplesLength());
+	assertEquals(5000, tables[2].tuplesLength());
+
+	generator(3).write(new long [] { 3000, 100, 5000 });
+	Table loaded = Table.load("genTranscript");
+	List<Comparable []> rows = loaded.rows();
+	assertEquals(5000, rows.size());
+	Comparable [][] expected = generator(3).generate(n)[2];
+	for (int i = 0; i < rows.size(); i++) assertArrayEquals(expected[i], rows.get(i));
+    }
+}
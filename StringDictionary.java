@@ -0,0 +1,95 @@
+
+/************************************************************************************
+ * @file StringDictionary.java
+ */
+
+import java.util.*;
+
+/************************************************************************************
+ * The StringDictionary class maps the distinct values of a String column to dense int
+ * codes (0, 1, 2, ... in order of first occurrence).  Each distinct string is kept
+ * once, so tuples can share the canonical instance, and predicates and joins on the
+ * column can compare int codes instead of strings.  Null values have the code NULL.
+ */
+public class StringDictionary
+{
+    /** The code of the null value.
+     */
+    public static final int NULL = -1;
+
+    /** Map from a string to its code.
+     */
+    private final HashMap <String, Integer> codeOf = new HashMap <> ();
+
+    /** The distinct strings indexed by code.
+     */
+    private final ArrayList <String> values = new ArrayList <> ();
+
+    /********************************************************************************
+     * Return the code of a string, adding it to the dictionary if it is new.
+     *
+     * @param s  the string (may be null)
+     * @return  the code of the string
+     */
+    public int encode (String s)
+    {
+        if (s == null) return NULL;
+        Integer c = codeOf.get (s);
+        if (c == null) {
+            c = values.size ();
+            codeOf.put (s, c);
+            values.add (s);
+        } // if
+        return c;
+    } // encode
+
+    /********************************************************************************
+     * Return the code of a value without adding it.
+     *
+     * @param v  the value (may be null)
+     * @return  the code, NULL for null, or -2 if the value is not in the dictionary
+     */
+    public int code (Object v)
+    {
+        if (v == null) return NULL;
+        Integer c = codeOf.get (v.toString ());
+        return (c == null) ? -2 : c;
+    } // code
+
+    /********************************************************************************
+     * Return the string with the given code.
+     *
+     * @param c  the code
+     * @return  the string (null for NULL)
+     */
+    public String decode (int c)
+    {
+        return (c == NULL) ? null : values.get (c);
+    } // decode
+
+    /********************************************************************************
+     * Return the number of distinct strings.
+     *
+     * @return  the size of the dictionary
+     */
+    public int size ()
+    {
+        return values.size ();
+    } // size
+
+    /********************************************************************************
+     * Return a mapping from the codes of another dictionary to the codes of this one
+     * (-2 for strings that are not in this dictionary), so that values coded by the two
+     * dictionaries can be compared as ints.
+     *
+     * @param other  the other dictionary
+     * @return  the translation table indexed by the other dictionary's codes
+     */
+    public int [] translate (StringDictionary other)
+    {
+        int [] map = new int [other.size ()];
+        for (int c = 0; c < map.length; c++) map [c] = code (other.values.get (c));
+        return map;
+    } // translate
+
+} // StringDictionary class
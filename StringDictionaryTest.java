@@ -0,0 +1,96 @@
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class StringDictionaryTest {
+
+    /**
+     *
+     * Creates a transcript table with repetitive String columns.
+     *
+     * @return transcript table
+     *
+     */
+
+    public Table transcriptTable(int n) {
+
+	Table transcript = new Table("transcript", "studId crsCode semester grade",
+				     "Integer String String String", "studId crsCode semester");
+	String [] semesters = { "Fall2016", "Spring2017", "Fall2017" };
+	for (int i = 0; i < n; i++) {
+	    transcript.insert(new Comparable [] { i, "crs" + (i % 50), semesters[i % 3],
+						  new String ("ABCDF".substring(i % 5, i % 5 + 1)) });
+	}
+	return transcript;
+    }
+
+    /**
+     *
+     * Tests that codes are dense and stable and that translation maps
+     * equal strings to equal codes.
+     *
+     */
+
+    @Test
+    public void testEncode() {
+
+	StringDictionary d1 = new StringDictionary();
+	assertEquals(0, d1.encode("a"));
+	assertEquals(1, d1.encode("b"));
+	assertEquals(0, d1.encode(new String ("a")));
+	assertEquals(StringDictionary.NULL, d1.encode(null));
+	assertEquals(-2, d1.code("z"));
+	assertEquals("b", d1.decode(1));
+
+	StringDictionary d2 = new StringDictionary();
+	d2.encode("b");
+	d2.encode("z");
+	assertArrayEquals(new int [] { 1, -2 }, d1.translate(d2));
+    }
+
+    /**
+     *
+     * Tests that equality and IN filters on codes return the same
+     * tuples as the equivalent predicate selects, and that inserted
+     * strings share canonical instances.
+     *
+     */
+
+    @Test
+    public void testSelectIn() {
+
+	Table transcript = transcriptTable(3000);
+	int sem = transcript.col("semester");
+
+	assertEquals(1000, transcript.selectIn("semester", "Fall2016").tuplesLength());
+	assertEquals(transcript.select(t -> t[sem].equals("Fall2016") || t[sem].equals("Fall2017")).tuplesLength(),
+		     transcript.selectIn("semester", "Fall2016", "Fall2017", "Summer2018").tuplesLength());
+	assertEquals(0, transcript.selectIn("semester", "Summer2018").tuplesLength());
+	assertEquals(1, transcript.selectIn("studId", 42).tuplesLength());
+
+	int grade = transcript.col("grade");
+	assertSame(transcript.getTuple(0)[grade], transcript.getTuple(5)[grade]);
+    }
+
+    /**
+     *
+     * Tests that the dictionary-coded join matches the nested loop join.
+     *
+     */
+
+    @Test
+    public void testDJoin() {
+
+	Table transcript = transcriptTable(500);
+	Table course = new Table("course", "crsCode deptId", "String String", "crsCode");
+	for (int i = 0; i < 60; i += 2) course.insert(new Comparable [] { "crs" + i, "dept" + (i % 4) });
+
+	Table nested = transcript.join("crsCode", "crsCode", course);
+	Table coded  = transcript.d_join("crsCode", "crsCode", course);
+	assertEquals(250, coded.tuplesLength());
+	assertEquals(nested.tuplesLength(), coded.tuplesLength());
+	for (int i = 0; i < coded.tuplesLength(); i++) {
+	    assertArrayEquals(nested.getTuple(i), coded.getTuple(i));
+	}
+    }
+}
@@ -7,7 +7,11 @@
 
 import java.io.*;
 import java.lang.reflect.Array;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.*;
 import java.util.stream.*;
 
@@ -32,10 +36,56 @@ public class Table
      */
     private static final String EXT = ".dbf";
 
+    /** Filename extension for persistent index files
+     */
+    private static final String IDX = ".idx";
+
+    /** Filename extension for write-ahead log files
+     */
+    private static final String WAL = ".wal";
+
+    /** Filename extension for primary key Bloom filter files
+     */
+    private static final String BLM = ".blm";
+
     /** Counter for naming temporary tables.
      */
     private static int count = 0;
 
+    /** The batch size from which insertAll checks, keys and sorts in parallel, and the
+     *  number of tuples type checked as one block.
+     */
+    private static final int PARALLEL_MIN = 1 << 14;
+    private static final int CHECK_BLOCK  = 1 << 10;
+
+    /** The probe size from which naturalJoin probes its hash table in parallel, and the
+     *  number of probe tuples each task joins.
+     */
+    private static final int JOIN_PARALLEL_MIN = 1 << 14;
+    private static final int JOIN_BLOCK        = 1 << 10;
+
+    /** False positive probability of the Bloom filters built for hash joins.
+     */
+    private static final double JOIN_FILTER_FPP = 0.01;
+
+    /** False positive probability and minimum capacity of the primary key Bloom filters.
+     */
+    private static final double KEY_FILTER_FPP = 0.01;
+    private static final int    KEY_FILTER_MIN = 1024;
+
+    /** Totals over the joins of their Bloom filters' counters: {probes, rejected, false
+     *  positives} (see joinFilterMetrics).
+     */
+    private static final long [] joinFilterStats = new long [3];
+
+    /** The cache of operator results, if enabled with setResultCache (null if not).
+     */
+    private static volatile ResultCache resultCache;
+
+    /** Source of the ids identifying tables in the result cache.
+     */
+    private static final AtomicLong nextId = new AtomicLong ();
+
     /** Table name.
      */
     private final String name;
@@ -51,6 +101,10 @@ public class Table
      */
     private final Class [] domain;
 
+    /** The schema resolving attribute names to column positions.
+     */
+    private final Schema schema;
+
     /** Collection of tuples (data storage).
      */
     private final List <Comparable []> tuples;
@@ -65,25 +119,97 @@ public class Table
 
     /** The supported map types.
      */
-    private enum MapType { NO_MAP, TREE_MAP, LINHASH_MAP, BPTREE_MAP }
+    private enum MapType { NO_MAP, TREE_MAP, LINHASH_MAP, BPTREE_MAP, DISK_BPTREE_MAP }
 
     /** The map type to be used for indices.  Change as needed.
      */
     private static MapType mType = MapType.BPTREE_MAP;
 
+    /** The memory-mapped file backing the tuples, if the table was opened with map.
+     *  Mapped tables are read-only and, unless a persistent index is attached, keyed
+     *  selects scan the key columns of the file.
+     */
+    private transient MappedTableFile mapped;
+
+    /** The write-ahead log for inserts, if logging has been enabled with logInserts.
+     */
+    private transient WriteAheadLog wal;
+
+    /** The number of tuples held by the stored files this table was last loaded from or
+     *  saved to (0 if none), and the generation of those files (see Checkpointer).
+     */
+    private transient long savedCount, savedGen;
+
+    /** The dictionaries of the String columns (null for other columns), created by the
+     *  first dictionary-coded operation, which also encodes the tuples added since.
+     */
+    private transient StringDictionary [] dict;
+
+    /** The dictionary codes of the String columns (null for other columns), parallel to
+     *  the tuples; the first coded tuples have been encoded.
+     */
+    private transient int [][] codes;
+
+    /** The number of tuples whose String columns have been encoded.
+     */
+    private transient int coded;
+
+    /** The Bloom filter over the primary keys, which lets keyed selects reject missing
+     *  keys without touching the index; built on first use, kept up to date by insert
+     *  and dropped (to be rebuilt larger) once the tuples exceed its capacity.
+     */
+    private transient volatile BloomFilter keyBloom;
+
+    /** The number of keys the primary key Bloom filter was sized for.
+     */
+    private transient long bloomCapacity;
+
+    /** The id of this table in the result cache (0 until first needed).
+     */
+    private transient long id;
+
+    /** The version of this table, bumped by every insert, so cached results computed
+     *  from an older version are never served.
+     */
+    private transient volatile long version;
+
+    /** The listeners notified of the tuples added by each insert (null if none), such as
+     *  the materialized views defined over this table.
+     */
+    private transient volatile List <Consumer <List <Comparable []>>> listeners;
+
     /************************************************************************************
      * Make a map (index) given the MapType.
+     *
+     * @param _name  the name of the table (names the index file for disk-resident maps)
      */
-    private static Map <KeyType, Comparable []> makeMap ()
+    private static Map <KeyType, Comparable []> makeMap (String _name)
     {
         switch (mType) {
-        case TREE_MAP:    return new TreeMap <> ();
-        case LINHASH_MAP: return new LinHashMap <> (KeyType.class, Comparable [].class);
-        case BPTREE_MAP:  return new BpTreeMap <> (KeyType.class, Comparable [].class);
-        default:          return null;
+        case TREE_MAP:        return new TreeMap <> ();
+        case LINHASH_MAP:     return new LinHashMap <> (KeyType.class, Comparable [].class);
+        case BPTREE_MAP:      return new BpTreeMap <> (KeyType.class, Comparable [].class);
+        case DISK_BPTREE_MAP: return new DiskBpTreeMap <> (DIR + _name + IDX, true);
+        default:              return null;
         } // switch
     } // makeMap
 
+    /************************************************************************************
+     * Reopen the persistent index of a stored table, if the map type is disk-resident
+     * and the index file is consistent with the stored tuples.
+     *
+     * @param _name  the name of the table
+     * @param size   the number of tuples stored for the table
+     * @return  the reopened index, or null if it must be rebuilt
+     */
+    private static Map <KeyType, Comparable []> openIndex (String _name, long size)
+    {
+        if (mType != MapType.DISK_BPTREE_MAP || ! DiskBpTreeMap.isValid (DIR + _name + IDX, size)) {
+            return null;
+        } // if
+        return new DiskBpTreeMap <> (DIR + _name + IDX, false);
+    } // openIndex
+
     //-----------------------------------------------------------------------------------
     // Constructors
     //-----------------------------------------------------------------------------------
@@ -101,9 +227,10 @@ public class Table
         name      = _name;
         attribute = _attribute;
         domain    = _domain;
+        schema    = new Schema (_attribute, _domain);
         key       = _key;
         tuples    = new ArrayList <> ();
-        index     = makeMap ();
+        index     = makeMap (_name);
 
     } // primary constructor
 
@@ -122,9 +249,32 @@ public class Table
         name      = _name;
         attribute = _attribute;
         domain    = _domain;
+        schema    = new Schema (_attribute, _domain);
+        key       = _key;
+        tuples    = _tuples;
+        index     = makeMap (_name);
+    } // constructor
+
+    /************************************************************************************
+     * Construct a table from the meta-data specifications, tuples and an existing index.
+     *
+     * @param _name       the name of the relation
+     * @param _attribute  the string containing attributes names
+     * @param _domain     the string containing attribute domains (data types)
+     * @param _key        the primary key
+     * @param _tuples     the list of tuples containing the data
+     * @param _index      the index over the tuples
+     */  
+    private Table (String _name, String [] _attribute, Class [] _domain, String [] _key,
+                   List <Comparable []> _tuples, Map <KeyType, Comparable []> _index)
+    {
+        name      = _name;
+        attribute = _attribute;
+        domain    = _domain;
+        schema    = new Schema (_attribute, _domain);
         key       = _key;
         tuples    = _tuples;
-        index     = makeMap ();
+        index     = _index;
     } // constructor
 
     /************************************************************************************
@@ -139,7 +289,7 @@ public class Table
     {
         this (_name, attributes.split (" "), findClass (domains.split (" ")), _key.split(" "));
 
-        out.println ("DDL> create table " + name + " (" + attributes + ")");
+        Trace.ddl ("create table", name, attributes);
     } // constructor
 
     //----------------------------------------------------------------------------------
@@ -148,7 +298,10 @@ public class Table
 
     /************************************************************************************
      * Project the tuples onto a lower dimension by keeping only the given attributes.
-     * Check whether the original key is included in the projection.
+     * Check whether the original key is included in the projection.  If it is not,
+     * duplicate tuples are eliminated, by hashing when the estimated number of distinct
+     * tuples fits in the sort memory budget (keeping the first occurrence order) and
+     * otherwise by an external sort (giving sorted order).
      *
      * #usage movie.project ("title year studioNo")
      *
@@ -157,39 +310,53 @@ public class Table
      */
     public Table project (String attributes)
     {
-        out.println ("RA> " + name + ".project (" + attributes + ")");
+        long t0 = Trace.start ();
         String [] attrs     = attributes.split (" ");
-        Class []  colDomain = extractDom (match (attrs), domain);
-        String [] newKey    = (Arrays.asList (attrs).containsAll (Arrays.asList (key))) ? key : attrs;
-
-        List <Comparable []> rows = new ArrayList <> ();
-        
-        for(int i=0;i<attrs.length;i++){
-            boolean attributeExists=false;
-            for(int k=0;k<attribute.length;k++){
-                if(attrs[i].equals(attribute[k])){
-                    attributeExists=true;
-                    break;
-                }
-            }
-            if(!attributeExists){
-                return null;
-            }
-        }
-      
-        for(int i=0;i<this.tuples.size();i++){
-            Comparable[] projection=new Comparable[attrs.length];
-            for(int j=0;j<this.tuples.get(i).length;j++){
-                for(int k=0;k<attrs.length;k++){
-                    projection[k]=this.tuples.get(i)[this.col(attrs[k])];
-                }
-            }
-            rows.add(projection);
-        }
+        int []    cols      = positions (attrs);
+        if (cols == null) return Trace.op (t0, this, "project", null, attributes);
+        Class []  colDomain = extractDom (cols, domain);
+        boolean   keyed     = Arrays.asList (attrs).containsAll (Arrays.asList (key));
+        String [] newKey    = keyed ? key : attrs;
+
+        List <Comparable []> rows;
+        if (keyed) {                                                 // no duplicates possible
+            rows = new ArrayList <> (tuples.size ());
+            for (Comparable [] t : tuples) rows.add (project (t, cols));
+        } else if (distinctBytes (cols) <= ExternalSort.defaultBudget ()) {
+            rows = projectStream (attributes).collect (Collectors.toList ());
+        } else {
+            int [] all = IntStream.range (0, cols.length).toArray ();
+            rows = sortDistinct (tuples.stream ().map (t -> project (t, cols)).iterator (), colDomain, all);
+        } // if
 
-        return new Table (name + count++, attrs, colDomain, newKey, rows);
+        Table result = new Table (name + count++, attrs, colDomain, newKey, rows);
+        return Trace.op (t0, this, "project", result, attributes);
     } // project
 
+    /************************************************************************************
+     * Return a lazy stream of the tuples projected onto the given attributes, without
+     * materializing a table.  Unless the original key is included in the projection,
+     * duplicates are dropped by remembering the distinct tuples seen so far, so each
+     * distinct tuple is produced once, in first occurrence order.  The distinct tuples
+     * are remembered in a concurrent set, so the stream may also be made parallel, in
+     * which case which occurrence is kept is unspecified.
+     *
+     * #usage movie.projectStream ("year studioName").forEach (t -> ...)
+     *
+     * @param attributes  the attributes to project onto
+     * @return  a stream of projected tuples, or null if an attribute is not found
+     */
+    public Stream <Comparable []> projectStream (String attributes)
+    {
+        String [] attrs = attributes.split (" ");
+        int []    cols  = positions (attrs);
+        if (cols == null) return null;
+        Stream <Comparable []> s = tuples.stream ().map (t -> project (t, cols));
+        if (Arrays.asList (attrs).containsAll (Arrays.asList (key))) return s;
+        Set <List <Comparable>> seen = ConcurrentHashMap.newKeySet ();
+        return s.filter (t -> seen.add (Arrays.asList (t)));
+    } // projectStream
+
     /************************************************************************************
      * Select the tuples satisfying the given predicate (Boolean function).
      *
@@ -200,26 +367,136 @@ public class Table
      */
     public Table select (Predicate <Comparable []> predicate)
     {
-        out.println ("RA> " + name + ".select (" + predicate + ")");
-
-        return new Table (name + count++, attribute, domain, key,
+        long t0 = Trace.start ();
+        Table result = cached ("select", null, () ->
+               new Table (name + count++, attribute, domain, key,
                    tuples.stream ().filter (t -> predicate.test (t))
-                                   .collect (Collectors.toList ()));
+                                   .collect (Collectors.toList ())), predicate);
+        return Trace.op (t0, this, "select", result, predicate);
+    } // select
+
+    /************************************************************************************
+     * Select the tuples satisfying the given condition written over the attribute names,
+     * e.g., "year >= 1977 and studioName = 'Fox'" (see PredicateCompiler for the
+     * syntax).  The condition is compiled once per schema into a predicate specialized
+     * to the column positions and domains.
+     *
+     * #usage movie.select ("year = 1977")
+     *
+     * @param condition  the check condition for tuples
+     * @return  a table with tuples satisfying the condition
+     */
+    public Table select (String condition)
+    {
+        long t0 = Trace.start ();
+        Predicate <Comparable []> predicate;
+        try {
+            predicate = PredicateCompiler.compile (condition, this);
+        } catch (IllegalArgumentException ex) {
+            out.println ("select ERROR: " + ex.getMessage ());
+            return Trace.op (t0, this, "select", null, condition);
+        } // try
+
+        Table result = cached ("where", null, () -> {
+            List <Comparable []> rows = new ArrayList <> ();
+            for (Comparable [] t : tuples) if (predicate.test (t)) rows.add (t);
+            return new Table (name + count++, attribute, domain, key, rows);
+        }, condition);
+        return Trace.op (t0, this, "select", result, condition);
     } // select
 
+    /************************************************************************************
+     * Select the tuples whose value for the given attribute is one of the given values
+     * (attr = value or attr IN values).  For String columns the values are looked up
+     * once in the column's dictionary and the tuples are filtered by comparing int
+     * codes.
+     *
+     * #usage transcript.selectIn ("semester", "Fall2016", "Spring2017")
+     *
+     * @param attr    the attribute to be compared
+     * @param values  the values to match
+     * @return  a table with the tuples whose value is among the values
+     */
+    public Table selectIn (String attr, Comparable... values)
+    {
+        long t0 = Trace.start ();
+
+        Table result = cached ("selectIn", null, () -> selectValues (attr, values), attr, Arrays.asList (values));
+        return Trace.op (t0, this, "selectIn", result, attr, values);
+    } // selectIn
+
+    /************************************************************************************
+     * Select the tuples whose value for the given attribute is one of the given values,
+     * as for selectIn (attr, values).
+     *
+     * @param attr    the attribute to be compared
+     * @param values  the values to match
+     * @return  a table with the tuples whose value is among the values
+     */
+    private Table selectValues (String attr, Comparable [] values)
+    {
+        int j = col (attr);
+        if (j < 0) return null;
+        List <Comparable []> rows = new ArrayList <> ();
+
+        if (domain [j] == String.class) {
+            encodeStrings ();
+            BitSet want = new BitSet (dict [j].size ());
+            for (Comparable v : values) {
+                int c = dict [j].code (v);
+                if (c >= 0) want.set (c);
+            } // for
+            int [] cj = codes [j];
+            int    n  = coded;
+            if (! want.isEmpty ()) {
+                for (int i = 0; i < n; i++) if (cj [i] >= 0 && want.get (cj [i])) rows.add (tuples.get (i));
+            } // if
+        } else {
+            Set <Comparable> want = new HashSet <> (Arrays.asList (values));
+            for (Comparable [] t : tuples) if (want.contains (t [j])) rows.add (t);
+        } // if
+
+        return new Table (name + count++, attribute, domain, key, rows);
+    } // selectValues
+
     /************************************************************************************
      * Select the tuples satisfying the given key predicate (key = value).  Use an index
-     * (Map) to retrieve the tuple with the given key value.
+     * (Map) to retrieve the tuple with the given key value.  A full key is first tested
+     * against the primary key Bloom filter, so a missing key is usually answered without
+     * touching the index.
      *
      * @param keyVal  the given key value
      * @return  a table with the tuple satisfying the key predicate
      */
     public Table select (KeyType keyVal)
     {
-        out.println ("RA> " + name + ".select (" + keyVal + ")");
+        long t0 = Trace.start ();
+        Table result = cached ("select", null, () -> selectKey (keyVal), keyVal);
+        return Trace.op (t0, this, "select", result, keyVal);
+    } // select
 
+    /************************************************************************************
+     * Select the tuple with the given key value, as for select (keyVal).
+     *
+     * @param keyVal  the given key value
+     * @return  a table with the tuple satisfying the key predicate
+     */
+    private Table selectKey (KeyType keyVal)
+    {
         List <Comparable []> rows = new ArrayList <> ();
+
+        if ((scanKeys () || mType != MapType.NO_MAP) && keyVal.getKey ().length == key.length
+                                                     && ! keyBloom ().mightContain (keyVal)) {
+            rows.add (new Comparable [attribute.length]);                // definitely missing
+            return new Table (name + count++, attribute, domain, key, rows);
+        } // if
         
+        if (scanKeys ()) {
+            for (long i : mapped.find (match (key), keyVal, keyVal)) rows.add (mapped.get (i));
+            if (rows.isEmpty ()) rows.add (new Comparable [attribute.length]);
+            return new Table (name + count++, attribute, domain, key, rows);
+        } // if
+
         if(mType!=MapType.NO_MAP){
 	        rows.add(index.get(keyVal));
 	        if(rows.get(0) == null){
@@ -232,46 +509,58 @@ public class Table
         else{
         	return null;
         }
-        
-        
-    } // select
+    } // selectKey
 
     /************************************************************************************
-     * Select the tuples satisfying the given key predicate (keyval1 <= value < keyval2).
-     * Use an B+ Tree index (SortedMap) to retrieve the tuples with keys in the given range.
+     * Select the tuples satisfying the given key predicate (keyval1 <= value <= keyval2).
+     * Use a sorted index (SortedMap) to retrieve the tuples with keys in the given range
+     * through a range cursor; with a hash index or none, the tuples are scanned.
      *
      * @param keyVal1  the given lower bound for the range (inclusive)
-     * @param keyVal2  the given upper bound for the range (exclusive)
+     * @param keyVal2  the given upper bound for the range (inclusive)
      * @return  a table with the tuples satisfying the key predicate
      */
     public Table select (KeyType keyVal1, KeyType keyVal2)
     {
-        out.println ("RA> " + name + ".select between (" + keyVal1 + ") and " + keyVal2);
+        long t0 = Trace.start ();
+
+        Table result = cached ("range", null, () -> selectRange (keyVal1, keyVal2), keyVal1, keyVal2);
+        return Trace.op (t0, this, "select", result, keyVal1, keyVal2);
+    } // range_select
 
+    /************************************************************************************
+     * Select the tuples with keys in the given range, as for select (keyVal1, keyVal2).
+     *
+     * @param keyVal1  the given lower bound for the range (inclusive)
+     * @param keyVal2  the given upper bound for the range (exclusive)
+     * @return  a table with the tuples satisfying the key predicate
+     */
+    @SuppressWarnings("unchecked")
+    private Table selectRange (KeyType keyVal1, KeyType keyVal2)
+    {
         List <Comparable []> rows = new ArrayList <> ();
         
-        if(mType == MapType.BPTREE_MAP || mType == MapType.TREE_MAP){
-	        Set<Map.Entry<KeyType,Comparable[]>> entries = index.entrySet();
-	
-	        boolean range = false;
-	        for(Map.Entry<KeyType,Comparable[]> e : entries) {
-	            if(e.getKey().compareTo(keyVal1) == 0) {
-	                range = true;
-	            }
-	            if(range) {
-	                rows.add(index.get(e.getKey()));
-	            }
-	            if(e.getKey().compareTo(keyVal2) == 0) {
-	                range = false;
-	            }
-	        }
-	
-	        return new Table (name + count++, attribute, domain, key, rows);
-        }
-        else{
-        	return null;
-        }
-    } // range_select
+        if (scanKeys ()) {
+            for (long i : mapped.find (match (key), keyVal1, keyVal2)) rows.add (mapped.get (i));
+            return new Table (name + count++, attribute, domain, key, rows);
+        } // if
+
+        if (keyVal1.compareTo (keyVal2) > 0) return new Table (name + count++, attribute, domain, key, rows);
+
+        if (index instanceof SortedMap) {                              // TREE_MAP, BPTREE_MAP, DISK_BPTREE_MAP
+            SortedMap <KeyType, Comparable []> sorted = (SortedMap <KeyType, Comparable []>) index;
+            rows.addAll (sorted.subMap (keyVal1, keyVal2).values ());
+            Comparable [] last = sorted.get (keyVal2);                  // subMap excludes the upper bound
+            if (last != null) rows.add (last);
+        } else {                                                        // LINHASH_MAP, NO_MAP: scan
+            int [] cols = match (key);
+            for (Comparable [] t : tuples) {
+                KeyType k = new KeyType (project (t, cols));
+                if (k.compareTo (keyVal1) >= 0 && k.compareTo (keyVal2) <= 0) rows.add (t);
+            } // for
+        } // if
+        return new Table (name + count++, attribute, domain, key, rows);
+    } // selectRange
 
     /************************************************************************************
      * Union this table and table2.  Check that the two tables are compatible.
@@ -283,8 +572,8 @@ public class Table
      */
     public Table union (Table table2)
     {
-        out.println ("RA> " + name + ".union (" + table2.name + ")");
-        if (! compatible (table2)) return null;
+        long t0 = Trace.start ();
+        if (! compatible (table2)) return Trace.op (t0, this, "union", null, table2);
 
         List <Comparable []> rows = new ArrayList <> ();
 
@@ -311,7 +600,8 @@ public class Table
             }
         }
 
-        return new Table (name + count++, attribute, domain, key, rows);
+        Table result = new Table (name + count++, attribute, domain, key, rows);
+        return Trace.op (t0, this, "union", result, table2);
     } // union
 
     /************************************************************************************
@@ -325,8 +615,8 @@ public class Table
      */
     public Table minus (Table table2)
     {
-        out.println ("RA> " + name + ".minus (" + table2.name + ")");
-        if (! compatible (table2)) return null;
+        long t0 = Trace.start ();
+        if (! compatible (table2)) return Trace.op (t0, this, "minus", null, table2);
 
         List <Comparable []> rows = new ArrayList <> ();
 
@@ -350,7 +640,8 @@ public class Table
             }
         }
 
-        return new Table (name + count++, attribute, domain, key, rows);
+        Table result = new Table (name + count++, attribute, domain, key, rows);
+        return Trace.op (t0, this, "minus", result, table2);
     } // minus
 
     /************************************************************************************
@@ -368,51 +659,43 @@ public class Table
      */
     public Table join (String attributes1, String attributes2, Table table2)
     {
-        out.println ("RA> " + name + ".join (" + attributes1 + ", " + attributes2 + ", "
-                                               + table2.name + ")");
+        long t0 = Trace.start ();
 
-        String [] t_attrs = attributes1.split (" ");
-        String [] u_attrs = attributes2.split (" ");
+        Table result = cached ("join", table2, () -> nestedLoopJoin (attributes1, attributes2, table2),
+                               attributes1, attributes2);
+        return Trace.op (t0, this, "join", result, attributes1, attributes2, table2);
+    } // join
 
+    /************************************************************************************
+     * Join this table and table2 using a Nested Loop Join algorithm, as for
+     * join (attributes1, attributes2, table2).
+     *
+     * @param attribute1  the attributes of this table to be compared (Foreign Key)
+     * @param attribute2  the attributes of table2 to be compared (Primary Key)
+     * @param table2      the rhs table in the join operation
+     * @return  a table with tuples satisfying the equality predicate
+     */
+    private Table nestedLoopJoin (String attributes1, String attributes2, Table table2)
+    {
         List <Comparable []> rows = new ArrayList <> ();
 
-        boolean attributeOneExists=false;
-        boolean attributeTwoExists=false;
-        for(int i=0;i<attribute.length;i++){
-            if(attributes1.equals(attribute[i])){
-                attributeOneExists=true;
-            }
-        }
-        for(int i=0;i<table2.attribute.length;i++){
-            if(attributes2.equals(table2.attribute[i])){
-                attributeTwoExists=true;
-            }
-        }
-        if(!attributeOneExists || !attributeTwoExists){
+        Schema.Column c1 = schema.column (attributes1);
+        Schema.Column c2 = table2.schema.column (attributes2);
+        if (c1 == null || c2 == null) {
             return null;
         }
-        for(int i=0;i<tuples.size();i++)
-        {
-            for(int j=0;j<table2.tuples.size();j++){
-                if(table2.tuples.get(j)[table2.col(attributes2)].equals(tuples.get(i)[this.col(attributes1)])){
-                    Comparable[] entry=new Comparable[table2.tuples.get(j).length+tuples.get(i).length];
-                    int index=0;
-                    for(int l=0;l<tuples.get(i).length;l++){
-                        entry[index]=tuples.get(i)[this.col(this.attribute[l])];
-                        index++;
-                    }
-                    for(int l=0;l<table2.tuples.get(j).length;l++){
-                            entry[index]=table2.tuples.get(j)[table2.col(table2.attribute[l])];
-                            index++;
-                    }
-                    rows.add(entry);
+        for (Comparable [] a : tuples) {
+            Comparable v = c1.get (a);
+            for (Comparable [] b : table2.tuples) {
+                if (c2.get (b).equals (v)) {
+                    rows.add (ArrayUtil.concat (a, b));
                 }
             }
         }
 
         return new Table (name + count++, ArrayUtil.concat (attribute, table2.attribute),
                                           ArrayUtil.concat (domain, table2.domain), key, rows);
-    } // join
+    } // nestedLoopJoin
 
     /************************************************************************************
      * Join this table and table2 by performing an "equi-join".  Same as above, but implemented
@@ -424,7 +707,24 @@ public class Table
      * @return  a table with tuples satisfying the equality predicate
      */
     public Table i_join (String attributes1, String attributes2, Table table2)
-    {   
+    {
+        long t0 = Trace.start ();
+        Table result = cached ("i_join", table2, () -> indexJoin (attributes1, attributes2, table2),
+                               attributes1, attributes2);
+        return Trace.op (t0, this, "i_join", result, attributes1, attributes2, table2);
+    } // i_join
+
+    /************************************************************************************
+     * Join this table and table2 using an Index Join algorithm, as for
+     * i_join (attributes1, attributes2, table2).
+     *
+     * @param attribute1  the attributes of this table to be compared (Foreign Key)
+     * @param attribute2  the attributes of table2 to be compared (Primary Key)
+     * @param table2      the rhs table in the join operation
+     * @return  a table with tuples satisfying the equality predicate
+     */
+    private Table indexJoin (String attributes1, String attributes2, Table table2)
+    {
     	if(mType!=MapType.NO_MAP){
 	        String[] keyArrayT1=attributes1.split(" ");
 	        String[] keyArrayT2=attributes2.split(" ");
@@ -445,37 +745,30 @@ public class Table
 	            keyArrayT2 = stringTemp;
 	        }
 	        
-	        for(Comparable[] a : table1.tuples){
+	        int[] probeCols = table1.positions(keyArrayT1);
+	        if(probeCols == null){
+	            return null;
+	        }
+	        BloomFilter filter = table2.keyBloom();
+	        long[] before = filter.metrics();
+	        
+	        for(Comparable[] a : table1.filteredScan(filter, probeCols)){
 	            Comparable [] keyVal = new Comparable[keyArrayT1.length];
 	            
 	            for(int j=0;j<keyArrayT1.length;j++){
-	                int index = Arrays.asList(attribute).indexOf(keyArrayT1[j]);
-	                if(index == -1){
-	                    return null;
-	                }
-	                keyVal[j] = a[index];
+	                keyVal[j] = a[probeCols[j]];
 	            }
 	            
-	            Comparable[] b = table2.index.get(new KeyType(keyVal));
-	            ArrayList<Comparable> joinedRow = new ArrayList<Comparable>();
-	            if(b != null){
-	            	Comparable[] fullRow = ArrayUtil.concat(a, b);
-	            	for(Comparable c:fullRow){
-		                joinedRow.add(c);
-		            }
-	            }	            
-	            int length = table1.attribute.length+table2.attribute.length-1;
-	            Comparable[] completedRow = joinedRow.toArray(new Comparable[length]);
-	            rows.add(completedRow);
-	        }
-	        
-	        List<String> updatedAttributes = new LinkedList<String>(Arrays.asList(table2.attribute));
-	        for(String s: keyArrayT2){
-	            int index = Arrays.asList(table2.attribute).indexOf(s);
-	            updatedAttributes.remove(index);            
+	            Comparable[] b = table2.lookup(new KeyType(keyVal));
+	            if(b == null){
+	                filter.falsePositive();
+	                continue;
+	            }
+	            rows.add(ArrayUtil.concat(a, b));
 	        }
+	        recordFilter(filter, before);
 	        
-	        String[] updatedAttributesArray=updatedAttributes.toArray(new String[table2.attribute.length-keyArrayT2.length]);
+	        String[] updatedAttributesArray = table2.nonKeyAttributes(keyArrayT2);
 	        if(rows.size() == 0){
 	            rows.add(new Comparable[table1.attribute.length]);
 	        }
@@ -486,7 +779,7 @@ public class Table
     	else{
     		return null;
     	}
-    } // i_join
+    } // indexJoin
     
     /************************************************************************************
      * Join this table and table2 by performing an "equi-join".  Same as above, but implemented
@@ -498,6 +791,23 @@ public class Table
      * @return  a table with tuples satisfying the equality predicate
      */
     public Table h_join (String attributes1, String attributes2, Table table2)
+    {
+        long t0 = Trace.start ();
+        Table result = cached ("h_join", table2, () -> hashJoin (attributes1, attributes2, table2),
+                               attributes1, attributes2);
+        return Trace.op (t0, this, "h_join", result, attributes1, attributes2, table2);
+    } // h_join
+
+    /************************************************************************************
+     * Join this table and table2 using a Hash Join algorithm, as for
+     * h_join (attributes1, attributes2, table2).
+     *
+     * @param attribute1  the attributes of this table to be compared (Foreign Key)
+     * @param attribute2  the attributes of table2 to be compared (Primary Key)
+     * @param table2      the rhs table in the join operation
+     * @return  a table with tuples satisfying the equality predicate
+     */
+    private Table hashJoin (String attributes1, String attributes2, Table table2)
     {
         HashMap <KeyType, Comparable[]> ht = new HashMap<KeyType, Comparable[]>();  
         String[] keyArrayT1=attributes1.split(" ");
@@ -514,264 +824,1334 @@ public class Table
             keyArrayT2=stringTemp;
         }
         List <Comparable[]> rows = new ArrayList <> ();     
-        for(Comparable[] b : table2.tuples){
-            ArrayList<Comparable> valuesB=new ArrayList<Comparable>(); 
-            ArrayList<Integer> indexB=new ArrayList<Integer>();
-            Comparable [] keyVal=new Comparable[keyArrayT2.length];
-            for(int j=0;j<keyArrayT2.length;j++){
-                int index=Arrays.asList(table2.attribute).indexOf(keyArrayT2[j]);
-                if(index==-1){
-                    return null;
-                }
-                keyVal[j]=b[index];
-                indexB.add(index);
-            }
-            Collections.sort(indexB,Collections.reverseOrder());
-            List<Comparable> copiedAttributes=new LinkedList<Comparable>(Arrays.asList(b));
-            for(Integer i: indexB){
-                int index=i;
-                copiedAttributes.remove(index);
-                int length=b.length-keyArrayT2.length;
-                b=copiedAttributes.toArray(new Comparable[length]);
+        BloomFilter filter=BloomFilter.forCount(table2.tuples.size(), JOIN_FILTER_FPP);
+        int[] buildCols=table2.schema.cols(keyArrayT2);
+        for(int c : buildCols){
+            if(c==-1){
+                return null;
             }
-            ht.put(new KeyType(keyVal), b);
         }
-        for(Comparable[] a : table1.tuples){
+        int[] keepCols=table2.nonKeyCols(buildCols);
+        for(Comparable[] b : table2.tuples){
+            KeyType k=new KeyType(project(b, buildCols));
+            ht.put(k, project(b, keepCols));
+            filter.add(k);
+        }
+        int[] probeCols=table1.positions(keyArrayT1);
+        if(probeCols==null){
+            return null;
+        }
+        for(Comparable[] a : table1.filteredScan(filter, probeCols)){
             Comparable [] keyVal=new Comparable[keyArrayT1.length];
             for(int j=0;j<keyArrayT1.length;j++){
-                int index=Arrays.asList(table1.attribute).indexOf(keyArrayT1[j]);
-                if(index==-1){
-                    return null;
-                }
-                keyVal[j]=a[index];
+                keyVal[j]=a[probeCols[j]];
             }
             Comparable[] b=ht.get(new KeyType(keyVal));
-            ArrayList<Comparable> joinedRow=new ArrayList<Comparable>();
-            Comparable[] fullRow=ArrayUtil.concat(a, b);
-            for(Comparable c:fullRow){
-                joinedRow.add(c);
+            if(b==null){
+                filter.falsePositive();
+                continue;
             }
-            int length=table1.attribute.length+table2.attribute.length-1;
-            Comparable[] completedRow=joinedRow.toArray(new Comparable[length]);
-            rows.add(completedRow);
-        }
-        List<String> updatedAttributes=new LinkedList<String>(Arrays.asList(table2.attribute));
-        for(String s: keyArrayT2){
-            int index=Arrays.asList(table2.attribute).indexOf(s);
-            updatedAttributes.remove(index);            
+            rows.add(ArrayUtil.concat(a, b));
         }
-        String[] updatedAttributesArray=updatedAttributes.toArray(new String[table2.attribute.length-keyArrayT2.length]);
+        recordFilter(filter, new long [3]);
+        String[] updatedAttributesArray=table2.nonKeyAttributes(keyArrayT2);
         if(rows.size()==0){
             rows.add(new Comparable[table1.attribute.length]);
         }
         return new Table (table1.name + table1.count++, ArrayUtil.concat (table1.attribute, updatedAttributesArray),
                 ArrayUtil.concat (table1.domain, table2.domain), table1.key, rows);
-    } // h_join
+    } // hashJoin
 
     /************************************************************************************
-     * Join this table and table2 by performing an "natural join".  Tuples from both tables
-     * are compared requiring common attributes to be equal.  The duplicate column is also
-     * eliminated.
+     * Join this table and table2 by performing an "equi-join" on a String column of
+     * each.  Same as join (attribute1, attribute2, table2), but table2's dictionary
+     * codes are translated into this table's, so the comparisons are on ints rather
+     * than strings.  Falls back to join for other domains.
      *
-     * #usage movieStar.join (starsIn)
+     * #usage transcript.d_join ("crsCode", "crsCode", course)
      *
-     * @param table2  the rhs table in the join operation
+     * @param attribute1  the attribute of this table to be compared
+     * @param attribute2  the attribute of table2 to be compared
+     * @param table2      the rhs table in the join operation
      * @return  a table with tuples satisfying the equality predicate
      */
-    public Table join (Table table2)
+    public Table d_join (String attribute1, String attribute2, Table table2)
     {
-        out.println ("RA> " + name + ".join (" + table2.name + ")");
-
-        List <Comparable []> rows = new ArrayList <> ();
+        long t0 = Trace.start ();
 
+        int j1 = col (attribute1), j2 = table2.col (attribute2);
+        if (j1 < 0 || j2 < 0) return Trace.op (t0, this, "d_join", null, attribute1, attribute2, table2);
+        if (domain [j1] != String.class || table2.domain [j2] != String.class) {
+            Table result = join (attribute1, attribute2, table2);
+            return Trace.op (t0, this, "d_join", result, attribute1, attribute2, table2);
+        } // if
 
-        ArrayList<Integer> equalPos = new ArrayList<Integer>();
-        ArrayList<Integer> equalPos2 = new ArrayList<Integer>();
+        encodeStrings ();
+        table2.encodeStrings ();
+        int [] map = dict [j1].translate (table2.dict [j2]);         // table2 code -> this code
+        int [] c1  = codes [j1], c2 = table2.codes [j2];
+        int    n1  = coded,      n2 = table2.coded;
+
+        int [] head = new int [dict [j1].size ()];                    // table2 rows by this code
+        int [] next = new int [n2];
+        Arrays.fill (head, -1);
+        for (int k = n2 - 1; k >= 0; k--) {
+            int m = (c2 [k] < 0) ? -1 : map [c2 [k]];
+            if (m >= 0) {
+                next [k] = head [m];
+                head [m] = k;
+            } // if
+        } // for
 
-        for(int i = 0; i < attribute.length; i++) {
-            for(int j = 0; j < table2.attribute.length; j++) {
-                if(attribute[i].equals(table2.attribute[j])) {
-                    equalPos.add(i);
-                    equalPos2.add(j);
-                }
-            }
-        }   //finds where matching attributes are
-
-        if(equalPos.size() != 0) { //if they share any attributes
-            for(int i = 0; i < tuples.size(); i++) { //iterate through table1 rows
-                for(int j = 0; j < table2.tuples.size(); j++) { //iterate through table2 rows
-                    for(int k = 0; k < equalPos.size(); k++) { //iterate through matching columsn
-                        if(tuples.get(i)[equalPos.get(k)].equals(table2.tuples.get(j)[equalPos2.get(k)]) && k%equalPos.size() == 0) { //checks to see if values match
-                            Comparable[] entry = new Comparable[table2.tuples.get(j).length+tuples.get(i).length-equalPos.size()];
-                            int index = 0;
-                        
-                            for(int l=0;l < tuples.get(i).length;l++) {
-                                entry[index] = tuples.get(i)[this.col(this.attribute[l])];
-                                index++;
-                            }
-                            while(index != table2.tuples.get(j).length+tuples.get(i).length-equalPos.size()) {  //adds table 2 columns if necessary
-                                int l = 0;
-                                if(!equalPos.contains(table2.col(table2.attribute[l]))) {
-                                    entry[index] = table2.tuples.get(j)[table2.col(table2.attribute[l])];
-                                    index++;
-                                }
-                                l++;
-                            }
-                            rows.add(entry);
-                        }
-                    }
-                }
-            }
+        List <Comparable []> rows = new ArrayList <> ();
+        for (int i = 0; i < n1; i++) {
+            if (c1 [i] < 0) continue;
+            for (int k = head [c1 [i]]; k >= 0; k = next [k]) {
+                rows.add (ArrayUtil.concat (tuples.get (i), table2.tuples.get (k)));
+            } // for
+        } // for
 
-            String [] updatedAttribute = new String[rows.get(0).length - attribute.length];
-            if((rows.get(0).length - attribute.length) != 0) {
-                for(String attr:table2.attribute) {
-                    int i = 0;
-                    if(!Arrays.asList(attribute).contains(attr)) {
-                        updatedAttribute[i] = attr;
-                    } 
-                    i++;
-                }
-            }  
-            // FIX - eliminate duplicate columns
-            return new Table (name + count++, ArrayUtil.concat (attribute, updatedAttribute),
-                                              ArrayUtil.concat (domain, table2.domain), key, rows);
-        }
-        else {
-            return new Table (name + count++, ArrayUtil.concat (attribute, table2.attribute),
-                                              ArrayUtil.concat (domain, table2.domain), key, rows);
-        }
-    } // join
+        Table result = new Table (name + count++, ArrayUtil.concat (attribute, table2.attribute),
+                                                  ArrayUtil.concat (domain, table2.domain), key, rows);
+        return Trace.op (t0, this, "d_join", result, attribute1, attribute2, table2);
+    } // d_join
 
     /************************************************************************************
-     * Return the column position for the given attribute name.
+     * Sort the tuples of this table on the given attributes (ORDER BY).  Each attribute
+     * may be followed by "asc" (the default) or "desc".  Tuples beyond the sort memory
+     * budget are spilled to disk in sorted runs and merged (see ExternalSort).
      *
-     * @param attr  the given attribute name
-     * @return  a column position
+     * #usage movie.orderBy ("year desc title")
+     *
+     * @param attributes  the attributes to sort on, most significant first
+     * @return  a table with the tuples in sorted order
      */
-    public int col (String attr)
+    public Table orderBy (String attributes)
     {
-        for (int i = 0; i < attribute.length; i++) {
-           if (attr.equals (attribute [i])) return i;
-        } // for
+        long t0 = Trace.start ();
 
-        return -1;  // not found
-    } // col
+        ExternalSort sorter = sorter (attributes);
+        if (sorter == null) return Trace.op (t0, this, "orderBy", null, attributes);
+
+        List <Comparable []> rows = new ArrayList <> ();
+        for (ExternalSort.Cursor it = sorter.sort (tuples.iterator ()); it.hasNext (); ) rows.add (it.next ());
+
+        Table result = new Table (name + count++, attribute, domain, key, rows);
+        return Trace.op (t0, this, "orderBy", result, attributes);
+    } // orderBy
 
     /************************************************************************************
-     * Insert a tuple to the table.
+     * Return a cursor over the tuples of this table sorted on the given attributes (as
+     * for orderBy), without collecting them into a table.  Used to stream sorted output
+     * that is larger than memory; the cursor should be closed if not exhausted.
      *
-     * #usage movie.insert ("'Star_Wars'", 1977, 124, "T", "Fox", 12345)
+     * #usage try (ExternalSort.Cursor it = movie.sorted ("year desc title")) { ... }
      *
-     * @param tup  the array of attribute values forming the tuple
-     * @return  whether insertion was successful
+     * @param attributes  the attributes to sort on, most significant first
+     * @return  a cursor over the sorted tuples, or null if an attribute is not found
      */
-    public boolean insert (Comparable [] tup)
+    public ExternalSort.Cursor sorted (String attributes)
+    {
+        ExternalSort sorter = sorter (attributes);
+        return (sorter == null) ? null : sorter.sort (tuples.iterator ());
+    } // sorted
+
+    /************************************************************************************
+     * Return the first k tuples satisfying the predicate in the order given by the sort
+     * specification (as for orderBy), without sorting the whole table.  The table is
+     * scanned in parallel; each thread keeps its k best tuples in a bounded heap and
+     * the heaps are merged, so the time is O(n log k) and the memory O(k) per thread.
+     * Ties are resolved in table order, as by a stable sort.
+     *
+     * #usage student.topK (100, "gpa desc", t -> t[student.col("year")].equals (4))
+     *
+     * @param k           the number of tuples wanted
+     * @param attributes  the attributes to rank on, most significant first
+     * @param predicate   the check condition for tuples
+     * @return  a table with at most k tuples in sorted order
+     */
+    public Table topK (int k, String attributes, Predicate <Comparable []> predicate)
+    {
+        long t0 = Trace.start ();
+
+        ExternalSort sorter = sorter (attributes);
+        if (sorter == null || k < 0) return Trace.op (t0, this, "topK", null, k, attributes, predicate);
+        Comparator <Comparable []> order = sorter.order ();
+        int cap = Math.min (k, tuples.size ());
+
+        BoundedHeap top = IntStream.range (0, tuples.size ()).parallel ().collect (
+            () -> new BoundedHeap (cap, order),
+            (h, i) -> { Comparable [] t = tuples.get (i); if (predicate.test (t)) h.offer (i, t); },
+            BoundedHeap::merge);
+
+        Table result = new Table (name + count++, attribute, domain, key, top.sorted ());
+        return Trace.op (t0, this, "topK", result, k, attributes, predicate);
+    } // topK
+
+    /************************************************************************************
+     * Return the first k tuples of this table in the order given by the sort
+     * specification.
+     *
+     * #usage movie.topK (10, "length desc")
+     *
+     * @param k           the number of tuples wanted
+     * @param attributes  the attributes to rank on, most significant first
+     * @return  a table with at most k tuples in sorted order
+     */
+    public Table topK (int k, String attributes)
+    {
+        return topK (k, attributes, t -> true);
+    } // topK
+
+    /************************************************************************************
+     * Group the tuples of this table on the given attributes and compute aggregates for
+     * each group (GROUP BY).  Aggregates are written as count(*), count(a), sum(a),
+     * avg(a), min(a) and max(a), and each becomes an attribute of the result named as
+     * written.  With no group attributes the whole table is one group.
+     *
+     * The table is scanned in parallel, each thread aggregating into its own hash table
+     * (see HashAggregator), and the partial aggregates are merged.  If the groups do not
+     * fit in the sort memory budget, the tuples are instead externally sorted on the
+     * group attributes and each group is aggregated as it streams past.  The order of
+     * the groups in the result is unspecified.
+     *
+     * #usage transcript.groupBy ("crsCode grade", "count(*)")
+     *
+     * @param attributes  the attributes to group on (may be empty)
+     * @param aggregates  the aggregates to compute
+     * @return  a table with one tuple per group: its group values then its aggregates
+     */
+    public Table groupBy (String attributes, String aggregates)
+    {
+        long t0 = Trace.start ();
+
+        String [] g_attrs = attributes.trim ().isEmpty () ? new String [0] : attributes.trim ().split ("\\s+");
+        String [] aggs    = aggregates.trim ().split ("\\s+");
+        int [] groupCols  = new int [g_attrs.length];
+        for (int j = 0; j < g_attrs.length; j++) {
+            if ((groupCols [j] = col (g_attrs [j])) < 0) return Trace.op (t0, this, "groupBy", null, attributes, aggregates);
+        } // for
+
+        long budget = ExternalSort.defaultBudget ();
+        HashAggregator proto = HashAggregator.parse (attribute, domain, groupCols, aggs,
+                                                     budget / ForkJoinPool.getCommonPoolParallelism ());
+        if (proto == null) return Trace.op (t0, this, "groupBy", null, attributes, aggregates);
+        HashAggregator agg = IntStream.range (0, tuples.size ()).parallel ().collect (
+            proto::copy, (h, i) -> h.add (tuples.get (i)), HashAggregator::merge);
+
+        List <Comparable []> rows;
+        if (! agg.overflowed ()) {
+            rows = agg.rows ();
+        } else {                                                      // sort-based fallback
+            rows = new ArrayList <> ();
+            HashAggregator group = proto.copy (Long.MAX_VALUE);
+            Comparable [] prev = null;
+            for (ExternalSort.Cursor it = new ExternalSort (domain, groupCols, null).sort (tuples.iterator ());
+                 it.hasNext (); ) {
+                Comparable [] t = it.next ();
+                if (prev != null && compareKeys (prev, groupCols, t, groupCols) != 0) {
+                    rows.addAll (group.rows ());
+                    group.clear ();
+                } // if
+                group.add (t);
+                prev = t;
+            } // for
+            rows.addAll (group.rows ());
+        } // if
+        if (groupCols.length == 0 && rows.isEmpty ()) rows.add (proto.empty ());  // aggregates of an empty table
+
+        String [] newKey = (g_attrs.length > 0) ? g_attrs : aggs;
+        Table result = new Table (name + count++, ArrayUtil.concat (g_attrs, aggs),
+                                                  ArrayUtil.concat (extractDom (groupCols, domain), proto.domains (domain)), newKey, rows);
+        return Trace.op (t0, this, "groupBy", result, attributes, aggregates);
+    } // groupBy
+
+    /************************************************************************************
+     * Eliminate duplicate tuples from this table.  The tuples are sorted on all columns
+     * (spilling to disk if needed) and only the first of each run of equal tuples is
+     * kept, so the result is in sorted order.
+     *
+     * #usage movie.distinct ()
+     *
+     * @return  a table with the distinct tuples
+     */
+    public Table distinct ()
+    {
+        long t0 = Trace.start ();
+
+        int [] all = IntStream.range (0, attribute.length).toArray ();
+        Table result = new Table (name + count++, attribute, domain, key,
+                                  sortDistinct (tuples.iterator (), domain, all));
+        return Trace.op (t0, this, "distinct", result);
+    } // distinct
+
+    /************************************************************************************
+     * Join this table and table2 by performing an "equi-join".  Same as join (attributes1,
+     * attributes2, table2), but implemented using a Sort-Merge Join algorithm: both
+     * tables are externally sorted on their join attributes and merged, buffering only
+     * the table2 tuples sharing the current join key.  The result is ordered by the join
+     * key.  Tuples with a null join value match nothing.
+     *
+     * #usage movie.s_join ("studioName", "name", studio)
+     *
+     * @param attributes1  the attributes of this table to be compared (Foreign Key)
+     * @param attributes2  the attributes of table2 to be compared (Primary Key)
+     * @param table2       the rhs table in the join operation
+     * @return  a table with tuples satisfying the equality predicate
+     */
+    public Table s_join (String attributes1, String attributes2, Table table2)
+    {
+        long t0 = Trace.start ();
+
+        String [] t_attrs = attributes1.split (" ");
+        String [] u_attrs = attributes2.split (" ");
+        if (t_attrs.length != u_attrs.length) return Trace.op (t0, this, "s_join", null, attributes1, attributes2, table2);
+        int [] c1 = new int [t_attrs.length], c2 = new int [u_attrs.length];
+        for (int j = 0; j < c1.length; j++) {
+            c1 [j] = col (t_attrs [j]);
+            c2 [j] = table2.col (u_attrs [j]);
+            if (c1 [j] < 0 || c2 [j] < 0) return Trace.op (t0, this, "s_join", null, attributes1, attributes2, table2);
+            if (domain [c1 [j]] != table2.domain [c2 [j]]) {
+                out.println ("s_join ERROR: join attributes " + t_attrs [j] + " and " + u_attrs [j]
+                             + " have different domains");
+                return Trace.op (t0, this, "s_join", null, attributes1, attributes2, table2);
+            } // if
+        } // for
+
+        List <Comparable []> rows  = new ArrayList <> ();
+        List <Comparable []> group = new ArrayList <> ();             // table2 tuples with the current key
+        try (ExternalSort.Cursor lhs = new ExternalSort (domain, c1, null).sort (tuples.iterator ());
+             ExternalSort.Cursor rhs = new ExternalSort (table2.domain, c2, null).sort (table2.tuples.iterator ())) {
+            Comparable [] u = rhs.hasNext () ? rhs.next () : null;
+            while (lhs.hasNext ()) {
+                Comparable [] t = lhs.next ();
+                if (hasNull (t, c1)) continue;
+                if (group.isEmpty () || compareKeys (t, c1, group.get (0), c2) != 0) {
+                    group.clear ();
+                    while (u != null && compareKeys (t, c1, u, c2) > 0) u = rhs.hasNext () ? rhs.next () : null;
+                    while (u != null && compareKeys (t, c1, u, c2) == 0) {
+                        group.add (u);
+                        u = rhs.hasNext () ? rhs.next () : null;
+                    } // while
+                } // if
+                for (Comparable [] v : group) rows.add (ArrayUtil.concat (t, v));
+            } // while
+        } // try
+
+        Table result = new Table (name + count++, ArrayUtil.concat (attribute, table2.attribute),
+                                                  ArrayUtil.concat (domain, table2.domain), key, rows);
+        return Trace.op (t0, this, "s_join", result, attributes1, attributes2, table2);
+    } // s_join
+
+    /************************************************************************************
+     * Return the tuples of this table that join with at least one tuple of table2 on
+     * the given attributes (semi-join, or EXISTS).  Only this table's columns are kept,
+     * and each tuple appears once however many tuples of table2 it matches.  As in
+     * i_join, if attributes2 is the primary key of table2 and its index covers its
+     * tuples, each tuple is checked by one index lookup; otherwise, as in h_join, the
+     * join values of table2 are hashed first and each tuple is checked by one probe.
+     * Tuples with a null join value match nothing.
+     *
+     * #usage student.semiJoin ("id", "studId", transcript)
+     *
+     * @param attributes1  the attributes of this table to be compared
+     * @param attributes2  the attributes of table2 to be compared
+     * @param table2       the rhs table in the semi-join operation
+     * @return  a table with the tuples of this table having a match in table2
+     */
+    public Table semiJoin (String attributes1, String attributes2, Table table2)
+    {
+        long t0 = Trace.start ();
+        Table result = existence (attributes1, attributes2, table2, true);
+        return Trace.op (t0, this, "semiJoin", result, attributes1, attributes2, table2);
+    } // semiJoin
+
+    /************************************************************************************
+     * Return the tuples of this table that join with no tuple of table2 on the given
+     * attributes (anti-join, or NOT EXISTS).  Implemented as semiJoin, keeping the
+     * tuples without a match; tuples with a null join value are therefore kept.
+     *
+     * #usage course.antiJoin ("crsCode", "crsCode", teaching)
+     *
+     * @param attributes1  the attributes of this table to be compared
+     * @param attributes2  the attributes of table2 to be compared
+     * @param table2       the rhs table in the anti-join operation
+     * @return  a table with the tuples of this table having no match in table2
+     */
+    public Table antiJoin (String attributes1, String attributes2, Table table2)
+    {
+        long t0 = Trace.start ();
+        Table result = existence (attributes1, attributes2, table2, false);
+        return Trace.op (t0, this, "antiJoin", result, attributes1, attributes2, table2);
+    } // antiJoin
+
+    /************************************************************************************
+     * Join this table and table2 by performing an "natural join".  Tuples from both tables
+     * are compared requiring common attributes to be equal.  The duplicate column is also
+     * eliminated.
+     *
+     * #usage movieStar.join (starsIn)
+     *
+     * @param table2  the rhs table in the join operation
+     * @return  a table with tuples satisfying the equality predicate
+     */
+    public Table join (Table table2)
+    {
+        long t0 = Trace.start ();
+
+        Table result = cached ("natural", table2, () -> naturalJoin (table2));
+        return Trace.op (t0, this, "join", result, table2);
+    } // join
+
+    /************************************************************************************
+     * Join this table and table2 by performing a "natural join", as for join (table2).
+     * The common attributes are found once and the smaller table is hashed on them
+     * (as a composite KeyType); the other table is then probed, in parallel blocks when
+     * large, and each match is emitted with table2's copies of the common attributes
+     * left out.  Tuples with a null common value match nothing.  Without common
+     * attributes the result is the cartesian product.
+     *
+     * @param table2  the rhs table in the join operation
+     * @return  a table with tuples satisfying the equality predicate
+     */
+    private Table naturalJoin (Table table2)
+    {
+        int [] c1 = new int [attribute.length], c2 = new int [attribute.length];
+        int    n  = 0;
+        for (int j = 0; j < attribute.length; j++) {
+            int k = table2.schema.col (attribute [j]);
+            if (k >= 0) { c1 [n] = j; c2 [n++] = k; }
+        } // for
+        c1 = Arrays.copyOf (c1, n);
+        c2 = Arrays.copyOf (c2, n);
+        int [] rest = table2.nonKeyCols (c2);
+
+        String [] attrs = new String [rest.length];
+        Class []  doms  = new Class [rest.length];
+        for (int j = 0; j < rest.length; j++) {
+            attrs [j] = table2.attribute [rest [j]];
+            doms [j]  = table2.domain [rest [j]];
+        } // for
+
+        boolean               buildLeft = tuples.size () < table2.tuples.size ();
+        List <Comparable []>  build     = buildLeft ? tuples : table2.tuples;
+        List <Comparable []>  probe     = buildLeft ? table2.tuples : tuples;
+        int []                bCols     = buildLeft ? c1 : c2;
+        int []                pCols     = buildLeft ? c2 : c1;
+
+        Map <KeyType, List <Comparable []>> ht = new HashMap <> (2 * build.size ());
+        for (Comparable [] t : build) {
+            Comparable [] k = project (t, bCols);
+            if (! hasNull (k)) ht.computeIfAbsent (new KeyType (k), x -> new ArrayList <> (1)).add (t);
+        } // for
+
+        int blocks = (probe.size () + JOIN_BLOCK - 1) / JOIN_BLOCK;
+        IntStream is = IntStream.range (0, blocks);
+        List <List <Comparable []>> parts = (probe.size () >= JOIN_PARALLEL_MIN ? is.parallel () : is).mapToObj (b -> {
+            List <Comparable []> found = new ArrayList <> ();
+            for (Comparable [] p : probe.subList (b * JOIN_BLOCK, Math.min (probe.size (), (b + 1) * JOIN_BLOCK))) {
+                Comparable [] k = project (p, pCols);
+                List <Comparable []> matches = hasNull (k) ? null : ht.get (new KeyType (k));
+                if (matches == null) continue;
+                for (Comparable [] m : matches) {
+                    Comparable [] t = buildLeft ? m : p, u = buildLeft ? p : m;
+                    Comparable [] row = Arrays.copyOf (t, t.length + rest.length);
+                    for (int j = 0; j < rest.length; j++) row [t.length + j] = u [rest [j]];
+                    found.add (row);
+                } // for
+            } // for
+            return found;
+        }).collect (Collectors.toList ());
+
+        List <Comparable []> rows = new ArrayList <> ();
+        for (List <Comparable []> part : parts) rows.addAll (part);
+
+        return new Table (name + count++, ArrayUtil.concat (attribute, attrs),
+                                          ArrayUtil.concat (domain, doms), key, rows);
+    } // naturalJoin
+
+    /************************************************************************************
+     * Return whether any of the given values is null.
+     *
+     * @param vals  the values
+     * @return  whether a value is null
+     */
+    private static boolean hasNull (Comparable [] vals)
+    {
+        for (Comparable v : vals) if (v == null) return true;
+        return false;
+    } // hasNull
+
+    /************************************************************************************
+     * Return the column position for the given attribute name.
+     *
+     * @param attr  the given attribute name
+     * @return  a column position
+     */
+    public int col (String attr)
+    {
+        return schema.col (attr);
+    } // col
+
+    /************************************************************************************
+     * Return the schema of the table, for resolving attributes to columns once.
+     *
+     * #usage Schema.Column year = movie.schema ().column ("year")
+     *
+     * @return  the table's schema
+     */
+    public Schema schema ()
+    {
+        return schema;
+    } // schema
+
+    /************************************************************************************
+     * Insert a tuple to the table.
+     *
+     * #usage movie.insert ("'Star_Wars'", 1977, 124, "T", "Fox", 12345)
+     *
+     * @param tup  the array of attribute values forming the tuple
+     * @return  whether insertion was successful
+     */
+    public boolean insert (Comparable [] tup)
     {
         //out.println ("DML> insert into " + name + " values ( " + Arrays.toString (tup) + " )");
 
-        if (typeCheck (tup)) {
-            tuples.add (tup);
-            Comparable [] keyVal = new Comparable [key.length];
-            int []        cols   = match (key);
-            for (int j = 0; j < keyVal.length; j++) keyVal [j] = tup [cols [j]];            
-            if (mType != MapType.NO_MAP) index.put (new KeyType (keyVal), tup);           
-            return true;
-        } else {
+        if (mapped != null) {
+            out.println ("insert: table " + name + " is mapped read-only");
             return false;
         } // if
+
+        if (! typeCheck (tup)) return false;
+        if (wal == null) {
+            add (tup);
+            return true;
+        } // if
+
+        long seq;
+        try {
+            synchronized (this) {
+                seq = wal.enqueue (tuples.size (), tup);
+                add (tup);
+            } // synchronized
+            wal.commit (seq);
+            return true;
+        } catch (IOException ex) {
+            out.println ("insert: IO Exception");
+            ex.printStackTrace ();
+            return false;
+        } // try
     } // insert
 
+    /************************************************************************************
+     * Insert the tuples in an array into the table (see insertAll (List)).
+     *
+     * @param tups  the tuples to insert
+     * @return  the number of tuples inserted
+     */
+    public int insertAll (Comparable [][] tups)
+    {
+        return insertAll (Arrays.asList (tups));
+    } // insertAll
+
+    /************************************************************************************
+     * Insert the tuples of a stream, which may be parallel, into the table (see
+     * insertAll (List)).
+     *
+     * @param tups  the tuples to insert
+     * @return  the number of tuples inserted
+     */
+    public int insertAll (Stream <Comparable []> tups)
+    {
+        return insertAll (tups.collect (Collectors.toList ()));
+    } // insertAll
+
+    /************************************************************************************
+     * Insert a batch of tuples into the table.  The batch is type checked column by
+     * column, the tuples that pass are appended, and the index is then built once: into
+     * an empty table by sorting the keys and loading the tree bottom-up (or by a hash
+     * table sized for the batch), and otherwise by putting each key.  Large batches are
+     * checked, keyed and sorted in parallel.  The batch is logged and passed to the
+     * insert listeners as a whole.
+     *
+     * #usage movie.insertAll (tuples)
+     *
+     * @param tups  the tuples to insert
+     * @return  the number of tuples inserted
+     */
+    public int insertAll (List <Comparable []> tups)
+    {
+        if (mapped != null) {
+            out.println ("insertAll: table " + name + " is mapped read-only");
+            return 0;
+        } // if
+
+        boolean [] ok    = typeCheck (tups);
+        List <Comparable []> batch = new ArrayList <> (tups.size ());
+        for (int i = 0; i < ok.length; i++) if (ok [i]) batch.add (tups.get (i));
+        if (batch.size () < tups.size ()) {
+            out.println ("insertAll: " + (tups.size () - batch.size ()) + " tuples rejected by the type check");
+        } // if
+        if (batch.isEmpty ()) return 0;
+
+        try {
+            if (wal == null) {
+                addAll (batch);
+                return batch.size ();
+            } // if
+            long seq = 0;
+            synchronized (this) {
+                long ord = tuples.size ();
+                for (Comparable [] tup : batch) seq = wal.enqueue (ord++, tup);
+                addAll (batch);
+            } // synchronized
+            wal.commit (seq);
+            return batch.size ();
+        } catch (IOException ex) {
+            out.println ("insertAll: IO Exception");
+            ex.printStackTrace ();
+            return 0;
+        } // try
+    } // insertAll
+
+    /************************************************************************************
+     * Make inserts into this table durable by logging each tuple to a write-ahead log
+     * (store/<name>.wal) before it is added, so it survives a crash without the whole
+     * table being saved.  The log is replayed by load and emptied by save.  Tuples
+     * inserted before logging was enabled are only durable once the table is saved.
+     *
+     * #usage movie.logInserts (WriteAheadLog.Policy.group (64, 2000))
+     *
+     * @param policy  when log records are forced to disk (per insert, in groups, or
+     *                asynchronously)
+     */
+    public void logInserts (WriteAheadLog.Policy policy)
+    {
+        try {
+            closeLog ();
+            wal = new WriteAheadLog (DIR + name + WAL, new TableFile.Header (name, attribute, domain, key, 0),
+                                     policy);
+        } catch (IOException ex) {
+            out.println ("logInserts: IO Exception");
+            ex.printStackTrace ();
+        } // try
+    } // logInserts
+
+    /************************************************************************************
+     * Merge the delta segments of the stored table with the given name into its base
+     * file now, rather than waiting for a background checkpointer.
+     *
+     * @param name  the name of the table
+     */
+    public static void checkpoint (String name)
+    {
+        try {
+            Checkpointer.checkpoint (DIR + name, EXT);
+        } catch (IOException | UncheckedIOException ex) {
+            out.println ("checkpoint: IO Exception");
+            ex.printStackTrace ();
+        } // try
+    } // checkpoint
+
+    /************************************************************************************
+     * Return the totals of the counters of the Bloom filters used by hash and index
+     * joins: {probes, rejected, false positives}.  The rejected probes are the lookups
+     * the filters saved; the false positives are lookups that found no match.
+     *
+     * @return  the counters
+     */
+    public static long [] joinFilterMetrics ()
+    {
+        synchronized (joinFilterStats) {
+            return joinFilterStats.clone ();
+        } // synchronized
+    } // joinFilterMetrics
+
+    /************************************************************************************
+     * Reset the join Bloom filter counters to zero.
+     */
+    public static void resetJoinFilterMetrics ()
+    {
+        synchronized (joinFilterStats) {
+            Arrays.fill (joinFilterStats, 0);
+        } // synchronized
+    } // resetJoinFilterMetrics
+
+    /************************************************************************************
+     * Cache the results of select and join (all variants) in the given cache, or stop
+     * caching if it is null.  Repeated calls with the same arguments on unchanged tables
+     * then return the same result table; an insert into an input table drops the
+     * results computed from it.
+     *
+     * #usage Table.setResultCache (new ResultCache (256, 64L << 20, new LruPolicy ()))
+     *
+     * @param cache  the result cache, or null to disable caching
+     */
+    public static void setResultCache (ResultCache cache)
+    {
+        resultCache = cache;
+    } // setResultCache
+
+    /************************************************************************************
+     * Return the result cache in use, or null if results are not cached.
+     *
+     * @return  the result cache
+     */
+    public static ResultCache resultCache ()
+    {
+        return resultCache;
+    } // resultCache
+
+    /************************************************************************************
+     * Set the map type used for the indices of the tables created from now on, given
+     * its name: NO_MAP, TREE_MAP, LINHASH_MAP, BPTREE_MAP or DISK_BPTREE_MAP.
+     *
+     * #usage Table.setMapType ("LINHASH_MAP")
+     *
+     * @param type  the name of the map type
+     */
+    public static void setMapType (String type)
+    {
+        mType = MapType.valueOf (type);
+    } // setMapType
+
+    /************************************************************************************
+     * Register a listener to be given the tuples added by each later insert, after they
+     * have been added.
+     *
+     * @param listener  the listener
+     */
+    public synchronized void addInsertListener (Consumer <List <Comparable []>> listener)
+    {
+        List <Consumer <List <Comparable []>>> ls = (listeners == null) ? new ArrayList <> ()
+                                                                        : new ArrayList <> (listeners);
+        ls.add (listener);
+        listeners = ls;
+    } // addInsertListener
+
+    /************************************************************************************
+     * Unregister a listener registered with addInsertListener.
+     *
+     * @param listener  the listener
+     */
+    public synchronized void removeInsertListener (Consumer <List <Comparable []>> listener)
+    {
+        if (listeners == null) return;
+        List <Consumer <List <Comparable []>>> ls = new ArrayList <> (listeners);
+        ls.remove (listener);
+        listeners = ls.isEmpty () ? null : ls;
+    } // removeInsertListener
+
+    /************************************************************************************
+     * Start a background checkpointer that merges the delta segments of every stored
+     * table once it has accumulated the given number of them.
+     *
+     * @param minDeltas  the number of deltas that triggers a merge
+     * @param interval   the interval between checks in milliseconds
+     * @return  the checkpointer (close it to stop)
+     */
+    public static Checkpointer startCheckpointer (int minDeltas, long interval)
+    {
+        return new Checkpointer (DIR, EXT, minDeltas, interval);
+    } // startCheckpointer
+
+    /************************************************************************************
+     * Force and close the write-ahead log, if logging is enabled.  Logged inserts remain
+     * in the log until the table is saved.
+     */
+    public void closeLog ()
+    {
+        if (wal == null) return;
+        try {
+            wal.close ();
+        } catch (IOException ex) {
+            out.println ("closeLog: IO Exception");
+            ex.printStackTrace ();
+        } // try
+        wal = null;
+    } // closeLog
+
+    /************************************************************************************
+     * Return the version of the table, which every insert increments.
+     *
+     * @return  the table's version
+     */
+    public long version ()
+    {
+        return version;
+    } // version
+
     /************************************************************************************
      * Get the name of the table.
      *
      * @return  the table's name
      */
-    public String getName ()
+    public String getName ()
+    {
+        return name;
+    } // getName
+
+    /************************************************************************************
+     * Print this table.
+     */
+    public void print ()
+    {
+        out.println ("\n Table " + name);
+        out.print ("|-");
+        for (int i = 0; i < attribute.length; i++) out.print ("---------------");
+        out.println ("-|");
+        out.print ("| ");
+        for (String a : attribute) out.printf ("%15s", a);
+        out.println (" |");
+        out.print ("|-");
+        for (int i = 0; i < attribute.length; i++) out.print ("---------------");
+        out.println ("-|");
+        for (Comparable [] tup : tuples) {
+            out.print ("| ");
+            for (Comparable attr : tup) out.printf ("%15s", attr);
+            out.println (" |");
+        } // for
+        out.print ("|-");
+        for (int i = 0; i < attribute.length; i++) out.print ("---------------");
+        out.println ("-|");
+    } // print
+
+    /************************************************************************************
+     * Print this table's index (Map).
+     */
+    public void printIndex ()
+    {
+        out.println ("\n Index for " + name);
+        out.println ("-------------------");
+        if (mType != MapType.NO_MAP) {
+            for (Map.Entry <KeyType, Comparable []> e : index.entrySet ()) {
+                out.println (e.getKey () + " -> " + Arrays.toString (e.getValue ()));
+            } // for
+        } // if
+        out.println ("-------------------");
+    } // printIndex
+
+    /************************************************************************************
+     * Return the path of the file holding the table with the given name, for code that
+     * writes table files directly (see TableFile.Writer) to be loaded later.
+     *
+     * @param name  the name of the table
+     * @return  the path load reads the table from
+     */
+    static String path (String name)
+    {
+        return DIR + name + EXT;
+    } // path
+
+    /************************************************************************************
+     * Load the table with the given name into memory.  Tables are stored in the binary
+     * page format (see TableFile) and the index is rebuilt as the tuples are read,
+     * unless a consistent persistent index (DISK_BPTREE_MAP) can be reopened.
+     * Files written with Java serialization by older versions are still readable.
+     * The delta segments written by incremental saves are applied after the base file,
+     * and inserts logged since the table was last saved (see logInserts) are replayed
+     * from the write-ahead log, up to the first record torn by a crash.  A stored tuple
+     * that fails the type check is reported and the table is not loaded, since the
+     * positions of the tuples must match those in the files for the next delta save.
+     *
+     * @param name  the name of the table to load
+     * @return  the table, or null if it cannot be loaded
+     */
+    public static Table load (String name)
+    {
+        Table tab = null;
+        String stem = DIR + name, path = stem + EXT;
+        List <TableFile.Reader> segments = new ArrayList <> ();
+        try {
+            long gen;
+            synchronized (Checkpointer.lock (stem)) {                  // open a consistent set of files
+                gen = Checkpointer.generation (stem);
+                if (TableFile.isTableFile (path)) {
+                    segments.add (new TableFile.Reader (path));
+                    for (Path p : Checkpointer.deltas (stem)) segments.add (new TableFile.Reader (p.toString ()));
+                } // if
+            } // synchronized
+
+            TableFile.Header logged;
+            if (! new File (path).exists () && (logged = WriteAheadLog.readHeader (DIR + name + WAL)) != null) {
+                tab = new Table (logged.name, logged.attribute, logged.domain, logged.key);
+            } else if (! segments.isEmpty ()) {
+                TableFile.Header h = segments.get (0).header;
+                long stored = 0;
+                for (TableFile.Reader r : segments) {
+                    if (r.header.firstTuple > stored) break;
+                    stored = Math.max (stored, r.header.firstTuple + r.header.tupleCount);
+                } // for
+                Map <KeyType, Comparable []> idx = openIndex (name, stored);
+                tab = (idx != null) ? new Table (h.name, h.attribute, h.domain, h.key, new ArrayList <> (), idx)
+                                    : new Table (h.name, h.attribute, h.domain, h.key);
+                List <Comparable []> read = (idx != null) ? tab.tuples : new ArrayList <> ();
+                for (TableFile.Reader r : segments) {
+                    long ord = r.header.firstTuple;
+                    if (ord > read.size ()) break;                      // gap: stop
+                    for ( ; r.hasNext (); ord++) {
+                        Comparable [] t = r.next ();
+                        if (ord == read.size ()) read.add (t);
+                    } // for
+                } // for
+                if (idx == null) {                                      // one bulk index build
+                    boolean [] ok = tab.typeCheck (read);
+                    for (int i = 0; i < ok.length; i++) {
+                        if (! ok [i]) {                                 // positions would shift: refuse
+                            tab = null;
+                            throw new IOException ("stored tuple " + i + " of " + name + " fails the type check");
+                        } // if
+                    } // for
+                    tab.addAll (read);
+                } // if
+                tab.savedCount = read.size ();                          // the next delta starts here
+                tab.savedGen   = gen;
+                tab.readKeyFilter ();
+            } else {
+                ObjectInputStream ois = new ObjectInputStream (new FileInputStream (path));
+                tab = (Table) ois.readObject ();
+                ois.close ();
+            } // if
+            WriteAheadLog.replay (DIR + name + WAL, tab.tuples.size (), tab::insert);
+        } catch (IOException | UncheckedIOException ex) {
+            out.println ("load: IO Exception");
+            ex.printStackTrace ();
+        } catch (ClassNotFoundException ex) {
+            out.println ("load: Class Not Found Exception");
+            ex.printStackTrace ();
+        } finally {
+            for (TableFile.Reader r : segments) {
+                try {
+                    r.close ();
+                } catch (IOException ex) {
+                    // nothing more to read
+                } // try
+            } // for
+        } // try
+        return tab;
+    } // load
+
+    /************************************************************************************
+     * Open the table with the given name by memory-mapping its file instead of loading
+     * it.  Only the header and page directory are read, so the cost is proportional to
+     * the schema rather than the data; tuples are decoded from the mapped pages as they
+     * are accessed.  A consistent persistent index (DISK_BPTREE_MAP) is reopened and
+     * used for keyed selects.  Pending delta segments, if any, are first merged into the
+     * base file (see Checkpointer).  The resulting table is read-only; unmap closes its
+     * file.
+     *
+     * @param name  the name of the table to map
+     * @return  the mapped table, or null if it cannot be opened
+     */
+    public static Table map (String name)
+    {
+        String          stem = DIR + name;
+        MappedTableFile file = null;
+        try {
+            if (! Checkpointer.deltas (stem).isEmpty ()) Checkpointer.checkpoint (stem, EXT);
+            file = new MappedTableFile (stem + EXT);
+            TableFile.Header h   = file.header;
+            Map <KeyType, Comparable []> idx = openIndex (name, h.tupleCount);
+            Table tab = new Table (h.name, h.attribute, h.domain, h.key, file.tuples (),
+                                   (idx != null) ? idx : makeMap (h.name));
+            tab.mapped = file;
+            tab.readKeyFilter ();
+            return tab;
+        } catch (IOException ex) {
+            out.println ("map: IO Exception");
+            ex.printStackTrace ();
+            if (file != null) {
+                try {
+                    file.close ();
+                } catch (IOException ex2) {
+                    // already failing
+                } // try
+            } // if
+            return null;
+        } // try
+    } // map
+
+    /************************************************************************************
+     * Close the file of a table opened by map, and its persistent index if one was
+     * reopened.  The table's tuples are read from the file, so it must not be used
+     * afterwards.
+     */
+    public void unmap ()
+    {
+        if (mapped == null) return;
+        try {
+            mapped.close ();
+            if (index instanceof DiskBpTreeMap) ((Closeable) index).close ();
+        } catch (IOException ex) {
+            out.println ("unmap: IO Exception");
+            ex.printStackTrace ();
+        } // try
+        mapped = null;
+    } // unmap
+
+    /************************************************************************************
+     * Save this table in a file using the binary page format (see TableFile).  Only the
+     * schema and tuples are written; the index is rebuilt on load, except that a
+     * persistent index (DISK_BPTREE_MAP) is flushed so it can be reopened.  If the table
+     * was loaded from or last saved to the current files, only the tuples inserted since
+     * are written, to a new delta segment, so the cost is proportional to the change;
+     * deltas are merged into the base file by checkpoint.  The primary key Bloom filter
+     * is saved alongside.  Once the file is in place the write-ahead log is emptied,
+     * since the files now hold every logged insert.
+     */
+    public synchronized void save ()
+    {
+        String stem = DIR + name;
+        int    n    = tuples.size ();
+        try {
+            if (savedCount > 0 && savedCount <= n && savedGen == Checkpointer.generation (stem)
+                               && TableFile.isTableFile (stem + EXT)) {
+                if (n > savedCount) {
+                    try (TableFile.Writer w = new TableFile.Writer (Checkpointer.deltaPath (stem, savedCount),
+                                                                    name, attribute, domain, key, savedCount)) {
+                        for (int i = (int) savedCount; i < n; i++) w.write (tuples.get (i));
+                    } // try
+                } // if
+            } else {
+                synchronized (Checkpointer.lock (stem)) {
+                    try (TableFile.Writer w = new TableFile.Writer (stem + EXT, name, attribute, domain, key, 0)) {
+                        for (int i = 0; i < n; i++) w.write (tuples.get (i));
+                    } // try
+                    Checkpointer.removeDeltas (stem);
+                    savedGen = Checkpointer.replaced (stem);
+                } // synchronized
+            } // if
+            savedCount = n;
+            if (index instanceof DiskBpTreeMap) ((DiskBpTreeMap) index).flush ();
+            writeKeyFilter ();
+        } catch (IOException | UncheckedIOException ex) {
+            out.println ("save: IO Exception");
+            ex.printStackTrace ();
+            return;
+        } // try
+        try {
+            if (wal != null) wal.reset ();
+            else             Files.deleteIfExists (Paths.get (DIR + name + WAL));
+        } catch (IOException ex) {
+            out.println ("save: IO Exception");
+            ex.printStackTrace ();
+        } // try
+    } // save
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Add a tuple that has passed the type check to the tuples and the index.
+     *
+     * @param tup  the tuple to add
+     */
+    private void add (Comparable [] tup)
+    {
+        tuples.add (tup);
+        Comparable [] keyVal = new Comparable [key.length];
+        int []        cols   = match (key);
+        for (int j = 0; j < keyVal.length; j++) keyVal [j] = tup [cols [j]];
+        KeyType k = new KeyType (keyVal);
+        if (mType != MapType.NO_MAP) index.put (k, tup);
+        BloomFilter filter = keyBloom;
+        if (filter != null) {
+            if (tuples.size () > bloomCapacity) keyBloom = null;        // rebuild larger on next use
+            else                                filter.add (k);
+        } // if
+        changed ();
+        List <Consumer <List <Comparable []>>> ls = listeners;
+        if (ls != null) {
+            List <Comparable []> delta = Collections.singletonList (tup);
+            for (Consumer <List <Comparable []>> l : ls) l.accept (delta);
+        } // if
+    } // add
+
+    /************************************************************************************
+     * Add a batch of tuples that has passed the type check to the tuples and the index,
+     * building the index in one pass if the table was empty.
+     *
+     * @param batch  the tuples to add
+     */
+    private void addAll (List <Comparable []> batch)
+    {
+        boolean initial = tuples.isEmpty ();
+        tuples.addAll (batch);
+        int []    cols = match (key);
+        KeyType [] ks  = new KeyType [batch.size ()];
+        IntStream is   = IntStream.range (0, ks.length);
+        (ks.length >= PARALLEL_MIN ? is.parallel () : is).forEach (i -> {
+            Comparable [] tup    = batch.get (i);
+            Comparable [] keyVal = new Comparable [cols.length];
+            for (int j = 0; j < cols.length; j++) keyVal [j] = tup [cols [j]];
+            ks [i] = new KeyType (keyVal);
+        });
+
+        if (initial && mType != MapType.NO_MAP) {
+            buildIndex (ks, batch);
+        } else if (mType != MapType.NO_MAP) {
+            for (int i = 0; i < ks.length; i++) index.put (ks [i], batch.get (i));
+        } // if
+        BloomFilter filter = keyBloom;
+        if (filter != null) {
+            if (tuples.size () > bloomCapacity) keyBloom = null;        // rebuild larger on next use
+            else                                for (KeyType k : ks) filter.add (k);
+        } // if
+        changed ();
+        List <Consumer <List <Comparable []>>> ls = listeners;
+        if (ls != null) {
+            List <Comparable []> delta = Collections.unmodifiableList (batch);
+            for (Consumer <List <Comparable []>> l : ls) l.accept (delta);
+        } // if
+    } // addAll
+
+    /************************************************************************************
+     * Build the empty index over the given keys and tuples in one pass.  The hash map is
+     * sized for the batch up front; the tree maps are loaded from the keys sorted
+     * (stably, so duplicate keys resolve as with put): the B+Tree bottom-up,
+     * the TreeMap in linear time from a sorted view, and the disk-resident B+Tree by
+     * putting the keys in order, which keeps the right edge of the tree in the buffer
+     * pool.
+     *
+     * @param ks     the keys of the tuples
+     * @param batch  the tuples
+     */
+    @SuppressWarnings("unchecked")
+    private void buildIndex (KeyType [] ks, List <Comparable []> batch)
+    {
+        if (mType == MapType.LINHASH_MAP) {
+            LinHashMap <KeyType, Comparable []> map = (LinHashMap <KeyType, Comparable []>) index;
+            map.reserve (ks.length);
+            for (int i = 0; i < ks.length; i++) map.putNoSplit (ks [i], batch.get (i));
+            return;
+        } // if
+
+        int []  order     = sortedOrder (ks, batch);
+        boolean firstWins = mType == MapType.BPTREE_MAP;                // as BpTreeMap.put ignores duplicates
+        int n = 0;                                                      // distinct keys
+        for (int i = 0; i < order.length; i++) {
+            if (n > 0 && ks [order [n-1]].compareTo (ks [order [i]]) == 0) {
+                if (firstWins) continue;
+                n--;
+            } // if
+            order [n++] = order [i];
+        } // for
+        KeyType []      sortedKeys = new KeyType [n];
+        Comparable [][] sortedTups = new Comparable [n][];
+        for (int i = 0; i < n; i++) {
+            sortedKeys [i] = ks [order [i]];
+            sortedTups [i] = batch.get (order [i]);
+        } // for
+
+        switch (mType) {
+        case BPTREE_MAP:
+            ((BpTreeMap <KeyType, Comparable []>) index).bulkLoad (sortedKeys, sortedTups);
+            break;
+        case TREE_MAP:
+            index.putAll (new SortedRun (sortedKeys, sortedTups));
+            break;
+        default:
+            for (int i = 0; i < n; i++) index.put (sortedKeys [i], sortedTups [i]);
+        } // switch
+    } // buildIndex
+
+    /************************************************************************************
+     * Return the positions of the keys in ascending order, ties in position order.  A
+     * key that is a single Integer column is sorted as primitive longs packing the key
+     * above the position (the batch type check has rejected null keys); other keys are
+     * sorted as KeyTypes.
+     *
+     * @param ks     the keys of the tuples
+     * @param batch  the tuples
+     * @return  the positions in key order
+     */
+    private int [] sortedOrder (KeyType [] ks, List <Comparable []> batch)
+    {
+        int [] cols  = match (key);
+        int [] order = new int [ks.length];
+        boolean par  = ks.length >= PARALLEL_MIN;
+        if (cols.length == 1 && domain [cols [0]] == Integer.class) {
+            long [] packed = new long [ks.length];
+            for (int i = 0; i < packed.length; i++) {
+                packed [i] = ((long) (Integer) batch.get (i) [cols [0]] << 32) | i;
+            } // for
+            if (par) Arrays.parallelSort (packed); else Arrays.sort (packed);
+            for (int i = 0; i < order.length; i++) order [i] = (int) packed [i];
+            return order;
+        } // if
+        Integer [] boxed = new Integer [ks.length];
+        for (int i = 0; i < boxed.length; i++) boxed [i] = i;
+        Comparator <Integer> byKey = (a, b) -> ks [a].compareTo (ks [b]);
+        if (par) Arrays.parallelSort (boxed, byKey); else Arrays.sort (boxed, byKey);
+        for (int i = 0; i < order.length; i++) order [i] = boxed [i];
+        return order;
+    } // sortedOrder
+
+    /************************************************************************************
+     * The SortedRun class is a read-only sorted map view of a range of parallel arrays of
+     * sorted, distinct keys and their tuples, which TreeMap.putAll builds an empty
+     * TreeMap from in linear time.  Lookups and sub-range views binary search the keys.
+     */
+    static class SortedRun
+            extends AbstractMap <KeyType, Comparable []>
+            implements SortedMap <KeyType, Comparable []>
     {
-        return name;
-    } // getName
+        private final KeyType []      keys;
+        private final Comparable [][] tups;
+        private final int             lo;                               // first position in the view
+        private final int             hi;                               // one past the last
+
+        SortedRun (KeyType [] _keys, Comparable [][] _tups)
+        {
+            this (_keys, _tups, 0, _keys.length);
+        } // constructor
+
+        private SortedRun (KeyType [] _keys, Comparable [][] _tups, int _lo, int _hi)
+        {
+            keys = _keys;
+            tups = _tups;
+            lo   = _lo;
+            hi   = _hi;
+        } // constructor
+
+        /********************************************************************************
+         * Return the position of the first key in the view not less than k.
+         */
+        private int lowerBound (KeyType k)
+        {
+            int i = Arrays.binarySearch (keys, lo, hi, k);
+            return (i >= 0) ? i : -i - 1;
+        } // lowerBound
+
+        public Set <Map.Entry <KeyType, Comparable []>> entrySet ()
+        {
+            return new AbstractSet <Map.Entry <KeyType, Comparable []>> () {
+                public int size () { return hi - lo; }
+                public Iterator <Map.Entry <KeyType, Comparable []>> iterator ()
+                {
+                    return IntStream.range (lo, hi)
+                                    .mapToObj (i -> (Map.Entry <KeyType, Comparable []>)
+                                                    new AbstractMap.SimpleImmutableEntry <> (keys [i], tups [i]))
+                                    .iterator ();
+                } // iterator
+            };
+        } // entrySet
+
+        public Comparable [] get (Object k)
+        {
+            if (! (k instanceof KeyType)) return null;
+            int i = Arrays.binarySearch (keys, lo, hi, (KeyType) k);
+            return (i >= 0) ? tups [i] : null;
+        } // get
+
+        public boolean containsKey (Object k)
+        {
+            return k instanceof KeyType && Arrays.binarySearch (keys, lo, hi, (KeyType) k) >= 0;
+        } // containsKey
+
+        public int size ()                                  { return hi - lo; }
+        public Comparator <? super KeyType> comparator ()   { return null; }
+
+        public KeyType firstKey ()
+        {
+            if (lo == hi) throw new NoSuchElementException ();
+            return keys [lo];
+        } // firstKey
+
+        public KeyType lastKey ()
+        {
+            if (lo == hi) throw new NoSuchElementException ();
+            return keys [hi - 1];
+        } // lastKey
+
+        public SortedMap <KeyType, Comparable []> subMap (KeyType from, KeyType to)
+        {
+            if (from.compareTo (to) > 0) throw new IllegalArgumentException ("subMap: from > to");
+            return new SortedRun (keys, tups, lowerBound (from), lowerBound (to));
+        } // subMap
+
+        public SortedMap <KeyType, Comparable []> headMap (KeyType to)
+        {
+            return new SortedRun (keys, tups, lo, lowerBound (to));
+        } // headMap
+
+        public SortedMap <KeyType, Comparable []> tailMap (KeyType from)
+        {
+            return new SortedRun (keys, tups, lowerBound (from), hi);
+        } // tailMap
+
+    } // SortedRun
 
     /************************************************************************************
-     * Print this table.
+     * Record that the tuples have changed: bump the version and drop the cached results
+     * computed from this table.
      */
-    public void print ()
+    void changed ()
     {
-        out.println ("\n Table " + name);
-        out.print ("|-");
-        for (int i = 0; i < attribute.length; i++) out.print ("---------------");
-        out.println ("-|");
-        out.print ("| ");
-        for (String a : attribute) out.printf ("%15s", a);
-        out.println (" |");
-        out.print ("|-");
-        for (int i = 0; i < attribute.length; i++) out.print ("---------------");
-        out.println ("-|");
-        for (Comparable [] tup : tuples) {
-            out.print ("| ");
-            for (Comparable attr : tup) out.printf ("%15s", attr);
-            out.println (" |");
-        } // for
-        out.print ("|-");
-        for (int i = 0; i < attribute.length; i++) out.print ("---------------");
-        out.println ("-|");
-    } // print
+        version++;
+        ResultCache cache = resultCache;
+        if (cache != null) cache.invalidate (id ());
+    } // changed
 
     /************************************************************************************
-     * Print this table's index (Map).
+     * Return the id of this table in the result cache, assigning it on first use.
+     *
+     * @return  the table's id
      */
-    public void printIndex ()
+    synchronized long id ()
     {
-        out.println ("\n Index for " + name);
-        out.println ("-------------------");
-        if (mType != MapType.NO_MAP) {
-            for (Map.Entry <KeyType, Comparable []> e : index.entrySet ()) {
-                out.println (e.getKey () + " -> " + Arrays.toString (e.getValue ()));
-            } // for
-        } // if
-        out.println ("-------------------");
-    } // printIndex
+        if (id == 0) id = nextId.incrementAndGet ();
+        return id;
+    } // id
 
     /************************************************************************************
-     * Load the table with the given name into memory. 
+     * Return the result of an operator from the result cache, computing it (and caching
+     * it) on a miss, or just compute it if results are not cached.
      *
-     * @param name  the name of the table to load
+     * @param op       the name of the operator
+     * @param table2   the second input table (null for unary operators)
+     * @param compute  computes the result
+     * @param args     the arguments of the operator
+     * @return  the result
      */
-    public static Table load (String name)
+    private Table cached (String op, Table table2, Supplier <Table> compute, Object... args)
     {
-        Table tab = null;
-        try {
-            ObjectInputStream ois = new ObjectInputStream (new FileInputStream (DIR + name + EXT));
-            tab = (Table) ois.readObject ();
-            ois.close ();
-        } catch (IOException ex) {
-            out.println ("load: IO Exception");
-            ex.printStackTrace ();
-        } catch (ClassNotFoundException ex) {
-            out.println ("load: Class Not Found Exception");
-            ex.printStackTrace ();
-        } // try
-        return tab;
-    } // load
+        ResultCache cache = resultCache;
+        if (cache == null) return compute.get ();
+        Table [] inputs = (table2 == null) ? new Table [] { this } : new Table [] { this, table2 };
+        return cache.get (op, args, inputs, compute);
+    } // cached
 
     /************************************************************************************
-     * Save this table in a file.
+     * Encode the String columns of the tuples not yet coded, creating the dictionaries
+     * on first use.  Each tuple's strings are replaced by the dictionary's canonical
+     * instances, so repeated values are stored once.
      */
-    public void save ()
+    private synchronized void encodeStrings ()
     {
-        try {
-            ObjectOutputStream oos = new ObjectOutputStream (new FileOutputStream (DIR + name + EXT));
-            oos.writeObject (this);
-            oos.close ();
-        } catch (IOException ex) {
-            out.println ("save: IO Exception");
-            ex.printStackTrace ();
-        } // try
-    } // save
-
-    //----------------------------------------------------------------------------------
-    // Private Methods
-    //----------------------------------------------------------------------------------
+        int n = tuples.size ();
+        if (dict == null) {
+            dict  = new StringDictionary [domain.length];
+            codes = new int [domain.length][];
+            for (int j = 0; j < domain.length; j++) {
+                if (domain [j] == String.class) {
+                    dict [j]  = new StringDictionary ();
+                    codes [j] = new int [Math.max (16, n)];
+                } // if
+            } // for
+        } // if
+        for ( ; coded < n; coded++) {
+            Comparable [] t = tuples.get (coded);
+            for (int j = 0; j < dict.length; j++) {
+                if (dict [j] == null) continue;
+                if (codes [j].length == coded) codes [j] = Arrays.copyOf (codes [j], 2 * coded);
+                int c = dict [j].encode ((t [j] == null) ? null : t [j].toString ());
+                codes [j][coded] = c;
+                if (c >= 0) t [j] = dict [j].decode (c);
+            } // for
+        } // for
+    } // encodeStrings
 
     /************************************************************************************
      * Determine whether the two tables (this and table2) are compatible, i.e., have
@@ -803,24 +2183,393 @@ public class Table
      */
     private int [] match (String [] column)
     {
-        int [] colPos = new int [column.length];
+        int [] colPos = schema.cols (column);
 
         for (int j = 0; j < column.length; j++) {
-            boolean matched = false;
-            for (int k = 0; k < attribute.length; k++) {
-                if (column [j].equals (attribute [k])) {
-                    matched = true;
-                    colPos [j] = k;
-                } // for
-            } // for
-            if ( ! matched) {
+            if (colPos [j] < 0) {
                 out.println ("match: domain not found for " + column [j]);
+                colPos [j] = 0;
             } // if
         } // for
 
         return colPos;
     } // match
 
+    /************************************************************************************
+     * Determine whether keyed selects must scan the key columns of the mapped file,
+     * i.e., the table is mapped and no persistent index covering it is attached.
+     *
+     * @return  whether to scan the mapped file
+     */
+    private boolean scanKeys ()
+    {
+        return mapped != null && ! (index instanceof DiskBpTreeMap && index.size () == tuples.size ());
+    } // scanKeys
+
+    /************************************************************************************
+     * Look up the tuple with the given primary key value, using the index or, for a
+     * mapped table, the key columns of the mapped file.
+     *
+     * @param keyVal  the primary key value
+     * @return  the matching tuple, or null if none
+     */
+    private Comparable [] lookup (KeyType keyVal)
+    {
+        if (scanKeys ()) {
+            List <Long> hits = mapped.find (match (key), keyVal, keyVal);
+            return hits.isEmpty () ? null : mapped.get (hits.get (0));
+        } // if
+        return index.get (keyVal);
+    } // lookup
+
+    /************************************************************************************
+     * Create a sorter for the given sort specification: attribute names, each optionally
+     * followed by "asc" or "desc".
+     *
+     * @param attributes  the sort specification
+     * @return  the sorter, or null if an attribute is not found
+     */
+    private ExternalSort sorter (String attributes)
+    {
+        String [] tok  = attributes.trim ().split ("\\s+");
+        int []    cols = new int [tok.length];
+        boolean [] desc = new boolean [tok.length];
+        int n = 0;
+        for (String s : tok) {
+            if (n > 0 && (s.equalsIgnoreCase ("asc") || s.equalsIgnoreCase ("desc"))) {
+                desc [n-1] = s.equalsIgnoreCase ("desc");
+            } else if ((cols [n++] = col (s)) < 0) {
+                out.println ("sorter: attribute not found " + s);
+                return null;
+            } // if
+        } // for
+        return new ExternalSort (domain, Arrays.copyOf (cols, n), Arrays.copyOf (desc, n));
+    } // sorter
+
+    /************************************************************************************
+     * Return the column positions of the given attributes.
+     *
+     * @param attrs  the attribute names
+     * @return  the column positions, or null if an attribute is not found
+     */
+    int [] positions (String [] attrs)
+    {
+        int [] cols = new int [attrs.length];
+        for (int j = 0; j < attrs.length; j++) {
+            if ((cols [j] = col (attrs [j])) < 0) {
+                out.println ("positions: attribute not found " + attrs [j]);
+                return null;
+            } // if
+        } // for
+        return cols;
+    } // positions
+
+    /************************************************************************************
+     * Return the values of the given columns of tuple t.
+     *
+     * @param t     the tuple
+     * @param cols  the column positions
+     * @return  the projected tuple
+     */
+    private static Comparable [] project (Comparable [] t, int [] cols)
+    {
+        Comparable [] p = new Comparable [cols.length];
+        for (int j = 0; j < cols.length; j++) p [j] = t [cols [j]];
+        return p;
+    } // project
+
+    /************************************************************************************
+     * Return the positions of the columns other than the given ones, in order.
+     *
+     * @param cols  the column positions to leave out
+     * @return  the remaining column positions
+     */
+    private int [] nonKeyCols (int [] cols)
+    {
+        boolean [] drop = new boolean [attribute.length];
+        for (int c : cols) if (c >= 0) drop [c] = true;
+        int [] keep = new int [attribute.length];
+        int n = 0;
+        for (int j = 0; j < attribute.length; j++) if (! drop [j]) keep [n++] = j;
+        return Arrays.copyOf (keep, n);
+    } // nonKeyCols
+
+    /************************************************************************************
+     * Return the attributes other than the given ones, in order, as the join
+     * operators keep them from table2.
+     *
+     * @param attrs  the attributes to leave out
+     * @return  the remaining attributes
+     */
+    private String [] nonKeyAttributes (String [] attrs)
+    {
+        int [] keep = nonKeyCols (schema.cols (attrs));
+        String [] result = new String [keep.length];
+        for (int j = 0; j < keep.length; j++) result [j] = attribute [keep [j]];
+        return result;
+    } // nonKeyAttributes
+
+    /************************************************************************************
+     * Estimate the memory needed to hash the distinct projections of the tuples onto
+     * the given columns.  The number of distinct projections is estimated from an evenly
+     * spaced sample of the tuples using the GEE estimator: the projections seen once in
+     * the sample are scaled up by sqrt (n / sample size), the others counted once.
+     *
+     * @param cols  the column positions
+     * @return  the estimated size of a hash set of the distinct projections in bytes
+     */
+    private long distinctBytes (int [] cols)
+    {
+        int n = tuples.size ();
+        if (n == 0) return 0;
+        int s = Math.min (n, 4096);
+        Map <List <Comparable>, Integer> freq = new HashMap <> ();
+        long bytes = 0;
+        for (int i = 0; i < s; i++) {
+            Comparable [] p = project (tuples.get ((int) ((long) i * n / s)), cols);
+            freq.merge (Arrays.asList (p), 1, Integer::sum);
+            bytes += ExternalSort.estimate (p) + 48;                // plus hash set entry
+        } // for
+        long once = freq.values ().stream ().filter (f -> f == 1).count ();
+        double distinct = Math.sqrt ((double) n / s) * once + (freq.size () - once);
+        return (long) (distinct * bytes / s);
+    } // distinctBytes
+
+    /************************************************************************************
+     * Return the distinct tuples of the input in sorted order, externally sorting them
+     * on the given columns (all columns of the tuples) and dropping adjacent duplicates.
+     *
+     * @param input  the tuples
+     * @param dom    the domains of the tuples' columns
+     * @param all    the positions of all the columns
+     * @return  the distinct tuples
+     */
+    private static List <Comparable []> sortDistinct (Iterator <Comparable []> input, Class [] dom, int [] all)
+    {
+        ExternalSort sorter = new ExternalSort (dom, all, null);
+        Comparator <Comparable []> order = sorter.order ();
+
+        List <Comparable []> rows = new ArrayList <> ();
+        Comparable [] prev = null;
+        for (ExternalSort.Cursor it = sorter.sort (input); it.hasNext (); ) {
+            Comparable [] t = it.next ();
+            if (prev == null || order.compare (prev, t) != 0) rows.add (t);
+            prev = t;
+        } // for
+        return rows;
+    } // sortDistinct
+
+    /************************************************************************************
+     * Keep the tuples of this table that do (or do not) join with a tuple of table2 on
+     * the given attributes (see semiJoin and antiJoin).
+     *
+     * @param attributes1  the attributes of this table to be compared
+     * @param attributes2  the attributes of table2 to be compared
+     * @param table2       the rhs table
+     * @param matched      whether to keep the tuples with a match (else those without)
+     * @return  a table with the kept tuples
+     */
+    private Table existence (String attributes1, String attributes2, Table table2, boolean matched)
+    {
+        String [] t_attrs = attributes1.split (" ");
+        String [] u_attrs = attributes2.split (" ");
+        int [] c1 = positions (t_attrs), c2 = table2.positions (u_attrs);
+        if (c1 == null || c2 == null || c1.length != c2.length) return null;
+        for (int j = 0; j < c1.length; j++) {
+            if (domain [c1 [j]] != table2.domain [c2 [j]]) {
+                out.println ("existence ERROR: join attributes " + t_attrs [j] + " and " + u_attrs [j]
+                             + " have different domains");
+                return null;
+            } // if
+        } // for
+
+        Predicate <KeyType> exists;
+        if (Arrays.equals (u_attrs, table2.key) && table2.index != null && ! table2.scanKeys ()
+                                                && table2.index.size () == table2.tuples.size ()) {
+            exists = k -> table2.lookup (k) != null;                  // index lookup, as in i_join
+        } else {
+            Set <KeyType> keys = new HashSet <> ();                   // hashed join values, as in h_join
+            for (Comparable [] u : table2.tuples) {
+                KeyType k = keyOf (u, c2);
+                if (k != null) keys.add (k);
+            } // for
+            exists = keys::contains;
+        } // if
+
+        List <Comparable []> rows = new ArrayList <> ();
+        for (Comparable [] t : tuples) {
+            KeyType k = keyOf (t, c1);
+            if ((k != null && exists.test (k)) == matched) rows.add (t);
+        } // for
+
+        return new Table (name + count++, attribute, domain, key, rows);
+    } // existence
+
+    /************************************************************************************
+     * Return the Bloom filter over the primary keys, building it if needed with room
+     * for twice the current number of tuples.  For a mapped table only the key columns
+     * are decoded, and the filter is saved so the next map reads it instead.
+     *
+     * @return  the filter
+     */
+    private BloomFilter keyBloom ()
+    {
+        BloomFilter filter = keyBloom;
+        if (filter != null) return filter;
+        synchronized (this) {
+            if (keyBloom == null) {
+                long cap = Math.max (KEY_FILTER_MIN, 2L * tuples.size ());
+                BloomFilter f = BloomFilter.forCount (cap, KEY_FILTER_FPP);
+                int [] cols = match (key);
+                if (mapped != null) mapped.forEachKey (cols, (i, k) -> f.add (k));
+                else for (Comparable [] t : tuples) f.add (t, cols);
+                bloomCapacity = cap;
+                keyBloom      = f;
+                if (mapped != null) {
+                    try {
+                        writeKeyFilter ();
+                    } catch (IOException ex) {
+                        // not saved: rebuilt again by the next map
+                    } // try
+                } // if
+            } // if
+            return keyBloom;
+        } // synchronized
+    } // keyBloom
+
+    /************************************************************************************
+     * Write the primary key Bloom filter to the table's filter file, preceded by the
+     * number of tuples it covers and its capacity.
+     *
+     * @throws IOException  if the file cannot be written
+     */
+    private void writeKeyFilter () throws IOException
+    {
+        BloomFilter filter = keyBloom ();
+        try (DataOutputStream dos = new DataOutputStream (new BufferedOutputStream (
+                                        new FileOutputStream (DIR + name + BLM)))) {
+            dos.writeLong (tuples.size ());
+            dos.writeLong (bloomCapacity);
+            filter.write (dos);
+        } // try
+    } // writeKeyFilter
+
+    /************************************************************************************
+     * Attach the primary key Bloom filter saved in the table's filter file, if it
+     * covers exactly the current tuples; otherwise it is rebuilt on first use.
+     */
+    private void readKeyFilter ()
+    {
+        File f = new File (DIR + name + BLM);
+        if (! f.exists ()) return;
+        try (DataInputStream dis = new DataInputStream (new BufferedInputStream (new FileInputStream (f)))) {
+            long covered = dis.readLong (), cap = dis.readLong ();
+            if (covered != tuples.size () || covered > cap) return;
+            BloomFilter filter = BloomFilter.read (dis);
+            bloomCapacity = cap;
+            keyBloom      = filter;
+        } catch (IOException ex) {
+            // stale or damaged: rebuild on first use
+        } // try
+    } // readKeyFilter
+
+    /************************************************************************************
+     * Return the tuples of this table whose values for the given columns pass the
+     * filter.  For a mapped table only those columns are decoded for the test, and the
+     * whole tuple only for tuples that pass.
+     *
+     * @param filter  the filter built from the other side of a join
+     * @param cols    the join columns
+     * @return  the tuples that may have a match
+     */
+    private List <Comparable []> filteredScan (BloomFilter filter, int [] cols)
+    {
+        List <Comparable []> hits = new ArrayList <> ();
+        if (mapped == null) {
+            for (Comparable [] t : tuples) if (filter.mightContain (t, cols)) hits.add (t);
+            return hits;
+        } // if
+
+        int [] sorted = cols.clone ();
+        Arrays.sort (sorted);
+        int [] perm = new int [cols.length];                         // key order -> sorted order
+        for (int j = 0; j < cols.length; j++) perm [j] = Arrays.binarySearch (sorted, cols [j]);
+        Comparable [] keyVal = new Comparable [cols.length];
+        int []        keyPos = IntStream.range (0, cols.length).toArray ();
+        for (long i = 0; i < mapped.size (); i++) {
+            Comparable [] vals = mapped.get (i, sorted);
+            for (int j = 0; j < cols.length; j++) keyVal [j] = vals [perm [j]];
+            if (filter.mightContain (keyVal, keyPos)) hits.add (mapped.get (i));
+        } // for
+        return hits;
+    } // filteredScan
+
+    /************************************************************************************
+     * Add the counters of a join's Bloom filter to the totals.  A filter shared with
+     * other operations (the primary key filter) counts only its use since the join
+     * started.
+     *
+     * @param filter  the filter
+     * @param before  the filter's counters when the join started
+     */
+    private static void recordFilter (BloomFilter filter, long [] before)
+    {
+        long [] c = filter.metrics ();
+        synchronized (joinFilterStats) {
+            for (int j = 0; j < c.length; j++) joinFilterStats [j] += c [j] - before [j];
+        } // synchronized
+    } // recordFilter
+
+    /************************************************************************************
+     * Return the key made of the given columns of tuple t.
+     *
+     * @param t     the tuple
+     * @param cols  the key columns
+     * @return  the key, or null if a key value is null
+     */
+    static KeyType keyOf (Comparable [] t, int [] cols)
+    {
+        Comparable [] keyVal = new Comparable [cols.length];
+        for (int j = 0; j < cols.length; j++) {
+            if ((keyVal [j] = t [cols [j]]) == null) return null;
+        } // for
+        return new KeyType (keyVal);
+    } // keyOf
+
+    /************************************************************************************
+     * Compare the values of columns c1 of tuple t with those of columns c2 of tuple u
+     * (nulls first).
+     *
+     * @param t   the first tuple
+     * @param c1  the columns of t
+     * @param u   the second tuple
+     * @param c2  the columns of u
+     * @return  negative, zero or positive as t's key is less, equal or greater
+     */
+    @SuppressWarnings("unchecked")
+    private static int compareKeys (Comparable [] t, int [] c1, Comparable [] u, int [] c2)
+    {
+        for (int j = 0; j < c1.length; j++) {
+            Comparable x = t [c1 [j]], y = u [c2 [j]];
+            int c = (x == null) ? ((y == null) ? 0 : -1) : ((y == null) ? 1 : x.compareTo (y));
+            if (c != 0) return c;
+        } // for
+        return 0;
+    } // compareKeys
+
+    /************************************************************************************
+     * Return whether any of the given columns of tuple t is null.
+     *
+     * @param t     the tuple
+     * @param cols  the columns to check
+     * @return  whether a value is null
+     */
+    private static boolean hasNull (Comparable [] t, int [] cols)
+    {
+        for (int c : cols) if (t [c] == null) return true;
+        return false;
+    } // hasNull
+
     /************************************************************************************
      * Extract the attributes specified by the column array from tuple t.
      *
@@ -838,7 +2587,8 @@ public class Table
 
     /************************************************************************************
      * Check the size of the tuple (number of elements in list) as well as the type of
-     * each value to ensure it is from the right domain. 
+     * each value to ensure it is from the right domain, and that its key values are not
+     * null.  The checks are those of the batch typeCheck, applied to one tuple.
      *
      * @param t  the tuple as a list of attribute values
      * @return  whether the tuple has the right size and values that comply
@@ -846,11 +2596,83 @@ public class Table
      */
     private boolean typeCheck (Comparable [] t)
     { 
-        //  T O   B E   I M P L E M E N T E D 
+        boolean [] ok   = new boolean [1];
+        int []     cols = match (key);
+        checkBlock (Collections.singletonList (t), 0, 1, cols, ok);
+        if (ok [0]) return true;
+
+        if (t == null || t.length != attribute.length) {
+            out.println ("typeCheck: tuple has " + (t == null ? 0 : t.length) + " values, " + name
+                         + " has " + attribute.length + " attributes");
+            return false;
+        } // if
+        for (int j = 0; j < t.length; j++) {
+            if (t [j] != null && t [j].getClass () != domain [j]) {
+                out.println ("typeCheck: " + attribute [j] + " = " + t [j] + " is not a " + domain [j].getSimpleName ());
+                return false;
+            } // if
+        } // for
+        for (int k : cols) {
+            if (t [k] == null) out.println ("typeCheck: key attribute " + attribute [k] + " is null");
+        } // for
+        return false;
+    } // typeCheck
 
-        return true;
+    /************************************************************************************
+     * Check a batch of tuples as typeCheck does, column by column: the arity first, then
+     * each column's values against its domain (exact classes, as the domains are final
+     * classes), so each loop is a tight scan over one column with the domain hoisted
+     * out of it.  Tuples with a null key value are rejected, as their keys cannot be
+     * indexed or sorted.  Large batches are checked in parallel, in blocks of tuples.
+     *
+     * @param tups  the tuples to check
+     * @return  whether each tuple passes
+     */
+    private boolean [] typeCheck (List <Comparable []> tups)
+    {
+        int        n    = tups.size ();
+        boolean [] ok   = new boolean [n];
+        int []     cols = match (key);
+        IntStream blocks = IntStream.range (0, (n + CHECK_BLOCK - 1) / CHECK_BLOCK);
+        (n >= PARALLEL_MIN ? blocks.parallel () : blocks).forEach (b -> {
+            int from = b * CHECK_BLOCK;
+            checkBlock (tups, from, Math.min (n, from + CHECK_BLOCK), cols, ok);
+        });
+        return ok;
     } // typeCheck
 
+    /************************************************************************************
+     * Check the tuples from .. to-1 of a batch, setting ok [i] to whether tuple i has
+     * the right arity, values from the domains and non-null key values.
+     *
+     * @param tups  the tuples
+     * @param from  the first tuple to check
+     * @param to    one past the last tuple to check
+     * @param cols  the positions of the key columns
+     * @param ok    the results, by position in tups
+     */
+    private void checkBlock (List <Comparable []> tups, int from, int to, int [] cols, boolean [] ok)
+    {
+        for (int i = from; i < to; i++) {
+            Comparable [] t = tups.get (i);
+            ok [i] = t != null && t.length == attribute.length;
+        } // for
+        for (int j = 0; j < domain.length; j++) {
+            Class d = domain [j];
+            for (int i = from; i < to; i++) {
+                if (ok [i]) {
+                    Comparable v = tups.get (i) [j];
+                    ok [i] = v == null || v.getClass () == d;
+                } // if
+            } // for
+        } // for
+        for (int k : cols) {
+            for (int i = from; i < to; i++) {
+                if (ok [i]) ok [i] = tups.get (i) [k] != null;
+            } // for
+        } // for
+    } // checkBlock
+
     /************************************************************************************
      * Find the classes in the "java.lang" package with given names.
      *
@@ -911,5 +2733,45 @@ public class Table
     return tuples.get(i);
     }
 
+    /************************************************************************************
+     * Return the attribute names of the table (not a copy).
+     *
+     * @return  the attribute names
+     */
+    String [] attributes ()
+    {
+        return attribute;
+    } // attributes
+
+    /************************************************************************************
+     * Return the attribute domains of the table (not a copy).
+     *
+     * @return  the attribute domains
+     */
+    Class [] domains ()
+    {
+        return domain;
+    } // domains
+
+    /************************************************************************************
+     * Return the primary key of the table (not a copy).
+     *
+     * @return  the key attributes
+     */
+    String [] keys ()
+    {
+        return key;
+    } // keys
+
+    /************************************************************************************
+     * Return a snapshot of the tuples of the table.
+     *
+     * @return  the tuples
+     */
+    List <Comparable []> rows ()
+    {
+        return new ArrayList <> (tuples);
+    } // rows
+
 } // Table class
 
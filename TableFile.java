@@ -0,0 +1,642 @@
+
+/****************************************************************************************
+ * @file  TableFile.java
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32C;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/****************************************************************************************
+ * The TableFile class defines the binary on-disk format for tables and provides
+ * streaming readers and writers for it.  A table file is a sequence of fixed-size pages:
+ *
+ *     page 0          header: magic, version, page size, tuple counts, directory
+ *                     offset and the schema (name, attributes, domains, key), with a CRC
+ *     pages 1 .. n    data pages holding the encoded tuples (see TupleCodec)
+ *     directory       per data page: number of tuples and CRC of the page
+ *
+ * Each data page starts with an 8 byte page header (page type, tuple count, end of the
+ * tuple data), tuples are packed upward from there and a slot array of 2 byte tuple
+ * offsets grows downward from the end of the page, so any tuple in a page can be
+ * located directly.  A tuple must fit in one page.  Alternatively, a data page may be a
+ * column page, holding its tuples column by column with integral columns bit-packed or
+ * run-length encoded (see ColumnCodec); tables with integral columns are written with
+ * column pages by default.
+ */
+class TableFile
+{
+    /** Magic number identifying table files ("TBL1").
+     */
+    static final int MAGIC = 0x54424C31;
+
+    /** Version of the file format.
+     */
+    static final short VERSION = 2;
+
+    /** The size of every page in bytes.
+     */
+    static final int PAGE_SIZE = 8192;
+
+    /** Page type for pages of row-encoded tuples.
+     */
+    static final byte ROW_PAGE = 1;
+
+    /** Page type for pages of column-encoded tuples.
+     */
+    static final byte COL_PAGE = 2;
+
+    /** Maximum number of tuples on a page (the count is an unsigned short).
+     */
+    static final int MAX_PAGE_TUPLES = 0xFFFF;
+
+    /** Size of the page header at the start of each data page.
+     */
+    static final int PAGE_HEADER = 8;
+
+    /** Number of pages transferred per read/write call when streaming.
+     */
+    private static final int IO_PAGES = 64;
+
+    /************************************************************************************
+     * The Header class holds the contents of the header page: the schema and the
+     * location of the data pages and page directory.
+     */
+    static class Header
+    {
+        String []     attribute;                      // attribute names
+        Class []      domain;                         // attribute domains
+        byte []       types;                          // type codes for the domains
+        String []     key;                            // primary key
+        String        name;                           // table name
+        long          firstTuple;                     // ordinal of the first tuple stored
+        long          tupleCount;                     // number of tuples stored
+        int           dataPages;                      // number of data pages
+        long          dirOffset;                      // file offset of the page directory
+
+        /********************************************************************************
+         * Construct an empty header (to be filled in by read).
+         */
+        Header () { }
+
+        /********************************************************************************
+         * Construct a header for a table with the given schema.
+         *
+         * @param _name        the name of the table
+         * @param _attribute   the attribute names
+         * @param _domain      the attribute domains
+         * @param _key         the primary key
+         * @param _firstTuple  the ordinal of the first tuple stored
+         */
+        Header (String _name, String [] _attribute, Class [] _domain, String [] _key, long _firstTuple)
+        {
+            name       = _name;
+            attribute  = _attribute;
+            domain     = _domain;
+            types      = TupleCodec.typeCodes (_domain);
+            key        = _key;
+            firstTuple = _firstTuple;
+        } // constructor
+
+        /********************************************************************************
+         * Encode this header into buf (which must be PAGE_SIZE bytes).
+         *
+         * @param buf  the buffer for page 0
+         * @throws IOException  if the schema does not fit in the header page
+         */
+        void write (ByteBuffer buf) throws IOException
+        {
+            try {
+                buf.putInt (MAGIC).putShort (VERSION).putShort ((short) 0).putInt (PAGE_SIZE);
+                buf.putLong (firstTuple).putLong (tupleCount).putInt (dataPages).putLong (dirOffset);
+                TupleCodec.writeString (buf, name);
+                TupleCodec.writeVarInt (buf, attribute.length);
+                for (int j = 0; j < attribute.length; j++) {
+                    TupleCodec.writeString (buf, attribute [j]);
+                    buf.put (types [j]);
+                } // for
+                TupleCodec.writeVarInt (buf, key.length);
+                for (String k : key) TupleCodec.writeString (buf, k);
+                buf.putInt (crc (buf, 0, buf.position ()));
+            } catch (BufferOverflowException ex) {
+                throw new IOException ("TableFile: schema for " + name + " does not fit in header page");
+            } // try
+        } // write
+
+        /********************************************************************************
+         * Decode a header from buf starting at position 0.
+         *
+         * @param buf  the buffer holding page 0
+         * @return  the decoded header
+         * @throws IOException  if the page is not a valid header
+         */
+        static Header read (ByteBuffer buf) throws IOException
+        {
+            Header h = new Header ();
+            try {
+                if (buf.getInt (0) != MAGIC)         throw new IOException ("TableFile: not a table file");
+                if (buf.getShort (4) > VERSION)      throw new IOException ("TableFile: unsupported version");
+                if (buf.getInt (8) != PAGE_SIZE)     throw new IOException ("TableFile: unsupported page size");
+                buf.position (12);
+                h.firstTuple = buf.getLong ();
+                h.tupleCount = buf.getLong ();
+                h.dataPages  = buf.getInt ();
+                h.dirOffset  = buf.getLong ();
+                h.name       = TupleCodec.readString (buf);
+                int n        = TupleCodec.readVarInt (buf);
+                h.attribute  = new String [n];
+                h.domain     = new Class [n];
+                h.types      = new byte [n];
+                for (int j = 0; j < n; j++) {
+                    h.attribute [j] = TupleCodec.readString (buf);
+                    h.types [j]     = buf.get ();
+                    h.domain [j]    = TupleCodec.typeClass (h.types [j]);
+                } // for
+                h.key = new String [TupleCodec.readVarInt (buf)];
+                for (int j = 0; j < h.key.length; j++) h.key [j] = TupleCodec.readString (buf);
+                int end = buf.position ();
+                if (buf.getInt () != crc (buf, 0, end)) throw new IOException ("TableFile: header checksum mismatch");
+            } catch (BufferUnderflowException | IllegalArgumentException ex) {
+                throw new IOException ("TableFile: corrupt header", ex);
+            } // try
+            return h;
+        } // read
+
+    } // Header class
+
+    //-----------------------------------------------------------------------------------
+    // Page and directory layout helpers (shared by the readers)
+    //-----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Return the number of tuples in the page starting at offset base of buf.
+     *
+     * @param buf   the buffer holding the page
+     * @param base  the offset of the page within buf
+     * @return  the number of tuples in the page
+     */
+    static int pageTuples (ByteBuffer buf, int base)
+    {
+        return buf.getShort (base + 2) & 0xFFFF;
+    } // pageTuples
+
+    /************************************************************************************
+     * Return the offset (relative to the start of the page) of the i-th tuple.
+     *
+     * @param buf   the buffer holding the page
+     * @param base  the offset of the page within buf
+     * @param i     the tuple number within the page
+     * @return  the offset of the tuple within the page
+     */
+    static int slot (ByteBuffer buf, int base, int i)
+    {
+        return buf.getShort (base + PAGE_SIZE - 2 * (i + 1)) & 0xFFFF;
+    } // slot
+
+    /************************************************************************************
+     * Compute the CRC-32C checksum of len bytes of buf starting at offset from.
+     *
+     * @param buf   the buffer to checksum
+     * @param from  the starting offset
+     * @param len   the number of bytes
+     * @return  the checksum as an int
+     */
+    static int crc (ByteBuffer buf, int from, int len)
+    {
+        CRC32C c = new CRC32C ();
+        c.update (buf.duplicate ().position (from).limit (from + len));
+        return (int) c.getValue ();
+    } // crc
+
+    /************************************************************************************
+     * Read the page directory: the tuple count and checksum of every data page.
+     *
+     * @param ch  the channel of the table file
+     * @param h   the header of the table file
+     * @return  an array {counts, checksums}
+     * @throws IOException  if the directory is truncated or corrupt
+     */
+    static int [][] readDirectory (FileChannel ch, Header h) throws IOException
+    {
+        ByteBuffer dir = ByteBuffer.allocate (8 * h.dataPages + 4);
+        while (dir.hasRemaining ()) {
+            if (ch.read (dir, h.dirOffset + dir.position ()) < 0) {
+                throw new IOException ("TableFile: truncated page directory for " + h.name);
+            } // if
+        } // while
+        if (dir.getInt (8 * h.dataPages) != crc (dir, 0, 8 * h.dataPages)) {
+            throw new IOException ("TableFile: page directory checksum mismatch for " + h.name);
+        } // if
+        int [] counts = new int [h.dataPages];
+        int [] crcs   = new int [h.dataPages];
+        for (int p = 0; p < h.dataPages; p++) {
+            counts [p] = dir.getInt (8 * p);
+            crcs [p]   = dir.getInt (8 * p + 4);
+        } // for
+        return new int [][] { counts, crcs };
+    } // readDirectory
+
+    /************************************************************************************
+     * Read and validate the header page of the file at the given path.
+     *
+     * @param ch  the channel of the table file
+     * @return  the header
+     * @throws IOException  if the file is not a valid table file
+     */
+    static Header readHeader (FileChannel ch) throws IOException
+    {
+        ByteBuffer page = ByteBuffer.allocate (PAGE_SIZE);
+        while (page.hasRemaining ()) {
+            if (ch.read (page, page.position ()) < 0) throw new IOException ("TableFile: truncated header");
+        } // while
+        return Header.read (page);
+    } // readHeader
+
+    /************************************************************************************
+     * Return whether any of the domains is integral (and so benefits from column pages).
+     *
+     * @param domain  the attribute domains
+     * @return  whether a domain is Long, Integer, Short or Byte
+     */
+    static boolean anyIntegral (Class [] domain)
+    {
+        for (byte t : TupleCodec.typeCodes (domain)) if (ColumnCodec.integral (t)) return true;
+        return false;
+    } // anyIntegral
+
+    /************************************************************************************
+     * Determine whether the file at the given path is a table file (as opposed to, e.g.,
+     * a file written with Java serialization by an older version).
+     *
+     * @param path  the path of the file
+     * @return  whether the file starts with the table file magic number
+     */
+    static boolean isTableFile (String path)
+    {
+        try (DataInputStream in = new DataInputStream (new FileInputStream (path))) {
+            return in.readInt () == MAGIC;
+        } catch (IOException ex) {
+            return false;
+        } // try
+    } // isTableFile
+
+    //-----------------------------------------------------------------------------------
+    // Streaming writer
+    //-----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * The Writer class streams tuples into a new table file.  The file is written to a
+     * temporary name and atomically renamed into place on close, so readers never see
+     * a partially written file.
+     */
+    static class Writer
+           implements Closeable
+    {
+        private final Path        path;               // final path of the file
+        private final Path        tmp;                // path written until close
+        private final FileChannel ch;                 // channel for the temporary file
+        private final Header      h;                  // header (written on close)
+        private final ByteBuffer  page;               // the page being filled
+        private final ByteBuffer  scratch;            // buffer for encoding one tuple
+        private final ByteBuffer  io;                 // batch of full pages to write
+        private int []            counts = new int [64];   // directory: tuples per page
+        private int []            crcs   = new int [64];   // directory: page checksums
+        private int               nTuples;            // tuples in the current page
+        private long              filePos = PAGE_SIZE;     // where the next batch goes
+        private final boolean     columnar;           // whether to write column pages
+        private final List <Comparable []> batch = new ArrayList <> ();  // tuples for the next column page
+        private int               target = 64;        // batch size at which to try a column page
+
+        /********************************************************************************
+         * Create a writer for a table file with the given schema.
+         *
+         * @param _path       the path of the file to write
+         * @param name        the name of the table
+         * @param attribute   the attribute names
+         * @param domain      the attribute domains
+         * @param key         the primary key
+         * @param firstTuple  the ordinal of the first tuple to be written (0 for a whole table)
+         * @throws IOException  if the file cannot be created
+         */
+        Writer (String _path, String name, String [] attribute, Class [] domain, String [] key,
+                long firstTuple) throws IOException
+        {
+            this (_path, name, attribute, domain, key, firstTuple, anyIntegral (domain));
+        } // constructor
+
+        /********************************************************************************
+         * Create a writer for a table file with the given schema and page format.
+         *
+         * @param _path       the path of the file to write
+         * @param name        the name of the table
+         * @param attribute   the attribute names
+         * @param domain      the attribute domains
+         * @param key         the primary key
+         * @param firstTuple  the ordinal of the first tuple to be written (0 for a whole table)
+         * @param _columnar   whether to write column pages rather than row pages
+         * @throws IOException  if the file cannot be created
+         */
+        Writer (String _path, String name, String [] attribute, Class [] domain, String [] key,
+                long firstTuple, boolean _columnar) throws IOException
+        {
+            columnar     = _columnar;
+            path         = Paths.get (_path);
+            tmp          = Paths.get (_path + ".tmp");
+            h            = new Header (name, attribute, domain, key, firstTuple);
+            if (path.getParent () != null) Files.createDirectories (path.getParent ());
+            ch      = FileChannel.open (tmp, CREATE, WRITE, TRUNCATE_EXISTING);
+            page    = ByteBuffer.allocate (PAGE_SIZE);
+            scratch = ByteBuffer.allocate (PAGE_SIZE);
+            io      = ByteBuffer.allocateDirect (IO_PAGES * PAGE_SIZE);
+            startPage ();
+        } // constructor
+
+        /********************************************************************************
+         * Append tuple t to the file.
+         *
+         * @param t  the tuple to write
+         * @throws IOException  if the tuple is too large for a page or the write fails
+         */
+        void write (Comparable [] t) throws IOException
+        {
+            if (columnar) {
+                batch.add (t);
+                h.tupleCount++;
+                if (batch.size () >= target) flushColumns (false);
+                return;
+            } // if
+            scratch.clear ();
+            try {
+                TupleCodec.write (scratch, t, h.types);
+            } catch (BufferOverflowException ex) {
+                throw new IOException ("TableFile: tuple too large for a page in " + h.name);
+            } // try
+            int len = scratch.position ();
+            if (page.position () + len + 2 * (nTuples + 1) > PAGE_SIZE) {
+                if (nTuples == 0) throw new IOException ("TableFile: tuple too large for a page in " + h.name);
+                finishPage ();
+            } // if
+            page.putShort (PAGE_SIZE - 2 * (nTuples + 1), (short) page.position ());
+            scratch.flip ();
+            page.put (scratch);
+            nTuples++;
+            h.tupleCount++;
+        } // write
+
+        /********************************************************************************
+         * Flush the remaining pages, write the page directory and header, and move the
+         * file into place.
+         *
+         * @throws IOException  if writing fails
+         */
+        public void close () throws IOException
+        {
+            try {
+                if (columnar) flushColumns (true);
+                if (nTuples > 0) finishPage ();
+                flushIO ();
+                h.dirOffset = filePos;
+                ByteBuffer dir = ByteBuffer.allocate (8 * h.dataPages + 4);
+                for (int p = 0; p < h.dataPages; p++) dir.putInt (counts [p]).putInt (crcs [p]);
+                dir.putInt (crc (dir, 0, 8 * h.dataPages));
+                dir.flip ();
+                writeFully (dir, filePos);
+                ByteBuffer head = ByteBuffer.allocate (PAGE_SIZE);
+                h.write (head);
+                head.clear ();
+                writeFully (head, 0);
+                ch.force (true);
+            } finally {
+                ch.close ();
+            } // try
+            Files.move (tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } // close
+
+        /********************************************************************************
+         * Write the batched tuples as column pages.  A page is only completed when the
+         * batch no longer fits in it (the largest fitting prefix is written) or when all
+         * is set; otherwise the batch is left to grow, doubling the size at which the
+         * next attempt is made.
+         *
+         * @param all  whether to write every batched tuple (at close)
+         * @throws IOException  if a tuple is too large for a page or writing fails
+         */
+        private void flushColumns (boolean all) throws IOException
+        {
+            while (! batch.isEmpty ()) {
+                int n = Math.min (batch.size (), MAX_PAGE_TUPLES);
+                if (n == batch.size () && encodeColumns (n)) {
+                    if (! all && n < MAX_PAGE_TUPLES && page.position () < PAGE_SIZE - PAGE_SIZE / 8) {
+                        target = Math.min (MAX_PAGE_TUPLES, 2 * n);
+                        return;
+                    } // if
+                } else if (! encodeColumns (n)) {
+                    if (! encodeColumns (1)) throw new IOException ("TableFile: tuple too large for a page in " + h.name);
+                    int lo = 1, hi = n - 1;                              // largest prefix that fits
+                    while (lo < hi) {
+                        int mid = (lo + hi + 1) >>> 1;
+                        if (encodeColumns (mid)) lo = mid; else hi = mid - 1;
+                    } // while
+                    encodeColumns (n = lo);
+                    target = Math.max (16, n);
+                } // if
+                Arrays.fill (page.array (), page.position (), PAGE_SIZE, (byte) 0);
+                nTuples = n;
+                finishPage ();
+                batch.subList (0, n).clear ();
+                if (! all && batch.size () < target) return;
+            } // while
+        } // flushColumns
+
+        /********************************************************************************
+         * Encode the first n batched tuples as a column page in the page buffer.
+         *
+         * @param n  the number of tuples
+         * @return  whether they fit in a page
+         */
+        private boolean encodeColumns (int n)
+        {
+            page.clear ();
+            page.put (COL_PAGE).put ((byte) 0).putShort ((short) 0).putInt (0);
+            try {
+                ColumnCodec.encode (page, batch, 0, n, h.types);
+                return true;
+            } catch (BufferOverflowException ex) {
+                return false;
+            } // try
+        } // encodeColumns
+
+        /********************************************************************************
+         * Reset the page buffer for a new data page.
+         */
+        private void startPage ()
+        {
+            page.clear ();
+            page.put (ROW_PAGE).put ((byte) 0).putShort ((short) 0).putInt (0);
+            nTuples = 0;
+        } // startPage
+
+        /********************************************************************************
+         * Complete the current page, record it in the directory and queue it for writing.
+         *
+         * @throws IOException  if writing fails
+         */
+        private void finishPage () throws IOException
+        {
+            page.putShort (2, (short) nTuples).putInt (4, page.position ());
+            if (h.dataPages == counts.length) {
+                counts = Arrays.copyOf (counts, 2 * counts.length);
+                crcs   = Arrays.copyOf (crcs, 2 * crcs.length);
+            } // if
+            counts [h.dataPages] = nTuples;
+            crcs [h.dataPages]   = crc (page, 0, PAGE_SIZE);
+            h.dataPages++;
+            page.clear ();
+            io.put (page);
+            if (! io.hasRemaining ()) flushIO ();
+            startPage ();
+        } // finishPage
+
+        /********************************************************************************
+         * Write out the batch of queued pages.
+         *
+         * @throws IOException  if writing fails
+         */
+        private void flushIO () throws IOException
+        {
+            io.flip ();
+            int len = io.remaining ();
+            writeFully (io, filePos);
+            filePos += len;
+            io.clear ();
+        } // flushIO
+
+        /********************************************************************************
+         * Write all of buf at the given file position.
+         *
+         * @param buf  the bytes to write
+         * @param pos  the file position
+         * @throws IOException  if writing fails
+         */
+        private void writeFully (ByteBuffer buf, long pos) throws IOException
+        {
+            while (buf.hasRemaining ()) pos += ch.write (buf, pos);
+        } // writeFully
+
+    } // Writer class
+
+    //-----------------------------------------------------------------------------------
+    // Streaming reader
+    //-----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * The Reader class streams the tuples of a table file in order, reading many pages
+     * per call and verifying the checksum of each page.
+     */
+    static class Reader
+           implements Closeable, Iterator <Comparable []>
+    {
+        final Header              header;             // header of the file
+        private final FileChannel ch;                 // channel for the file
+        private final int []      counts;             // directory: tuples per page
+        private final int []      crcs;               // directory: page checksums
+        private final ByteBuffer  io;                 // batch of pages read
+        private int               page  = -1;         // current data page (0-based)
+        private int               base;               // offset of the current page in io
+        private int               next;               // next tuple within the page
+        private long              read;               // number of tuples returned
+        private Comparable [][]   decoded;            // tuples of the current column page
+
+        /********************************************************************************
+         * Open a table file for streaming.
+         *
+         * @param path  the path of the file
+         * @throws IOException  if the file is missing or not a valid table file
+         */
+        Reader (String path) throws IOException
+        {
+            ch = FileChannel.open (Paths.get (path), READ);
+            try {
+                header = readHeader (ch);
+                int [][] dir = readDirectory (ch, header);
+                counts = dir [0];
+                crcs   = dir [1];
+            } catch (IOException ex) {
+                ch.close ();
+                throw ex;
+            } // try
+            io = ByteBuffer.allocateDirect (IO_PAGES * PAGE_SIZE);
+            io.limit (0);
+        } // constructor
+
+        /********************************************************************************
+         * Return whether there are more tuples to read.
+         */
+        public boolean hasNext ()
+        {
+            return read < header.tupleCount;
+        } // hasNext
+
+        /********************************************************************************
+         * Return the next tuple.
+         *
+         * @throws UncheckedIOException  if a read fails or a page is corrupt
+         */
+        public Comparable [] next ()
+        {
+            if (! hasNext ()) throw new NoSuchElementException ();
+            try {
+                while (page < 0 || next == counts [page]) nextPage ();
+            } catch (IOException ex) {
+                throw new UncheckedIOException (ex);
+            } // try
+            read++;
+            if (decoded != null) return decoded [next++];
+            io.position (base + slot (io, base, next++));
+            return TupleCodec.read (io, header.types);
+        } // next
+
+        /********************************************************************************
+         * Advance to the next data page, reading the next batch of pages when needed.
+         *
+         * @throws IOException  if a read fails or the page is corrupt
+         */
+        private void nextPage () throws IOException
+        {
+            page++;
+            next = 0;
+            base += PAGE_SIZE;
+            if (base >= io.limit ()) {
+                int pages = Math.min (IO_PAGES, header.dataPages - page);
+                io.clear ().limit (pages * PAGE_SIZE);
+                long pos = (long) (page + 1) * PAGE_SIZE;
+                while (io.hasRemaining ()) {
+                    if (ch.read (io, pos + io.position ()) < 0) {
+                        throw new IOException ("TableFile: truncated data in " + header.name);
+                    } // if
+                } // while
+                base = 0;
+            } // if
+            if (crc (io, base, PAGE_SIZE) != crcs [page] || pageTuples (io, base) != counts [page]) {
+                throw new IOException ("TableFile: checksum mismatch on page " + (page + 1) + " of " + header.name);
+            } // if
+            decoded = (io.get (base) == COL_PAGE) ? ColumnCodec.decode (io, base, counts [page], header.types, null)
+                                                  : null;
+        } // nextPage
+
+        /********************************************************************************
+         * Close the file.
+         */
+        public void close () throws IOException
+        {
+            ch.close ();
+        } // close
+
+    } // Reader class
+
+} // TableFile class
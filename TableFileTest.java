@@ -0,0 +1,178 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.junit.Test;
+
+public class TableFileTest {
+
+    /**
+     *
+     * Writes a table file with the given number of tuples and returns its path.
+     * Every fourth tuple has a null in its last column.
+     *
+     * @param n the number of tuples to write
+     * @return the path of the file
+     *
+     */
+
+    public String writeFile(int n) throws Exception {
+
+	String path = "store" + File.separator + "tableFileTest.dbf";
+	TableFile.Writer w = new TableFile.Writer(path, "tableFileTest",
+		new String [] { "id", "name", "gpa", "grade" },
+		new Class [] { Integer.class, String.class, Double.class, Character.class },
+		new String [] { "id" }, 0);
+	for (int i = 0; i < n; i++) {
+	    w.write(new Comparable [] { i, "name" + i, i / 4.0, (i % 4 == 0) ? null : 'A' });
+	}
+	w.close();
+
+	return path;
+    }
+
+    /**
+     *
+     * Tests that the schema and every tuple survive a round trip
+     * through a file spanning many pages.
+     *
+     */
+
+    @Test
+    public void testRoundTrip() throws Exception {
+
+	String path = writeFile(5000);
+	try (TableFile.Reader r = new TableFile.Reader(path)) {
+	    assertEquals("tableFileTest", r.header.name);
+	    assertEquals(5000, r.header.tupleCount);
+	    assertTrue(r.header.dataPages > 1);
+	    assertEquals(String.class, r.header.domain[1]);
+	    int i = 0;
+	    while (r.hasNext()) {
+		Comparable [] t = r.next();
+		assertEquals(i, t[0]);
+		assertEquals("name" + i, t[1]);
+		assertEquals(i / 4.0, t[2]);
+		assertEquals((i % 4 == 0) ? null : 'A', t[3]);
+		i++;
+	    }
+	    assertEquals(5000, i);
+	}
+    }
+
+    /**
+     *
+     * Tests that Table.save and Table.load preserve the tuples and rebuild the index.
+     *
+     */
+
+    @Test
+    public void testSaveLoad() {
+
+	Table movie = new TableTester().movieTable();
+	movie.save();
+	Table loaded = Table.load("movie");
+
+	assertEquals(4, loaded.tuplesLength());
+	assertEquals("Rocky", loaded.select(new KeyType("Rocky", 1985)).getTuple(0)[0]);
+    }
+
+    /**
+     *
+     * Tests that a memory-mapped table decodes tuples on access
+     * and answers keyed selects from the mapped pages, saving its
+     * key filter and releasing its file when unmapped.
+     *
+     */
+
+    @Test
+    public void testMap() throws Exception {
+
+	writeFile(5000);
+	File filter = new File("store" + File.separator + "tableFileTest.blm");
+	filter.delete();
+	File fds = new File("/proc/self/fd");
+	int before = fds.isDirectory() ? fds.list().length : 0;
+	Table mapped = Table.map("tableFileTest");
+
+	assertEquals(5000, mapped.tuplesLength());
+	assertEquals("name4321", mapped.getTuple(4321)[1]);
+	assertEquals(4321, mapped.select(new KeyType(4321)).getTuple(0)[0]);
+	assertTrue(filter.exists());
+	assertNull(mapped.select(new KeyType(-1)).getTuple(0)[0]);
+	assertEquals(11, mapped.select(new KeyType(10), new KeyType(20)).tuplesLength());
+	for (int k = 0; k < 5000; k += 97) assertEquals(k, mapped.select(new KeyType(k)).getTuple(0)[0]);
+	assertEquals(4999, mapped.select(new KeyType(4990), new KeyType(6000)).getTuple(9)[0]);
+	assertEquals(1250, mapped.select(t -> t[3] == null).tuplesLength());
+	assertFalse(mapped.insert(new Comparable [] { 5000, "name5000", 0.0, 'B' }));
+	mapped.unmap();
+	if (fds.isDirectory()) assertEquals(before, fds.list().length);
+    }
+
+    /**
+     *
+     * Tests that bit-packing round-trips values of every width.
+     *
+     */
+
+    @Test
+    public void testPack() {
+
+	java.util.Random rand = new java.util.Random(7);
+	for (int w = 0; w < 64; w++) {
+	    long [] vals = new long [1000];
+	    for (int i = 0; i < vals.length; i++) vals[i] = (w == 0) ? 0 : rand.nextLong() >>> (64 - w);
+	    java.nio.ByteBuffer buf = java.nio.ByteBuffer.allocate(8 * vals.length + 8);
+	    ColumnCodec.pack(buf, vals, vals.length, w);
+	    assertEquals((vals.length * w + 7) / 8, buf.position());
+	    buf.flip();
+	    long [] back = new long [vals.length];
+	    ColumnCodec.unpack(buf, back, back.length, w);
+	    assertArrayEquals(vals, back);
+	}
+    }
+
+    /**
+     *
+     * Tests that column pages round-trip integral columns encoded with
+     * run-length, frame-of-reference and plain encodings (including
+     * nulls and full-range longs) and are smaller than row pages.
+     *
+     */
+
+    @Test
+    public void testColumnPages() throws Exception {
+
+	String [] attrs = { "year", "length", "id", "big", "title" };
+	Class [] doms = { Short.class, Integer.class, Long.class, Long.class, String.class };
+	String rowPath = "store" + File.separator + "columnTest.row";
+	String colPath = "store" + File.separator + "columnTest.dbf";
+	TableFile.Writer rw = new TableFile.Writer(rowPath, "columnTest", attrs, doms, new String [] { "id" }, 0, false);
+	TableFile.Writer cw = new TableFile.Writer(colPath, "columnTest", attrs, doms, new String [] { "id" }, 0, true);
+	for (int i = 0; i < 20000; i++) {
+	    Comparable [] t = { (short) (1950 + i / 1000), (i % 7 == 0) ? null : 90 + i % 60, 1000000L + i,
+				(i % 2 == 0) ? Long.MIN_VALUE : Long.MAX_VALUE, "t" + i };
+	    rw.write(t);
+	    cw.write(t);
+	}
+	rw.close();
+	cw.close();
+	assertTrue(new File(colPath).length() < new File(rowPath).length() * 3 / 4);
+
+	try (TableFile.Reader r = new TableFile.Reader(colPath)) {
+	    for (int i = 0; r.hasNext(); i++) {
+		Comparable [] t = r.next();
+		assertEquals((short) (1950 + i / 1000), t[0]);
+		assertEquals((i % 7 == 0) ? null : 90 + i % 60, t[1]);
+		assertEquals(1000000L + i, t[2]);
+		assertEquals((i % 2 == 0) ? Long.MIN_VALUE : Long.MAX_VALUE, t[3]);
+		assertEquals("t" + i, t[4]);
+	    }
+	}
+
+	Table mapped = Table.map("columnTest");
+	assertEquals("t12345", mapped.getTuple(12345)[4]);
+	assertEquals("t777", mapped.select(new KeyType(1000777L)).getTuple(0)[4]);
+	new File(rowPath).delete();
+    }
+}
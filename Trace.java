@@ -0,0 +1,428 @@
+
+/*****************************************************************************************
+ * @file  Trace.java
+ */
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/*****************************************************************************************
+ * The Trace class records structured events for the relational algebra operators (RA)
+ * and the data definitions (DDL) of tables, replacing printing them to the console.
+ * An operator event carries the table, the operator and its arguments, the number of
+ * rows of the result and the time the operator took.
+ *
+ * Tracing is off by default and can be enabled at runtime with setLevel.  When the level
+ * is off, an operator only reads the level (start returns 0 without reading the clock
+ * and op returns its result), so the disabled path does no allocation and no I/O.  When
+ * enabled, events are filled into a per-thread event and handed to the sink, and the
+ * arguments are only formatted by the sink.  The default sink is an asynchronous ring
+ * buffer that copies events into preallocated slots and formats them to System.out on a
+ * background thread; when the ring is full, events are dropped (and counted) rather
+ * than blocking the operator.
+ */
+public final class Trace
+{
+    /*************************************************************************************
+     * The levels of tracing, from none to most detailed.  Operator and DDL events are
+     * recorded at INFO.
+     */
+    public enum Level { OFF, ERROR, INFO, DEBUG }
+
+    /*************************************************************************************
+     * The Sink interface is implemented by the consumers of events.  The event passed to
+     * write is reused after write returns, so sinks must copy what they keep.
+     */
+    public interface Sink
+    {
+        void write (Event e);
+    } // Sink
+
+    /*************************************************************************************
+     * The Event class holds one event: its level and kind ("RA" or "DDL"), the table and
+     * operator, up to three arguments, the number of result rows (-1 for a failed
+     * operator) and the elapsed time in nanoseconds.
+     */
+    public static final class Event
+    {
+        public Level  level;
+        public String kind;
+        public String table;
+        public String op;
+        public Object a, b, c;
+        public int    args;
+        public long   rows;
+        public long   nanos;
+
+        /*********************************************************************************
+         * Copy the fields of another event into this one.
+         * @param e  the event to copy
+         */
+        void copy (Event e)
+        {
+            level = e.level; kind = e.kind; table = e.table; op = e.op;
+            a = e.a; b = e.b; c = e.c; args = e.args; rows = e.rows; nanos = e.nanos;
+        } // copy
+
+        /*********************************************************************************
+         * Format the event as the console line the operator used to print, followed by
+         * its row count and time, e.g., "RA> movie.select (...) -> 1 rows in 0.012 ms".
+         */
+        public String toString ()
+        {
+            StringBuilder sb = new StringBuilder (kind).append ("> ");
+            if (kind.equals ("DDL")) {
+                sb.append (op).append (' ').append (table);
+                if (args > 0) sb.append (" (").append (format (a)).append (")");
+                return sb.toString ();
+            } // if
+            sb.append (table).append ('.').append (op).append (" (");
+            if (args > 0) sb.append (format (a));
+            if (args > 1) sb.append (", ").append (format (b));
+            if (args > 2) sb.append (", ").append (format (c));
+            sb.append (")");
+            if (rows < 0) sb.append (" -> failed");
+            else          sb.append (" -> ").append (rows).append (" rows");
+            return sb.append (String.format (" in %.3f ms", nanos / 1E6)).toString ();
+        } // toString
+
+    } // Event class
+
+    /** The current level (as an ordinal, for a cheap check).
+     */
+    private static volatile int level = Level.OFF.ordinal ();
+
+    /** The number of slots of the default asynchronous sink.
+     */
+    private static final int RING_SIZE = 8192;
+
+    /** The sink receiving the events (the default sink is created on first use).
+     */
+    private static volatile Sink sink;
+
+    /** The event filled by each thread.
+     */
+    private static final ThreadLocal <Event> event = ThreadLocal.withInitial (Event::new);
+
+    /*************************************************************************************
+     * This class is not instantiated.
+     */
+    private Trace () {}
+
+    /*************************************************************************************
+     * Set the level of tracing.
+     * @param _level  the new level (OFF disables tracing)
+     */
+    public static void setLevel (Level _level)
+    {
+        level = _level.ordinal ();
+    } // setLevel
+
+    /*************************************************************************************
+     * Return the level of tracing.
+     * @return  the level
+     */
+    public static Level level ()
+    {
+        return Level.values () [level];
+    } // level
+
+    /*************************************************************************************
+     * Return whether events of the given level are recorded.
+     * @param l  the level
+     * @return  whether the level is enabled
+     */
+    public static boolean enabled (Level l)
+    {
+        return l.ordinal () <= level && l != Level.OFF;
+    } // enabled
+
+    /*************************************************************************************
+     * Replace the sink, flushing the previous one and, if it is asynchronous, stopping
+     * its background thread.
+     * @param _sink  the new sink
+     */
+    public static void setSink (Sink _sink)
+    {
+        Sink old;
+        synchronized (Trace.class) {
+            flush ();
+            old  = sink;
+            sink = _sink;
+        } // synchronized
+        if (old instanceof Ring && old != _sink) ((Ring) old).close ();
+    } // setSink
+
+    /*************************************************************************************
+     * Return a synchronous sink printing each event on a line of the given stream.
+     * @param ps  the stream
+     * @return  the sink
+     */
+    public static Sink console (PrintStream ps)
+    {
+        return e -> ps.println (e);
+    } // console
+
+    /*************************************************************************************
+     * Return an asynchronous sink: events are copied into a ring buffer with the given
+     * number of slots and written to the target sink by a background thread.  Events
+     * arriving while the ring is full are dropped.
+     * @param capacity  the number of slots (rounded up to a power of 2)
+     * @param target    the sink the events are written to
+     * @return  the sink
+     */
+    public static Sink async (int capacity, Sink target)
+    {
+        return new Ring (capacity, target);
+    } // async
+
+    /*************************************************************************************
+     * Wait until an asynchronous sink has written every event recorded so far.
+     */
+    public static void flush ()
+    {
+        Sink s = sink;
+        if (s instanceof Ring) ((Ring) s).flush ();
+    } // flush
+
+    /*************************************************************************************
+     * Return the number of events dropped because the ring buffer was full.
+     * @return  the number of dropped events
+     */
+    public static long dropped ()
+    {
+        Sink s = sink;
+        return (s instanceof Ring) ? ((Ring) s).dropped.get () : 0;
+    } // dropped
+
+    /*************************************************************************************
+     * Start timing an operator.
+     * @return  the start time, or 0 if operator events are not recorded
+     */
+    public static long start ()
+    {
+        return (level >= Level.INFO.ordinal ()) ? System.nanoTime () : 0;
+    } // start
+
+    /*************************************************************************************
+     * Record the event of an operator on a table and return its result.
+     * @param t0      the start time (from start)
+     * @param table   the table the operator was applied to
+     * @param op      the operator
+     * @param result  the result of the operator (null if it failed)
+     * @return  the result
+     */
+    public static Table op (long t0, Table table, String op, Table result)
+    {
+        if (level >= Level.INFO.ordinal ()) record (t0, table, op, result, 0, null, null, null);
+        return result;
+    } // op
+
+    /*************************************************************************************
+     * Record the event of an operator with one argument and return its result.
+     * @param t0      the start time (from start)
+     * @param table   the table the operator was applied to
+     * @param op      the operator
+     * @param result  the result of the operator (null if it failed)
+     * @param a       the argument
+     * @return  the result
+     */
+    public static Table op (long t0, Table table, String op, Table result, Object a)
+    {
+        if (level >= Level.INFO.ordinal ()) record (t0, table, op, result, 1, a, null, null);
+        return result;
+    } // op
+
+    /*************************************************************************************
+     * Record the event of an operator with two arguments and return its result.
+     * @param t0      the start time (from start)
+     * @param table   the table the operator was applied to
+     * @param op      the operator
+     * @param result  the result of the operator (null if it failed)
+     * @param a       the first argument
+     * @param b       the second argument
+     * @return  the result
+     */
+    public static Table op (long t0, Table table, String op, Table result, Object a, Object b)
+    {
+        if (level >= Level.INFO.ordinal ()) record (t0, table, op, result, 2, a, b, null);
+        return result;
+    } // op
+
+    /*************************************************************************************
+     * Record the event of an operator with three arguments and return its result.
+     * @param t0      the start time (from start)
+     * @param table   the table the operator was applied to
+     * @param op      the operator
+     * @param result  the result of the operator (null if it failed)
+     * @param a       the first argument
+     * @param b       the second argument
+     * @param c       the third argument
+     * @return  the result
+     */
+    public static Table op (long t0, Table table, String op, Table result, Object a, Object b, Object c)
+    {
+        if (level >= Level.INFO.ordinal ()) record (t0, table, op, result, 3, a, b, c);
+        return result;
+    } // op
+
+    /*************************************************************************************
+     * Record a data definition event, e.g., ddl ("create table", "movie", "(title year)").
+     * @param op      the definition
+     * @param name    the name of the object defined
+     * @param detail  the details of the definition (null if none)
+     */
+    public static void ddl (String op, String name, Object detail)
+    {
+        if (level < Level.INFO.ordinal ()) return;
+        Event e = event.get ();
+        e.level = Level.INFO; e.kind = "DDL"; e.table = name; e.op = op;
+        e.a = detail; e.b = e.c = null; e.args = (detail == null) ? 0 : 1;
+        e.rows = 0; e.nanos = 0;
+        sink ().write (e);
+    } // ddl
+
+    //-----------------------------------------------------------------------------------
+    // Private methods
+    //-----------------------------------------------------------------------------------
+
+    /*************************************************************************************
+     * Fill the thread's event for an operator and write it to the sink.
+     */
+    private static void record (long t0, Table table, String op, Table result, int args,
+                                Object a, Object b, Object c)
+    {
+        long  t1 = System.nanoTime ();
+        Event e  = event.get ();
+        e.level = Level.INFO; e.kind = "RA"; e.table = table.getName (); e.op = op;
+        e.a = a; e.b = b; e.c = c; e.args = args;
+        e.rows  = (result == null) ? -1 : result.tuplesLength ();
+        e.nanos = (t0 == 0) ? 0 : t1 - t0;
+        sink ().write (e);
+    } // record
+
+    /*************************************************************************************
+     * Return the sink, creating the default asynchronous console sink if none was set.
+     */
+    private static Sink sink ()
+    {
+        Sink s = sink;
+        if (s == null) {
+            synchronized (Trace.class) {
+                if (sink == null) sink = async (RING_SIZE, console (System.out));
+                s = sink;
+            } // synchronized
+        } // if
+        return s;
+    } // sink
+
+    /*************************************************************************************
+     * Format an argument: tables by name, arrays by their elements.
+     */
+    private static String format (Object x)
+    {
+        if (x instanceof Table)        return ((Table) x).getName ();
+        if (x instanceof Object [])    return Arrays.toString ((Object []) x);
+        return String.valueOf (x);
+    } // format
+
+    /*************************************************************************************
+     * The Ring class is the asynchronous sink.  Writers claim a slot by advancing the
+     * head sequence, copy their event into it and publish it by storing its sequence
+     * number; the background thread writes the published slots in order and advances
+     * the tail.
+     */
+    private static final class Ring
+            implements Sink, Runnable
+    {
+        private final Event []        slots;
+        private final AtomicLongArray published;
+        private final int             mask;
+        private final Sink            target;
+        private final AtomicLong      head    = new AtomicLong ();
+        private final AtomicLong      dropped = new AtomicLong ();
+        private final Thread          thread;
+        private volatile long         tail;
+        private volatile boolean      stopped;
+
+        Ring (int capacity, Sink _target)
+        {
+            int n = Integer.highestOneBit (Math.max (2, capacity - 1)) << 1;
+            slots     = new Event [n];
+            published = new AtomicLongArray (n);
+            mask      = n - 1;
+            target    = _target;
+            for (int i = 0; i < n; i++) {
+                slots [i] = new Event ();
+                published.set (i, -1);
+            } // for
+            thread = new Thread (this, "trace-sink");
+            thread.setDaemon (true);
+            thread.start ();
+        } // constructor
+
+        /*********************************************************************************
+         * Copy the event into a free slot, or drop it if the ring is full.
+         */
+        public void write (Event e)
+        {
+            long seq;
+            do {
+                seq = head.get ();
+                if (seq - tail >= slots.length) {
+                    dropped.incrementAndGet ();
+                    return;
+                } // if
+            } while (! head.compareAndSet (seq, seq + 1));
+            int i = (int) (seq & mask);
+            slots [i].copy (e);
+            published.set (i, seq);                                   // publish the slot
+        } // write
+
+        /*********************************************************************************
+         * Write the published events to the target in order, until the ring is closed
+         * and drained.
+         */
+        public void run ()
+        {
+            for (long seq = 0; ; ) {
+                int i = (int) (seq & mask);
+                if (published.get (i) != seq) {
+                    if (stopped) return;
+                    LockSupport.parkNanos (200_000);
+                    continue;
+                } // if
+                try {
+                    target.write (slots [i]);
+                } catch (RuntimeException ex) {
+                    // a failing sink must not stop the tracing thread
+                } // try
+                slots [i].a = slots [i].b = slots [i].c = null;
+                tail = ++seq;
+            } // for
+        } // run
+
+        /*********************************************************************************
+         * Wait until the events claimed so far have been written.
+         */
+        void flush ()
+        {
+            long until = head.get ();
+            while (tail < until && thread.isAlive ()) LockSupport.parkNanos (100_000);
+        } // flush
+
+        /*********************************************************************************
+         * Stop the background thread once the events published so far are written.
+         */
+        void close ()
+        {
+            stopped = true;
+            LockSupport.unpark (thread);
+        } // close
+
+    } // Ring class
+
+} // Trace class
@@ -0,0 +1,113 @@
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class TraceTest {
+
+    /**
+     *
+     * Tests that operators record one event each, with their row counts,
+     * only while tracing is enabled.
+     *
+     */
+
+    @Test
+    public void testOperatorEvents() {
+
+	List<String> lines = new ArrayList<>();
+	Trace.setSink(e -> lines.add(e.toString()));
+	try {
+	    Table student = new Table("traceStudent", "id name", "Integer String", "id");
+	    for (int i = 0; i < 10; i++) student.insert(new Comparable [] { i, "name" + i });
+	    student.select(new KeyType(3));
+	    assertTrue(lines.isEmpty());
+
+	    Trace.setLevel(Trace.Level.INFO);
+	    assertTrue(Trace.enabled(Trace.Level.ERROR));
+	    assertFalse(Trace.enabled(Trace.Level.DEBUG));
+	    new Table("traceCourse", "crsCode title", "String String", "crsCode");
+	    student.select(tup -> (Integer) tup[0] < 4);
+	    student.project("name");
+	    assertNull(student.project("rating"));
+	    assertEquals(4, lines.size());
+	    assertEquals("DDL> create table traceCourse (crsCode title)", lines.get(0));
+	    assertTrue(lines.get(1), lines.get(1).startsWith("RA> traceStudent.select ("));
+	    assertTrue(lines.get(1), lines.get(1).contains(" -> 4 rows in "));
+	    assertTrue(lines.get(2), lines.get(2).startsWith("RA> traceStudent.project (name) -> 10 rows"));
+	    assertTrue(lines.get(3), lines.get(3).contains("project (rating) -> failed"));
+
+	    Trace.setLevel(Trace.Level.OFF);
+	    assertEquals(0, Trace.start());
+	    student.project("name");
+	    assertEquals(4, lines.size());
+	} finally {
+	    Trace.setLevel(Trace.Level.OFF);
+	    Trace.setSink(Trace.console(System.out));
+	}
+    }
+
+    /**
+     *
+     * Tests that the asynchronous sink delivers events in order and drops
+     * events, rather than blocking, while its ring is full.
+     *
+     */
+
+    @Test
+    public void testAsyncSink() throws InterruptedException {
+
+	List<String> ops = Collections.synchronizedList(new ArrayList<>());
+	CountDownLatch release = new CountDownLatch(1);
+	Trace.setSink(Trace.async(4, e -> {
+	    try {
+		release.await();
+	    } catch (InterruptedException ex) {
+		throw new RuntimeException(ex);
+	    }
+	    ops.add(e.table);
+	}));
+	Trace.setLevel(Trace.Level.INFO);
+	try {
+	    for (int i = 0; i < 10; i++) Trace.ddl("create table", "t" + i, null);
+	    assertTrue(Trace.dropped() >= 5);
+	    release.countDown();
+	    Trace.flush();
+	    assertEquals(10 - Trace.dropped(), ops.size());
+	    assertEquals("t0", ops.get(0));
+	    for (int i = 1; i < ops.size(); i++) {
+		assertTrue(Integer.parseInt(ops.get(i).substring(1)) > Integer.parseInt(ops.get(i - 1).substring(1)));
+	    }
+	} finally {
+	    Trace.setLevel(Trace.Level.OFF);
+	    Trace.setSink(Trace.console(System.out));
+	}
+    }
+
+    /**
+     *
+     * Tests that replacing an asynchronous sink stops its background
+     * thread.
+     *
+     */
+
+    @Test
+    public void testAsyncSinkStops() throws InterruptedException {
+
+	for (int i = 0; i < 20; i++) Trace.setSink(Trace.async(4, e -> {}));
+	Trace.setSink(Trace.console(System.out));
+	long deadline = System.currentTimeMillis() + 5000;
+	while (sinkThreads() > 0 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+	assertEquals(0, sinkThreads());
+    }
+
+    private static int sinkThreads() {
+	int n = 0;
+	for (Thread t : Thread.getAllStackTraces().keySet()) {
+	    if (t.getName().equals("trace-sink") && t.isAlive()) n++;
+	}
+	return n;
+    }
+}
@@ -0,0 +1,342 @@
+
+/****************************************************************************************
+ * @file  TupleCodec.java
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/****************************************************************************************
+ * The TupleCodec class provides the compact binary encodings for tuples used by the
+ * on-disk storage structures.  A tuple is encoded as a null bitmap followed by each
+ * non-null field in its typed encoding, which is selected from the column's domain:
+ * fixed width for the numeric types and Character, a varint length plus UTF-8 bytes
+ * for String.  Values are coerced to their column's domain (e.g., a Double stored in
+ * a Float column is written as a float).
+ */
+class TupleCodec
+{
+    /** Type codes for the supported domains (stored in file headers).
+     */
+    static final byte LONG = 1, INTEGER = 2, SHORT = 3, BYTE = 4,
+                      DOUBLE = 5, FLOAT = 6, CHARACTER = 7, STRING = 8;
+
+    /** Additional tags used by the self-describing value encoding (see writeValue).
+     */
+    static final byte NULL = 0, KEY = 9, ARRAY = 10;
+
+    /************************************************************************************
+     * Return the type code for the given domain.
+     *
+     * @param dom  the domain (data type) of a column
+     * @return  the type code for the domain
+     */
+    static byte typeCode (Class dom)
+    {
+        if (dom == Long.class)      return LONG;
+        if (dom == Integer.class)   return INTEGER;
+        if (dom == Short.class)     return SHORT;
+        if (dom == Byte.class)      return BYTE;
+        if (dom == Double.class)    return DOUBLE;
+        if (dom == Float.class)     return FLOAT;
+        if (dom == Character.class) return CHARACTER;
+        if (dom == String.class)    return STRING;
+        throw new IllegalArgumentException ("TupleCodec: unsupported domain " + dom);
+    } // typeCode
+
+    /************************************************************************************
+     * Return the domain for the given type code.
+     *
+     * @param code  the type code read from a file
+     * @return  the domain (data type) for the code
+     */
+    static Class typeClass (byte code)
+    {
+        switch (code) {
+        case LONG:      return Long.class;
+        case INTEGER:   return Integer.class;
+        case SHORT:     return Short.class;
+        case BYTE:      return Byte.class;
+        case DOUBLE:    return Double.class;
+        case FLOAT:     return Float.class;
+        case CHARACTER: return Character.class;
+        case STRING:    return String.class;
+        default:        throw new IllegalArgumentException ("TupleCodec: bad type code " + code);
+        } // switch
+    } // typeClass
+
+    /************************************************************************************
+     * Return the type codes for all the columns of a schema.
+     *
+     * @param domain  the domains of the columns
+     * @return  the array of type codes
+     */
+    static byte [] typeCodes (Class [] domain)
+    {
+        byte [] codes = new byte [domain.length];
+        for (int j = 0; j < domain.length; j++) codes [j] = typeCode (domain [j]);
+        return codes;
+    } // typeCodes
+
+    /************************************************************************************
+     * Encode tuple t into buf at its current position.
+     *
+     * @param buf    the buffer to write into (BufferOverflowException if too small)
+     * @param t      the tuple to encode
+     * @param types  the type codes of the columns
+     */
+    static void write (ByteBuffer buf, Comparable [] t, byte [] types)
+    {
+        int bits = (types.length + 7) >>> 3;
+        int pos  = buf.position ();
+        for (int b = 0; b < bits; b++) buf.put ((byte) 0);
+        for (int j = 0; j < types.length; j++) {
+            if (t [j] == null) {
+                buf.put (pos + (j >>> 3), (byte) (buf.get (pos + (j >>> 3)) | (1 << (j & 7))));
+            } else {
+                writeField (buf, t [j], types [j]);
+            } // if
+        } // for
+    } // write
+
+    /************************************************************************************
+     * Decode a tuple from buf at its current position.
+     *
+     * @param buf    the buffer to read from
+     * @param types  the type codes of the columns
+     * @return  the decoded tuple
+     */
+    static Comparable [] read (ByteBuffer buf, byte [] types)
+    {
+        Comparable [] t = new Comparable [types.length];
+        int bits = (types.length + 7) >>> 3;
+        int pos  = buf.position ();
+        buf.position (pos + bits);
+        for (int j = 0; j < types.length; j++) {
+            if ((buf.get (pos + (j >>> 3)) & (1 << (j & 7))) == 0) t [j] = readField (buf, types [j]);
+        } // for
+        return t;
+    } // read
+
+    /************************************************************************************
+     * Decode only the columns in cols from the tuple at the buffer's current position,
+     * skipping over the others.  Column positions must be in ascending order.
+     *
+     * @param buf    the buffer to read from
+     * @param types  the type codes of the columns
+     * @param cols   the ascending column positions to decode
+     * @return  the decoded values (in the order of cols)
+     */
+    static Comparable [] read (ByteBuffer buf, byte [] types, int [] cols)
+    {
+        Comparable [] vals = new Comparable [cols.length];
+        int bits = (types.length + 7) >>> 3;
+        int pos  = buf.position ();
+        buf.position (pos + bits);
+        for (int j = 0, c = 0; j < types.length && c < cols.length; j++) {
+            if ((buf.get (pos + (j >>> 3)) & (1 << (j & 7))) != 0) {
+                if (cols [c] == j) c++;
+            } else if (cols [c] == j) {
+                vals [c++] = readField (buf, types [j]);
+            } else {
+                skipField (buf, types [j]);
+            } // if
+        } // for
+        return vals;
+    } // read
+
+    /************************************************************************************
+     * Encode a single non-null value in the typed encoding for its column.
+     *
+     * @param buf   the buffer to write into
+     * @param v     the value to encode
+     * @param type  the type code of the column
+     */
+    static void writeField (ByteBuffer buf, Comparable v, byte type)
+    {
+        switch (type) {
+        case LONG:      buf.putLong (((Number) v).longValue ());        break;
+        case INTEGER:   buf.putInt (((Number) v).intValue ());          break;
+        case SHORT:     buf.putShort (((Number) v).shortValue ());      break;
+        case BYTE:      buf.put (((Number) v).byteValue ());            break;
+        case DOUBLE:    buf.putDouble (((Number) v).doubleValue ());    break;
+        case FLOAT:     buf.putFloat (((Number) v).floatValue ());      break;
+        case CHARACTER: buf.putChar ((Character) v);                    break;
+        case STRING:    byte [] s = v.toString ().getBytes (StandardCharsets.UTF_8);
+                        writeVarInt (buf, s.length);
+                        buf.put (s);                                    break;
+        default:        throw new IllegalArgumentException ("TupleCodec: bad type code " + type);
+        } // switch
+    } // writeField
+
+    /************************************************************************************
+     * Decode a single non-null value in the typed encoding for its column.
+     *
+     * @param buf   the buffer to read from
+     * @param type  the type code of the column
+     * @return  the decoded value
+     */
+    static Comparable readField (ByteBuffer buf, byte type)
+    {
+        switch (type) {
+        case LONG:      return buf.getLong ();
+        case INTEGER:   return buf.getInt ();
+        case SHORT:     return buf.getShort ();
+        case BYTE:      return buf.get ();
+        case DOUBLE:    return buf.getDouble ();
+        case FLOAT:     return buf.getFloat ();
+        case CHARACTER: return buf.getChar ();
+        case STRING:    int len = readVarInt (buf);
+                        if (buf.hasArray ()) {
+                            String s = new String (buf.array (), buf.arrayOffset () + buf.position (),
+                                                   len, StandardCharsets.UTF_8);
+                            buf.position (buf.position () + len);
+                            return s;
+                        } // if
+                        byte [] b = new byte [len];
+                        buf.get (b);
+                        return new String (b, StandardCharsets.UTF_8);
+        default:        throw new IllegalArgumentException ("TupleCodec: bad type code " + type);
+        } // switch
+    } // readField
+
+    /************************************************************************************
+     * Skip over a single non-null value in the typed encoding for its column.
+     *
+     * @param buf   the buffer to advance
+     * @param type  the type code of the column
+     */
+    static void skipField (ByteBuffer buf, byte type)
+    {
+        switch (type) {
+        case LONG: case DOUBLE:     buf.position (buf.position () + 8); break;
+        case INTEGER: case FLOAT:   buf.position (buf.position () + 4); break;
+        case SHORT: case CHARACTER: buf.position (buf.position () + 2); break;
+        case BYTE:                  buf.position (buf.position () + 1); break;
+        case STRING:                int len = readVarInt (buf);
+                                    buf.position (buf.position () + len); break;
+        default:                    throw new IllegalArgumentException ("TupleCodec: bad type code " + type);
+        } // switch
+    } // skipField
+
+    /************************************************************************************
+     * Encode a value whose type is not known from a schema: a tag byte followed by the
+     * typed encoding.  Supported values are null, the domain types, KeyType and arrays
+     * of Comparable (e.g., whole tuples).
+     *
+     * @param buf  the buffer to write into
+     * @param v    the value to encode
+     */
+    static void writeValue (ByteBuffer buf, Object v)
+    {
+        if (v == null) {
+            buf.put (NULL);
+        } else if (v instanceof KeyType) {
+            buf.put (KEY);
+            writeValues (buf, ((KeyType) v).getKey ());
+        } else if (v instanceof Comparable []) {
+            buf.put (ARRAY);
+            writeValues (buf, (Comparable []) v);
+        } else {
+            byte type = typeCode (v.getClass ());
+            buf.put (type);
+            writeField (buf, (Comparable) v, type);
+        } // if
+    } // writeValue
+
+    /************************************************************************************
+     * Decode a value written by writeValue.
+     *
+     * @param buf  the buffer to read from
+     * @return  the decoded value
+     */
+    static Object readValue (ByteBuffer buf)
+    {
+        byte tag = buf.get ();
+        switch (tag) {
+        case NULL:  return null;
+        case KEY:   return new KeyType (readValues (buf));
+        case ARRAY: return readValues (buf);
+        default:    return readField (buf, tag);
+        } // switch
+    } // readValue
+
+    /************************************************************************************
+     * Encode an array of values as a varint count followed by each tagged value.
+     *
+     * @param buf   the buffer to write into
+     * @param vals  the values to encode
+     */
+    private static void writeValues (ByteBuffer buf, Comparable [] vals)
+    {
+        writeVarInt (buf, vals.length);
+        for (Comparable v : vals) writeValue (buf, v);
+    } // writeValues
+
+    /************************************************************************************
+     * Decode an array of values written by writeValues.
+     *
+     * @param buf  the buffer to read from
+     * @return  the decoded values
+     */
+    private static Comparable [] readValues (ByteBuffer buf)
+    {
+        Comparable [] vals = new Comparable [readVarInt (buf)];
+        for (int j = 0; j < vals.length; j++) vals [j] = (Comparable) readValue (buf);
+        return vals;
+    } // readValues
+
+    /************************************************************************************
+     * Write a non-negative int using 7 bits per byte (small values take one byte).
+     *
+     * @param buf  the buffer to write into
+     * @param v    the value to write
+     */
+    static void writeVarInt (ByteBuffer buf, int v)
+    {
+        while ((v & ~0x7F) != 0) {
+            buf.put ((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        } // while
+        buf.put ((byte) v);
+    } // writeVarInt
+
+    /************************************************************************************
+     * Read a non-negative int written by writeVarInt.
+     *
+     * @param buf  the buffer to read from
+     * @return  the value read
+     */
+    static int readVarInt (ByteBuffer buf)
+    {
+        int v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buf.get ();
+            v |= (b & 0x7F) << shift;
+            if (b >= 0) return v;
+        } // for
+    } // readVarInt
+
+    /************************************************************************************
+     * Write a string as a varint length followed by its UTF-8 bytes.
+     *
+     * @param buf  the buffer to write into
+     * @param s    the string to write
+     */
+    static void writeString (ByteBuffer buf, String s)
+    {
+        writeField (buf, s, STRING);
+    } // writeString
+
+    /************************************************************************************
+     * Read a string written by writeString.
+     *
+     * @param buf  the buffer to read from
+     * @return  the string read
+     */
+    static String readString (ByteBuffer buf)
+    {
+        return (String) readField (buf, STRING);
+    } // readString
+
+} // TupleCodec class
@@ -36,6 +36,19 @@ public interface TupleGenerator
     void addRelSchema (String name, String attribute, String domain,
                        String primaryKey, String [][] foreignKey); 
 
+    /*************************************************************************************
+     * Set the distribution of the values of an attribute of a table already added
+     * (uniform over the generator's value range by default).  For an attribute covered
+     * by a foreign key, the distribution picks the referenced tuple instead (uniformly
+     * by default), e.g., Distribution.zipf (0, 1.0) for hot parents or
+     * Distribution.fanOut (k) for k children per parent.  Primary key attributes
+     * accept only distributions with unique values.
+     * @param table         the table's name
+     * @param attribute     the attribute's name
+     * @param distribution  the distribution of its values
+     */
+    void setDistribution (String table, String attribute, Distribution distribution);
+
     /*************************************************************************************
      * Generate tuples for all of the tables.
      * @param   nTuples  the int array that contains the number of tuple for each table
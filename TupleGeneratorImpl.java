@@ -11,7 +11,8 @@ import java.util.*;
 /*****************************************************************************************
  * This class is used to populate a database (collection of tables) with randomly
  * generated values that satisfy the following integrity constraints: domain, primary
- * keys and foreign key constraints.
+ * keys and foreign key constraints.  Values are uniform unless an attribute is given a
+ * Distribution (see setDistribution).
  */
 public class TupleGeneratorImpl
        implements TupleGenerator
@@ -33,6 +34,8 @@ public class TupleGeneratorImpl
     private HashMap <String, String []> tablepks = new HashMap <> ();
 
     HashMap <String, String [][]> tablefks = new HashMap <> ();
+
+    private HashMap <String, Distribution> tableDist = new HashMap <> ();   // by "table.attribute"
     
     /*******************************************************************************************
      * Adding relation to Schema.
@@ -68,6 +71,70 @@ public class TupleGeneratorImpl
                       primaryKey.split (" "), foreignKey);
     } // addRelSchema
 
+    /*******************************************************************************************
+     * Set the distribution of the values of an attribute (see TupleGenerator).
+     * @param table         the name of the table
+     * @param attribute     the name of the attribute
+     * @param distribution  the distribution of its values
+     */
+    public void setDistribution (String table, String attribute, Distribution distribution)
+    {
+        if (! tableAttr.containsKey (table) || ! Arrays.asList (tableAttr.get (table)).contains (attribute)) {
+            throw new IllegalArgumentException ("setDistribution: no attribute " + attribute + " in " + table);
+        } // if
+        tableDist.put (table + "." + attribute, distribution);
+    } // setDistribution
+
+    /*******************************************************************************************
+     * Draw the value of attribute k of tuple j from its distribution, if it has one.
+     * @param table  the name of the table
+     * @param attr   the attribute names
+     * @param dom    the attribute domains
+     * @param k      the attribute
+     * @param key    whether the attribute is part of the primary key
+     * @param rand   the random number generator
+     * @param j      the tuple number
+     * @param n      the number of tuples in the table
+     * @return  the value, or null if the attribute has no distribution
+     */
+    private Comparable draw (String table, String [] attr, String [] dom, int k, boolean key,
+                             Random rand, int j, int n)
+    {
+        Distribution d = tableDist.get (table + "." + attr [k]);
+        if (d == null) return null;
+        if (key && ! d.unique ()) {
+            throw new IllegalArgumentException ("generate: key " + attr [k] + " of " + table
+                                                + " needs unique values, not " + d);
+        } // if
+        double x = d.draw (rand.nextLong (), j, n, 1000000);
+        switch (dom [k]) {
+        case "Integer": return (int) Math.floor (x);
+        case "String":  return attr [k] + (long) Math.floor (x);
+        case "Double":  return x;
+        default:        throw new IllegalArgumentException ("Invalid type in switch: " + dom [k]);
+        } // switch
+    } // draw
+
+    /*******************************************************************************************
+     * Pick the referenced tuple for a foreign key, from the distribution of one of its
+     * attributes if any has one, uniformly otherwise.
+     * @param table    the name of the table
+     * @param fkAttrs  the attributes of the foreign key
+     * @param rand     the random number generator
+     * @param j        the tuple number
+     * @param n        the number of tuples in the table
+     * @param parents  the number of tuples in the referenced table
+     * @return  the number of the referenced tuple
+     */
+    private int parent (String table, String fkAttrs, Random rand, int j, int n, int parents)
+    {
+        for (String a : fkAttrs.split (" ")) {
+            Distribution d = tableDist.get (table + "." + a);
+            if (d != null) return (int) d.parent (rand.nextLong (), j, n, parents);
+        } // for
+        return rand.nextInt (parents);
+    } // parent
+
     /***********************************************************************************
      * Generates random tuples that satisfy all the integrity constraints.
      * @param tuples  the number of tuples for each table
@@ -106,6 +173,12 @@ public class TupleGeneratorImpl
             if (fks == null) {
                 for (int j = 0; j < tuples[i]; j++) {
                     for (int k = 0; k < attribute.length; k++) {
+                        Comparable drawn = draw (tableName, attribute, domain, k, pKeys.contains (attribute[k]),
+                                                 rand, j, tuples[i]);
+                        if (drawn != null) {                  // the attribute has a distribution
+                            subResult[j][k] = drawn;
+                            continue;
+                        } // if
                         if (pKeys.contains (attribute[k])) {  // key requires uniqueness
 
                             switch (domain[k]) {
@@ -167,7 +240,7 @@ public class TupleGeneratorImpl
                             for (x = 0; x < tempAtr.length; x++) {
                                 if (tempAtr[x].equals (fks[n][2])) break;
                             } // for
-                            subResult[j][s] = fkTable[rand.nextInt (fkTable.length)][x];
+                            subResult[j][s] = fkTable[parent (tableName, fks[n][0], rand, j, tuples[i], fkTable.length)][x];
 
                         } else {
                             String [] sfks = fks[n][0].split (" ");
@@ -181,7 +254,7 @@ public class TupleGeneratorImpl
                                 out.println ("Possible Solution: Add '" + fks[n][1] + "' table before adding '" + tableName + "' table.");
                                 System.exit (0);
                             } // if
-                            int t = rand.nextInt (fkTable.length);
+                            int t = parent (tableName, fks[n][0], rand, j, tuples[i], fkTable.length);
                             for (int a = 0; a < sfks.length; a++) {
                                 int b;
                                 for (b = 0; b < attribute.length; b++) {
@@ -199,6 +272,12 @@ public class TupleGeneratorImpl
 
                     for (int k = 0; k < attribute.length; k++) {
                         if ( ! fkIndex.contains (attribute[k])) {
+                            Comparable drawn = draw (tableName, attribute, domain, k, pKeys.contains (attribute[k]),
+                                                     rand, j, tuples[i]);
+                            if (drawn != null) {              // the attribute has a distribution
+                                subResult[j][k] = drawn;
+                                continue;
+                            } // if
                             if (pKeys.contains (attribute[k])) {
 
                                 switch (domain[k]) {
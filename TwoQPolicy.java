@@ -0,0 +1,140 @@
+
+/*****************************************************************************************
+ * @file  TwoQPolicy.java
+ */
+
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/*****************************************************************************************
+ * The TwoQPolicy class implements the 2Q replacement algorithm (Johnson and Shasha).
+ * Newly loaded pages enter a FIFO queue (A1in); when they are evicted from it their
+ * keys are remembered in a ghost queue (A1out).  A page that is loaded again while its
+ * key is still in A1out has proven it is reused and enters the main LRU queue (Am).
+ * Pages touched only once, such as those of a scan, therefore never displace the
+ * pages in Am.  Pages loaded by sequential accesses are kept in a separate FIFO that
+ * is evicted first and are never remembered in A1out, so a scan recycles its own
+ * frames.
+ */
+public class TwoQPolicy
+       implements EvictionPolicy
+{
+    /** Fraction of the frames targeted for the A1in queue.
+     */
+    private static final double KIN = 0.25;
+
+    /** Size of the A1out ghost queue as a fraction of the frames.
+     */
+    private static final double KOUT = 0.5;
+
+    /** FIFO queue of frames holding pages seen once.
+     */
+    private final LinkedHashSet <Integer> a1in = new LinkedHashSet <> ();
+
+    /** FIFO queue of frames holding pages loaded by sequential accesses.
+     */
+    private final LinkedHashSet <Integer> scan = new LinkedHashSet <> ();
+
+    /** LRU queue of frames holding reused pages (least recently used first).
+     */
+    private final LinkedHashSet <Integer> am = new LinkedHashSet <> ();
+
+    /** Ghost queue of the keys of pages recently evicted from A1in.
+     */
+    private final LinkedHashSet <Long> a1out = new LinkedHashSet <> ();
+
+    /** Key of the page in each frame.
+     */
+    private long [] key;
+
+    /** Target size of A1in and capacity of A1out.
+     */
+    private int kin, kout;
+
+    /*************************************************************************************
+     * Initialize the policy for a pool with the given number of frames.
+     * @param frames  the number of frames in the pool
+     */
+    public void init (int frames)
+    {
+        key  = new long [frames];
+        kin  = Math.max (1, (int) (KIN * frames));
+        kout = Math.max (1, (int) (KOUT * frames));
+    } // init
+
+    /*************************************************************************************
+     * Place a newly loaded page in the scan queue if the access is sequential, in Am if
+     * A1out remembers it, otherwise in A1in.
+     */
+    public void admit (int frame, long page, boolean sequential)
+    {
+        key [frame] = page;
+        if (sequential)              scan.add (frame);
+        else if (a1out.remove (page)) am.add (frame);
+        else                          a1in.add (frame);
+    } // admit
+
+    /*************************************************************************************
+     * Move a page in Am to its most recently used end; accesses to pages in A1in are
+     * treated as correlated with the first reference and ignored.  A random access to
+     * a page loaded by a scan moves it to A1in.
+     */
+    public void access (int frame, boolean sequential)
+    {
+        if (sequential) return;
+        if (am.remove (frame))        am.add (frame);
+        else if (scan.remove (frame)) a1in.add (frame);
+    } // access
+
+    /*************************************************************************************
+     * Evict from the scan queue first, then from A1in when it exceeds its target size
+     * (remembering the page in A1out), otherwise from the least recently used end of Am.
+     */
+    public int victim (IntPredicate evictable)
+    {
+        int s = pick (scan, evictable);
+        if (s >= 0) return s;
+        boolean fromIn = a1in.size () > kin || am.isEmpty ();
+        int f = pick (fromIn ? a1in : am, evictable);
+        if (f < 0) {
+            fromIn = ! fromIn;
+            f = pick (fromIn ? a1in : am, evictable);
+        } // if
+        if (f >= 0 && fromIn) {
+            a1out.add (key [f]);
+            if (a1out.size () > kout) {
+                Iterator <Long> it = a1out.iterator ();
+                it.next ();
+                it.remove ();
+            } // if
+        } // if
+        return f;
+    } // victim
+
+    /*************************************************************************************
+     * Forget a frame.
+     */
+    public void remove (int frame)
+    {
+        if (! a1in.remove (frame) && ! scan.remove (frame)) am.remove (frame);
+    } // remove
+
+    /*************************************************************************************
+     * Remove and return the first evictable frame of a queue.
+     * @param q          the queue
+     * @param evictable  whether a frame may be evicted
+     * @return  the frame, or -1 if none is evictable
+     */
+    private static int pick (LinkedHashSet <Integer> q, IntPredicate evictable)
+    {
+        for (Iterator <Integer> it = q.iterator (); it.hasNext (); ) {
+            int f = it.next ();
+            if (evictable.test (f)) {
+                it.remove ();
+                return f;
+            } // if
+        } // for
+        return -1;
+    } // pick
+
+} // TwoQPolicy class
@@ -0,0 +1,636 @@
+
+/************************************************************************************
+ * @file WriteAheadLog.java
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.*;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/************************************************************************************
+ * The WriteAheadLog class provides an append-only log of the tuples inserted into a
+ * table, so inserts are durable without rewriting the table file.  The log starts with
+ * a header page holding the table's schema (in TableFile format), followed by one
+ * record per tuple:
+ *
+ *     int length | int crc | long ordinal | tuple (TupleCodec encoding)
+ *
+ * where the ordinal is the tuple's position in the table and the CRC-32C covers the
+ * ordinal and tuple.  Replay stops at the first truncated or corrupt record (the torn
+ * tail of a crash) and skips records already contained in the table file.
+ *
+ * When a record is forced to disk is controlled by the Policy:
+ *   PER_OP - every append is written and forced before it returns;
+ *   GROUP  - appends wait until their record is forced, and the first waiting append
+ *            (the leader) forces a whole group at once, after the group reaches the
+ *            batch size or the maximum delay has passed;
+ *   ASYNC  - appends return immediately and a background thread forces the log every
+ *            interval (a crash may lose the last interval of inserts).
+ */
+public class WriteAheadLog
+       implements Closeable
+{
+    /** The size of a record header (length, crc, ordinal).
+     */
+    private static final int REC_HEADER = 16;
+
+    /** The initial capacity of the append buffer.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /************************************************************************************
+     * The Policy class specifies when log records are forced to disk.
+     */
+    public static class Policy
+    {
+        /** The kinds of fsync policies.
+         */
+        public enum Kind { PER_OP, GROUP, ASYNC }
+
+        final Kind kind;                               // the kind of policy
+        final int  batch;                              // records per group (GROUP)
+        final long delay;                              // max delay or interval in microseconds
+
+        /********************************************************************************
+         * Construct a policy.
+         *
+         * @param _kind   the kind of policy
+         * @param _batch  the number of records that triggers a group force
+         * @param _delay  the maximum delay (GROUP) or interval (ASYNC) in microseconds
+         */
+        private Policy (Kind _kind, int _batch, long _delay)
+        {
+            kind  = _kind;
+            batch = Math.max (1, _batch);
+            delay = Math.max (0, _delay);
+        } // constructor
+
+        /********************************************************************************
+         * Return the policy that forces every record before the append returns.
+         */
+        public static Policy perOp ()
+        {
+            return new Policy (Kind.PER_OP, 1, 0);
+        } // perOp
+
+        /********************************************************************************
+         * Return a group commit policy.
+         *
+         * @param batch        the number of pending records that triggers a force
+         * @param delayMicros  the longest a record waits for its group to fill
+         */
+        public static Policy group (int batch, long delayMicros)
+        {
+            return new Policy (Kind.GROUP, batch, delayMicros);
+        } // group
+
+        /********************************************************************************
+         * Return a policy that forces the log in the background.
+         *
+         * @param intervalMicros  the interval between forces
+         */
+        public static Policy async (long intervalMicros)
+        {
+            return new Policy (Kind.ASYNC, Integer.MAX_VALUE, Math.max (1, intervalMicros));
+        } // async
+
+        /********************************************************************************
+         * Return the policy as a string.
+         */
+        public String toString ()
+        {
+            return kind + ((kind == Kind.PER_OP) ? "" : "(" + ((kind == Kind.GROUP) ? batch + ", " : "")
+                                                       + delay + "us)");
+        } // toString
+
+    } // Policy class
+
+    /** The path of the log file.
+     */
+    private final Path path;
+
+    /** The channel for the log file.
+     */
+    private final FileChannel ch;
+
+    /** The type codes of the table's domains.
+     */
+    private final byte [] types;
+
+    /** The fsync policy.
+     */
+    private final Policy policy;
+
+    /** The lock protecting the append buffer and sequence numbers.
+     */
+    private final ReentrantLock lock = new ReentrantLock ();
+
+    /** Signalled when records become durable (or a group fills).
+     */
+    private final Condition changed = lock.newCondition ();
+
+    /** Records appended but not yet written to the file.
+     */
+    private ByteBuffer pending = ByteBuffer.allocate (BUFFER_SIZE);
+
+    /** Spare buffer swapped with pending by the thread that writes the log.
+     */
+    private ByteBuffer spare = ByteBuffer.allocate (BUFFER_SIZE);
+
+    /** The sequence numbers of the last record appended and the last one forced.
+     */
+    private long appended, durable;
+
+    /** Whether a thread is currently writing and forcing the log.
+     */
+    private boolean forcing;
+
+    /** The error that made the log unusable, if any.
+     */
+    private IOException failure;
+
+    /** The background thread that forces the log (ASYNC only).
+     */
+    private Thread flusher;
+
+    /** Whether the log has been closed.
+     */
+    private volatile boolean closed;
+
+    /** The number of records made durable by the last force.
+     */
+    private long lastGroup = 1;
+
+    /** The number of forces performed (for performance monitoring).
+     */
+    private long forces;
+
+    /************************************************************************************
+     * Open the log at the given path for appending, creating it with the given schema
+     * if it does not exist.  A torn tail left by a crash is truncated.
+     *
+     * @param _path    the path of the log file
+     * @param h        the schema of the table (tuple counts are ignored)
+     * @param _policy  the fsync policy
+     * @throws IOException  if the log cannot be opened or belongs to another schema
+     */
+    public WriteAheadLog (String _path, TableFile.Header h, Policy _policy) throws IOException
+    {
+        path   = Paths.get (_path);
+        types  = h.types;
+        policy = _policy;
+        Files.createDirectories (path.toAbsolutePath ().getParent ());
+        ch = FileChannel.open (path, CREATE, READ, WRITE);
+        if (ch.size () < TableFile.PAGE_SIZE) {
+            writeHeader (h);
+        } else {
+            Replay r = new Replay (ch);
+            if (! Arrays.equals (r.header.types, types)) {
+                ch.close ();
+                throw new IOException ("WriteAheadLog: " + path + " was written for another schema");
+            } // if
+            while (r.next () != null) ;
+            ch.truncate (r.end);
+        } // if
+        ch.position (ch.size ());
+        if (policy.kind == Policy.Kind.ASYNC) {
+            flusher = new Thread (this::flushLoop, "wal-" + path.getFileName ());
+            flusher.setDaemon (true);
+            flusher.start ();
+        } // if
+    } // constructor
+
+    /************************************************************************************
+     * Append the record for a tuple, returning once it is durable (PER_OP, GROUP) or
+     * buffered (ASYNC).
+     *
+     * @param ordinal  the position of the tuple in the table
+     * @param t        the tuple
+     * @throws IOException  if the record cannot be written or forced
+     */
+    public void append (long ordinal, Comparable [] t) throws IOException
+    {
+        commit (enqueue (ordinal, t));
+    } // append
+
+    /************************************************************************************
+     * Buffer the record for a tuple without waiting for it to become durable.  Callers
+     * that must order records (e.g., by ordinal) enqueue under their own lock and call
+     * commit after releasing it, so concurrent commits can share a force.
+     *
+     * @param ordinal  the position of the tuple in the table
+     * @param t        the tuple
+     * @return  the sequence number of the record (to be passed to commit)
+     * @throws IOException  if the log is closed or has failed
+     */
+    public long enqueue (long ordinal, Comparable [] t) throws IOException
+    {
+        lock.lock ();
+        try {
+            if (closed)          throw new IOException ("WriteAheadLog: " + path + " is closed");
+            if (failure != null) throw failure;
+            encode (ordinal, t);
+            long seq = ++appended;
+            if (policy.kind == Policy.Kind.GROUP ? appended - durable >= policy.batch
+                                                 : pending.position () >= BUFFER_SIZE) {
+                changed.signalAll ();
+            } // if
+            return seq;
+        } finally {
+            lock.unlock ();
+        } // try
+    } // enqueue
+
+    /************************************************************************************
+     * Return once the record with the given sequence number is durable, as required by
+     * the policy (immediately for ASYNC).
+     *
+     * @param seq  the sequence number returned by enqueue
+     * @throws IOException  if the record cannot be written or forced
+     */
+    public void commit (long seq) throws IOException
+    {
+        lock.lock ();
+        try {
+            switch (policy.kind) {
+            case PER_OP: force (seq);       break;
+            case GROUP:  groupCommit (seq); break;
+            case ASYNC:  if (failure != null) throw failure; break;
+            } // switch
+        } finally {
+            lock.unlock ();
+        } // try
+    } // commit
+
+    /************************************************************************************
+     * Write and force all appended records.
+     *
+     * @throws IOException  if the log cannot be written or forced
+     */
+    public void sync () throws IOException
+    {
+        lock.lock ();
+        try {
+            if (failure != null) throw failure;
+            force (appended);
+        } finally {
+            lock.unlock ();
+        } // try
+    } // sync
+
+    /************************************************************************************
+     * Discard all records (e.g., after the table file has been rewritten), keeping the
+     * header page.
+     *
+     * @throws IOException  if the log cannot be truncated
+     */
+    public void reset () throws IOException
+    {
+        lock.lock ();
+        try {
+            force (appended);
+            ch.truncate (TableFile.PAGE_SIZE);
+            ch.position (TableFile.PAGE_SIZE);
+            ch.force (true);
+        } finally {
+            lock.unlock ();
+        } // try
+    } // reset
+
+    /************************************************************************************
+     * Return the number of forces performed so far.
+     *
+     * @return  the number of forces
+     */
+    public long forces ()
+    {
+        lock.lock ();
+        try {
+            return forces;
+        } finally {
+            lock.unlock ();
+        } // try
+    } // forces
+
+    /************************************************************************************
+     * Force all appended records and close the log.
+     *
+     * @throws IOException  if the log cannot be written or closed
+     */
+    public void close () throws IOException
+    {
+        if (closed) return;
+        try {
+            sync ();
+        } finally {
+            lock.lock ();
+            try {
+                closed = true;
+                changed.signalAll ();
+            } finally {
+                lock.unlock ();
+            } // try
+            if (flusher != null) {
+                try {
+                    flusher.join ();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread ().interrupt ();
+                } // try
+            } // if
+            ch.close ();
+        } // try
+    } // close
+
+    //-----------------------------------------------------------------------------------
+    // Recovery
+    //-----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Read the schema stored in the log at the given path.
+     *
+     * @param _path  the path of the log file
+     * @return  the schema, or null if there is no log
+     * @throws IOException  if the log is corrupt
+     */
+    static TableFile.Header readHeader (String _path) throws IOException
+    {
+        Path p = Paths.get (_path);
+        if (! Files.exists (p)) return null;
+        try (FileChannel c = FileChannel.open (p, READ)) {
+            return TableFile.readHeader (c);
+        } // try
+    } // readHeader
+
+    /************************************************************************************
+     * Replay the log at the given path, passing each intact tuple whose ordinal is at
+     * least from (and continues the sequence) to the consumer in log order.
+     *
+     * @param _path     the path of the log file
+     * @param from      the ordinal of the first tuple not yet in the table
+     * @param consumer  the consumer of the replayed tuples
+     * @return  the number of tuples replayed
+     * @throws IOException  if the log cannot be read
+     */
+    static long replay (String _path, long from, java.util.function.Consumer <Comparable []> consumer)
+           throws IOException
+    {
+        Path p = Paths.get (_path);
+        if (! Files.exists (p)) return 0;
+        long next = from;
+        try (FileChannel c = FileChannel.open (p, READ)) {
+            Replay r = new Replay (c);
+            for (Object [] rec; (rec = r.next ()) != null; ) {
+                long ordinal = (Long) rec [0];
+                if (ordinal < next) continue;                           // already in table
+                if (ordinal > next) break;                              // gap: stop
+                consumer.accept ((Comparable []) rec [1]);
+                next++;
+            } // for
+        } // try
+        return next - from;
+    } // replay
+
+    /************************************************************************************
+     * The Replay class iterates over the intact records of a log.
+     */
+    private static class Replay
+    {
+        final FileChannel      c;                      // the log channel
+        final TableFile.Header header;                 // the schema in the log
+        final ByteBuffer       head = ByteBuffer.allocate (REC_HEADER);
+        long                   end = TableFile.PAGE_SIZE;   // end of the last intact record
+
+        /********************************************************************************
+         * Start replaying the log on the given channel.
+         */
+        Replay (FileChannel _c) throws IOException
+        {
+            c      = _c;
+            header = TableFile.readHeader (c);
+        } // constructor
+
+        /********************************************************************************
+         * Return the next record as {ordinal, tuple}, or null at the end of the intact
+         * part of the log.
+         */
+        Object [] next () throws IOException
+        {
+            head.clear ();
+            if (! readFully (head, end)) return null;
+            int len = head.getInt (0);
+            if (len <= 0 || end + REC_HEADER + len > c.size ()) return null;
+            ByteBuffer body = ByteBuffer.allocate (8 + len);
+            body.putLong (head.getLong (8));
+            if (! readFully (body, end + REC_HEADER)) return null;
+            if (TableFile.crc (body, 0, body.capacity ()) != head.getInt (4)) return null;
+            body.position (8);
+            Comparable [] t;
+            try {
+                t = TupleCodec.read (body, header.types);
+            } catch (RuntimeException ex) {
+                return null;
+            } // try
+            end += REC_HEADER + len;
+            return new Object [] { body.getLong (0), t };
+        } // next
+
+        /********************************************************************************
+         * Fill buf from the channel starting at the given file position.
+         */
+        private boolean readFully (ByteBuffer buf, long pos) throws IOException
+        {
+            int start = buf.position ();
+            while (buf.hasRemaining ()) {
+                if (c.read (buf, pos + buf.position () - start) < 0) return false;
+            } // while
+            return true;
+        } // readFully
+
+    } // Replay class
+
+    //-----------------------------------------------------------------------------------
+    // Private methods
+    //-----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Write the header page holding the schema and force it.
+     *
+     * @param h  the schema of the table
+     */
+    private void writeHeader (TableFile.Header h) throws IOException
+    {
+        ByteBuffer page = ByteBuffer.allocate (TableFile.PAGE_SIZE);
+        h.write (page);
+        page.clear ();
+        ch.truncate (0);
+        while (page.hasRemaining ()) ch.write (page, page.position ());
+        ch.force (true);
+    } // writeHeader
+
+    /************************************************************************************
+     * Encode the record for a tuple at the end of the pending buffer, growing the
+     * buffer as needed.  Called with the lock held.
+     */
+    private void encode (long ordinal, Comparable [] t)
+    {
+        for ( ; ; ) {
+            int start = pending.position ();
+            try {
+                if (pending.remaining () < REC_HEADER) throw new BufferOverflowException ();
+                pending.position (start + REC_HEADER);
+                TupleCodec.write (pending, t, types);
+                int len = pending.position () - start - REC_HEADER;
+                pending.putInt (start, len).putLong (start + 8, ordinal);
+                pending.putInt (start + 4, TableFile.crc (pending, start + 8, 8 + len));
+                return;
+            } catch (BufferOverflowException ex) {
+                pending.position (start);
+                ByteBuffer bigger = ByteBuffer.allocate (2 * pending.capacity ());
+                bigger.put (pending.flip ());
+                pending = bigger;
+            } // try
+        } // for
+    } // encode
+
+    /************************************************************************************
+     * Wait until record seq is durable, leading a group force if no other thread is
+     * forcing.  The leader waits (at most the delay) for the group to reach the batch
+     * size, but no longer than it takes to reach the size of the previous group, so a
+     * few steady writers are not held for the whole delay.  Called with the lock held.
+     */
+    private void groupCommit (long seq) throws IOException
+    {
+        long deadline = System.nanoTime () + TimeUnit.MICROSECONDS.toNanos (policy.delay);
+        while (durable < seq) {
+            if (failure != null) throw failure;
+            if (! forcing) {
+                long wait = deadline - System.nanoTime ();
+                if (appended - durable < Math.min (policy.batch, lastGroup) && wait > 0) {
+                    awaitNanos (wait);                                  // let the group fill
+                    continue;
+                } // if
+                force (appended);
+            } else {
+                awaitNanos (Long.MAX_VALUE);                            // a leader is forcing
+            } // if
+        } // while
+    } // groupCommit
+
+    /************************************************************************************
+     * Write the pending records and force the log so that record seq is durable.  The
+     * write and force are done without holding the lock, so appends can continue into
+     * the other buffer.  Called with the lock held.
+     */
+    private void force (long seq) throws IOException
+    {
+        while (forcing) awaitNanos (Long.MAX_VALUE);
+        if (durable >= seq) return;
+        if (failure != null) throw failure;
+        forcing = true;
+        long target = appended;
+        ByteBuffer out = pending;
+        pending = spare.clear ();
+        lock.unlock ();
+        try {
+            out.flip ();
+            while (out.hasRemaining ()) ch.write (out);
+            ch.force (false);
+        } catch (IOException ex) {
+            failure = ex;
+        } finally {
+            lock.lock ();
+            spare   = out.clear ();
+            forcing = false;
+            if (failure == null) {
+                lastGroup = Math.max (1, target - durable);
+                durable   = target;
+                forces++;
+            } // if
+            changed.signalAll ();
+        } // try
+        if (failure != null) throw failure;
+    } // force
+
+    /************************************************************************************
+     * Wait on the condition for at most the given time, converting interrupts into
+     * IOExceptions.  Called with the lock held.
+     */
+    private void awaitNanos (long nanos) throws IOException
+    {
+        try {
+            changed.awaitNanos (nanos);
+        } catch (InterruptedException ex) {
+            Thread.currentThread ().interrupt ();
+            throw new InterruptedIOException ("WriteAheadLog: interrupted waiting for " + path);
+        } // try
+    } // awaitNanos
+
+    /************************************************************************************
+     * Force the log every interval until it is closed (ASYNC only).
+     */
+    private void flushLoop ()
+    {
+        lock.lock ();
+        try {
+            while (! closed && failure == null) {
+                changed.awaitNanos (TimeUnit.MICROSECONDS.toNanos (policy.delay));
+                if (appended > durable) force (appended);
+            } // while
+        } catch (IOException | InterruptedException ex) {
+            // failure is recorded by force and reported to the next append
+        } finally {
+            lock.unlock ();
+        } // try
+    } // flushLoop
+
+    /************************************************************************************
+     * The main method measures insert throughput under each policy with several
+     * concurrent inserting threads.
+     *
+     * @param args  the command-line arguments (optional number of threads)
+     */
+    public static void main (String [] args) throws Exception
+    {
+        int threads = (args.length > 0) ? Integer.parseInt (args [0]) : 4;
+        int each    = 5000;
+        TableFile.Header h = new TableFile.Header ("walBench", new String [] { "id", "name", "score" },
+                             new Class [] { Integer.class, String.class, Double.class },
+                             new String [] { "id" }, 0);
+        Policy [] policies = { Policy.perOp (), Policy.group (64, 2000), Policy.async (10000) };
+        for (Policy pol : policies) {
+            Path p = Files.createTempFile ("walBench", ".wal");
+            Files.delete (p);
+            try (WriteAheadLog log = new WriteAheadLog (p.toString (), h, pol)) {
+                java.util.concurrent.atomic.AtomicLong next = new java.util.concurrent.atomic.AtomicLong ();
+                Thread [] ts = new Thread [threads];
+                long start = System.nanoTime ();
+                for (int i = 0; i < threads; i++) {
+                    ts [i] = new Thread (() -> {
+                        try {
+                            for (int j = 0; j < each; j++) {
+                                long id = next.getAndIncrement ();
+                                log.append (id, new Comparable [] { (int) id, "name" + id, id * 0.5 });
+                            } // for
+                        } catch (IOException ex) {
+                            ex.printStackTrace ();
+                        } // try
+                    });
+                    ts [i].start ();
+                } // for
+                for (Thread t : ts) t.join ();
+                log.sync ();
+                double secs = (System.nanoTime () - start) / 1E9;
+                System.out.printf ("%-20s %8.0f inserts/s, %6d forces%n", pol, threads * each / secs, log.forces ());
+            } finally {
+                Files.deleteIfExists (p);
+            } // try
+        } // for
+    } // main
+
+} // WriteAheadLog class
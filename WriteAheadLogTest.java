@@ -0,0 +1,113 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+public class WriteAheadLogTest {
+
+    /**
+     *
+     * Deletes the stored files of a table and creates it empty.
+     *
+     * @param name the name of the table
+     * @return empty table
+     *
+     */
+
+    public Table createTable(String name) throws Exception {
+
+	for (String ext : new String [] { ".dbf", ".wal", ".idx" }) {
+	    Files.deleteIfExists(Paths.get("store" + File.separator + name + ext));
+	}
+	return new Table(name, "id name score", "Integer String Double", "id");
+    }
+
+    /**
+     *
+     * Tests that logged inserts of a table that was never saved are
+     * recovered by load, and that save empties the log.
+     *
+     */
+
+    @Test
+    public void testReplay() throws Exception {
+
+	Table t = createTable("walTest");
+	t.logInserts(WriteAheadLog.Policy.perOp());
+	for (int i = 0; i < 100; i++) {
+	    assertTrue(t.insert(new Comparable [] { i, "name" + i, i * 0.5 }));
+	}
+	t.closeLog();
+
+	Table loaded = Table.load("walTest");
+	assertEquals(100, loaded.tuplesLength());
+	assertEquals("name42", loaded.select(new KeyType(42)).getTuple(0)[1]);
+
+	loaded.save();
+	loaded.logInserts(WriteAheadLog.Policy.group(8, 1000));
+	for (int i = 100; i < 150; i++) {
+	    loaded.insert(new Comparable [] { i, "name" + i, i * 0.5 });
+	}
+	loaded.closeLog();
+	assertEquals(150, Table.load("walTest").tuplesLength());
+	loaded.save();
+	assertEquals(150, Table.load("walTest").tuplesLength());
+    }
+
+    /**
+     *
+     * Tests that a record torn by a crash ends the replay without
+     * losing the records before it.
+     *
+     */
+
+    @Test
+    public void testTornTail() throws Exception {
+
+	Table t = createTable("walTornTest");
+	t.logInserts(WriteAheadLog.Policy.async(1000));
+	for (int i = 0; i < 20; i++) {
+	    t.insert(new Comparable [] { i, "name" + i, i * 0.5 });
+	}
+	t.closeLog();
+
+	try (RandomAccessFile f = new RandomAccessFile("store" + File.separator + "walTornTest.wal", "rw")) {
+	    f.setLength(f.length() - 3);
+	}
+	assertEquals(19, Table.load("walTornTest").tuplesLength());
+    }
+
+    /**
+     *
+     * Tests that concurrent inserts under group commit are all durable
+     * and share forces.
+     *
+     */
+
+    @Test
+    public void testGroupCommit() throws Exception {
+
+	Table t = createTable("walGroupTest");
+	t.logInserts(WriteAheadLog.Policy.group(32, 5000));
+	Thread [] threads = new Thread [4];
+	for (int k = 0; k < threads.length; k++) {
+	    int base = k * 1000;
+	    threads[k] = new Thread(() -> {
+		for (int i = base; i < base + 250; i++) {
+		    t.insert(new Comparable [] { i, "name" + i, i * 0.5 });
+		}
+	    });
+	    threads[k].start();
+	}
+	for (Thread th : threads) th.join();
+	t.closeLog();
+
+	Table loaded = Table.load("walGroupTest");
+	assertEquals(1000, loaded.tuplesLength());
+	assertEquals("name3249", loaded.select(new KeyType(3249)).getTuple(0)[1]);
+    }
+}
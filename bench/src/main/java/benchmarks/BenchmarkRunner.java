@@ -0,0 +1,51 @@
+
+/*****************************************************************************************
+ * @file  BenchmarkRunner.java
+ */
+
+package benchmarks;
+
+import java.util.Arrays;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*****************************************************************************************
+ * The BenchmarkRunner class runs the benchmarks once per thread count and writes the
+ * results of each run as JSON to jmh-result-t<threads>.json in the bench directory.
+ * The thread counts are given by a leading argument --threads=<counts> (default
+ * 1,2,4,8), as sbt forks the run and does not pass its own system properties on; the
+ * other arguments are passed to JMH, e.g., a benchmark pattern and -p size=1000,100000.
+ * Benchmarks that fix their thread count (LoadBenchmark) are run once.
+ *
+ * #usage sbt "bench/Jmh/runMain benchmarks.BenchmarkRunner --threads=1,4 Select -p mapType=BPTREE_MAP"
+ */
+public class BenchmarkRunner
+{
+    public static void main (String [] args) throws RunnerException, CommandLineOptionException
+    {
+        String counts = "1,2,4,8";
+        if (args.length > 0 && args [0].startsWith ("--threads=")) {
+            counts = args [0].substring ("--threads=".length ());
+            args   = Arrays.copyOfRange (args, 1, args.length);
+        } // if
+        CommandLineOptions cmd = new CommandLineOptions (args);
+        boolean loadRun = false;
+        for (String s : counts.split (",")) {
+            int threads = Integer.parseInt (s.trim ());
+            ChainedOptionsBuilder opt = new OptionsBuilder ().parent (cmd)
+                                            .threads (threads)
+                                            .resultFormat (ResultFormatType.JSON)
+                                            .result ("jmh-result-t" + threads + ".json");
+            if (loadRun) opt = opt.exclude ("LoadBenchmark");
+            new Runner (opt.build ()).run ();
+            loadRun = true;
+        } // for
+    } // main
+
+} // BenchmarkRunner class
@@ -0,0 +1,232 @@
+
+/*****************************************************************************************
+ * @file  Db.java
+ */
+
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Random;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/*****************************************************************************************
+ * The Db class gives the benchmarks access to Table and KeyType.  Those classes are in
+ * the unnamed package, which code in a named package (as JMH requires) cannot refer
+ * to, so they are reached through method handles held in static final fields; the JIT
+ * inlines such handles, so the benchmarks measure the operators rather than the calls.
+ * The class also builds the Student and Transcript tables the benchmarks run on.
+ */
+final class Db
+{
+    private static final MethodHandle NEW_TABLE, INSERT, SELECT_KEY, SELECT_RANGE, JOIN, I_JOIN, H_JOIN,
+                                      NATURAL_JOIN, NEW_KEY, SET_MAP_TYPE, LENGTH;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup ();
+            Class <?> table = Class.forName ("Table"), key = Class.forName ("KeyType");
+            MethodType join = methodType (table, String.class, String.class, table);
+            NEW_TABLE    = erase (lookup.findConstructor (table, methodType (void.class, String.class, String.class,
+                                                                             String.class, String.class)));
+            INSERT       = erase (lookup.findVirtual (table, "insert", methodType (boolean.class, Comparable [].class)));
+            SELECT_KEY   = erase (lookup.findVirtual (table, "select", methodType (table, key)));
+            SELECT_RANGE = erase (lookup.findVirtual (table, "select", methodType (table, key, key)));
+            JOIN         = erase (lookup.findVirtual (table, "join", join));
+            I_JOIN       = erase (lookup.findVirtual (table, "i_join", join));
+            H_JOIN       = erase (lookup.findVirtual (table, "h_join", join));
+            NATURAL_JOIN = erase (lookup.findVirtual (table, "join", methodType (table, table)));
+            NEW_KEY      = erase (lookup.findConstructor (key, methodType (void.class, Comparable [].class)));
+            SET_MAP_TYPE = lookup.findStatic (table, "setMapType", methodType (void.class, String.class));
+            LENGTH       = erase (lookup.findVirtual (table, "tuplesLength", methodType (int.class)));
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError (ex);
+        } // try
+    } // static
+
+    private Db () {}
+
+    /*************************************************************************************
+     * Replace Table and KeyType by Object in the type of a method handle.
+     */
+    private static MethodHandle erase (MethodHandle h)
+    {
+        MethodType t = h.type ();
+        for (int i = 0; i < t.parameterCount (); i++) {
+            if (! t.parameterType (i).getName ().contains (".") && ! t.parameterType (i).isPrimitive ()) {
+                t = t.changeParameterType (i, Object.class);
+            } // if
+        } // for
+        if (! t.returnType ().isPrimitive () && ! t.returnType ().getName ().contains (".")) {
+            t = t.changeReturnType (Object.class);
+        } // if
+        return h.asType (t);
+    } // erase
+
+    /*************************************************************************************
+     * Rethrow a throwable from a method handle as an unchecked exception.
+     */
+    private static RuntimeException rethrow (Throwable ex)
+    {
+        if (ex instanceof RuntimeException) return (RuntimeException) ex;
+        if (ex instanceof Error)            throw (Error) ex;
+        return new RuntimeException (ex);
+    } // rethrow
+
+    static void setMapType (String type)
+    {
+        try { SET_MAP_TYPE.invokeExact (type); } catch (Throwable ex) { throw rethrow (ex); }
+    } // setMapType
+
+    static Object table (String name, String attributes, String domains, String key)
+    {
+        try { return (Object) NEW_TABLE.invokeExact (name, attributes, domains, key); } catch (Throwable ex) { throw rethrow (ex); }
+    } // table
+
+    static boolean insert (Object table, Comparable [] tup)
+    {
+        try { return (boolean) INSERT.invokeExact (table, tup); } catch (Throwable ex) { throw rethrow (ex); }
+    } // insert
+
+    static Object key (Comparable value)
+    {
+        try { return (Object) NEW_KEY.invokeExact (new Comparable [] { value }); } catch (Throwable ex) { throw rethrow (ex); }
+    } // key
+
+    static Object select (Object table, Object key)
+    {
+        try { return (Object) SELECT_KEY.invokeExact (table, key); } catch (Throwable ex) { throw rethrow (ex); }
+    } // select
+
+    static Object select (Object table, Object key1, Object key2)
+    {
+        try { return (Object) SELECT_RANGE.invokeExact (table, key1, key2); } catch (Throwable ex) { throw rethrow (ex); }
+    } // select
+
+    static Object join (Object table, String attributes1, String attributes2, Object table2)
+    {
+        try { return (Object) JOIN.invokeExact (table, attributes1, attributes2, table2); } catch (Throwable ex) { throw rethrow (ex); }
+    } // join
+
+    static Object i_join (Object table, String attributes1, String attributes2, Object table2)
+    {
+        try { return (Object) I_JOIN.invokeExact (table, attributes1, attributes2, table2); } catch (Throwable ex) { throw rethrow (ex); }
+    } // i_join
+
+    static Object h_join (Object table, String attributes1, String attributes2, Object table2)
+    {
+        try { return (Object) H_JOIN.invokeExact (table, attributes1, attributes2, table2); } catch (Throwable ex) { throw rethrow (ex); }
+    } // h_join
+
+    static Object join (Object table, Object table2)
+    {
+        try { return (Object) NATURAL_JOIN.invokeExact (table, table2); } catch (Throwable ex) { throw rethrow (ex); }
+    } // join
+
+    static int length (Object table)
+    {
+        try { return (int) LENGTH.invokeExact (table); } catch (Throwable ex) { throw rethrow (ex); }
+    } // length
+
+    /*************************************************************************************
+     * Return the student ids 0 .. n-1 in the order given by the distribution:
+     * "sequential" (ascending) or "random" (a seeded shuffle).
+     * @param n             the number of students
+     * @param distribution  the key distribution
+     * @return  the ids in insertion order
+     */
+    static int [] ids (int n, String distribution)
+    {
+        int [] ids = new int [n];
+        for (int i = 0; i < n; i++) ids [i] = i;
+        if (distribution.equals ("random")) {
+            Random rand = new Random (n);
+            for (int i = n - 1; i > 0; i--) {
+                int j = rand.nextInt (i + 1), t = ids [i];
+                ids [i] = ids [j];
+                ids [j] = t;
+            } // for
+        } // if
+        return ids;
+    } // ids
+
+    /*************************************************************************************
+     * Return n keys to probe a table holding the given ids, drawn by the distribution:
+     * "sequential" (ascending), "random" (uniform) or "zipf" (Zipf, s = 1, with the hot
+     * keys scattered over the ids).
+     * @param ids           the ids in the table, in insertion order
+     * @param distribution  the key distribution
+     * @param n             the number of probes
+     * @return  the probe keys
+     */
+    static int [] probes (int [] ids, String distribution, int n)
+    {
+        int [] keys = new int [n];
+        Random rand = new Random (42);
+        for (int i = 0; i < n; i++) {
+            switch (distribution) {
+            case "sequential": keys [i] = i % ids.length;                        break;
+            case "zipf":       keys [i] = ids [zipf (rand, ids.length)];          break;
+            default:           keys [i] = rand.nextInt (ids.length);
+            } // switch
+        } // for
+        return keys;
+    } // probes
+
+    /*************************************************************************************
+     * Draw a rank in 0 .. n-1 with probability roughly proportional to 1 / (rank + 1),
+     * by inverting the continuous approximation of the harmonic numbers.
+     */
+    static int zipf (Random rand, int n)
+    {
+        return (int) Math.min (n - 1, Math.exp (rand.nextDouble () * Math.log (n + 1.0)) - 1.0);
+    } // zipf
+
+    /*************************************************************************************
+     * Return a student tuple.
+     */
+    static Comparable [] student (int id)
+    {
+        return new Comparable [] { id, "name" + id, "address" + id % 1000, "status" + id % 7 };
+    } // student
+
+    /*************************************************************************************
+     * Build a student table with the given ids, indexed with the given map type.
+     */
+    static Object students (String name, String mapType, int [] ids)
+    {
+        setMapType (mapType);
+        Object t = table (name, "id name address status", "Integer String String String", "id");
+        for (int id : ids) insert (t, student (id));
+        return t;
+    } // students
+
+    /*************************************************************************************
+     * Build a transcript table with the given number of tuples referring to students
+     * 0 .. students-1.
+     */
+    static Object transcripts (String name, String mapType, int n, int students)
+    {
+        setMapType (mapType);
+        Object t = table (name, "studId crsCode semester grade", "Integer String String String", "studId crsCode");
+        Random rand = new Random (n);
+        for (int i = 0; i < n; i++) {
+            insert (t, new Comparable [] { rand.nextInt (students), "crs" + i, "Fall" + (2000 + i % 20), "ABCDF".substring (i % 5, i % 5 + 1) });
+        } // for
+        return t;
+    } // transcripts
+
+    /*************************************************************************************
+     * Build a course table with the course codes crs0 .. crs(n-1) used by transcripts.
+     */
+    static Object courses (String name, String mapType, int n)
+    {
+        setMapType (mapType);
+        Object t = table (name, "crsCode title deptId", "String String Integer", "crsCode");
+        for (int i = 0; i < n; i++) insert (t, new Comparable [] { "crs" + i, "title" + i, i % 50 });
+        return t;
+    } // courses
+
+} // Db class
@@ -0,0 +1,106 @@
+
+/*****************************************************************************************
+ * @file  JoinBenchmark.java
+ */
+
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/*****************************************************************************************
+ * The JoinBenchmark class measures the three equi-join algorithms (nested loop, index
+ * and hash) joining a transcript table (two tuples per student) with a student table
+ * on the student id, for every map type, table size and insertion order of the
+ * students.  The nested loop join is quadratic, so it has its own, smaller, sizes
+ * (nestedSize); override either with -p, e.g., -p size=1000,10000000.  NO_MAP keeps
+ * no index, so it has no index join and is measured with the nested loop join only.
+ */
+@BenchmarkMode (Mode.SingleShotTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 3)
+@Measurement (iterations = 10)
+@Fork (value = 2, jvmArgsAppend = { "-Xmx12g" })
+public class JoinBenchmark
+{
+    /*************************************************************************************
+     * The tables joined by the index, hash and natural joins.
+     */
+    @State (Scope.Benchmark)
+    public static class Tables
+    {
+        @Param ({ "1000", "100000", "10000000" })
+        public int size;
+
+        @Param ({ "TREE_MAP", "LINHASH_MAP", "BPTREE_MAP", "DISK_BPTREE_MAP" })
+        public String mapType;
+
+        @Param ({ "sequential", "random" })
+        public String distribution;
+
+        Object student, transcript, course;
+
+        @Setup (Level.Trial)
+        public void setup ()
+        {
+            new java.io.File ("store").mkdirs ();
+            student    = Db.students ("joinStudent", mapType, Db.ids (size, distribution));
+            transcript = Db.transcripts ("joinTranscript", mapType, 2 * size, size);
+            course     = Db.courses ("joinCourse", mapType, size);
+        } // setup
+
+    } // Tables
+
+    /*************************************************************************************
+     * The tables joined by the nested loop join.
+     */
+    @State (Scope.Benchmark)
+    public static class SmallTables
+    {
+        @Param ({ "1000", "10000" })
+        public int nestedSize;
+
+        @Param ({ "TREE_MAP", "LINHASH_MAP", "BPTREE_MAP", "DISK_BPTREE_MAP", "NO_MAP" })
+        public String nestedMapType;
+
+        @Param ({ "sequential", "random" })
+        public String nestedDistribution;
+
+        Object student, transcript;
+
+        @Setup (Level.Trial)
+        public void setup ()
+        {
+            new java.io.File ("store").mkdirs ();
+            student    = Db.students ("nestedStudent", nestedMapType, Db.ids (nestedSize, nestedDistribution));
+            transcript = Db.transcripts ("nestedTranscript", nestedMapType, 2 * nestedSize, nestedSize);
+        } // setup
+
+    } // SmallTables
+
+    @Benchmark
+    public Object nestedLoopJoin (SmallTables t)
+    {
+        return Db.join (t.transcript, "studId", "id", t.student);
+    } // nestedLoopJoin
+
+    @Benchmark
+    public Object indexJoin (Tables t)
+    {
+        return Db.i_join (t.transcript, "studId", "id", t.student);
+    } // indexJoin
+
+    @Benchmark
+    public Object hashJoin (Tables t)
+    {
+        return Db.h_join (t.transcript, "studId", "id", t.student);
+    } // hashJoin
+
+    @Benchmark
+    public Object naturalJoin (Tables t)
+    {
+        return Db.join (t.transcript, t.course);
+    } // naturalJoin
+
+} // JoinBenchmark class
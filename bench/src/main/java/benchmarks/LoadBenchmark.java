@@ -0,0 +1,66 @@
+
+/*****************************************************************************************
+ * @file  LoadBenchmark.java
+ */
+
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/*****************************************************************************************
+ * The LoadBenchmark class measures building a student table, with its index, from
+ * scratch (build, one shot per iteration) and inserting single tuples into a table
+ * already holding size tuples (insert), for every map type, table size and insertion
+ * order.  Inserts are not thread-safe, so the benchmark runs with one thread.
+ */
+@State (Scope.Benchmark)
+@Threads (1)
+@Warmup (iterations = 3)
+@Measurement (iterations = 10)
+@Fork (value = 2, jvmArgsAppend = { "-Xmx12g" })
+public class LoadBenchmark
+{
+    @Param ({ "1000", "100000", "10000000" })
+    public int size;
+
+    @Param ({ "TREE_MAP", "LINHASH_MAP", "BPTREE_MAP", "DISK_BPTREE_MAP", "NO_MAP" })
+    public String mapType;
+
+    @Param ({ "sequential", "random" })
+    public String distribution;
+
+    private int [] ids;
+    private Object student;
+    private int    next;
+
+    /*************************************************************************************
+     * Draw the ids and build the table the inserts go into.
+     */
+    @Setup (Level.Iteration)
+    public void setup ()
+    {
+        new java.io.File ("store").mkdirs ();
+        ids     = Db.ids (size, distribution);
+        student = Db.students ("loadStudent", mapType, ids);
+        next    = size;
+    } // setup
+
+    @Benchmark
+    @BenchmarkMode (Mode.SingleShotTime)
+    @OutputTimeUnit (TimeUnit.MILLISECONDS)
+    public Object build ()
+    {
+        return Db.students ("buildStudent", mapType, ids);
+    } // build
+
+    @Benchmark
+    @BenchmarkMode (Mode.AverageTime)
+    @OutputTimeUnit (TimeUnit.MICROSECONDS)
+    public boolean insert ()
+    {
+        return Db.insert (student, Db.student (next++));
+    } // insert
+
+} // LoadBenchmark class
@@ -0,0 +1,68 @@
+
+/*****************************************************************************************
+ * @file  RangeSelectBenchmark.java
+ */
+
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/*****************************************************************************************
+ * The RangeSelectBenchmark class measures range selects (key1 <= key <= key2, spanning
+ * RANGE keys) on a student table for every ordered map type, table size and key
+ * distribution (as in SelectBenchmark).  LINHASH_MAP and NO_MAP keep no order, so
+ * their range select is a scan of the table and is left out.
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MICROSECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 10, time = 1)
+@Fork (value = 2, jvmArgsAppend = { "-Xmx12g" })
+public class RangeSelectBenchmark
+{
+    /** The number of keys in each range.
+     */
+    private static final int RANGE = 100;
+
+    @Param ({ "1000", "100000", "10000000" })
+    public int size;
+
+    @Param ({ "TREE_MAP", "BPTREE_MAP", "DISK_BPTREE_MAP" })
+    public String mapType;
+
+    @Param ({ "sequential", "random", "zipf" })
+    public String distribution;
+
+    private Object    student;
+    private Object [] lows;
+    private Object [] highs;
+
+    /*************************************************************************************
+     * Build the table and draw the ranges.
+     */
+    @Setup (Level.Trial)
+    public void setup ()
+    {
+        new java.io.File ("store").mkdirs ();
+        int [] ids = Db.ids (size, distribution.equals ("sequential") ? "sequential" : "random");
+        student = Db.students ("rangeStudent", mapType, ids);
+        lows    = new Object [SelectBenchmark.PROBES];
+        highs   = new Object [SelectBenchmark.PROBES];
+        int [] probes = Db.probes (ids, distribution, SelectBenchmark.PROBES);
+        for (int i = 0; i < probes.length; i++) {
+            lows [i]  = Db.key (probes [i]);
+            highs [i] = Db.key (probes [i] + RANGE);
+        } // for
+    } // setup
+
+    @Benchmark
+    public Object rangeSelect (SelectBenchmark.Cursor c)
+    {
+        int i = c.next++ & (SelectBenchmark.PROBES - 1);
+        return Db.select (student, lows [i], highs [i]);
+    } // rangeSelect
+
+} // RangeSelectBenchmark class
@@ -0,0 +1,78 @@
+
+/*****************************************************************************************
+ * @file  SelectBenchmark.java
+ */
+
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/*****************************************************************************************
+ * The SelectBenchmark class measures point selects (key = value) on a student table
+ * for every indexed map type, table size and key distribution.  The distribution sets
+ * the order in which the keys are inserted and the keys that are probed:
+ *
+ *     sequential:  keys inserted in ascending order, probed in ascending order
+ *     random:      keys inserted in shuffled order, probed uniformly at random
+ *     zipf:        keys inserted in shuffled order, probed with Zipf (s = 1) skew
+ *
+ * The probes are drawn in advance, so only the select is measured.  Selects do not
+ * modify the table, so the benchmark may be run with several threads (-t).  NO_MAP
+ * keeps no index, so it has no point select.
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MICROSECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 10, time = 1)
+@Fork (value = 2, jvmArgsAppend = { "-Xmx12g" })
+public class SelectBenchmark
+{
+    /** The number of probes drawn in advance (a power of 2).
+     */
+    static final int PROBES = 1 << 14;
+
+    @Param ({ "1000", "100000", "10000000" })
+    public int size;
+
+    @Param ({ "TREE_MAP", "LINHASH_MAP", "BPTREE_MAP", "DISK_BPTREE_MAP" })
+    public String mapType;
+
+    @Param ({ "sequential", "random", "zipf" })
+    public String distribution;
+
+    private Object    student;
+    private Object [] keys;
+
+    /*************************************************************************************
+     * Build the table and draw the probes.
+     */
+    @Setup (Level.Trial)
+    public void setup ()
+    {
+        new java.io.File ("store").mkdirs ();
+        int [] ids = Db.ids (size, distribution.equals ("sequential") ? "sequential" : "random");
+        student = Db.students ("selectStudent", mapType, ids);
+        keys    = new Object [PROBES];
+        int [] probes = Db.probes (ids, distribution, PROBES);
+        for (int i = 0; i < PROBES; i++) keys [i] = Db.key (probes [i]);
+    } // setup
+
+    /*************************************************************************************
+     * The cursor of each thread into the probes.
+     */
+    @State (Scope.Thread)
+    public static class Cursor
+    {
+        int next;
+    } // Cursor
+
+    @Benchmark
+    public Object pointSelect (Cursor c)
+    {
+        return Db.select (student, keys [c.next++ & (PROBES - 1)]);
+    } // pointSelect
+
+} // SelectBenchmark class